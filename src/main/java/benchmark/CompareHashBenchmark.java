@@ -0,0 +1,147 @@
+package benchmark;
+
+import model.UpdateInfo;
+import model.UpdateInfoTree;
+
+import java.util.ArrayList;
+
+/**
+ * UpdateInfoTree.compareHash 의 색인 비교 와 기존 중첩 반복문 비교 의 수행 시간 을 비교 하는 벤치마크
+ * <p>
+ * 하나의 디렉토리 에 n 개 의 파일 이 있는 트리 를 만들고 1% 수정, 1% 추가, 1% 삭제 된 서버 트리 와 비교 한다.
+ * 실행 방법 : java -cp updateclient.jar benchmark.CompareHashBenchmark [entries...]
+ */
+public class CompareHashBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {10000, 100000};
+    private static final String DIRECTORY = "/flat";
+
+    public static void main(String[] args) {
+
+        int[] sizes = DEFAULT_SIZES;
+
+        if (args.length > 0) {
+
+            sizes = new int[args.length];
+
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int n : sizes) {
+
+            UpdateInfo client = createTree(n, 0);
+            UpdateInfo server = createTree(n, n / 100);
+
+            ArrayList<UpdateInfo> legacyDownload = new ArrayList<>();
+            ArrayList<UpdateInfo> legacyDelete = new ArrayList<>();
+            ArrayList<UpdateInfo> indexedDownload = new ArrayList<>();
+            ArrayList<UpdateInfo> indexedDelete = new ArrayList<>();
+
+            long start = System.nanoTime();
+            legacyCompareHash(client, server, legacyDownload, legacyDelete);
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            UpdateInfoTree.compareHash(client, server, indexedDownload, indexedDelete);
+            long indexed = System.nanoTime() - start;
+
+            boolean same = legacyDownload.equals(indexedDownload) && legacyDelete.equals(indexedDelete);
+
+            System.out.printf("entries=%d download=%d delete=%d legacy=%.1fms indexed=%.1fms speedup=%.1fx same=%s%n",
+                    n, indexedDownload.size(), indexedDelete.size(),
+                    legacy / 1e6, indexed / 1e6, (double) legacy / indexed, same);
+        }
+    }
+
+    /**
+     * 하나의 디렉토리 에 n 개 의 파일 을 가진 트리 를 만든다.
+     * changes 가 0 보다 크면 앞쪽 changes 개 는 해시 를 바꾸고, 뒤쪽 changes 개 는 다른 이름 으로 바꾼다.
+     */
+    private static UpdateInfo createTree(int n, int changes) {
+
+        UpdateInfo root = new UpdateInfo();
+        UpdateInfo directory = new UpdateInfo();
+
+        root.setDirectory(true);
+        root.setFileName("root");
+        root.setFilePath("/root");
+
+        directory.setDirectory(true);
+        directory.setFileName("flat");
+        directory.setFilePath(DIRECTORY);
+
+        root.getChildList().add(directory);
+
+        for (int i = 0; i < n; i++) {
+
+            String name = i >= n - changes ? "new-" + i : "file-" + i;
+            UpdateInfo file = new UpdateInfo();
+
+            file.setDirectory(false);
+            file.setFileName(name);
+            file.setFilePath(DIRECTORY + "/" + name);
+            file.setFileHash(String.format("%064x", i < changes ? i + 1L << 32 : i));
+
+            directory.getChildList().add(file);
+        }
+
+        return root;
+    }
+
+    /**
+     * 색인 을 사용 하기 전 의 중첩 반복문 비교
+     */
+    private static void legacyCompareHash(UpdateInfo client, UpdateInfo server,
+                                          ArrayList<UpdateInfo> downloadRequests,
+                                          ArrayList<UpdateInfo> deleteList) {
+
+        ArrayList<UpdateInfo> clientChild = client.getChildList();
+        ArrayList<UpdateInfo> serverChild = server.getChildList();
+
+        if (clientChild.isEmpty() && serverChild.isEmpty()) {
+            return;
+        }
+
+        for (UpdateInfo c : clientChild) {
+
+            boolean isExist = false;
+
+            for (UpdateInfo s : serverChild) {
+                if (c.equals(s)) {
+                    isExist = true;
+                    break;
+                }
+            }
+
+            if (!isExist) {
+                deleteList.add(c);
+            }
+        }
+
+        for (UpdateInfo s : serverChild) {
+
+            boolean isExist = false;
+
+            for (UpdateInfo c : clientChild) {
+                if (s.equals(c)) {
+                    isExist = true;
+                    break;
+                }
+            }
+
+            if (!isExist) {
+                downloadRequests.add(s);
+            }
+        }
+
+        for (UpdateInfo c : clientChild) {
+            for (UpdateInfo s : serverChild) {
+                if (c.equals(s)) {
+                    legacyCompareHash(c, s, downloadRequests, deleteList);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package benchmark;
+
+import model.SubtreeRequestDTO;
+import model.UpdateInfo;
+import model.UpdateInfoDTO;
+import model.UpdateInfoTree;
+import network.ServerSession;
+import network.UpdateInfoCodec;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 세션 으로 전체 트리 를 받는 경우 와 부분 트리 모드 로 바뀐 부분 만 받는 경우 의 시간, 전송량, 요청 수 를 비교 하는 벤치마크
+ * <p>
+ * 같은 프로세스 에서 세션, 바이너리, 부분 트리 요청 을 지원 하는 간단한 서버 를 띄우고,
+ * 서버 는 응답 마다 rtt 밀리초 를 기다려 네트워크 왕복 지연 을 흉내 낸다.
+ * 서버 트리 는 /pkg/mod/sub/file 4 단계 로 이루어 지며 클라이언트 트리 와 파일 3 개 의 해시 가 다르다.
+ * 실행 방법 : java -cp updateclient.jar benchmark.SubtreeFetchBenchmark [files] [rtt] [iterations]
+ */
+public class SubtreeFetchBenchmark {
+
+    private static final int DEFAULT_FILES = 200000;
+    private static final int DEFAULT_RTT = 2;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int DIRECTORIES_PER_LEVEL = 10;
+    private static final int CHANGED_FILES = 3;
+
+    private static final byte REQUEST_CLOSE = 0;
+    private static final byte REQUEST_TREE_BINARY = 3;
+    private static final byte REQUEST_TREE_PARTIAL = 5;
+    private static final byte REQUEST_SUBTREES = 6;
+
+    private static final String CAPABILITIES = "capabilities:session,binary,subtree\n";
+
+    public static void main(String[] args) throws Exception {
+
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FILES;
+        int rtt = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RTT;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+
+        UpdateInfo serverRoot = createTree(files, CHANGED_FILES);
+        UpdateInfo clientRoot = createTree(files, 0);
+        StandInServer server = new StandInServer(new UpdateInfoDTO("client", serverRoot), rtt);
+
+        server.start();
+
+        long[] fullTimes = new long[iterations];
+        long[] lazyTimes = new long[iterations];
+        long fullBytes = 0, lazyBytes = 0, fullRequests = 0, lazyRequests = 0;
+        ArrayList<UpdateInfo> fullDownload = null, lazyDownload = null;
+
+        for (int i = 0; i < iterations; i++) {
+
+            server.reset();
+
+            long start = System.nanoTime();
+            fullDownload = fetchFull(server.getPort(), clientRoot);
+            fullTimes[i] = System.nanoTime() - start;
+            fullBytes = server.bytes.get();
+            fullRequests = server.requests.get();
+
+            server.reset();
+
+            start = System.nanoTime();
+            lazyDownload = fetchLazy(server.getPort(), clientRoot);
+            lazyTimes[i] = System.nanoTime() - start;
+            lazyBytes = server.bytes.get();
+            lazyRequests = server.requests.get();
+        }
+
+        server.close();
+
+        System.out.printf("files=%d changed=%d rtt=%dms%n", files, CHANGED_FILES, rtt);
+        System.out.printf("full tree     bytes=%d requests=%d median=%.1fms%n",
+                fullBytes, fullRequests, median(fullTimes) / 1e6);
+        System.out.printf("subtree fetch bytes=%d requests=%d median=%.1fms%n",
+                lazyBytes, lazyRequests, median(lazyTimes) / 1e6);
+        System.out.printf("bytes ratio=%.1fx speedup=%.1fx same=%s%n",
+                (double) fullBytes / lazyBytes, (double) median(fullTimes) / median(lazyTimes),
+                paths(fullDownload).equals(paths(lazyDownload)));
+    }
+
+    private static ArrayList<UpdateInfo> fetchFull(int port, UpdateInfo clientRoot) {
+
+        ServerSession session = ServerSession.open("127.0.0.1", port, 10000);
+        ArrayList<UpdateInfo> download = new ArrayList<>();
+
+        UpdateInfoTree.compareHash(clientRoot, session.getUpdateInfoDTO().getRoot(), download, new ArrayList<UpdateInfo>());
+        session.close();
+
+        return download;
+    }
+
+    private static ArrayList<UpdateInfo> fetchLazy(int port, UpdateInfo clientRoot) {
+
+        ServerSession session = ServerSession.open("127.0.0.1", port, 10000);
+        ArrayList<UpdateInfo> download = new ArrayList<>();
+        UpdateInfo serverRoot = session.getUpdateInfoDTO(ServerSession.DEFAULT_SUBTREE_DEPTH).getRoot();
+
+        if (!session.fetchChangedSubtrees(clientRoot, serverRoot, ServerSession.DEFAULT_SUBTREE_DEPTH)) {
+
+            throw new IllegalStateException("subtree fetch failed");
+        }
+
+        UpdateInfoTree.compareHash(clientRoot, serverRoot, download, new ArrayList<UpdateInfo>());
+        session.close();
+
+        return download;
+    }
+
+    /**
+     * /pkg/mod/sub 디렉토리 아래 에 파일 을 고르게 나눈 트리 를 만든다.
+     * changes 개 의 파일 은 서로 다른 sub 디렉토리 에 있으며 해시 가 바뀐다.
+     */
+    private static UpdateInfo createTree(int files, int changes) {
+
+        UpdateInfo root = directory("", "srv");
+        int leaves = DIRECTORIES_PER_LEVEL * DIRECTORIES_PER_LEVEL * DIRECTORIES_PER_LEVEL;
+        int perLeaf = Math.max(1, files / leaves);
+        int leaf = 0;
+
+        for (int a = 0; a < DIRECTORIES_PER_LEVEL; a++) {
+
+            UpdateInfo pkg = directory(root.getFilePath() + "/pkg" + a, "pkg" + a);
+
+            root.getChildList().add(pkg);
+
+            for (int b = 0; b < DIRECTORIES_PER_LEVEL; b++) {
+
+                UpdateInfo mod = directory(pkg.getFilePath() + "/mod" + b, "mod" + b);
+
+                pkg.getChildList().add(mod);
+
+                for (int c = 0; c < DIRECTORIES_PER_LEVEL; c++, leaf++) {
+
+                    UpdateInfo sub = directory(mod.getFilePath() + "/sub" + c, "sub" + c);
+
+                    mod.getChildList().add(sub);
+
+                    for (int f = 0; f < perLeaf; f++) {
+
+                        UpdateInfo file = new UpdateInfo();
+                        String name = String.format("file_%05d.dat", f);
+                        boolean isChanged = f == 0 && leaf % (leaves / Math.max(1, changes)) == 0
+                                && leaf / (leaves / Math.max(1, changes)) < changes;
+
+                        file.setDirectory(false);
+                        file.setFileName(name);
+                        file.setFilePath(sub.getFilePath() + "/" + name);
+                        file.setFileHash(String.format("%064x", isChanged ? leaf * 100000L + f + (1L << 40) : leaf * 100000L + f));
+                        file.setFileSize(1024);
+
+                        sub.getChildList().add(file);
+                    }
+                }
+            }
+        }
+
+        computeTreeHashes(root);
+
+        return root;
+    }
+
+    private static void computeTreeHashes(UpdateInfo node) {
+
+        for (UpdateInfo child : node.getChildList()) {
+
+            if (child.isDirectory()) {
+                computeTreeHashes(child);
+            }
+        }
+
+        node.setTreeHash(UpdateInfoTree.computeTreeHash(node));
+    }
+
+    private static UpdateInfo directory(String path, String name) {
+
+        UpdateInfo directory = new UpdateInfo();
+
+        directory.setDirectory(true);
+        directory.setFileName(name);
+        directory.setFilePath(path);
+
+        return directory;
+    }
+
+    private static Set<String> paths(ArrayList<UpdateInfo> list) {
+
+        Set<String> result = new TreeSet<>();
+
+        for (UpdateInfo u : list) {
+            result.add(u.getFilePath());
+        }
+
+        return result;
+    }
+
+    private static long median(long[] values) {
+
+        long[] sorted = values.clone();
+
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * 세션 의 전체 트리, 깊이 제한 트리, 부분 트리 요청 만 처리 하는 서버
+     */
+    private static class StandInServer extends Thread implements Closeable {
+
+        private final ServerSocket serverSocket;
+        private final UpdateInfoDTO dto;
+        private final Map<String, UpdateInfo> index = new HashMap<>();
+        private final int rtt;
+
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong requests = new AtomicLong();
+
+        StandInServer(UpdateInfoDTO dto, int rtt) throws IOException {
+
+            this.serverSocket = new ServerSocket(0);
+            this.dto = dto;
+            this.rtt = rtt;
+
+            index(dto.getRoot());
+            setDaemon(true);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void reset() {
+            bytes.set(0);
+            requests.set(0);
+        }
+
+        private void index(UpdateInfo node) {
+
+            for (UpdateInfo child : node.getChildList()) {
+
+                index.put(child.getFilePath(), child);
+                index(child);
+            }
+        }
+
+        @Override
+        public void run() {
+
+            while (!serverSocket.isClosed()) {
+
+                try (Socket socket = serverSocket.accept()) {
+
+                    handle(socket);
+
+                } catch (IOException e) {
+
+                    // 벤치마크 가 끝나 소켓 이 닫힌 경우
+
+                }
+            }
+        }
+
+        private void handle(Socket socket) throws IOException {
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FilterOutputStream(socket.getOutputStream()) {
+                @Override
+                public void write(int b) throws IOException {
+                    bytes.incrementAndGet();
+                    super.out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    bytes.addAndGet(len);
+                    super.out.write(b, off, len);
+                }
+            }, 64 * 1024));
+            UpdateInfoCodec codec = new UpdateInfoCodec();
+            int c;
+
+            while ((c = in.read()) != -1 && c != '\n') {
+                // "session" 요청 줄 을 읽는다.
+            }
+
+            out.writeBytes(CAPABILITIES);
+            out.flush();
+
+            int op;
+
+            while ((op = in.read()) > REQUEST_CLOSE) {
+
+                requests.incrementAndGet();
+
+                if (op == REQUEST_TREE_BINARY) {
+
+                    codec.writeUpdateInfoDTO(out, dto);
+
+                } else if (op == REQUEST_TREE_PARTIAL) {
+
+                    codec.writeUpdateInfoDTO(out, dto, in.readInt());
+
+                } else if (op == REQUEST_SUBTREES) {
+
+                    SubtreeRequestDTO request = codec.readSubtreeRequestDTO(in);
+                    ArrayList<UpdateInfo> subtrees = new ArrayList<>();
+
+                    for (String path : request.getPathList()) {
+                        subtrees.add(index.get(path));
+                    }
+
+                    codec.writeSubtrees(out, subtrees, request.getDepth());
+
+                } else {
+
+                    return;
+                }
+
+                sleep();
+                out.flush();
+            }
+        }
+
+        private void sleep() {
+
+            try {
+
+                Thread.sleep(rtt);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package benchmark;
+
+import model.UpdateInfo;
+import model.UpdateInfoDTO;
+import network.UpdateInfoCodec;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * 트리 노드 하나 가 차지 하는 heap 크기 를 압축 하기 전 의 UpdateInfo 구조 와 현재 UpdateInfo 로 비교 하는 벤치마크
+ * <p>
+ * 디렉토리 당 100 개 의 파일 을 가지는 트리 를 만든다. 압축 전 구조 는 경로, 파일명, 16진수 해시 문자열 과
+ * 자식 리스트 를 노드 마다 가지던 이전 필드 를 그대로 옮긴 LegacyNode 로 만들고,
+ * 현재 구조 는 서버 에서 트리 를 받을 때 와 같이 UpdateInfoCodec 으로 읽어서 만든다.
+ * 정확한 값 을 보려면 -Xmx 를 충분히 주고 다른 작업 이 없는 상태 에서 실행 한다.
+ * 실행 방법 : java -cp updateclient.jar benchmark.TreeMemoryBenchmark [files]
+ */
+public class TreeMemoryBenchmark {
+
+    private static final int DEFAULT_FILES = 200000;
+    private static final int FILES_PER_DIRECTORY = 100;
+    private static final int GC_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FILES;
+        int nodes = files + (files + FILES_PER_DIRECTORY - 1) / FILES_PER_DIRECTORY + 1;
+
+        byte[] encoded = encode(new UpdateInfoDTO("client", createTree(files)));
+
+        long base = usedMemory();
+        LegacyNode legacy = createLegacyTree(files);
+        long legacyBytes = usedMemory() - base;
+
+        System.out.println("legacy root children : " + legacy.childList.size());
+        legacy = null;
+
+        base = usedMemory();
+        UpdateInfoDTO compact = new UpdateInfoCodec().readUpdateInfoDTO(
+                new DataInputStream(new ByteArrayInputStream(encoded)));
+        long compactBytes = usedMemory() - base;
+
+        System.out.println("compact root children : " + compact.getRoot().getChildList().size());
+
+        System.out.printf("nodes=%d legacy=%.1fMB (%d bytes/node) compact=%.1fMB (%d bytes/node) saving=%.1fx%n",
+                nodes, legacyBytes / 1048576.0, legacyBytes / nodes, compactBytes / 1048576.0, compactBytes / nodes,
+                (double) legacyBytes / compactBytes);
+    }
+
+    private static long usedMemory() throws InterruptedException {
+
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < GC_ROUNDS; i++) {
+
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static UpdateInfo createTree(int files) {
+
+        Random random = new Random(1);
+        UpdateInfo root = new UpdateInfo();
+
+        root.setDirectory(true);
+        root.setFileName("client");
+        root.setFilePath("/client");
+
+        UpdateInfo directory = null;
+
+        for (int i = 0; i < files; i++) {
+
+            if (i % FILES_PER_DIRECTORY == 0) {
+
+                directory = new UpdateInfo();
+                directory.setDirectory(true);
+                directory.setFileName("dir-" + i / FILES_PER_DIRECTORY);
+                directory.setFilePath("/data/dir-" + i / FILES_PER_DIRECTORY);
+                root.getChildList().add(directory);
+
+            }
+
+            UpdateInfo file = new UpdateInfo();
+
+            file.setFileName("file-" + i + ".dat");
+            file.setFilePath(directory.getFilePath() + "/file-" + i + ".dat");
+            file.setFileHash(randomHash(random));
+            file.setFileSize(random.nextInt(1 << 20));
+
+            directory.getChildList().add(file);
+        }
+
+        return root;
+    }
+
+    /**
+     * createTree 와 같은 트리 를 노드 마다 새 문자열 을 가지는 압축 전 구조 로 만든다.
+     */
+    private static LegacyNode createLegacyTree(int files) {
+
+        Random random = new Random(1);
+        LegacyNode root = new LegacyNode();
+
+        root.isDirectory = true;
+        root.fileName = "client";
+        root.filePath = "/client";
+
+        LegacyNode directory = null;
+
+        for (int i = 0; i < files; i++) {
+
+            if (i % FILES_PER_DIRECTORY == 0) {
+
+                directory = new LegacyNode();
+                directory.isDirectory = true;
+                directory.fileName = "dir-" + i / FILES_PER_DIRECTORY;
+                directory.filePath = "/data/dir-" + i / FILES_PER_DIRECTORY;
+                root.childList.add(directory);
+
+            }
+
+            LegacyNode file = new LegacyNode();
+
+            file.fileName = "file-" + i + ".dat";
+            file.filePath = directory.filePath + "/file-" + i + ".dat";
+            file.fileHash = randomHash(random);
+            file.fileSize = random.nextInt(1 << 20);
+
+            directory.childList.add(file);
+        }
+
+        return root;
+    }
+
+    private static String randomHash(Random random) {
+
+        return String.format("%016x%016x%016x%016x",
+                random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+    }
+
+    private static byte[] encode(UpdateInfoDTO dto) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        new UpdateInfoCodec().writeUpdateInfoDTO(out, dto);
+        out.flush();
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * 압축 하기 전 UpdateInfo 의 필드 구성
+     */
+    private static class LegacyNode {
+
+        private String filePath;
+        private String fileName;
+        private String fileHash;
+        private boolean isDirectory;
+        private long fileSize;
+        private String treeHash;
+        private boolean isPartial;
+        private ArrayList<LegacyNode> childList = new ArrayList<>();
+    }
+}
@@ -0,0 +1,149 @@
+package benchmark;
+
+import model.UpdateInfo;
+import model.UpdateInfoDTO;
+import network.UpdateInfoCodec;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * UpdateInfoDTO 의 Java 직렬화 와 UpdateInfoCodec 바이너리 형식 의 크기 와 해석 시간 을 비교 하는 벤치마크
+ * <p>
+ * 디렉토리 당 100 개 의 파일 을 가지는 3 단계 트리 를 만들어 사용 한다.
+ * 실행 방법 : java -cp updateclient.jar benchmark.WireFormatBenchmark [files] [iterations]
+ */
+public class WireFormatBenchmark {
+
+    private static final int DEFAULT_FILES = 100000;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int FILES_PER_DIRECTORY = 100;
+    private static final int DIRECTORIES_PER_LEVEL = 10;
+
+    public static void main(String[] args) throws Exception {
+
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FILES;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+        UpdateInfoDTO dto = new UpdateInfoDTO("client", createTree(files));
+
+        byte[] serialized = serialize(dto);
+        byte[] binary = encode(dto);
+
+        long[] serializedTimes = new long[iterations];
+        long[] binaryTimes = new long[iterations];
+
+        for (int i = 0; i < iterations; i++) {
+
+            long start = System.nanoTime();
+            deserialize(serialized);
+            serializedTimes[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            decode(binary);
+            binaryTimes[i] = System.nanoTime() - start;
+        }
+
+        System.out.printf("files=%d%n", files);
+        System.out.printf("ObjectInputStream bytes=%d (%.1f per file) decode median=%.1fms%n",
+                serialized.length, (double) serialized.length / files, median(serializedTimes) / 1e6);
+        System.out.printf("UpdateInfoCodec   bytes=%d (%.1f per file) decode median=%.1fms%n",
+                binary.length, (double) binary.length / files, median(binaryTimes) / 1e6);
+        System.out.printf("size ratio=%.2fx decode speedup=%.2fx%n",
+                (double) serialized.length / binary.length, (double) median(serializedTimes) / median(binaryTimes));
+    }
+
+    private static UpdateInfo createTree(int files) {
+
+        Random random = new Random(42);
+        UpdateInfo root = directory("/srv/update/data", "data");
+        int created = 0;
+
+        for (int a = 0; created < files; a++) {
+
+            UpdateInfo first = directory("/assets" + a, "assets" + a);
+
+            root.getChildList().add(first);
+
+            for (int b = 0; b < DIRECTORIES_PER_LEVEL && created < files; b++) {
+
+                UpdateInfo second = directory(first.getFilePath() + "/textures_" + b, "textures_" + b);
+
+                first.getChildList().add(second);
+
+                for (int c = 0; c < FILES_PER_DIRECTORY && created < files; c++, created++) {
+
+                    UpdateInfo file = new UpdateInfo();
+                    String name = String.format("texture_%05d.png", c);
+                    byte[] hash = new byte[32];
+
+                    random.nextBytes(hash);
+
+                    file.setDirectory(false);
+                    file.setFileName(name);
+                    file.setFilePath(second.getFilePath() + "/" + name);
+                    file.setFileHash(util.SHA256HashGenerator.toHex(hash));
+
+                    second.getChildList().add(file);
+                }
+            }
+        }
+
+        return root;
+    }
+
+    private static UpdateInfo directory(String path, String name) {
+
+        UpdateInfo directory = new UpdateInfo();
+
+        directory.setDirectory(true);
+        directory.setFileName(name);
+        directory.setFilePath(path);
+
+        return directory;
+    }
+
+    private static byte[] serialize(UpdateInfoDTO dto) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(buffer)) {
+            oos.writeObject(dto);
+        }
+
+        return buffer.toByteArray();
+    }
+
+    private static UpdateInfoDTO deserialize(byte[] data) throws IOException, ClassNotFoundException {
+
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (UpdateInfoDTO) ois.readObject();
+        }
+    }
+
+    private static byte[] encode(UpdateInfoDTO dto) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        new UpdateInfoCodec().writeUpdateInfoDTO(out, dto);
+        out.flush();
+
+        return buffer.toByteArray();
+    }
+
+    private static UpdateInfoDTO decode(byte[] data) throws IOException {
+
+        return new UpdateInfoCodec().readUpdateInfoDTO(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    private static long median(long[] values) {
+
+        long[] sorted = values.clone();
+
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+}
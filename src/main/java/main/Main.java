@@ -3,8 +3,12 @@ package main;
 import model.*;
 
 import module.UpdateModule;
+import util.UpdateLog;
+import util.UpdateMetrics;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Random;
 
 /**
  * update Client 의 Main 클래스 이다.
@@ -17,7 +21,12 @@ public class Main {
      * update Client 의 Main 메소드 이다.
      * 서버에 updateInfoTree 를 요청 한 후
      * 서버에서 받은 값으로 로컬 과 비교해서 업데이트 할 파일들을 요청하여
-     * 다운로드 받는다.
+     * 다운로드 받는다. 기본 적으로 로컬 탐색 과 다운로드 는 동시에 진행 되며,
+     * 받은 파일 과 삭제 는 다운로드 가 모두 끝난 후 한번 에 적용 된다.
+     * update.daemon.interval 이 지정 되면 종료 하지 않고 주기적 으로 서버 트리 의 버전 을 확인 하며,
+     * 버전 이 바뀌었을 때 만 업데이트 한다.
+     * 로그 는 update.log.level 로 지정 한 레벨 이상 만 출력 되며, 기본 값 인 info 에서는 파일 마다 출력 하지 않고 진행 상황 을 요약 한다.
+     * 단계 별 시간 과 처리량 은 JMX 의 updateclient:type=UpdateMetrics 로 볼 수 있고, 업데이트 가 끝날 때 마다 update.metrics.file 에 쓴다.
      *
      * @param args String[] 형태의 클라이언트 시작시 매개변수가 저장되는 변수 이다.
      */
@@ -27,9 +36,17 @@ public class Main {
         int port = 0;
         int timeout = 0;
 
+        String logLevel = System.getProperty(MainConstants.PROP_LOG_LEVEL);
+
+        if (logLevel != null && !UpdateLog.setLevel(logLevel)) {
+
+            UpdateLog.error(MainConstants.ERR_WRONG_LOG_LEVEL + logLevel);
+
+        }
+
         if (args.length < 3) {
 
-            System.out.println(MainConstants.ERR_ARGUMENT_COUNT_MISSMATCH);
+            UpdateLog.error(MainConstants.ERR_ARGUMENT_COUNT_MISSMATCH);
 
             return;
 
@@ -43,35 +60,219 @@ public class Main {
 
             } catch (NumberFormatException e) {
 
-                System.out.println(MainConstants.ERR_WRONG_ARGUMENTS);
+                UpdateLog.error(MainConstants.ERR_WRONG_ARGUMENTS);
             }
 
         }
 
         UpdateModule module = UpdateModule.getInstance();
 
-        ArrayList<ArrayList<UpdateInfo>> result = module.checkUpdate(serverIP, port, timeout);
+        Integer scanParallelism = Integer.getInteger(MainConstants.PROP_SCAN_PARALLELISM);
 
-        if (result == null) {
+        if (scanParallelism != null) {
 
-            return;
+            module.setScanParallelism(scanParallelism);
+
+        }
+
+        module.setParanoidVerify(Boolean.getBoolean(MainConstants.PROP_PARANOID_VERIFY));
+
+        Integer downloadConnections = Integer.getInteger(MainConstants.PROP_DOWNLOAD_CONNECTIONS);
+
+        if (downloadConnections != null) {
+
+            module.setDownloadConnections(downloadConnections);
+
+        }
+
+        module.setSessionEnabled(Boolean.parseBoolean(System.getProperty(MainConstants.PROP_SESSION, "true")));
+
+        Integer compressionLevel = Integer.getInteger(MainConstants.PROP_COMPRESSION_LEVEL);
+
+        if (compressionLevel != null) {
+
+            module.setCompressionLevel(compressionLevel);
+
+        }
+
+        Integer retryAttempts = Integer.getInteger(MainConstants.PROP_RETRY_ATTEMPTS);
+
+        if (retryAttempts != null) {
+
+            module.setRetryAttempts(retryAttempts);
+
+        }
+
+        Long retryDelay = Long.getLong(MainConstants.PROP_RETRY_DELAY);
+
+        if (retryDelay != null) {
+
+            module.setRetryDelay(retryDelay);
+
+        }
+
+        module.setStagedApply(Boolean.parseBoolean(System.getProperty(MainConstants.PROP_STAGED_APPLY, "true")));
+
+        boolean isOutOfCoreDiff = Boolean.getBoolean(MainConstants.PROP_OUT_OF_CORE_DIFF);
+
+        module.setOutOfCoreDiff(isOutOfCoreDiff);
+
+        long interval = Long.getLong(MainConstants.PROP_DAEMON_INTERVAL, 0L);
+        boolean isPipeline = !isOutOfCoreDiff
+                && Boolean.parseBoolean(System.getProperty(MainConstants.PROP_PIPELINE, "true"));
+
+        if (interval > 0) {
+
+            runDaemon(module, serverIP, port, timeout, isPipeline, interval);
+
+        } else {
+
+            update(module, serverIP, port, timeout, isPipeline);
+
+        }
+
+        UpdateLog.flush();
+    }
+
+    /**
+     * 업데이트 한번 의 결과 를 기록 하는 메소드 로 처리 한 파일 수 를 요약 해서 출력 하고 metrics 요약 파일 을 쓴다.
+     *
+     * @param isUpdated boolean 형태 로 모든 파일 을 받아 적용 했으면 true
+     */
+    private static void finish(boolean isUpdated) {
+
+        UpdateLog.summarize();
+        UpdateMetrics.finishRun(isUpdated);
+
+        String metricsFile = System.getProperty(MainConstants.PROP_METRICS_FILE, MainConstants.DEFAULT_METRICS_FILE);
+
+        if (!metricsFile.isEmpty()) {
+
+            UpdateMetrics.writeSummary(new File(metricsFile));
+
+        }
+    }
+
+    /**
+     * 업데이트 를 한번 수행 하고 결과 를 기록 하는 메소드 이다.
+     *
+     * @param module     UpdateModule 형태 의 설정 이 끝난 모듈
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param port       int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @param isPipeline boolean 형태 로 탐색, 비교, 다운로드 를 동시에 진행 할 경우 true
+     * @return boolean 형태 로 모든 파일 을 받아 적용 했으면 true
+     */
+    private static boolean update(UpdateModule module, String serverIP, int port, int timeout, boolean isPipeline) {
+
+        ArrayList<UpdateInfo> downloadList;
+
+        if (isPipeline) {
+
+            downloadList = module.update(serverIP, port, timeout);
+
+            if (downloadList != null && !downloadList.isEmpty()) {
+
+                downloadList = module.downloadFiles(serverIP, port, timeout, downloadList, true);
+
+            }
+
+        } else {
+
+            ArrayList<ArrayList<UpdateInfo>> result = module.checkUpdate(serverIP, port, timeout);
+
+            if (result == null) {
+
+                module.discardUpdate();
+                module.closeSession();
+                finish(false);
+
+                return false;
+
+            }
+
+            ArrayList<UpdateInfo> deleteList = result.get(0);
+
+            downloadList = module.reuseLocalFiles(deleteList, result.get(1));
+
+            module.deleteFiles(deleteList);
+
+            downloadList = module.downloadFiles(serverIP, port, timeout, downloadList, false);
 
         }
 
-        ArrayList<UpdateInfo> deleteList = result.get(0);
+        boolean isUpdated = false;
 
-        module.deleteFiles(deleteList);
+        if (downloadList != null && downloadList.isEmpty()) {
 
-        ArrayList<UpdateInfo> downloadList = result.get(1);
+            isUpdated = module.commitUpdate();
 
-        if (!downloadList.isEmpty()) {
+        } else {
 
-            do {
+            module.discardUpdate();
 
-                downloadList = module.updateFiles(serverIP, port, timeout, downloadList);
+        }
 
-            } while (!downloadList.isEmpty());
+        module.closeSession();
+        finish(isUpdated);
 
+        return isUpdated;
+    }
+
+    /**
+     * 종료 될 때 까지 interval 마다 서버 트리 의 버전 을 확인 하고, 마지막 으로 적용 한 버전 과 다를 때 만 업데이트 하는 메소드 이다.
+     * 버전 을 알려 주지 않는 서버 에서는 매번 업데이트 한다.
+     * 여러 클라이언트 가 같은 순간 에 요청 하지 않도록 대기 시간 은 interval 의 DAEMON_JITTER_RATIO 만큼 무작위 로 늘거나 줄어 든다.
+     * 해시 캐시 와 transfer journal 은 모듈 에 남아 있으므로 다음 확인 에서 다시 읽지 않는다.
+     * 한 번 의 확인 이 RuntimeException 으로 끝나도 에러 를 출력 하고 다음 간격 에 다시 확인 한다.
+     *
+     * @param module     UpdateModule 형태 의 설정 이 끝난 모듈
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param port       int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @param isPipeline boolean 형태 로 탐색, 비교, 다운로드 를 동시에 진행 할 경우 true
+     * @param interval   long 형태 의 확인 간격 으로 밀리세컨드(millisecond) 단위로 나타냄
+     */
+    private static void runDaemon(UpdateModule module, String serverIP, int port, int timeout, boolean isPipeline,
+                                  long interval) {
+
+        Random random = new Random();
+        String appliedVersion = null;
+
+        while (!Thread.currentThread().isInterrupted()) {
+
+            try {
+
+                String version = module.probeVersion(serverIP, port, timeout);
+
+                if (version != null && version.equals(appliedVersion)) {
+
+                    UpdateLog.info(MainConstants.MSG_DAEMON_UNCHANGED);
+
+                } else if (update(module, serverIP, port, timeout, isPipeline)) {
+
+                    appliedVersion = version;
+
+                }
+
+            } catch (RuntimeException e) {
+
+                e.printStackTrace();
+                UpdateLog.error(MainConstants.ERR_DAEMON_ITERATION + e);
+
+            }
+
+            long jitter = (long) (interval * MainConstants.DAEMON_JITTER_RATIO * (random.nextDouble() * 2 - 1));
+
+            try {
+
+                Thread.sleep(Math.max(0, interval + jitter));
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+
+            }
         }
     }
 }
@@ -6,10 +6,48 @@ package main;
  * PORT_NUMBER : 연결할 서버에 포트 번호 이다.
  * TIME_OUT : 서버와 연결시 Time out 을 나타 낸다.
  * ERR_NO_SERVER_IP : 서버 아이피를 매개변수로 넘기지 않았을 경우 출력 되는 에러 메시지 이다.
+ * PROP_SCAN_PARALLELISM : 로컬 트리 탐색 병렬도 를 지정하는 시스템 속성 이름 이다.
+ * PROP_PARANOID_VERIFY : 다운로드 한 파일 을 디스크 에서 다시 읽어 검증 할지 를 지정하는 시스템 속성 이름 이다.
+ * PROP_DOWNLOAD_CONNECTIONS : 동시에 사용할 최대 다운로드 연결 수 를 지정하는 시스템 속성 이름 이다.
+ * PROP_SESSION : 세션 모드 사용 여부 를 지정하는 시스템 속성 이름 이다.
+ * PROP_PIPELINE : 탐색, 비교, 다운로드 를 동시에 진행 할지 를 지정하는 시스템 속성 이름 이다.
+ * PROP_COMPRESSION_LEVEL : 세션 에서 사용할 deflate 압축 레벨 을 지정하는 시스템 속성 이름 으로 0 이면 압축 하지 않는다.
+ * PROP_STAGED_APPLY : 받은 파일 과 삭제 를 모아서 한번 에 적용 할지 를 지정하는 시스템 속성 이름 이다.
+ * PROP_RETRY_ATTEMPTS : 파일 별 최대 다운로드 시도 횟수 를 지정하는 시스템 속성 이름 이다.
+ * PROP_RETRY_DELAY : 첫 재시도 전 에 기다릴 밀리세컨드 단위 시간 을 지정하는 시스템 속성 이름 이다.
+ * PROP_OUT_OF_CORE_DIFF : 서버 트리 와 로컬 트리 를 heap 에 만들지 않고 임시 파일 로 비교 할지 를 지정하는 시스템 속성 이름 으로 지정 하면 pipeline 을 사용 하지 않는다.
+ * PROP_LOG_LEVEL : 출력 할 최소 로그 레벨 을 debug, info, error 중 하나 로 지정하는 시스템 속성 이름 으로 debug 이면 파일 마다 로그 를 출력 한다.
+ * ERR_WRONG_LOG_LEVEL : PROP_LOG_LEVEL 에 모르는 레벨 을 지정 했을 때 출력 되는 에러 메시지 이다.
+ * PROP_METRICS_FILE : 업데이트 가 끝날 때 마다 단계 별 시간 과 처리량 을 JSON 으로 쓸 요약 파일 의 경로 를 지정하는 시스템 속성 이름 으로 빈 값 이면 쓰지 않는다.
+ * DEFAULT_METRICS_FILE : PROP_METRICS_FILE 을 지정 하지 않았을 때 실행 디렉토리 에 쓰는 요약 파일 이름 이다.
+ * PROP_DAEMON_INTERVAL : 종료 하지 않고 서버 트리 버전 을 확인 할 밀리세컨드 단위 간격 을 지정하는 시스템 속성 이름 으로 0 이면 한번 만 업데이트 한다.
+ * DAEMON_JITTER_RATIO : 데몬 모드 의 확인 간격 을 무작위 로 늘리거나 줄일 비율 이다.
+ * MSG_DAEMON_UNCHANGED : 데몬 모드 에서 서버 트리 버전 이 바뀌지 않았을 때 출력 되는 메시지 이다.
+ * ERR_DAEMON_ITERATION : 데몬 모드 의 한 번 확인 이 예외 로 끝났을 때 출력 되는 에러 메시지 로 다음 간격 에 다시 확인 한다.
  */
 public class MainConstants {
 
     static final String ERR_ARGUMENT_COUNT_MISSMATCH = "update Client is required serverIP, port, timeout!";
     static final String ERR_WRONG_ARGUMENTS = "wrong argument please check argument!";
+    static final String ERR_WRONG_LOG_LEVEL = "unknown log level. use debug, info or error : ";
+
+    static final String PROP_SCAN_PARALLELISM = "update.scan.parallelism";
+    static final String PROP_PARANOID_VERIFY = "update.verify.paranoid";
+    static final String PROP_DOWNLOAD_CONNECTIONS = "update.download.connections";
+    static final String PROP_SESSION = "update.session";
+    static final String PROP_PIPELINE = "update.pipeline";
+    static final String PROP_COMPRESSION_LEVEL = "update.compression.level";
+    static final String PROP_STAGED_APPLY = "update.staged";
+    static final String PROP_RETRY_ATTEMPTS = "update.retry.attempts";
+    static final String PROP_RETRY_DELAY = "update.retry.delay";
+    static final String PROP_OUT_OF_CORE_DIFF = "update.diff.outofcore";
+    static final String PROP_LOG_LEVEL = "update.log.level";
+    static final String PROP_METRICS_FILE = "update.metrics.file";
+    static final String DEFAULT_METRICS_FILE = ".update-metrics.json";
+    static final String PROP_DAEMON_INTERVAL = "update.daemon.interval";
+
+    static final double DAEMON_JITTER_RATIO = 0.25;
+    static final String MSG_DAEMON_UNCHANGED = "server tree unchanged. skip update";
+    static final String ERR_DAEMON_ITERATION = "update check failed. retry at next interval : ";
 
 }
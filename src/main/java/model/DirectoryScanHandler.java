@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * 로컬 파일 트리 탐색 도중 디렉토리 하나 의 탐색 이 끝날 때 마다 호출 되는 handler
+ */
+public interface DirectoryScanHandler {
+
+    /**
+     * 디렉토리 와 그 하위 트리 전체 의 탐색 과 해시 계산 이 끝난 후 호출 되는 메소드
+     * 자식 디렉토리 가 항상 부모 디렉토리 보다 먼저 호출 되며, 여러 스레드 에서 동시에 호출 될 수 있다.
+     *
+     * @param directory UpdateInfo 형태의 Merkle 해시 까지 설정 된 디렉토리 노드
+     */
+    void onDirectoryScanned(UpdateInfo directory);
+}
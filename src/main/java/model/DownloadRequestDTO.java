@@ -1,5 +1,7 @@
 package model;
 
+import util.BlockSignature;
+
 import java.io.Serializable;
 import java.util.ArrayList;
 
@@ -11,6 +13,8 @@ public class DownloadRequestDTO implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private ArrayList<UpdateInfo> list;
+    private transient ArrayList<BlockSignature> signatureList;
+    private transient ArrayList<Long> offsetList;
 
     /**
      * ArrayList 를 반환 하는 메소드 이다. UpdateInfo 형태의 서버에 요청할 파일들의 정보가 담겨저 있는 리스트 가 반환 된다.
@@ -31,4 +35,46 @@ public class DownloadRequestDTO implements Serializable {
 
         this.list = list;
     }
+
+    /**
+     * 델타 요청 에서 list 와 같은 순서 로 담긴 로컬 사본 의 블록 서명 리스트 를 반환 하는 메소드
+     * 로컬 사본 이 없는 파일 의 서명 은 null 이다. Java 직렬화 로 는 전송 되지 않는다.
+     *
+     * @return ArrayList 형태의 블록 서명 리스트, 델타 요청 이 아니면 null
+     */
+    public ArrayList<BlockSignature> getSignatureList() {
+
+        return signatureList;
+    }
+
+    /**
+     * 델타 요청 에 사용할 블록 서명 리스트 를 설정 하는 메소드
+     *
+     * @param signatureList ArrayList 형태의 list 와 같은 순서 의 블록 서명 리스트
+     */
+    public void setSignatureList(ArrayList<BlockSignature> signatureList) {
+
+        this.signatureList = signatureList;
+    }
+
+    /**
+     * 이어 받기 요청 에 사용할 이미 받은 길이 리스트 를 반환 하는 메소드
+     * 직렬화 되지 않으며 바이너리 형식 의 이어 받기 요청 에서 만 사용 된다.
+     *
+     * @return ArrayList 형태의 list 와 같은 순서 의 이미 받은 길이 리스트, 이어 받지 않으면 null
+     */
+    public ArrayList<Long> getOffsetList() {
+
+        return offsetList;
+    }
+
+    /**
+     * 이어 받기 요청 에 사용할 이미 받은 길이 리스트 를 설정 하는 메소드
+     *
+     * @param offsetList ArrayList 형태의 list 와 같은 순서 의 이미 받은 길이 리스트
+     */
+    public void setOffsetList(ArrayList<Long> offsetList) {
+
+        this.offsetList = offsetList;
+    }
 }
@@ -13,6 +13,7 @@ public class FileResponse implements Serializable {
     private String fileName;
     private String fileHash;
     private boolean isDirectory;
+    private long fileSize;
 
     private byte[] data;
 
@@ -88,6 +89,25 @@ public class FileResponse implements Serializable {
         isDirectory = directory;
     }
 
+    /**
+     * 해당 파일의 크기를 반환하는 메소드
+     * chunk 단위 전송 에서는 data 없이 크기 만 전달 된다.
+     *
+     * @return long 형태의 byte 단위 파일 크기
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 해당 파일의 크기를 설정하는 메소드
+     *
+     * @param fileSize long 형태의 byte 단위 파일 크기
+     */
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
     /**
      * byte[] 형태의 바이너리 값 들을 반환하는 메소드
      *
@@ -0,0 +1,613 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * 트리 전체 를 heap 에 두지 않고 비교 할 수 있도록 UpdateInfo 노드 들을 경로 순서 로 정렬 된 임시 파일 에 기록 하는 클래스
+ * <p>
+ * 경로 순서 는 경로 구분자 를 다른 모든 문자 보다 앞 에 두는 순서 로, 디렉토리 바로 뒤 에 그 하위 항목 들이 온다.
+ * 자식 을 이름 순 으로 정렬 한 트리 의 전위 순회 순서 와 같으므로, 그렇게 들어 오는 노드 는 정렬 없이 바로 파일 에 쓴다.
+ * 순서 가 어긋난 노드 가 들어 오면 그 뒤 부터 는 RUN_SIZE 개 씩 모아 정렬 한 run 파일 로 쓰고, finish 에서 run 파일 들을 하나 로 병합 한다.
+ * 어느 경우 든 heap 에는 노드 RUN_SIZE 개 이상 이 남지 않는다.
+ * 정렬 된 파일 은 memory-mapped 로 읽으므로 읽는 동안 heap 에는 읽는 위치 의 노드 만 남는다.
+ * <p>
+ * 노드 하나 는 int 형태의 길이 뒤 에 flags, 경로, 파일명, 해쉬값, 파일 크기 를 기록 한다.
+ * 문자열 은 int 형태의 길이 와 UTF-8 byte 로 기록 하며 길이 가 -1 이면 null 이다.
+ * 자식 리스트, Merkle 해시 는 기록 하지 않는다.
+ * 한 스레드 에서만 사용 해야 한다.
+ */
+public class ManifestFile implements Closeable {
+
+    private static final String TEMP_PREFIX = ".manifest";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int RUN_SIZE = 64 * 1024;
+    private static final int WINDOW_SIZE = 8 * 1024 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private static final int FLAG_DIRECTORY = 1;
+
+    private static final String ERR_NOT_FINISHED = "manifest is not finished";
+    private static final String ERR_FINISHED = "manifest is already finished";
+    private static final String ERR_CORRUPTED = "manifest record corrupted at : ";
+
+    private static final Comparator<UpdateInfo> NODE_ORDER = new Comparator<UpdateInfo>() {
+        @Override
+        public int compare(UpdateInfo o1, UpdateInfo o2) {
+            return comparePath(o1.getFilePath(), o2.getFilePath());
+        }
+    };
+
+    private final File directory;
+    private final ArrayList<File> runs = new ArrayList<>();
+    private final ArrayList<UpdateInfo> buffer = new ArrayList<>();
+    private final ByteArrayBuffer record = new ByteArrayBuffer();
+
+    private DataOutputStream streamOut;
+    private String lastPath;
+    private File sorted;
+    private long count;
+
+    /**
+     * 서버 에서 client_path 를 받은 후 에 그 위치 에 맞는 ManifestFile 을 만드는 인터페이스
+     * 트리 를 받기 전 에는 임시 파일 을 만들 디렉토리 를 알 수 없을 때 사용 한다.
+     */
+    public interface Factory {
+
+        /**
+         * client_path 에 맞는 ManifestFile 을 만드는 메소드
+         *
+         * @param clientPath String 형태의 서버 에서 받은 client_path
+         * @return ManifestFile 형태의 노드 를 기록 할 manifest
+         * @throws IOException 임시 파일 을 만들 수 없는 경우
+         */
+        ManifestFile create(String clientPath) throws IOException;
+    }
+
+    /**
+     * directory 에 임시 파일 을 만드는 인스턴스 를 생성 한다.
+     *
+     * @param directory File 형태의 임시 파일 을 만들 디렉토리 로 null 이면 시스템 임시 디렉토리 를 사용 한다.
+     * @throws IOException 첫 임시 파일 을 만들 수 없는 경우
+     */
+    public ManifestFile(File directory) throws IOException {
+        this.directory = directory;
+
+        File run = createTempFile();
+
+        runs.add(run);
+        streamOut = open(run);
+    }
+
+    /**
+     * 노드 하나 를 기록 하는 메소드 로 자식 리스트 는 기록 하지 않는다.
+     *
+     * @param node UpdateInfo 형태의 기록 할 노드
+     * @throws IOException 임시 파일 에 쓰기 를 실패한 경우
+     */
+    public void add(UpdateInfo node) throws IOException {
+
+        if (sorted != null) {
+
+            throw new IllegalStateException(ERR_FINISHED);
+        }
+
+        count++;
+
+        String path = node.getFilePath();
+
+        if (streamOut != null && (lastPath == null || comparePath(lastPath, path) <= 0)) {
+
+            writeRecord(streamOut, node);
+            lastPath = path;
+
+            return;
+        }
+
+        if (streamOut != null) {
+
+            streamOut.close();
+            streamOut = null;
+            lastPath = null;
+
+        }
+
+        UpdateInfo copy = new UpdateInfo();
+
+        copy.setFilePath(path);
+        copy.setFileName(node.getFileName());
+        copy.setFileHash(node.getFileHash());
+        copy.setDirectory(node.isDirectory());
+        copy.setFileSize(node.getFileSize());
+
+        buffer.add(copy);
+
+        if (buffer.size() >= RUN_SIZE) {
+
+            spill();
+
+        }
+    }
+
+    /**
+     * node 와 그 하위 노드 들을 전위 순회 순서 로 기록 하는 메소드 로 node 자신 은 기록 하지 않는다.
+     *
+     * @param node UpdateInfo 형태의 트리 의 root
+     * @throws IOException 임시 파일 에 쓰기 를 실패한 경우
+     */
+    public void addChildren(UpdateInfo node) throws IOException {
+
+        if (!node.hasChildren()) {
+
+            return;
+        }
+
+        for (UpdateInfo child : node.getChildList()) {
+
+            add(child);
+            addChildren(child);
+
+        }
+    }
+
+    /**
+     * 기록 을 끝내고 run 파일 들을 경로 순서 로 병합 하는 메소드 로 이후 에는 open 으로 읽을 수 있다.
+     *
+     * @throws IOException 임시 파일 을 읽거나 쓰기 를 실패한 경우
+     */
+    public void finish() throws IOException {
+
+        if (sorted != null) {
+
+            return;
+        }
+
+        if (streamOut != null) {
+
+            streamOut.close();
+            streamOut = null;
+
+        }
+
+        spill();
+
+        if (runs.size() == 1) {
+
+            sorted = runs.remove(0);
+
+            return;
+        }
+
+        File merged = createTempFile();
+
+        try {
+
+            merge(merged);
+
+        } catch (IOException e) {
+
+            delete(merged);
+
+            throw e;
+        }
+
+        for (File run : runs) {
+            delete(run);
+        }
+
+        runs.clear();
+        sorted = merged;
+    }
+
+    /**
+     * 기록 된 노드 수 를 반환 하는 메소드
+     *
+     * @return long 형태의 add 로 기록 된 노드 수
+     */
+    public long size() {
+
+        return count;
+    }
+
+    /**
+     * 정렬 된 파일 을 처음 부터 읽는 Reader 를 여는 메소드
+     *
+     * @return Reader 형태의 경로 순서 로 노드 를 읽는 Reader
+     * @throws IOException 파일 을 열 수 없는 경우
+     */
+    public Reader open() throws IOException {
+
+        if (sorted == null) {
+
+            throw new IllegalStateException(ERR_NOT_FINISHED);
+        }
+
+        return new Reader(sorted);
+    }
+
+    /**
+     * 임시 파일 들을 지우는 메소드
+     */
+    @Override
+    public void close() {
+
+        if (streamOut != null) {
+
+            try {
+
+                streamOut.close();
+
+            } catch (IOException e) {
+
+                e.printStackTrace();
+
+            }
+
+            streamOut = null;
+        }
+
+        for (File run : runs) {
+            delete(run);
+        }
+
+        runs.clear();
+        buffer.clear();
+
+        if (sorted != null) {
+
+            delete(sorted);
+            sorted = null;
+
+        }
+    }
+
+    /**
+     * 두 경로 를 경로 구분자 를 다른 모든 문자 보다 앞 에 두는 순서 로 비교 하는 메소드
+     *
+     * @param a String 형태의 경로
+     * @param b String 형태의 경로
+     * @return int 형태로 a 가 앞 이면 음수, 같으면 0, 뒤 면 양수
+     */
+    public static int comparePath(String a, String b) {
+
+        int max = Math.min(a.length(), b.length());
+
+        for (int i = 0; i < max; i++) {
+
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+
+            if (x != y) {
+
+                return order(x) - order(y);
+            }
+        }
+
+        return a.length() - b.length();
+    }
+
+    /**
+     * path 가 parent 의 하위 경로 인지 반환 하는 메소드
+     *
+     * @param parent String 형태의 디렉토리 경로
+     * @param path   String 형태의 확인 할 경로
+     * @return boolean 형태로 path 가 parent 아래 에 있으면 true
+     */
+    public static boolean isDescendant(String parent, String path) {
+
+        return path.length() > parent.length() && path.startsWith(parent)
+                && isSeparator(path.charAt(parent.length()));
+    }
+
+    private static int order(char c) {
+
+        return isSeparator(c) ? -1 : c;
+    }
+
+    private static boolean isSeparator(char c) {
+
+        return c == '/' || c == '\\';
+    }
+
+    /**
+     * 모아 둔 노드 들을 정렬 해서 새 run 파일 로 쓴다.
+     */
+    private void spill() throws IOException {
+
+        if (buffer.isEmpty()) {
+
+            return;
+        }
+
+        Collections.sort(buffer, NODE_ORDER);
+
+        File run = createTempFile();
+
+        runs.add(run);
+
+        try (DataOutputStream out = open(run)) {
+
+            for (UpdateInfo u : buffer) {
+                writeRecord(out, u);
+            }
+        }
+
+        buffer.clear();
+    }
+
+    /**
+     * run 파일 들을 경로 순서 로 병합 해서 target 에 쓴다.
+     */
+    private void merge(File target) throws IOException {
+
+        PriorityQueue<Reader> queue = new PriorityQueue<>(runs.size(), new Comparator<Reader>() {
+            @Override
+            public int compare(Reader o1, Reader o2) {
+                return comparePath(o1.peek().getFilePath(), o2.peek().getFilePath());
+            }
+        });
+
+        try (DataOutputStream out = open(target)) {
+
+            for (File run : runs) {
+
+                Reader reader = new Reader(run);
+
+                if (reader.peek() != null) {
+
+                    queue.add(reader);
+
+                } else {
+
+                    reader.close();
+
+                }
+            }
+
+            while (!queue.isEmpty()) {
+
+                Reader reader = queue.poll();
+
+                writeRecord(out, reader.next());
+
+                if (reader.peek() != null) {
+
+                    queue.add(reader);
+
+                } else {
+
+                    reader.close();
+
+                }
+            }
+
+        } finally {
+
+            for (Reader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    private void writeRecord(DataOutputStream out, UpdateInfo node) throws IOException {
+
+        record.reset();
+
+        DataOutputStream data = record.data;
+
+        data.writeByte(node.isDirectory() ? FLAG_DIRECTORY : 0);
+        writeString(data, node.getFilePath());
+        writeString(data, node.getFileName());
+        writeString(data, node.getFileHash());
+        data.writeLong(node.getFileSize());
+
+        out.writeInt(record.size());
+        record.writeTo(out);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        if (value == null) {
+
+            out.writeInt(-1);
+
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private File createTempFile() throws IOException {
+
+        return File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, directory);
+    }
+
+    private static DataOutputStream open(File file) throws IOException {
+
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), STREAM_BUFFER_SIZE));
+    }
+
+    /**
+     * 임시 파일 을 지운다. 지우지 못한 파일 만 프로세스 가 끝날 때 지우도록 등록 한다.
+     */
+    private static void delete(File file) {
+
+        if (!file.delete() && file.exists()) {
+
+            file.deleteOnExit();
+
+        }
+    }
+
+    /**
+     * 정렬 된 파일 을 WINDOW_SIZE 단위 로 memory-mapped 해서 노드 를 하나 씩 읽는 클래스
+     * 다음 노드 가 현재 window 를 넘어 가면 그 노드 의 위치 부터 다시 mapping 한다.
+     */
+    public static class Reader implements Closeable {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long length;
+
+        private MappedByteBuffer window;
+        private long windowStart;
+        private UpdateInfo next;
+
+        private Reader(File source) throws IOException {
+            file = new RandomAccessFile(source, "r");
+            channel = file.getChannel();
+            length = channel.size();
+            next = read();
+        }
+
+        /**
+         * 다음 노드 를 읽지 않고 반환 하는 메소드
+         *
+         * @return UpdateInfo 형태의 다음 노드, 더 없으면 null
+         */
+        public UpdateInfo peek() {
+
+            return next;
+        }
+
+        /**
+         * 다음 노드 를 반환 하고 그 다음 노드 로 넘어 가는 메소드
+         *
+         * @return UpdateInfo 형태의 다음 노드, 더 없으면 null
+         * @throws IOException 파일 을 읽을 수 없거나 기록 이 손상 된 경우
+         */
+        public UpdateInfo next() throws IOException {
+
+            UpdateInfo current = next;
+
+            if (current != null) {
+
+                next = read();
+
+            }
+
+            return current;
+        }
+
+        @Override
+        public void close() {
+
+            window = null;
+
+            try {
+
+                file.close();
+
+            } catch (IOException e) {
+
+                e.printStackTrace();
+
+            }
+        }
+
+        private UpdateInfo read() throws IOException {
+
+            long position = window == null ? 0 : windowStart + window.position();
+
+            if (position >= length) {
+
+                return null;
+            }
+
+            if (position + 4 > length) {
+
+                throw new IOException(ERR_CORRUPTED + position);
+            }
+
+            ensure(position, 4);
+
+            int size = window.getInt();
+
+            if (size < 0 || position + 4 + size > length) {
+
+                throw new IOException(ERR_CORRUPTED + position);
+            }
+
+            ensure(position + 4, size);
+
+            UpdateInfo node = new UpdateInfo();
+
+            node.setDirectory((window.get() & FLAG_DIRECTORY) != 0);
+            node.setFilePath(readString());
+            node.setFileName(readString());
+            node.setFileHash(readString());
+            node.setFileSize(window.getLong());
+
+            if (windowStart + window.position() != position + 4 + size) {
+
+                throw new IOException(ERR_CORRUPTED + position);
+            }
+
+            return node;
+        }
+
+        /**
+         * position 부터 size byte 가 현재 window 안 에 있도록 필요 하면 다시 mapping 한다.
+         */
+        private void ensure(long position, int size) throws IOException {
+
+            if (window != null && position >= windowStart && position + size <= windowStart + window.limit()) {
+
+                window.position((int) (position - windowStart));
+
+                return;
+            }
+
+            long mapped = Math.min(Math.max(WINDOW_SIZE, size), length - position);
+
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, mapped);
+            windowStart = position;
+        }
+
+        private String readString() throws IOException {
+
+            int size = window.getInt();
+
+            if (size < 0) {
+
+                return null;
+            }
+
+            if (size > window.remaining()) {
+
+                throw new IOException(ERR_CORRUPTED + (windowStart + window.position()));
+            }
+
+            byte[] bytes = new byte[size];
+
+            window.get(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 노드 하나 의 기록 을 길이 를 알기 위해 먼저 모아 두는 buffer
+     */
+    private static class ByteArrayBuffer extends ByteArrayOutputStream {
+
+        private final DataOutputStream data = new DataOutputStream(this);
+    }
+}
@@ -0,0 +1,63 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * 서버 트리 의 부분 트리 들을 요청할때 사용할 DTO
+ * 요청할 디렉토리 경로 리스트 와 받을 깊이 를 가지고 있다.
+ */
+public class SubtreeRequestDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int depth;
+    private ArrayList<String> pathList;
+
+    /**
+     * 기본 생성자로써 경로 리스트를 초기화 한다.
+     */
+    public SubtreeRequestDTO() {
+        pathList = new ArrayList<>();
+    }
+
+    /**
+     * 받을 깊이 를 반환 하는 메소드
+     * 요청 한 디렉토리 아래 depth 단계 까지 의 노드 가 전달 되고, 그보다 깊은 디렉토리 는 자식 리스트 가 생략 된다.
+     *
+     * @return int 형태의 받을 깊이
+     */
+    public int getDepth() {
+
+        return depth;
+    }
+
+    /**
+     * 받을 깊이 를 설정하는 메소드
+     *
+     * @param depth int 형태의 1 이상 의 깊이
+     */
+    public void setDepth(int depth) {
+
+        this.depth = depth;
+    }
+
+    /**
+     * 요청할 디렉토리 의 경로 리스트 를 반환 하는 메소드 이다. 경로 는 UpdateInfo 의 filePath 와 같은 형태 이다.
+     *
+     * @return ArrayList 형태의 요청할 디렉토리 경로 리스트
+     */
+    public ArrayList<String> getPathList() {
+
+        return pathList;
+    }
+
+    /**
+     * 요청할 디렉토리 의 경로 리스트 를 설정하는 메소드
+     *
+     * @param pathList ArrayList 형태의 경로 리스트
+     */
+    public void setPathList(ArrayList<String> pathList) {
+
+        this.pathList = pathList;
+    }
+}
@@ -1,25 +1,60 @@
 package model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * 파일에 대한 업데이트 정보를 가지고 있는 클래스
  * UpdateInfoTree 에 대한 Node 이다.
+ * <p>
+ * 백만 개 이상 의 노드 를 가진 트리 를 클라이언트 와 서버 두벌 씩 들고 있을 수 있도록 내부 는 압축 된 형태 로 저장 한다.
+ * <ul>
+ * <li>경로 는 파일명 으로 끝나면 앞 부분 과 파일명 으로 나누어 저장 하며, 앞 부분 은 같은 디렉토리 의 자식 들이 하나 의 String 을 같이 쓴다.
+ * getFilePath 는 호출 할 때 마다 두 부분 을 이어 붙인다.</li>
+ * <li>소문자 64 자리 16진수 해시 는 long 네개 로 저장 하고, getFileHash 가 호출 될 때 문자열 로 만든다. 그 외 의 해시 는 문자열 그대로 저장 한다.</li>
+ * <li>자식 리스트 는 getChildList 가 처음 호출 될 때 만든다. 자식 이 있는지 만 볼 때 는 hasChildren 을 사용 한다.</li>
+ * </ul>
+ * 직렬화 형식 은 이전 과 같은 필드 이름 과 형태 를 사용 하므로 Java 직렬화 를 사용 하는 서버 와 호환 된다.
  */
 public class UpdateInfo implements Serializable {
     private static final long serialVersionUID = 1L;
-    private String filePath;
-    private String fileName;
-    private String fileHash;
-    private boolean isDirectory;
-    private ArrayList<UpdateInfo> childList;
+
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("filePath", String.class),
+            new ObjectStreamField("fileName", String.class),
+            new ObjectStreamField("fileHash", String.class),
+            new ObjectStreamField("isDirectory", boolean.class),
+            new ObjectStreamField("fileSize", long.class),
+            new ObjectStreamField("treeHash", String.class),
+            new ObjectStreamField("childList", ArrayList.class)
+    };
+
+    private static final int HASH_HEX_LENGTH = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private transient String path;
+    private transient boolean isPathSplit;
+    private transient String fileName;
+    private transient long hash0;
+    private transient long hash1;
+    private transient long hash2;
+    private transient long hash3;
+    private transient boolean isPackedHash;
+    private transient String textHash;
+    private transient boolean isDirectory;
+    private transient long fileSize;
+    private transient String treeHash;
+    private transient boolean isPartial;
+    private transient ArrayList<UpdateInfo> childList;
 
     /**
-     * 기본 생성자로써 자식 리스트를 초기화 한다.
+     * 기본 생성자 로 자식 리스트 는 처음 사용 할 때 만든다.
      */
     public UpdateInfo() {
-        childList = new ArrayList<>();
     }
 
     /**
@@ -28,7 +63,7 @@ public class UpdateInfo implements Serializable {
      * @return String 형태의 해당 파일 경로
      */
     public String getFilePath() {
-        return filePath;
+        return isPathSplit ? path + fileName : path;
     }
 
     /**
@@ -37,7 +72,35 @@ public class UpdateInfo implements Serializable {
      * @param filePath String 형태의 해당 파일 경로
      */
     public void setFilePath(String filePath) {
-        this.filePath = filePath;
+        this.path = filePath;
+        this.isPathSplit = false;
+        splitPath();
+    }
+
+    /**
+     * 해당 파일의 경로 를 디렉토리 부분 과 파일명 으로 설정하는 메소드
+     * 같은 디렉토리 의 자식 들에게 같은 parentPath 객체 를 넘기면 경로 의 앞 부분 을 한벌 만 저장 한다.
+     *
+     * @param parentPath String 형태의 구분자 로 끝나는 디렉토리 경로
+     * @param fileName   String 형태의 파일명
+     */
+    public void setFilePath(String parentPath, String fileName) {
+        this.path = parentPath;
+        this.fileName = fileName;
+        this.isPathSplit = true;
+    }
+
+    /**
+     * 경로 가 파일명 으로 끝나면 앞 부분 만 남긴다.
+     */
+    private void splitPath() {
+
+        if (!isPathSplit && path != null && fileName != null && path.endsWith(fileName)) {
+
+            path = path.substring(0, path.length() - fileName.length());
+            isPathSplit = true;
+
+        }
     }
 
     /**
@@ -55,7 +118,16 @@ public class UpdateInfo implements Serializable {
      * @param fileName String 형태의 해당 파일명
      */
     public void setFileName(String fileName) {
+
+        if (isPathSplit) {
+
+            path = path + this.fileName;
+            isPathSplit = false;
+
+        }
+
         this.fileName = fileName;
+        splitPath();
     }
 
     /**
@@ -64,7 +136,20 @@ public class UpdateInfo implements Serializable {
      * @return String 형태의 해당 Hash 값
      */
     public String getFileHash() {
-        return fileHash;
+
+        if (!isPackedHash) {
+
+            return textHash;
+        }
+
+        char[] result = new char[HASH_HEX_LENGTH];
+
+        toHex(hash0, result, 0);
+        toHex(hash1, result, 16);
+        toHex(hash2, result, 32);
+        toHex(hash3, result, 48);
+
+        return new String(result);
     }
 
     /**
@@ -73,7 +158,64 @@ public class UpdateInfo implements Serializable {
      * @param fileHash String 형태의 해당 Hash 값
      */
     public void setFileHash(String fileHash) {
-        this.fileHash = fileHash;
+
+        isPackedHash = isHex(fileHash);
+
+        if (isPackedHash) {
+
+            hash0 = parseHex(fileHash, 0);
+            hash1 = parseHex(fileHash, 16);
+            hash2 = parseHex(fileHash, 32);
+            hash3 = parseHex(fileHash, 48);
+            textHash = null;
+
+        } else {
+
+            textHash = fileHash;
+
+        }
+    }
+
+    /**
+     * 해당 파일의 Hash 값을 32 byte 의 SHA256 값 으로 설정하는 메소드
+     * 16진수 문자열 을 만들지 않고 바로 4 개 의 long 으로 저장 한다.
+     *
+     * @param fileHash byte[] 형태의 32 byte Hash 값
+     */
+    public void setFileHash(byte[] fileHash) {
+
+        hash0 = packLong(fileHash, 0);
+        hash1 = packLong(fileHash, 8);
+        hash2 = packLong(fileHash, 16);
+        hash3 = packLong(fileHash, 24);
+        isPackedHash = true;
+        textHash = null;
+    }
+
+    /**
+     * 두 노드 의 파일 Hash 값 이 같은지 문자열 을 만들지 않고 비교하는 메소드
+     *
+     * @param o UpdateInfo 형태의 비교할 노드
+     * @return boolean 형태로 두 Hash 값 이 같거나 둘 다 없으면 true
+     */
+    public boolean hasSameFileHash(UpdateInfo o) {
+
+        if (isPackedHash || o.isPackedHash) {
+
+            return isPackedHash && o.isPackedHash
+                    && hash0 == o.hash0 && hash1 == o.hash1 && hash2 == o.hash2 && hash3 == o.hash3;
+        }
+
+        return textHash == null ? o.textHash == null : textHash.equals(o.textHash);
+    }
+
+    /**
+     * 파일 Hash 값 이 있는지 반환하는 메소드
+     *
+     * @return boolean 형태로 Hash 값 이 있으면 true
+     */
+    public boolean hasFileHash() {
+        return isPackedHash || textHash != null;
     }
 
     /**
@@ -94,15 +236,106 @@ public class UpdateInfo implements Serializable {
         isDirectory = directory;
     }
 
+    /**
+     * 해당 파일의 크기를 반환하는 메소드
+     * 크기 를 보내지 않는 서버 의 트리 에서는 0 이다.
+     *
+     * @return long 형태의 byte 단위 파일 크기
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 해당 파일의 크기를 설정하는 메소드
+     *
+     * @param fileSize long 형태의 byte 단위 파일 크기
+     */
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * 디렉토리 의 Merkle 해시 를 반환하는 메소드
+     * 자식 들의 이름, 종류, 해시 를 요약 한 값 으로 하위 트리 가 같으면 같은 값 을 가진다.
+     *
+     * @return String 형태의 Merkle 해시, 파일 이거나 해시 를 보내지 않는 서버 의 트리 에서는 null
+     */
+    public String getTreeHash() {
+        return treeHash;
+    }
+
+    /**
+     * 디렉토리 의 Merkle 해시 를 설정하는 메소드
+     *
+     * @param treeHash String 형태의 UpdateInfoTree.computeTreeHash 로 계산 한 해시
+     */
+    public void setTreeHash(String treeHash) {
+        this.treeHash = treeHash;
+    }
+
+    /**
+     * 디렉토리 의 Merkle 해시 를 32 byte 값 으로 설정하는 메소드
+     * 다른 형식 을 거치지 않고 한번 에 16진수 문자열 로 만든다.
+     *
+     * @param treeHash byte[] 형태의 32 byte Merkle 해시
+     */
+    public void setTreeHash(byte[] treeHash) {
+
+        char[] result = new char[HASH_HEX_LENGTH];
+
+        toHex(packLong(treeHash, 0), result, 0);
+        toHex(packLong(treeHash, 8), result, 16);
+        toHex(packLong(treeHash, 16), result, 32);
+        toHex(packLong(treeHash, 24), result, 48);
+
+        this.treeHash = new String(result);
+    }
+
+    /**
+     * 서버 에서 자식 리스트 를 아직 받지 않은 디렉토리 인지 반환하는 메소드
+     * 부분 트리 를 요청 할 때 깊이 제한 에 걸린 디렉토리 는 Merkle 해시 만 가지고 자식 리스트 는 비어 있다.
+     *
+     * @return boolean 형태로 자식 리스트 가 생략 된 디렉토리 일 경우 true
+     */
+    public boolean isPartial() {
+        return isPartial;
+    }
+
+    /**
+     * 서버 에서 자식 리스트 를 아직 받지 않은 디렉토리 인지 설정하는 메소드
+     *
+     * @param partial boolean 형태로 자식 리스트 가 생략 된 디렉토리 일 경우 true
+     */
+    public void setPartial(boolean partial) {
+        isPartial = partial;
+    }
+
     /**
      * 해당 클래스의 자식 리스트를 얻는 메소드
      *
      * @return ArrayList 형태의 자식 리스트
      */
     public ArrayList<UpdateInfo> getChildList() {
+
+        if (childList == null) {
+
+            childList = new ArrayList<>(0);
+
+        }
+
         return childList;
     }
 
+    /**
+     * 자식 리스트 를 만들지 않고 자식 이 있는지 반환하는 메소드
+     *
+     * @return boolean 형태로 자식 이 하나 라도 있으면 true
+     */
+    public boolean hasChildren() {
+        return childList != null && !childList.isEmpty();
+    }
+
     /**
      * UpdateInfo 의 동등성 을 확인하는 메소드 이다.
      * 파일 이름, 경로 ,해쉬값, 디렉토리 여부 를 비교해서 모두 같으면 true, 하나라도 다르면 false 를 반환 한다.
@@ -117,16 +350,16 @@ public class UpdateInfo implements Serializable {
 
             UpdateInfo o = (UpdateInfo) obj;
 
-            if (this.getFileHash() == null || o.getFileHash() == null) {
+            if (!this.hasFileHash() || !o.hasFileHash()) {
 
                 return this.getFileName().equals(o.getFileName())
                         && this.isDirectory == o.isDirectory
-                        && this.getFilePath().equals(o.getFilePath());
+                        && this.isSamePath(o);
 
             }
 
-            return this.getFileHash().equals(o.getFileHash())
-                    && this.getFilePath().equals(o.getFilePath())
+            return this.hasSameFileHash(o)
+                    && this.isSamePath(o)
                     && this.isDirectory == o.isDirectory
                     && this.getFileName().equals(o.getFileName());
 
@@ -135,4 +368,137 @@ public class UpdateInfo implements Serializable {
             return false;
         }
     }
+
+    /**
+     * UpdateInfo 의 해시 코드 를 반환 하는 메소드 이다.
+     * equals 는 해쉬값 이 없을 경우 해쉬값 을 비교하지 않으므로 파일 이름, 경로, 디렉토리 여부 만 사용 한다.
+     * 경로 의 해시 코드 는 getFilePath 의 String 해시 코드 와 같은 값 을 경로 를 이어 붙이지 않고 계산 한다.
+     *
+     * @return int 형태의 해시 코드
+     */
+    @Override
+    public int hashCode() {
+
+        int result = pathHashCode();
+
+        result = 31 * result + (fileName == null ? 0 : fileName.hashCode());
+        result = 31 * result + (isDirectory ? 1 : 0);
+
+        return result;
+    }
+
+    /**
+     * 두 노드 의 경로 가 같은지 나누어 저장 된 경로 를 이어 붙이지 않고 비교 한다.
+     */
+    private boolean isSamePath(UpdateInfo o) {
+
+        if (isPathSplit && o.isPathSplit && fileName.equals(o.fileName)) {
+
+            return path.equals(o.path);
+        }
+
+        String filePath = getFilePath();
+
+        return filePath == null ? o.getFilePath() == null : filePath.equals(o.getFilePath());
+    }
+
+    private int pathHashCode() {
+
+        if (!isPathSplit) {
+
+            return path == null ? 0 : path.hashCode();
+        }
+
+        int result = path.hashCode();
+
+        for (int i = 0; i < fileName.length(); i++) {
+            result = 31 * result;
+        }
+
+        return result + fileName.hashCode();
+    }
+
+    private static boolean isHex(String hash) {
+
+        if (hash == null || hash.length() != HASH_HEX_LENGTH) {
+
+            return false;
+        }
+
+        for (int i = 0; i < HASH_HEX_LENGTH; i++) {
+
+            char c = hash.charAt(i);
+
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long parseHex(String hash, int offset) {
+
+        long result = 0;
+
+        for (int i = offset; i < offset + 16; i++) {
+            result = result << 4 | Character.digit(hash.charAt(i), 16);
+        }
+
+        return result;
+    }
+
+    private static long packLong(byte[] hash, int offset) {
+
+        long result = 0;
+
+        for (int i = offset; i < offset + 8; i++) {
+            result = result << 8 | (hash[i] & 0xff);
+        }
+
+        return result;
+    }
+
+    private static void toHex(long value, char[] result, int offset) {
+
+        for (int i = 15; i >= 0; i--) {
+            result[offset + i] = HEX[(int) (value & 0x0f)];
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * 이전 과 같은 필드 들로 직렬화 한다. 자식 이 없는 노드 도 빈 리스트 를 쓴다.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        ObjectOutputStream.PutField fields = out.putFields();
+
+        fields.put("filePath", getFilePath());
+        fields.put("fileName", fileName);
+        fields.put("fileHash", getFileHash());
+        fields.put("isDirectory", isDirectory);
+        fields.put("fileSize", fileSize);
+        fields.put("treeHash", treeHash);
+        fields.put("childList", childList == null ? new ArrayList<UpdateInfo>(0) : childList);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        ObjectInputStream.GetField fields = in.readFields();
+
+        fileName = (String) fields.get("fileName", null);
+        setFilePath((String) fields.get("filePath", null));
+        setFileHash((String) fields.get("fileHash", null));
+        isDirectory = fields.get("isDirectory", false);
+        fileSize = fields.get("fileSize", 0L);
+        treeHash = (String) fields.get("treeHash", null);
+
+        ArrayList<UpdateInfo> children = (ArrayList<UpdateInfo>) fields.get("childList", null);
+
+        childList = children == null || children.isEmpty() ? null : children;
+    }
 }
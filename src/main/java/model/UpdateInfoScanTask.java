@@ -0,0 +1,143 @@
+package model;
+
+import util.HashCache;
+import util.SHA256HashGenerator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * UpdateInfoTree 를 병렬로 생성하기 위한 ForkJoin 작업 클래스
+ * <p>
+ * 하나의 디렉토리 를 담당하며, 디렉토리 목록 을 읽어 자식 노드 를 이름 순으로 만든 후
+ * 하위 디렉토리 탐색 과 파일 해시 계산 을 각각 하위 작업으로 나누어 동시에 실행 한다.
+ * 자식 노드 는 작업 을 나누기 전에 정렬된 순서로 추가 되므로 결과 트리 의 순서는 항상 같다.
+ * 하위 작업 이 모두 끝나면 디렉토리 의 Merkle 해시 를 계산 하고 DirectoryScanHandler 에 알린다.
+ */
+class UpdateInfoScanTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    static final Comparator<File> NAME_ORDER = new Comparator<File>() {
+        @Override
+        public int compare(File o1, File o2) {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    private final int prefixSize;
+    private final File target;
+    private final UpdateInfo node;
+    private final HashCache cache;
+    private final DirectoryScanHandler handler;
+
+    /**
+     * 디렉토리 탐색 작업 을 생성 한다.
+     *
+     * @param prefixSize int 형태의 local 경로에 대한 길이
+     * @param target     File 형태의 탐색할 디렉토리
+     * @param node       UpdateInfo 형태의 target 에 해당 하는 노드
+     * @param cache      HashCache 형태의 해시 캐시 로 null 일 경우 모든 파일 의 해시 를 계산 한다.
+     * @param handler    DirectoryScanHandler 형태의 디렉토리 탐색 이 끝날 때 호출 할 handler, 필요 없을 경우 null
+     */
+    UpdateInfoScanTask(int prefixSize, File target, UpdateInfo node, HashCache cache, DirectoryScanHandler handler) {
+        this.prefixSize = prefixSize;
+        this.target = target;
+        this.node = node;
+        this.cache = cache;
+        this.handler = handler;
+    }
+
+    @Override
+    protected void compute() {
+
+        File list[] = target.listFiles();
+
+        if (list == null) {
+
+            complete();
+
+            return;
+        }
+
+        Arrays.sort(list, NAME_ORDER);
+
+        ArrayList<UpdateInfo> childList = node.getChildList();
+        ArrayList<RecursiveAction> tasks = new ArrayList<>(list.length);
+        String parentPath = target.getAbsolutePath().substring(prefixSize) + File.separator;
+
+        childList.ensureCapacity(list.length);
+
+        for (File f : list) {
+
+            if (f.getName().startsWith(".")) {
+                continue;
+            }
+
+            UpdateInfo newNode = new UpdateInfo();
+
+            newNode.setFilePath(parentPath, f.getName());
+            newNode.setDirectory(f.isDirectory());
+
+            childList.add(newNode);
+
+            if (newNode.isDirectory()) {
+
+                tasks.add(new UpdateInfoScanTask(prefixSize, f, newNode, cache, handler));
+
+            } else {
+
+                tasks.add(new HashTask(f, newNode, cache));
+            }
+        }
+
+        invokeAll(tasks);
+
+        complete();
+    }
+
+    private void complete() {
+
+        node.setTreeHash(UpdateInfoTree.computeTreeHash(node));
+
+        if (handler != null) {
+
+            handler.onDirectoryScanned(node);
+
+        }
+    }
+
+    /**
+     * 하나의 파일 에 대한 해시 를 계산 하는 작업 클래스
+     */
+    static class HashTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final UpdateInfo node;
+        private final HashCache cache;
+
+        HashTask(File file, UpdateInfo node, HashCache cache) {
+            this.file = file;
+            this.node = node;
+            this.cache = cache;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (cache != null) {
+
+                node.setFileHash(cache.getHash(node.getFilePath(), file));
+
+            } else {
+
+                node.setFileHash(SHA256HashGenerator.getHash(file.getAbsoluteFile().toString()));
+            }
+        }
+    }
+}
@@ -1,9 +1,23 @@
 package model;
 
+import util.HashCache;
 import util.SHA256HashGenerator;
+import util.UpdateMetrics;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * UpdateInfoTree 클래스 는 UpdateInfo 라는 Node 를 가지는 Tree 자료구조 이다.
@@ -13,6 +27,15 @@ import java.util.ArrayList;
  */
 public class UpdateInfoTree {
 
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static final Comparator<UpdateInfo> NAME_ORDER = new Comparator<UpdateInfo>() {
+        @Override
+        public int compare(UpdateInfo o1, UpdateInfo o2) {
+            return o1.getFileName().compareTo(o2.getFileName());
+        }
+    };
+
     private UpdateInfo root;
 
     /**
@@ -44,6 +67,7 @@ public class UpdateInfoTree {
      * 메소드 실행시 local 경로 안을 순회 하며 UpdateInfoTree 를 만든다.
      * root 는 root 노드 를 필요로 한다.
      * prefixSize 는 local 경로의 길이를 필요로 한다.
+     * 병렬도 는 사용 가능한 프로세서 수 를 사용 한다.
      *
      * @param prefixSize int 형태의 local 경로에 대한 길이로 공통되지 않는 경로 부분을 자르기 위해서 사용 한다.
      * @param local      String 형태의 local 경로로 서버 에서는 업데이트 대상 파일들의 경로
@@ -52,48 +76,245 @@ public class UpdateInfoTree {
      */
     public static void createUpdateInfoTree(int prefixSize, String local, UpdateInfo root) {
 
-        File target = new File(local);
+        createUpdateInfoTree(prefixSize, local, root, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * UpdateInfoTree 를 병렬로 생성하는 메소드
+     * 디렉토리 목록 읽기 와 파일 해시 계산 을 ForkJoinPool 에서 동시에 실행 한다.
+     * 각 디렉토리 의 자식 노드 는 파일 이름 순으로 정렬 되므로 결과 트리 는 항상 같은 순서를 가진다.
+     * 탐색 이 끝나면 모든 디렉토리 에 Merkle 해시 가 설정 된다.
+     *
+     * @param prefixSize  int 형태의 local 경로에 대한 길이로 공통되지 않는 경로 부분을 자르기 위해서 사용 한다.
+     * @param local       String 형태의 local 경로
+     * @param root        root 노드를 필요로 한다.
+     * @param parallelism int 형태의 동시에 실행할 작업 스레드 수 로 디스크 I/O 부하 를 제한 하기 위해 사용 한다.
+     */
+    public static void createUpdateInfoTree(int prefixSize, String local, UpdateInfo root, int parallelism) {
+
+        createUpdateInfoTree(prefixSize, local, root, parallelism, null);
+    }
+
+    /**
+     * 해시 캐시 를 사용 하여 UpdateInfoTree 를 병렬로 생성하는 메소드
+     * 크기, 수정 시간, inode 가 캐시 와 같은 파일 은 해시 를 다시 계산 하지 않는다.
+     *
+     * @param prefixSize  int 형태의 local 경로에 대한 길이로 공통되지 않는 경로 부분을 자르기 위해서 사용 한다.
+     * @param local       String 형태의 local 경로
+     * @param root        root 노드를 필요로 한다.
+     * @param parallelism int 형태의 동시에 실행할 작업 스레드 수
+     * @param cache       HashCache 형태의 해시 캐시 로 null 일 경우 모든 파일 의 해시 를 계산 한다.
+     */
+    public static void createUpdateInfoTree(int prefixSize, String local, UpdateInfo root, int parallelism,
+                                            HashCache cache) {
+
+        createUpdateInfoTree(prefixSize, local, root, parallelism, cache, null);
+    }
+
+    /**
+     * 로컬 파일 트리 를 병렬로 탐색 하며 디렉토리 하나 의 탐색 이 끝날 때 마다 handler 를 호출 하는 메소드
+     * handler 는 탐색 작업 스레드 에서 호출 되므로 handler 가 기다리면 탐색 도 함께 기다린다.
+     *
+     * @param prefixSize  int 형태의 local 경로에 대한 길이로 공통되지 않는 경로 부분을 자르기 위해서 사용 한다.
+     * @param local       String 형태의 local 경로
+     * @param root        root 노드를 필요로 한다.
+     * @param parallelism int 형태의 동시에 실행할 작업 스레드 수
+     * @param cache       HashCache 형태의 해시 캐시 로 null 일 경우 모든 파일 의 해시 를 계산 한다.
+     * @param handler     DirectoryScanHandler 형태의 디렉토리 탐색 이 끝날 때 호출 할 handler, 필요 없을 경우 null
+     */
+    public static void createUpdateInfoTree(int prefixSize, String local, UpdateInfo root, int parallelism,
+                                            HashCache cache, DirectoryScanHandler handler) {
+
+        long start = UpdateMetrics.startTimer();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+
+        try {
+
+            pool.invoke(new UpdateInfoScanTask(prefixSize, new File(local), root, cache, handler));
+
+        } finally {
+
+            pool.shutdown();
+            UpdateMetrics.stopTimer(UpdateMetrics.PHASE_SCAN, start);
+        }
+    }
+
+    /**
+     * 로컬 파일 트리 를 UpdateInfoTree 로 만들지 않고 경로 순서 대로 manifest 에 기록 하는 메소드
+     * 디렉토리 를 하나 씩 이름 순 으로 읽으며, 한 디렉토리 안 의 파일 해시 계산 만 ForkJoinPool 에서 동시에 실행 한다.
+     * heap 에는 탐색 중인 디렉토리 들의 목록 만 남으므로 트리 크기 와 상관 없이 사용 하는 메모리 가 일정 하다.
+     * root 자신 은 기록 하지 않으며, Merkle 해시 는 계산 하지 않는다.
+     *
+     * @param prefixSize  int 형태의 local 경로에 대한 길이로 공통되지 않는 경로 부분을 자르기 위해서 사용 한다.
+     * @param local       String 형태의 local 경로
+     * @param manifest    ManifestFile 형태의 노드 를 기록 할 manifest
+     * @param parallelism int 형태의 동시에 실행할 해시 계산 스레드 수
+     * @param cache       HashCache 형태의 해시 캐시 로 null 일 경우 모든 파일 의 해시 를 계산 한다.
+     * @throws IOException manifest 에 쓰기 를 실패한 경우
+     */
+    public static void writeManifest(int prefixSize, String local, ManifestFile manifest, int parallelism,
+                                     HashCache cache) throws IOException {
+
+        long start = UpdateMetrics.startTimer();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+
+        try {
+
+            writeManifest(prefixSize, new File(local), manifest, pool, cache);
+
+        } finally {
+
+            pool.shutdown();
+            UpdateMetrics.stopTimer(UpdateMetrics.PHASE_SCAN, start);
+        }
+    }
+
+    private static void writeManifest(int prefixSize, File target, ManifestFile manifest, ForkJoinPool pool,
+                                      HashCache cache) throws IOException {
+
         File list[] = target.listFiles();
-        ArrayList<UpdateInfo> childList = root.getChildList();
 
-        UpdateInfo newNode;
+        if (list == null) {
 
-        if (list != null) {
-            for (File f : list) {
+            return;
+        }
 
-                if (f.getName().substring(0, 1).equals(".")) {
-                    continue;
+        Arrays.sort(list, UpdateInfoScanTask.NAME_ORDER);
+
+        ArrayList<File> files = new ArrayList<>(list.length);
+        ArrayList<UpdateInfo> nodes = new ArrayList<>(list.length);
+        final ArrayList<RecursiveAction> tasks = new ArrayList<>(list.length);
+        String parentPath = target.getAbsolutePath().substring(prefixSize) + File.separator;
+
+        for (File f : list) {
+
+            if (f.getName().startsWith(".")) {
+                continue;
+            }
+
+            UpdateInfo node = new UpdateInfo();
+
+            node.setFilePath(parentPath, f.getName());
+            node.setDirectory(f.isDirectory());
+
+            files.add(f);
+            nodes.add(node);
+
+            if (!node.isDirectory()) {
+
+                tasks.add(new UpdateInfoScanTask.HashTask(f, node, cache));
+
+            }
+        }
+
+        if (!tasks.isEmpty()) {
+
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
                 }
+            });
+
+        }
 
-                if (f.isDirectory()) {
+        for (int i = 0; i < nodes.size(); i++) {
 
-                    newNode = new UpdateInfo();
+            UpdateInfo node = nodes.get(i);
 
-                    newNode.setFilePath(f.getAbsolutePath().substring(prefixSize));
-                    newNode.setFileName(f.getName());
-                    newNode.setDirectory(true);
+            manifest.add(node);
 
-                    childList.add(newNode);
+            if (node.isDirectory()) {
 
-                    createUpdateInfoTree(prefixSize, f.getAbsolutePath(), newNode);
+                writeManifest(prefixSize, files.get(i), manifest, pool, cache);
+
+            }
+        }
+    }
+
+    /**
+     * 디렉토리 의 Merkle 해시 를 계산 하는 메소드
+     * 자식 들을 파일 이름 순 으로 정렬 한 후 각 자식 의 종류('d' 또는 'f'), UTF-8 이름, 0 byte,
+     * 파일 은 fileHash, 디렉토리 는 treeHash 의 16진수 문자열 을 차례로 SHA256 에 넣은 값 이다.
+     * 자식 디렉토리 의 treeHash 는 미리 계산 되어 있어야 하며, 하나라도 없으면 null 을 반환 한다.
+     * 서버 와 클라이언트 가 같은 방법 으로 계산 해야 하위 트리 를 비교 할 수 있다.
+     *
+     * @param directory UpdateInfo 형태의 디렉토리 노드
+     * @return String 형태의 Merkle 해시, 계산 할 수 없는 경우 null
+     */
+    public static String computeTreeHash(UpdateInfo directory) {
 
-                } else {
+        ArrayList<UpdateInfo> children = directory.getChildList();
 
-                    newNode = new UpdateInfo();
+        if (!isSortedByName(children)) {
 
-                    newNode.setFilePath(f.getAbsolutePath().substring(prefixSize));
-                    newNode.setFileName(f.getName());
-                    newNode.setDirectory(false);
-                    newNode.setFileHash(SHA256HashGenerator.getHash(f.getAbsoluteFile().toString()));
+            children = new ArrayList<>(children);
+            Collections.sort(children, NAME_ORDER);
+
+        }
+
+        try {
+
+            MessageDigest sha = SHA256HashGenerator.newDigest();
+
+            for (UpdateInfo child : children) {
+
+                String hash = child.isDirectory() ? child.getTreeHash() : child.getFileHash();
+
+                if (hash == null) {
+
+                    return null;
 
-                    childList.add(newNode);
                 }
+
+                sha.update((byte) (child.isDirectory() ? 'd' : 'f'));
+                sha.update(child.getFileName().getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) 0);
+                sha.update(hash.getBytes(StandardCharsets.US_ASCII));
+
             }
+
+            return SHA256HashGenerator.toHex(sha.digest());
+
+        } catch (NoSuchAlgorithmException e) {
+
+            return null;
+
         }
     }
 
+    /**
+     * 두 디렉토리 의 Merkle 해시 가 모두 있고 같은지 확인 하는 메소드
+     *
+     * @param client UpdateInfo 형태의 클라이언트 디렉토리
+     * @param server UpdateInfo 형태의 서버 디렉토리
+     * @return boolean 형태로 하위 트리 가 같다고 판단 되면 true
+     */
+    private static boolean isSameTree(UpdateInfo client, UpdateInfo server) {
+
+        return client.isDirectory() && server.isDirectory()
+                && client.getTreeHash() != null
+                && client.getTreeHash().equals(server.getTreeHash());
+    }
+
+    private static boolean isSortedByName(ArrayList<UpdateInfo> children) {
+
+        for (int i = 1; i < children.size(); i++) {
+
+            if (NAME_ORDER.compare(children.get(i - 1), children.get(i)) > 0) {
+
+                return false;
+
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Hash 값을 비교해서 다운로드 요청할 파일과 삭제할 파일을 판별 해주는 메소드
+     * 각 디렉토리 의 자식 리스트 를 HashMap 으로 색인 하여 비교 하므로 디렉토리 당 자식 수 에 비례 하는 시간 이 걸린다.
+     * 두 디렉토리 의 Merkle 해시 가 같으면 하위 트리 를 비교 하지 않는다.
      *
      * @param client           클라이언트의 UpdateInfoTree Root
      * @param server           서버의 UpdateInfoTree Root
@@ -104,32 +325,116 @@ public class UpdateInfoTree {
                                    ArrayList<UpdateInfo> downloadRequests,
                                    ArrayList<UpdateInfo> deleteList) {
 
-        ArrayList<UpdateInfo> clientChild, serverChild;
+        if (!client.hasChildren() && !server.hasChildren() || isSameTree(client, server)) {
+
+            return;
+
+        }
+
+        ArrayList<UpdateInfo> clientChild = client.getChildList();
+        ArrayList<UpdateInfo> serverChild = server.getChildList();
+
+        HashMap<UpdateInfo, UpdateInfo> serverIndex = compareChildren(clientChild, serverChild, downloadRequests, deleteList);
+
+        for (UpdateInfo c : clientChild) {
+
+            UpdateInfo s = serverIndex.get(c);
 
-        clientChild = client.getChildList();
-        serverChild = server.getChildList();
+            if (s != null) {
+
+                compareHash(c, s, downloadRequests, deleteList);
+
+            }
+        }
+
+    }
+
+    /**
+     * 두 디렉토리 의 자식 리스트 만 비교 하는 메소드
+     * 하위 디렉토리 는 deferred 에 포함 된 경우 에만 compareHash 로 하위 트리 전체 를 비교 하고,
+     * 나머지 하위 디렉토리 는 각자 따로 비교 된다고 보고 비교 하지 않는다.
+     * 자식 디렉토리 부터 차례로 비교 할 때 사용 하며, 서버 노드 를 찾지 못해 비교 하지 못한 디렉토리 를 deferred 에 넣으면 된다.
+     *
+     * @param client           UpdateInfo 형태의 클라이언트 디렉토리
+     * @param server           UpdateInfo 형태의 자식 리스트 가 있는 서버 디렉토리
+     * @param deferred         Set 형태의 하위 트리 전체 를 비교 해야 하는 클라이언트 디렉토리 들 로 노드 자체 를 비교 하는 Set 이어야 하며,
+     *                         비교 가 끝난 디렉토리 는 제거 된다.
+     * @param downloadRequests ArrayList 형태의 다운로드 요청이 담길 리스트
+     * @param deleteList       ArrayList 형태의 삭제 할 파일이 담길 리스트
+     */
+    public static void compareDirectory(UpdateInfo client, UpdateInfo server, Set<UpdateInfo> deferred,
+                                        ArrayList<UpdateInfo> downloadRequests,
+                                        ArrayList<UpdateInfo> deleteList) {
 
-        if (clientChild.isEmpty() && serverChild.isEmpty()) {
+        ArrayList<UpdateInfo> clientChild = client.getChildList();
+
+        if (isSameTree(client, server)) {
+
+            for (UpdateInfo c : clientChild) {
+
+                removeDeferred(c, deferred);
+
+            }
 
             return;
 
         }
 
+        HashMap<UpdateInfo, UpdateInfo> serverIndex =
+                compareChildren(clientChild, server.getChildList(), downloadRequests, deleteList);
+
         for (UpdateInfo c : clientChild) {
 
-            boolean isExist = false;
+            if (c.isDirectory() && deferred.contains(c)) {
 
-            for (UpdateInfo s : serverChild) {
+                UpdateInfo s = serverIndex.get(c);
 
-                if (c.equals(s)) {
+                if (s != null) {
 
-                    isExist = true;
-                    break;
+                    compareHash(c, s, downloadRequests, deleteList);
 
                 }
+
+                removeDeferred(c, deferred);
             }
+        }
+    }
+
+    /**
+     * deferred 디렉토리 와 그 아래 의 deferred 디렉토리 들을 제거 하는 메소드
+     * deferred 디렉토리 의 하위 디렉토리 도 모두 deferred 이므로 deferred 가 아닌 노드 에서 멈춘다.
+     */
+    private static void removeDeferred(UpdateInfo node, Set<UpdateInfo> deferred) {
 
-            if (!isExist) {
+        if (!node.isDirectory() || !deferred.remove(node)) {
+
+            return;
+
+        }
+
+        for (UpdateInfo c : node.getChildList()) {
+
+            removeDeferred(c, deferred);
+
+        }
+    }
+
+    /**
+     * 두 자식 리스트 를 비교 해서 서버 에 없는 클라이언트 자식 은 삭제, 클라이언트 에 없는 서버 자식 은 다운로드 에 추가 하는 메소드
+     *
+     * @return HashMap 형태의 서버 자식 리스트 색인
+     */
+    private static HashMap<UpdateInfo, UpdateInfo> compareChildren(ArrayList<UpdateInfo> clientChild,
+                                                                   ArrayList<UpdateInfo> serverChild,
+                                                                   ArrayList<UpdateInfo> downloadRequests,
+                                                                   ArrayList<UpdateInfo> deleteList) {
+
+        HashMap<UpdateInfo, UpdateInfo> clientIndex = index(clientChild);
+        HashMap<UpdateInfo, UpdateInfo> serverIndex = index(serverChild);
+
+        for (UpdateInfo c : clientChild) {
+
+            if (!serverIndex.containsKey(c)) {
 
                 deleteList.add(c);
 
@@ -138,36 +443,230 @@ public class UpdateInfoTree {
 
         for (UpdateInfo s : serverChild) {
 
-            boolean isExist = false;
+            if (!clientIndex.containsKey(s)) {
 
-            for (UpdateInfo c : clientChild) {
+                downloadRequests.add(s);
+
+            }
+        }
+
+        return serverIndex;
+    }
+
+    /**
+     * 경로 순서 로 정렬 된 두 ManifestFile 을 처음 부터 함께 읽으며 비교 하는 메소드
+     * compareHash 와 같은 기준 으로 같은 경로 의 노드 를 짝 짓고, 짝 이 없는 클라이언트 노드 는 삭제, 짝 이 없는 서버 노드 는
+     * 다운로드 에 추가 한다. 짝 이 없는 디렉토리 는 하위 노드 를 건너 뛰고 디렉토리 하나 로 추가 하므로 결과 는 compareHash 와 같다.
+     * 두 파일 을 한번 씩 만 읽으므로 heap 에는 결과 리스트 만 남는다. 결과 디렉토리 노드 에는 자식 리스트 가 없다.
+     *
+     * @param client           ManifestFile 형태의 finish 가 끝난 클라이언트 manifest
+     * @param server           ManifestFile 형태의 finish 가 끝난 서버 manifest
+     * @param downloadRequests ArrayList 형태의 다운로드 요청이 담길 리스트
+     * @param deleteList       ArrayList 형태의 삭제 할 파일이 담길 리스트
+     * @throws IOException manifest 를 읽을 수 없는 경우
+     */
+    public static void compareManifest(ManifestFile client, ManifestFile server,
+                                       ArrayList<UpdateInfo> downloadRequests,
+                                       ArrayList<UpdateInfo> deleteList) throws IOException {
+
+        try (ManifestFile.Reader clientReader = client.open(); ManifestFile.Reader serverReader = server.open()) {
+
+            UpdateInfo c = clientReader.next();
+            UpdateInfo s = serverReader.next();
+
+            while (c != null || s != null) {
+
+                int order = c == null ? 1 : s == null ? -1 : ManifestFile.comparePath(c.getFilePath(), s.getFilePath());
+
+                if (order == 0 && c.equals(s)) {
 
-                if (s.equals(c)) {
+                    c = clientReader.next();
+                    s = serverReader.next();
 
-                    isExist = true;
-                    break;
+                    continue;
+                }
+
+                if (order <= 0) {
+
+                    deleteList.add(c);
+                    c = skipDescendants(clientReader, c);
+
+                }
+
+                if (order >= 0) {
+
+                    downloadRequests.add(s);
+                    s = skipDescendants(serverReader, s);
 
                 }
             }
+        }
+    }
 
-            if (!isExist) {
+    /**
+     * node 의 하위 노드 들을 건너 뛰고 그 다음 노드 를 반환 한다.
+     */
+    private static UpdateInfo skipDescendants(ManifestFile.Reader reader, UpdateInfo node) throws IOException {
 
-                downloadRequests.add(s);
+        String path = node.getFilePath();
+        UpdateInfo next = reader.next();
+
+        while (next != null && ManifestFile.isDescendant(path, next.getFilePath())) {
+
+            next = reader.next();
+
+        }
+
+        return next;
+    }
+
+    /**
+     * 내용 만 바뀐 파일 을 삭제 리스트 에서 빼는 메소드
+     * 같은 경로 의 파일 이 다운로드 리스트 에도 있으면 삭제 하지 않고 남겨 두어 델타 다운로드 의 로컬 사본 으로 사용 한다.
+     * 남겨 둔 파일 은 다운로드 할 때 덮어 쓰인다.
+     *
+     * @param downloadRequests ArrayList 형태의 compareHash 또는 compareDirectory 로 만든 다운로드 요청 리스트
+     * @param deleteList       ArrayList 형태의 같은 비교 로 만든 삭제 할 파일 리스트
+     */
+    public static void keepModifiedFiles(ArrayList<UpdateInfo> downloadRequests, ArrayList<UpdateInfo> deleteList) {
+
+        if (downloadRequests.isEmpty() || deleteList.isEmpty()) {
+
+            return;
+
+        }
+
+        HashSet<String> downloadFiles = new HashSet<>();
+
+        for (UpdateInfo u : downloadRequests) {
+
+            if (!u.isDirectory()) {
+
+                downloadFiles.add(u.getFilePath());
 
             }
         }
 
-        for (UpdateInfo c : clientChild) {
+        ArrayList<UpdateInfo> remaining = new ArrayList<>(deleteList.size());
 
+        for (UpdateInfo u : deleteList) {
 
-            for (UpdateInfo s : serverChild) {
+            if (u.isDirectory() || !downloadFiles.contains(u.getFilePath())) {
+
+                remaining.add(u);
+
+            }
+        }
+
+        deleteList.clear();
+        deleteList.addAll(remaining);
+    }
+
+    /**
+     * 자식 리스트 를 아직 받지 않은 서버 디렉토리 중 compareHash 에 필요한 디렉토리 들을 찾는 메소드
+     * compareHash 와 같은 방법 으로 클라이언트 와 서버 노드 를 짝 지으며, 짝 이 되는 클라이언트 디렉토리 와
+     * Merkle 해시 가 다른 부분 디렉토리 만 결과 에 추가 한다.
+     * 클라이언트 에 없는 디렉토리 는 통째로 다운로드 되므로 자식 리스트 가 필요 없다.
+     *
+     * @param client UpdateInfo 형태의 클라이언트 노드
+     * @param server UpdateInfo 형태의 서버 노드
+     * @param result ArrayList 형태의 자식 리스트 를 받아야 할 서버 디렉토리 가 담길 리스트
+     */
+    public static void collectPartialDirectories(UpdateInfo client, UpdateInfo server, ArrayList<UpdateInfo> result) {
+
+        if (isSameTree(client, server)) {
+
+            return;
+
+        }
+
+        if (server.isPartial()) {
+
+            result.add(server);
+
+            return;
+
+        }
+
+        HashMap<UpdateInfo, UpdateInfo> serverIndex = index(server.getChildList());
+
+        for (UpdateInfo c : client.getChildList()) {
+
+            UpdateInfo s = serverIndex.get(c);
+
+            if (s != null && s.isDirectory()) {
+
+                collectPartialDirectories(c, s, result);
+
+            }
+        }
+    }
+
+    /**
+     * node 와 그 하위 에서 자식 리스트 를 받지 않은 디렉토리 들을 찾는 메소드
+     * 부분 디렉토리 아래 는 더 찾지 않는다.
+     *
+     * @param node   UpdateInfo 형태의 서버 노드
+     * @param result ArrayList 형태의 부분 디렉토리 가 담길 리스트
+     */
+    public static void collectPartialDescendants(UpdateInfo node, ArrayList<UpdateInfo> result) {
+
+        if (!node.isDirectory()) {
+
+            return;
+
+        }
+
+        if (node.isPartial()) {
+
+            result.add(node);
+
+            return;
+
+        }
+
+        for (UpdateInfo c : node.getChildList()) {
+
+            collectPartialDescendants(c, result);
+
+        }
+    }
+
+    /**
+     * 서버 에서 받은 부분 트리 를 자식 리스트 를 받지 않은 디렉토리 에 붙이는 메소드
+     *
+     * @param partial UpdateInfo 형태의 자식 리스트 가 생략 된 디렉토리
+     * @param subtree UpdateInfo 형태의 같은 경로 로 새로 받은 디렉토리
+     */
+    public static void graftSubtree(UpdateInfo partial, UpdateInfo subtree) {
+
+        partial.getChildList().clear();
+        partial.getChildList().addAll(subtree.getChildList());
+        partial.setTreeHash(subtree.getTreeHash());
+        partial.setPartial(subtree.isPartial());
+    }
+
+    /**
+     * 자식 리스트 를 UpdateInfo 의 equals, hashCode 를 사용 하는 HashMap 으로 색인 하는 메소드
+     * 같은 키 가 여러개 있을 경우 먼저 나온 노드 를 사용 한다.
+     *
+     * @param childList ArrayList 형태의 자식 리스트
+     * @return HashMap 형태의 색인
+     */
+    private static HashMap<UpdateInfo, UpdateInfo> index(ArrayList<UpdateInfo> childList) {
+
+        HashMap<UpdateInfo, UpdateInfo> result = new HashMap<>(childList.size() * 4 / 3 + 1);
+
+        for (UpdateInfo u : childList) {
+
+            if (!result.containsKey(u)) {
+
+                result.put(u, u);
 
-                if (c.equals(s)) {
-                    compareHash(c, s, downloadRequests, deleteList);
-                }
             }
         }
 
+        return result;
     }
 
 }
@@ -0,0 +1,338 @@
+package module;
+
+import model.FileResponse;
+import model.UpdateInfo;
+import util.FileUtil;
+import util.HashCache;
+import util.UpdateLog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 다운로드 할 파일 과 같은 내용 의 로컬 파일 을 옮기거나 복사 해서 다운로드 를 줄이는 클래스
+ * <p>
+ * 해시 캐시 에서 SHA256 이 같은 로컬 파일 을 찾아, 삭제 예정 인 파일 이면 새 경로 로 옮기고
+ * 그 외 의 파일 이면 staging 파일 로 복사 하면서 해시 를 검증 한 후 새 경로 로 교체 한다.
+ * 옮긴 파일 이 삭제 되지 않도록 삭제 는 deferDelete 로 미뤄 두었다가 복사 가 모두 끝난 후 getDeferredDeletes 로 꺼내 지운다.
+ * 다운로드 할 디렉토리 는 하위 에 옮기거나 복사 한 파일 이 있을 때 만 자식 들로 나누어 요청 한다.
+ * staged apply 를 사용 하면 이동 과 교체 는 commit journal 에 예약 되어 commitUpdate 에서 적용 된다.
+ * 한 스레드 에서만 사용 해야 한다.
+ */
+class LocalFileReuser {
+
+    private static final String MSG_MOVED = "local file moved : ";
+    private static final String MSG_COPIED = "local file copied : ";
+    private static final String MSG_ARROW = " -> ";
+    private static final String ERR_COPY_FAILED = " local copy failed. file will be downloaded";
+
+    private final String local;
+    private final HashCache hashCache;
+    private final UpdateModule module;
+
+    private final ArrayList<UpdateInfo> deferredDeletes = new ArrayList<>();
+    private final HashSet<String> deferredPaths = new HashSet<>();
+    private final HashSet<String> movedPaths = new HashSet<>();
+    private final HashSet<String> reusedPaths = new HashSet<>();
+
+    /**
+     * prepareUpdate 가 끝난 모듈 의 로컬 경로 와 해시 캐시 를 사용 하는 인스턴스 를 생성 한다.
+     *
+     * @param module UpdateModule 형태 의 prepareUpdate 가 끝난 모듈
+     */
+    LocalFileReuser(UpdateModule module) {
+        this.module = module;
+        this.local = module.getLocalPrefixPath();
+        this.hashCache = module.getHashCache();
+    }
+
+    /**
+     * 삭제 할 파일 들을 바로 지우지 않고 옮길 수 있는 로컬 사본 으로 남겨 두는 메소드
+     *
+     * @param deleteList ArrayList 형태 의 삭제 할 파일 리스트
+     */
+    void deferDelete(ArrayList<UpdateInfo> deleteList) {
+
+        for (UpdateInfo u : deleteList) {
+
+            deferredDeletes.add(u);
+            deferredPaths.add(u.getFilePath());
+        }
+    }
+
+    /**
+     * 미뤄 둔 삭제 중 옮겨 진 파일 을 뺀 나머지 를 반환 하는 메소드
+     *
+     * @return ArrayList 형태 의 지금 삭제 할 파일 리스트
+     */
+    ArrayList<UpdateInfo> getDeferredDeletes() {
+
+        ArrayList<UpdateInfo> result = new ArrayList<>(deferredDeletes.size());
+
+        for (UpdateInfo u : deferredDeletes) {
+
+            if (!movedPaths.contains(u.getFilePath())) {
+
+                result.add(u);
+
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 로컬 에서 옮기거나 복사 해서 만든 파일 들의 경로 를 반환 하는 메소드
+     *
+     * @return Set 형태 의 root 기준 상대 경로 들
+     */
+    Set<String> getReusedPaths() {
+
+        return reusedPaths;
+    }
+
+    /**
+     * 다운로드 리스트 중 로컬 에 같은 내용 이 있는 파일 을 로컬 에서 만들고 남은 다운로드 요청 을 반환 하는 메소드
+     *
+     * @param downloadList ArrayList 형태 의 다운로드 요청 리스트
+     * @return ArrayList 형태 의 서버 에서 받아야 하는 다운로드 요청 리스트
+     */
+    ArrayList<UpdateInfo> reuse(ArrayList<UpdateInfo> downloadList) {
+
+        ArrayList<UpdateInfo> remaining = new ArrayList<>(downloadList.size());
+
+        module.fetchNewSubtrees(downloadList);
+
+        for (UpdateInfo u : downloadList) {
+
+            reuse(u, remaining);
+
+        }
+
+        return remaining;
+    }
+
+    /**
+     * 파일 하나 또는 디렉토리 하나 의 하위 파일 들을 로컬 에서 만들고, 만들지 못한 요청 을 remaining 에 넣는다.
+     * 하위 에서 하나 도 만들지 못한 디렉토리 는 나누지 않고 그대로 요청 한다.
+     *
+     * @return boolean 형태 로 로컬 에서 만든 파일 이 하나 라도 있으면 true
+     */
+    private boolean reuse(UpdateInfo u, ArrayList<UpdateInfo> remaining) {
+
+        if (!u.isDirectory()) {
+
+            if (reuseFile(u)) {
+
+                return true;
+            }
+
+            remaining.add(u);
+
+            return false;
+        }
+
+        if (u.isPartial() || u.getChildList().isEmpty()) {
+
+            remaining.add(u);
+
+            return false;
+        }
+
+        ArrayList<UpdateInfo> children = new ArrayList<>();
+        boolean isReused = false;
+
+        for (UpdateInfo c : u.getChildList()) {
+
+            isReused |= reuse(c, children);
+
+        }
+
+        if (isReused) {
+
+            remaining.addAll(children);
+
+        } else {
+
+            remaining.add(u);
+
+        }
+
+        return isReused;
+    }
+
+    private boolean reuseFile(UpdateInfo u) {
+
+        String hash = u.getFileHash();
+
+        if (hash == null || hash.isEmpty()) {
+
+            return false;
+        }
+
+        String source = hashCache.findPath(hash);
+
+        if (source == null || source.equals(u.getFilePath()) || movedPaths.contains(source)) {
+
+            return false;
+        }
+
+        File sourceFile = new File(local + source);
+        File target = new File(local + u.getFilePath());
+
+        if (!hashCache.hasHash(source, sourceFile, hash)) {
+
+            return false;
+        }
+
+        boolean isReused = isDeferred(source) ? move(source, sourceFile, u, target) : copy(source, sourceFile, u, target);
+
+        if (isReused) {
+
+            if (!module.isStagedApply()) {
+
+                hashCache.put(u.getFilePath(), target, hash);
+
+            }
+
+            reusedPaths.add(u.getFilePath());
+            UpdateLog.countFile(UpdateLog.FILE_REUSED);
+        }
+
+        return isReused;
+    }
+
+    /**
+     * 삭제 예정 인 source 를 target 으로 옮긴다. 옮기지 못하면 복사 한다.
+     */
+    private boolean move(String source, File sourceFile, UpdateInfo u, File target) {
+
+        if (module.isStagedApply()) {
+
+            module.getCommitJournal().stageMove(source, u.getFilePath(), u.getFileHash());
+            movedPaths.add(source);
+
+            UpdateLog.debug(MSG_MOVED + source + MSG_ARROW + u.getFilePath());
+
+            return true;
+        }
+
+        File parent = target.getParentFile();
+
+        if (FileUtil.makeDirectories(parent)) {
+
+            try {
+
+                Files.move(sourceFile.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                hashCache.remove(source);
+                movedPaths.add(source);
+
+                UpdateLog.debug(MSG_MOVED + source + MSG_ARROW + u.getFilePath());
+
+                return !module.isParanoidVerify() || FileUtil.compareFile(toFileResponse(u), target.getAbsolutePath());
+
+            } catch (IOException e) {
+
+                e.printStackTrace();
+
+            }
+        }
+
+        return copy(source, sourceFile, u, target);
+    }
+
+    /**
+     * source 를 staging 파일 로 복사 하면서 해시 를 검증 하고, 맞으면 target 을 교체 한다.
+     */
+    private boolean copy(String source, File sourceFile, UpdateInfo u, File target) {
+
+        FileResponse r = toFileResponse(u);
+        File staging = module.getTransferJournal().getStagingFile(u.getFilePath());
+        String writtenHash = null;
+
+        try (InputStream in = new FileInputStream(sourceFile)) {
+
+            writtenHash = FileUtil.writeStagingFile(r, in, staging, 0, null);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+
+        }
+
+        if (r.getFileHash().equals(writtenHash) && commit(r, staging)) {
+
+            UpdateLog.debug(MSG_COPIED + source + MSG_ARROW + u.getFilePath());
+
+            return true;
+        }
+
+        FileUtil.discardStagingFile(staging);
+        UpdateLog.error(u.getFilePath() + ERR_COPY_FAILED);
+
+        return false;
+    }
+
+    /**
+     * 복사 한 staging 파일 로 target 을 교체 한다. staged apply 를 사용 하면 교체 를 예약 한다.
+     */
+    private boolean commit(FileResponse r, File staging) {
+
+        if (module.isStagedApply()) {
+
+            module.getCommitJournal().stageReplace(r.getFilePath(), r.getFileHash());
+
+            return true;
+        }
+
+        return FileUtil.commitStagingFile(r, staging, local);
+    }
+
+    /**
+     * path 또는 그 조상 디렉토리 가 삭제 예정 인지 확인 한다.
+     */
+    private boolean isDeferred(String path) {
+
+        String p = path;
+
+        while (!p.isEmpty()) {
+
+            if (deferredPaths.contains(p)) {
+
+                return true;
+            }
+
+            int index = p.lastIndexOf(File.separatorChar);
+
+            if (index < 0) {
+
+                return false;
+            }
+
+            p = p.substring(0, index);
+        }
+
+        return false;
+    }
+
+    private static FileResponse toFileResponse(UpdateInfo u) {
+
+        FileResponse r = new FileResponse();
+
+        r.setFilePath(u.getFilePath());
+        r.setFileName(u.getFileName());
+        r.setFileHash(u.getFileHash());
+        r.setDirectory(false);
+
+        return r;
+    }
+}
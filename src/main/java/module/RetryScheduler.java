@@ -0,0 +1,207 @@
+package module;
+
+import model.UpdateInfo;
+import util.UpdateLog;
+import util.UpdateMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * 다운로드 에 실패한 파일 만 backoff 후 다시 요청 하는 클래스
+ * <p>
+ * 파일 마다 시도 횟수 를 세어 maxAttempts 번 실패한 파일 은 더 요청 하지 않고 최종 실패 로 보고 한다.
+ * 재시도 사이 에는 baseDelay 부터 두배 씩 늘어 나는 대기 시간 의 절반 에 무작위 값 을 더한 만큼 기다리므로
+ * 동시에 실패한 클라이언트 들이 같은 순간 에 다시 접속 하지 않는다.
+ * 모든 연결 이 실패한 시도 가 연속 으로 CIRCUIT_BREAKER_THRESHOLD 번 이면 서버 에 문제 가 있다고 보고 더 요청 하지 않는다.
+ * 한 스레드 에서만 사용 해야 한다.
+ */
+class RetryScheduler {
+
+    /**
+     * 기본 파일 별 최대 시도 횟수
+     */
+    static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /**
+     * 기본 첫 재시도 대기 시간 으로 밀리세컨드(millisecond) 단위
+     */
+    static final long DEFAULT_BASE_DELAY = 1000;
+
+    private static final long MAX_DELAY = 60 * 1000;
+    private static final int CIRCUIT_BREAKER_THRESHOLD = 3;
+
+    private static final String MSG_RETRY = "retry download. files : ";
+    private static final String MSG_RETRY_DELAY = " after ms : ";
+    private static final String MSG_REPORT = "update failed. files : ";
+    private static final String MSG_REPORT_ENTRY = "  failed : ";
+    private static final String MSG_REPORT_ATTEMPTS = " attempts : ";
+    private static final String ERR_CIRCUIT_OPEN = "update server unreachable. stop retry after connection failures : ";
+    private static final String ERR_RETRY_INTERRUPTED = "download retry interrupted";
+
+    private final UpdateModule module;
+    private final String serverIP;
+    private final int portNumber;
+    private final int timeout;
+    private final int maxAttempts;
+    private final long baseDelay;
+
+    private final HashMap<String, Integer> attempts = new HashMap<>();
+    private final ArrayList<UpdateInfo> exhausted = new ArrayList<>();
+    private final Random random = new Random();
+    private int connectionFailures;
+
+    /**
+     * module 의 updateFiles 로 다운로드 하는 인스턴스 를 생성 한다.
+     *
+     * @param module      UpdateModule 형태 의 prepareUpdate 가 끝난 모듈
+     * @param serverIP    String 형태 의 서버 아이피
+     * @param portNumber  int 형태 의 서버 포트 번호
+     * @param timeout     int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @param maxAttempts int 형태 의 파일 별 최대 시도 횟수
+     * @param baseDelay   long 형태 의 첫 재시도 대기 시간 으로 밀리세컨드(millisecond) 단위
+     */
+    RetryScheduler(UpdateModule module, String serverIP, int portNumber, int timeout, int maxAttempts, long baseDelay) {
+        this.module = module;
+        this.serverIP = serverIP;
+        this.portNumber = portNumber;
+        this.timeout = timeout;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = Math.max(0, baseDelay);
+    }
+
+    /**
+     * downloadList 를 다운로드 하고 실패한 파일 만 다시 요청 하는 메소드
+     *
+     * @param downloadList ArrayList 형태 의 다운로드 할 파일 리스트
+     * @param isRetry      boolean 형태 로 downloadList 가 이미 한번 실패한 파일 들이면 true, 처음 요청 이면 false
+     * @return ArrayList 형태 의 최대 시도 횟수 까지 받지 못한 파일 리스트, 서버 에 연결 할 수 없으면 null
+     */
+    ArrayList<UpdateInfo> download(ArrayList<UpdateInfo> downloadList, boolean isRetry) {
+
+        ArrayList<UpdateInfo> pending = isRetry ? requeue(downloadList) : downloadList;
+        int round = isRetry ? 1 : 0;
+
+        while (!pending.isEmpty()) {
+
+            if (round > 0 && !await(round, pending.size())) {
+
+                exhausted.addAll(pending);
+
+                break;
+            }
+
+            round++;
+
+            ArrayList<UpdateInfo> failed = module.updateFiles(serverIP, portNumber, timeout, pending);
+
+            if (failed == null) {
+
+                if (++connectionFailures >= CIRCUIT_BREAKER_THRESHOLD) {
+
+                    UpdateLog.error(ERR_CIRCUIT_OPEN + connectionFailures);
+                    exhausted.addAll(pending);
+                    report();
+
+                    return null;
+                }
+
+                continue;
+            }
+
+            connectionFailures = 0;
+            pending = requeue(failed);
+        }
+
+        report();
+
+        return exhausted;
+    }
+
+    /**
+     * 실패한 파일 의 시도 횟수 를 늘리고, 최대 시도 횟수 에 닿지 않은 파일 만 반환 한다.
+     */
+    private ArrayList<UpdateInfo> requeue(ArrayList<UpdateInfo> failed) {
+
+        ArrayList<UpdateInfo> pending = new ArrayList<>(failed.size());
+
+        for (UpdateInfo u : failed) {
+
+            Integer count = attempts.get(u.getFilePath());
+            int next = count == null ? 1 : count + 1;
+
+            attempts.put(u.getFilePath(), next);
+
+            if (next < maxAttempts) {
+
+                pending.add(u);
+
+            } else {
+
+                exhausted.add(u);
+
+            }
+        }
+
+        return pending;
+    }
+
+    /**
+     * round 번째 재시도 전 에 backoff 만큼 기다린다.
+     *
+     * @return boolean 형태 로 기다리는 도중 interrupt 되면 false
+     */
+    private boolean await(int round, int files) {
+
+        long delay = baseDelay << Math.min(round - 1, 16);
+
+        if (delay > MAX_DELAY || delay < 0) {
+
+            delay = MAX_DELAY;
+
+        }
+
+        long half = delay / 2;
+
+        delay = half + (half > 0 ? (long) (random.nextDouble() * half) : 0);
+
+        UpdateLog.info(MSG_RETRY + files + MSG_RETRY_DELAY + delay);
+        UpdateMetrics.count(UpdateMetrics.COUNT_RETRIES, files);
+
+        try {
+
+            Thread.sleep(delay);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            UpdateLog.error(ERR_RETRY_INTERRUPTED);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 끝까지 받지 못한 파일 들을 출력 한다.
+     */
+    private void report() {
+
+        if (exhausted.isEmpty()) {
+
+            return;
+        }
+
+        UpdateLog.error(MSG_REPORT + exhausted.size());
+        UpdateMetrics.count(UpdateMetrics.COUNT_FAILED_FILES, exhausted.size());
+
+        for (UpdateInfo u : exhausted) {
+
+            Integer count = attempts.get(u.getFilePath());
+
+            UpdateLog.error(MSG_REPORT_ENTRY + u.getFilePath() + MSG_REPORT_ATTEMPTS + (count == null ? 0 : count));
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package module;
 
 import model.*;
+import network.DeltaInputStream;
+import network.FileResponseHandler;
 import network.ServerConnector;
+import network.ServerSession;
+import util.BlockSignature;
+import util.CommitJournal;
 import util.FileUtil;
+import util.HashCache;
+import util.TransferJournal;
+import util.UpdateLog;
+import util.UpdateMetrics;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
 
 /**
  * 업데이트 에 관한 전반적인 기능들을 담당하는 클래스 이다.
@@ -14,11 +29,43 @@ public class UpdateModule {
 
     private static final String ERR_DOWNLOAD_DTO_FAILED = "download UpdateInfoTree failed!";
     private static final String ERR_RESPONSE_DTO_FAILED = "download FileResponses failed!";
+    private static final String ERR_SUBTREE_FAILED = "download changed subtrees failed. download whole UpdateInfoTree";
+    private static final String ERR_BASIS_OPEN_FAILED = " local copy for delta open failed. check stack trace ";
+    private static final String ERR_SIGNATURE_FAILED = " block signature failed. download whole file ";
+    private static final String ERR_MANIFEST_FAILED = "manifest diff failed. check stack trace";
     private static final String MSG_POINT = ".";
 
+    /**
+     * 기본 동시 다운로드 연결 수
+     */
+    public static final int DEFAULT_DOWNLOAD_CONNECTIONS = 4;
+    private static final int BATCHES_PER_CONNECTION = 4;
+
+    /**
+     * 델타 다운로드 를 사용할 로컬 사본 의 최소 크기 로 이보다 작은 파일 은 전체 를 받는 것이 더 빠르다.
+     */
+    public static final long DELTA_MIN_SIZE = 64 * 1024;
+
     private static UpdateModule instance;
     private ServerConnector serverConnector;
     private String local_prefix_path;
+    private int scanParallelism = UpdateInfoTree.DEFAULT_PARALLELISM;
+    private HashCache hashCache;
+    private TransferJournal transferJournal;
+    private CommitJournal commitJournal;
+    private String localRoot;
+    private volatile Set<String> serverCapabilities = Collections.emptySet();
+    private boolean isParanoidVerify;
+    private boolean isStagedApply = true;
+    private boolean isOutOfCoreDiff;
+    private int retryAttempts = RetryScheduler.DEFAULT_MAX_ATTEMPTS;
+    private long retryDelay = RetryScheduler.DEFAULT_BASE_DELAY;
+    private int downloadConnections = DEFAULT_DOWNLOAD_CONNECTIONS;
+    private boolean isSessionEnabled = true;
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private volatile boolean isSessionSupported;
+    private ServerSession session;
+    private final Set<String> deltaFailed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     /**
      * 기본 생성자로 Single-Tone 패턴 적용을 위해 private 처리
@@ -43,8 +90,138 @@ public class UpdateModule {
         return instance;
     }
 
+    /**
+     * 로컬 파일 트리 를 탐색 할 때 사용할 병렬도 를 설정하는 메소드
+     *
+     * @param scanParallelism int 형태의 동시에 디렉토리 탐색 과 해시 계산 을 수행할 스레드 수
+     */
+    public void setScanParallelism(int scanParallelism) {
+
+        this.scanParallelism = scanParallelism;
+    }
+
+    /**
+     * 다운로드 한 파일 을 디스크 에서 다시 읽어 검증 할지 를 설정하는 메소드
+     * 기본 값 은 false 로 파일 을 쓰는 동시에 계산 한 해시 로 검증 한다.
+     *
+     * @param paranoidVerify boolean 형태로 디스크 에서 다시 읽어 검증 할 경우 true
+     */
+    public void setParanoidVerify(boolean paranoidVerify) {
+
+        this.isParanoidVerify = paranoidVerify;
+    }
+
+    /**
+     * 받은 파일 과 삭제 를 바로 적용 하지 않고 모아 두었다가 commitUpdate 에서 한번 에 적용 할지 를 설정하는 메소드
+     * 한번 에 적용 하면 업데이트 가 중간 에 실패 해도 트리 는 이전 버전 그대로 남는다.
+     *
+     * @param stagedApply boolean 형태로 모아서 적용 할 경우 true, 기본 값 은 true
+     */
+    public void setStagedApply(boolean stagedApply) {
+
+        this.isStagedApply = stagedApply;
+    }
+
+    /**
+     * checkUpdate 에서 서버 트리 와 클라이언트 트리 를 heap 에 만들지 않고 경로 순서 로 정렬 된 임시 파일 로 비교 할지 를 설정하는 메소드
+     * 트리 크기 와 상관 없이 사용 하는 메모리 가 일정 하지만, Merkle 해시 로 같은 하위 트리 를 건너 뛰지 못하고 모든 노드 를 비교 한다.
+     *
+     * @param outOfCoreDiff boolean 형태로 임시 파일 로 비교 할 경우 true, 기본 값 은 false
+     */
+    public void setOutOfCoreDiff(boolean outOfCoreDiff) {
+
+        this.isOutOfCoreDiff = outOfCoreDiff;
+    }
+
+    /**
+     * 다운로드 에 실패한 파일 을 포함 해서 파일 하나 를 최대 몇번 요청 할지 를 설정하는 메소드
+     *
+     * @param retryAttempts int 형태 의 파일 별 최대 시도 횟수, 기본 값 은 5
+     */
+    public void setRetryAttempts(int retryAttempts) {
+
+        this.retryAttempts = retryAttempts;
+    }
+
+    /**
+     * 첫 재시도 전 에 기다릴 시간 을 설정하는 메소드 로 이후 재시도 마다 두배 씩 늘어 난다.
+     *
+     * @param retryDelay long 형태 의 밀리세컨드(millisecond) 단위 대기 시간, 기본 값 은 1000
+     */
+    public void setRetryDelay(long retryDelay) {
+
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * 동시에 사용할 최대 다운로드 연결 수 를 설정하는 메소드
+     *
+     * @param downloadConnections int 형태의 최대 연결 수 로 1 일 경우 하나의 연결 로 모든 파일 을 받는다.
+     */
+    public void setDownloadConnections(int downloadConnections) {
+
+        this.downloadConnections = downloadConnections;
+    }
+
+    /**
+     * 서버 가 지원 할 경우 하나의 연결 로 트리 요청 과 다운로드 요청 들을 처리 하는 세션 모드 를 사용할지 설정하는 메소드
+     *
+     * @param sessionEnabled boolean 형태로 세션 모드 를 사용할 경우 true, 기본 값 은 true
+     */
+    public void setSessionEnabled(boolean sessionEnabled) {
+
+        this.isSessionEnabled = sessionEnabled;
+    }
+
+    /**
+     * 서버 가 지원 할 경우 세션 의 파일 chunk 와 트리 응답 을 압축 해서 받을 deflate 압축 레벨 을 설정하는 메소드
+     * 이미 압축 된 형식 의 파일 과 압축 해도 줄어 들지 않는 chunk 는 압축 하지 않고 받는다.
+     *
+     * @param compressionLevel int 형태의 1 ~ 9 사이 의 압축 레벨 로 0 일 경우 압축 하지 않는다. 기본 값 은 1
+     */
+    public void setCompressionLevel(int compressionLevel) {
+
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * 트리 를 받지 않고 서버 트리 의 버전 만 확인 하는 메소드
+     * 세션 을 열어 probe 요청 하나 만 보내고 닫으며, 값 이 이전 과 같으면 서버 트리 가 바뀌지 않은 것 이다.
+     *
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param portNumber int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @return String 형태 의 서버 트리 버전, 서버 가 지원 하지 않거나 실패 시 null
+     */
+    public String probeVersion(String serverIP, int portNumber, int timeout) {
+
+        if (!isSessionEnabled) {
+
+            return null;
+        }
+
+        ServerSession probeSession = ServerSession.open(serverIP, portNumber, timeout);
+
+        if (probeSession == null) {
+
+            return null;
+        }
+
+        try {
+
+            return probeSession.probe();
+
+        } finally {
+
+            probeSession.close();
+
+        }
+    }
+
     /**
      * 서버로 부터 업데이트 정보 를 받아 업데이트 를 체크하는 메소드
+     * 서버 가 부분 트리 요청 을 지원 하면 위쪽 몇 단계 만 먼저 받고, 로컬 트리 와 Merkle 해시 가 다른 디렉토리 만 추가 로 받는다.
+     * setOutOfCoreDiff 가 설정 되면 두 트리 를 heap 에 만들지 않고 임시 파일 로 비교 한다.
      *
      * @param serverIP   String 형태 의 서버 아이피
      * @param portNumber int 형태 의 서버 포트 번호
@@ -53,30 +230,59 @@ public class UpdateModule {
      */
     public ArrayList<ArrayList<UpdateInfo>> checkUpdate(String serverIP, int portNumber, int timeout) {
 
+        if (isOutOfCoreDiff) {
+
+            return checkUpdateOutOfCore(serverIP, portNumber, timeout);
+        }
+
         ArrayList<ArrayList<UpdateInfo>> resultList = new ArrayList<>();
-        UpdateInfoDTO dto = serverConnector.getUpdateInfoDTO(serverIP, portNumber, timeout);
 
-        if (dto == null) {
+        UpdateInfoDTO dto = prepareUpdate(serverIP, portNumber, timeout);
 
-            System.out.println(ERR_DOWNLOAD_DTO_FAILED);
+        if (dto == null) {
 
             return null;
         }
 
-        local_prefix_path = new File(MSG_POINT + File.separator + dto.getClient_path()).getAbsolutePath();
-
         UpdateInfo updateInfo = dto.getRoot();
 
         UpdateInfoTree tree = new UpdateInfoTree(local_prefix_path);
 
         UpdateInfo clientInfo = tree.getRoot();
 
-        UpdateInfoTree.createUpdateInfoTree(local_prefix_path.length(), local_prefix_path, clientInfo);
+        UpdateInfoTree.createUpdateInfoTree(local_prefix_path.length(), local_prefix_path, clientInfo, scanParallelism,
+                hashCache);
+
+        hashCache.retain(clientInfo);
+        hashCache.save();
+
+        if (!fetchChangedSubtrees(clientInfo, updateInfo)) {
+
+            long start = UpdateMetrics.startTimer();
+
+            dto = downloadUpdateInfoDTO(serverIP, portNumber, timeout);
+
+            UpdateMetrics.stopTimer(UpdateMetrics.PHASE_TREE, start);
+
+            if (dto == null) {
+
+                UpdateLog.error(ERR_DOWNLOAD_DTO_FAILED);
+
+                return null;
+            }
+
+            updateInfo = dto.getRoot();
+        }
 
         ArrayList<UpdateInfo> downloadList = new ArrayList<>();
         ArrayList<UpdateInfo> deleteList = new ArrayList<>();
 
+        long start = UpdateMetrics.startTimer();
+
         UpdateInfoTree.compareHash(clientInfo, updateInfo, downloadList, deleteList);
+        UpdateInfoTree.keepModifiedFiles(downloadList, deleteList);
+
+        UpdateMetrics.stopTimer(UpdateMetrics.PHASE_DIFF, start);
 
         resultList.add(deleteList);
         resultList.add(downloadList);
@@ -85,67 +291,1196 @@ public class UpdateModule {
     }
 
     /**
-     * deleteList 를 입력 받아 파일을 지우는 메소드 이다.
+     * 서버 트리 와 로컬 트리 를 경로 순서 로 정렬 된 임시 파일 에 기록 한 후 처음 부터 함께 읽으며 비교 하는 메소드 이다.
+     * 서버 트리 는 바이너리 형식 으로 받으면 읽는 대로 기록 하고, Java 직렬화 로 만 받을 수 있으면 받은 트리 를 기록 한 후 버린다.
+     * 임시 파일 은 클라이언트 root 와 같은 디렉토리 에 만들고 비교 가 끝나면 지운다.
      *
-     * @param deleteList ArrayList 형태의 deleteList
+     * @return ArrayList 형태의 결과로 인덱스0 에는 deleteList, 인덱스1 에는 downloadList 가 들어 있다. 실패 시 null
      */
-    public void deleteFiles(ArrayList<UpdateInfo> deleteList) {
+    private ArrayList<ArrayList<UpdateInfo>> checkUpdateOutOfCore(String serverIP, int portNumber, int timeout) {
 
-        for (UpdateInfo u : deleteList) {
-            FileUtil.deleteFile(local_prefix_path + u.getFilePath());
+        resetSession();
+
+        long start = UpdateMetrics.startTimer();
+        ServerManifest server = new ServerManifest();
+        ManifestFile client = null;
+
+        try {
+
+            String clientPath = null;
+
+            if (openSession(serverIP, portNumber, timeout)) {
+
+                clientPath = session.getUpdateInfoDTO(server);
+
+            }
+
+            if (session == null || !session.isOpen()) {
+
+                serverCapabilities = serverConnector.getServerCapabilities(serverIP, portNumber, timeout);
+
+            }
+
+            if (clientPath == null && serverCapabilities.contains(ServerConnector.CAPABILITY_BINARY)) {
+
+                clientPath = serverConnector.getBinaryUpdateInfoDTO(serverIP, portNumber, timeout, server);
+
+            }
+
+            if (clientPath == null) {
+
+                UpdateInfoDTO dto = serverConnector.getUpdateInfoDTO(serverIP, portNumber, timeout);
+
+                if (dto != null) {
+
+                    server.create(dto.getClient_path()).addChildren(dto.getRoot());
+                    clientPath = dto.getClient_path();
+
+                }
+            }
+
+            if (clientPath == null) {
+
+                UpdateLog.error(ERR_DOWNLOAD_DTO_FAILED);
+
+                return null;
+            }
+
+            server.manifest.finish();
+            UpdateMetrics.stopTimer(UpdateMetrics.PHASE_TREE, start);
+            prepareLocal(clientPath);
+
+            client = new ManifestFile(new File(local_prefix_path).getParentFile());
+
+            UpdateInfoTree.writeManifest(local_prefix_path.length(), local_prefix_path, client, scanParallelism,
+                    hashCache);
+            client.finish();
+
+            hashCache.retainScanned();
+            hashCache.save();
+
+            ArrayList<UpdateInfo> downloadList = new ArrayList<>();
+            ArrayList<UpdateInfo> deleteList = new ArrayList<>();
+
+            long diffStart = UpdateMetrics.startTimer();
+
+            UpdateInfoTree.compareManifest(client, server.manifest, downloadList, deleteList);
+            UpdateInfoTree.keepModifiedFiles(downloadList, deleteList);
+
+            UpdateMetrics.stopTimer(UpdateMetrics.PHASE_DIFF, diffStart);
+
+            ArrayList<ArrayList<UpdateInfo>> resultList = new ArrayList<>();
+
+            resultList.add(deleteList);
+            resultList.add(downloadList);
+
+            return resultList;
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_MANIFEST_FAILED);
+
+        } finally {
+
+            server.close();
+
+            if (client != null) {
+                client.close();
+            }
         }
 
+        return null;
     }
 
     /**
-     * downloadList 를 입력 받아 파일을 다운로드 하는 메소드 이다.
+     * 서버 트리 를 기록 할 manifest 를 client_path 를 받은 후 클라이언트 root 옆 에 만드는 factory 이다.
+     * 서버 트리 를 다시 받으면 이전 에 만든 manifest 는 지운다.
+     */
+    private static class ServerManifest implements ManifestFile.Factory {
+
+        private ManifestFile manifest;
+
+        @Override
+        public ManifestFile create(String clientPath) throws IOException {
+
+            close();
+            manifest = new ManifestFile(new File(MSG_POINT + File.separator + clientPath).getAbsoluteFile()
+                    .getParentFile());
+
+            return manifest;
+        }
+
+        void close() {
+
+            if (manifest != null) {
+
+                manifest.close();
+                manifest = null;
+
+            }
+        }
+    }
+
+    /**
+     * 로컬 트리 탐색, 비교, 다운로드 를 동시에 진행 하며 업데이트 하는 메소드
+     * 디렉토리 하나 의 탐색 이 끝나면 그 디렉토리 의 비교 결과 로 바로 삭제 와 다운로드 를 시작 하므로
+     * 전체 시간 이 탐색 시간 과 다운로드 시간 의 합 이 아닌 둘 중 긴 쪽 에 가까워 진다.
      *
-     * @param serverIP    String 형태 의 서버 아이피
-     * @param portNumber  int 형태 의 서버 포트 번호
-     * @param timeout     int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
-     * @param updateInfos ArrayList 형태의 downloadList 이다.
-     * @return ArrayList 형태의 업데이트가 재대로 되지 않은 파일의 정보가 담겨 있는 리스트
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param portNumber int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @return ArrayList 형태의 업데이트가 재대로 되지 않은 파일의 정보가 담겨 있는 리스트 로 downloadFiles 로 다시 시도 한다.
+     * 업데이트 정보 를 받지 못한 경우 null
      */
-    public ArrayList<UpdateInfo> updateFiles(String serverIP, int portNumber, int timeout, ArrayList<UpdateInfo> updateInfos) {
+    public ArrayList<UpdateInfo> update(String serverIP, int portNumber, int timeout) {
 
-        DownloadRequestDTO downloadRequestDTO = new DownloadRequestDTO();
+        UpdateInfoDTO dto = prepareUpdate(serverIP, portNumber, timeout);
+
+        if (dto == null) {
+
+            return null;
+        }
+
+        int connections = Math.max(1, downloadConnections);
+
+        return new UpdatePipeline(this, serverIP, portNumber, timeout, connections).run(dto);
+    }
+
+    /**
+     * 서버 의 UpdateInfoDTO 를 받고 로컬 경로 와 해시 캐시 를 준비 하는 메소드 이다.
+     * 서버 가 부분 트리 요청 을 지원 하면 위쪽 DEFAULT_SUBTREE_DEPTH 단계 만 받는다.
+     *
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param portNumber int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @return UpdateInfoDTO 형태 의 서버 업데이트 정보, 실패 시 null
+     */
+    private UpdateInfoDTO prepareUpdate(String serverIP, int portNumber, int timeout) {
+
+        resetSession();
+
+        long start = UpdateMetrics.startTimer();
+        UpdateInfoDTO dto = null;
+
+        if (openSession(serverIP, portNumber, timeout) && session.isSubtreeSupported()) {
+
+            dto = session.getUpdateInfoDTO(ServerSession.DEFAULT_SUBTREE_DEPTH);
 
-        downloadRequestDTO.setList(updateInfos);
+        }
+
+        if (dto == null) {
+
+            dto = downloadUpdateInfoDTO(serverIP, portNumber, timeout);
 
-        ArrayList<FileResponse> responses = serverConnector.sendDownloadRequestDTOAndGetFileResponses(serverIP,
-                portNumber,
-                timeout,
-                downloadRequestDTO);
+        }
+
+        UpdateMetrics.stopTimer(UpdateMetrics.PHASE_TREE, start);
 
-        if (responses == null) {
+        if (dto == null) {
 
-            System.out.println(ERR_RESPONSE_DTO_FAILED);
+            UpdateLog.error(ERR_DOWNLOAD_DTO_FAILED);
 
             return null;
         }
 
-        ArrayList<UpdateInfo> result = new ArrayList<>();
+        prepareLocal(dto.getClient_path());
+
+        return dto;
+    }
+
+    /**
+     * 이전 업데이트 의 세션 을 닫고 세션 사용 여부, 델타 실패 기록, 만든 디렉토리 기록, 진행 상황 을 초기화 하는 메소드 이다.
+     * 업데이트 한번 의 시작 이므로 UpdateMetrics 도 여기 서 다시 시작 한다.
+     */
+    private void resetSession() {
+
+        closeSession();
+        isSessionSupported = isSessionEnabled;
+        deltaFailed.clear();
+        FileUtil.clearDirectoryCache();
+        UpdateLog.resetProgress();
+        UpdateMetrics.startRun();
+    }
+
+    /**
+     * 서버 가 알려 준 client_path 로 로컬 경로 를 정하고, 로컬 경로 가 처음 정해 지거나 바뀌면 해시 캐시 와 저널 들을 그 경로 로 다시 불러 오는 메소드 이다.
+     * 이전 실행 에서 적용 하다 멈춘 commit journal 이 있으면 먼저 마저 적용 한다.
+     *
+     * @param clientPath String 형태 의 서버 에서 받은 client_path
+     */
+    private void prepareLocal(String clientPath) {
+
+        local_prefix_path = new File(MSG_POINT + File.separator + clientPath).getAbsolutePath();
+
+        if (local_prefix_path.equals(localRoot)) {
+
+            return;
+        }
+
+        if (hashCache != null) {
+
+            hashCache.flush();
+
+        }
+
+        File root = new File(local_prefix_path);
+
+        hashCache = new HashCache(root);
+        hashCache.load();
+
+        transferJournal = new TransferJournal(root);
+        commitJournal = new CommitJournal(root, transferJournal);
+        commitJournal.recover();
+        transferJournal.load();
+
+        localRoot = local_prefix_path;
+    }
+
+    /**
+     * 서버 트리 에서 클라이언트 트리 와 Merkle 해시 가 다른 부분 디렉토리 들의 자식 을 세션 으로 받아 붙이는 메소드 이다.
+     * 서버 트리 에 부분 디렉토리 가 없으면 요청 없이 true 를 반환 한다.
+     *
+     * @param client UpdateInfo 형태 의 탐색 이 끝난 클라이언트 디렉토리
+     * @param server UpdateInfo 형태 의 같은 경로 의 서버 디렉토리
+     * @return boolean 형태 로 compareHash 를 할 수 있게 되었으면 true, 실패 하여 전체 트리 를 다시 받아야 하면 false
+     */
+    boolean fetchChangedSubtrees(UpdateInfo client, UpdateInfo server) {
+
+        ArrayList<UpdateInfo> partials = new ArrayList<>();
+
+        UpdateInfoTree.collectPartialDirectories(client, server, partials);
+
+        if (partials.isEmpty()) {
+
+            return true;
+        }
+
+        long start = UpdateMetrics.startTimer();
+        boolean isFetched = session != null && session.isOpen()
+                && session.fetchChangedSubtrees(client, server, ServerSession.DEFAULT_SUBTREE_DEPTH);
+
+        UpdateMetrics.stopTimer(UpdateMetrics.PHASE_TREE, start);
+
+        if (isFetched) {
+
+            return true;
+        }
+
+        UpdateLog.error(ERR_SUBTREE_FAILED);
+
+        return false;
+    }
 
-        for (FileResponse r : responses) {
+    /**
+     * 다운로드 할 디렉토리 와 그 하위 에서 자식 리스트 를 받지 않은 디렉토리 들의 하위 트리 를 세션 으로 받는 메소드 이다.
+     * 로컬 에 같은 내용 이 있는 파일 을 찾을 수 있도록 새 디렉토리 의 파일 들을 알아 내는 데 사용 한다.
+     * 해시 캐시 가 비어 있으면 찾을 파일 이 없으므로 받지 않는다. 받지 못한 디렉토리 는 통째로 다운로드 된다.
+     *
+     * @param downloadList ArrayList 형태 의 다운로드 요청 리스트
+     */
+    void fetchNewSubtrees(ArrayList<UpdateInfo> downloadList) {
 
-            String target = new File(local_prefix_path + File.separator + r.getFilePath()).getAbsolutePath();
+        if (hashCache.isEmpty() || session == null || !session.isOpen() || !session.isSubtreeSupported()) {
 
-            FileUtil.writeFile(r, local_prefix_path);
+            return;
+        }
 
-            if (!FileUtil.compareFile(r, target)) {
+        ArrayList<UpdateInfo> directories = new ArrayList<>();
 
-                UpdateInfo u = new UpdateInfo();
+        for (UpdateInfo u : downloadList) {
 
-                u.setFileName(r.getFileName());
-                u.setFilePath(r.getFilePath());
-                u.setDirectory(r.isDirectory());
-                u.setFileHash(r.getFileHash());
+            if (u.isDirectory()) {
 
-                result.add(u);
+                directories.add(u);
 
             }
         }
 
-        return result;
+        if (directories.isEmpty()) {
+
+            return;
+        }
+
+        long start = UpdateMetrics.startTimer();
+
+        if (!session.fetchSubtrees(directories, ServerSession.DEFAULT_SUBTREE_DEPTH)) {
+
+            UpdateLog.error(ERR_SUBTREE_FAILED);
+
+        }
+
+        UpdateMetrics.stopTimer(UpdateMetrics.PHASE_TREE, start);
+    }
+
+    /**
+     * 서버 의 전체 UpdateInfoDTO 를 받아오는 메소드 이다.
+     * 세션 을 사용할 수 있으면 세션 으로, 아니면 서버 가 지원 하는 형식 에 따라 새 연결 로 받는다.
+     *
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param portNumber int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @return UpdateInfoDTO 형태 의 서버 업데이트 정보, 실패 시 null
+     */
+    UpdateInfoDTO downloadUpdateInfoDTO(String serverIP, int portNumber, int timeout) {
+
+        UpdateInfoDTO dto = null;
+
+        if (openSession(serverIP, portNumber, timeout)) {
+
+            dto = session.getUpdateInfoDTO();
+
+        }
+
+        if (session == null || !session.isOpen()) {
+
+            serverCapabilities = serverConnector.getServerCapabilities(serverIP, portNumber, timeout);
+
+        }
+
+        if (dto == null && serverCapabilities.contains(ServerConnector.CAPABILITY_BINARY)) {
+
+            dto = serverConnector.getBinaryUpdateInfoDTO(serverIP, portNumber, timeout);
+
+        }
+
+        if (dto == null) {
+
+            dto = serverConnector.getUpdateInfoDTO(serverIP, portNumber, timeout);
+
+        }
+
+        return dto;
+    }
+
+    /**
+     * checkUpdate 의 결과 에서 로컬 에 같은 내용 이 있는 다운로드 파일 을 로컬 에서 옮기거나 복사 하는 메소드 이다.
+     * 삭제 할 파일 은 새 경로 로 옮기고, 그 외 의 파일 은 복사 한다. 옮긴 파일 은 deleteList 에서 빠진다.
+     * deleteFiles 보다 먼저 호출 해야 한다.
+     *
+     * @param deleteList   ArrayList 형태의 checkUpdate 가 반환 한 deleteList
+     * @param downloadList ArrayList 형태의 checkUpdate 가 반환 한 downloadList
+     * @return ArrayList 형태의 서버 에서 받아야 하는 downloadList
+     */
+    public ArrayList<UpdateInfo> reuseLocalFiles(ArrayList<UpdateInfo> deleteList, ArrayList<UpdateInfo> downloadList) {
+
+        LocalFileReuser reuser = new LocalFileReuser(this);
+
+        reuser.deferDelete(deleteList);
+
+        ArrayList<UpdateInfo> remaining = reuser.reuse(downloadList);
+
+        deleteList.clear();
+        deleteList.addAll(reuser.getDeferredDeletes());
+        hashCache.flush();
+
+        return remaining;
+    }
+
+    /**
+     * deleteList 를 입력 받아 파일을 지우는 메소드 이다.
+     * staged apply 를 사용 하면 삭제 는 commitUpdate 에서 적용 된다.
+     *
+     * @param deleteList ArrayList 형태의 deleteList
+     */
+    public void deleteFiles(ArrayList<UpdateInfo> deleteList) {
+
+        if (isStagedApply) {
+
+            for (UpdateInfo u : deleteList) {
+                commitJournal.stageDelete(u.getFilePath());
+                UpdateLog.countFile(UpdateLog.FILE_DELETED);
+            }
+
+            return;
+        }
+
+        for (UpdateInfo u : deleteList) {
+            FileUtil.deleteFile(local_prefix_path + u.getFilePath());
+            hashCache.remove(u.getFilePath());
+            UpdateLog.countFile(UpdateLog.FILE_DELETED);
+        }
+
+        hashCache.flush();
+
+    }
+
+    /**
+     * downloadList 를 다운로드 하고 실패한 파일 만 backoff 후 다시 요청 하는 메소드 이다.
+     * 파일 마다 최대 retryAttempts 번 요청 하며, 모든 연결 이 실패 하는 일 이 연속 으로 반복 되면 더 요청 하지 않는다.
+     * 끝까지 받지 못한 파일 은 출력 된다.
+     *
+     * @param serverIP     String 형태 의 서버 아이피
+     * @param portNumber   int 형태 의 서버 포트 번호
+     * @param timeout      int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @param downloadList ArrayList 형태의 downloadList 이다.
+     * @param isRetry      boolean 형태 로 downloadList 가 update 에서 이미 한번 실패한 파일 들이면 true
+     * @return ArrayList 형태의 끝까지 받지 못한 파일 리스트 로 모두 받았으면 비어 있다. 서버 에 연결 할 수 없으면 null
+     */
+    public ArrayList<UpdateInfo> downloadFiles(String serverIP, int portNumber, int timeout,
+                                               ArrayList<UpdateInfo> downloadList, boolean isRetry) {
+
+        RetryScheduler scheduler = new RetryScheduler(this, serverIP, portNumber, timeout, retryAttempts, retryDelay);
+
+        return scheduler.download(downloadList, isRetry);
+    }
+
+    /**
+     * downloadList 를 입력 받아 파일을 다운로드 하는 메소드 이다.
+     * downloadList 는 예상 크기 가 고르게 나뉘도록 여러 묶음 으로 나뉘고,
+     * 최대 downloadConnections 개 의 연결 에서 동시에 다운로드 된다.
+     * FileResponse 는 소켓 에서 읽히는 즉시 쓰기 와 검증 을 거친 후 해제 된다.
+     *
+     * @param serverIP    String 형태 의 서버 아이피
+     * @param portNumber  int 형태 의 서버 포트 번호
+     * @param timeout     int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @param updateInfos ArrayList 형태의 downloadList 이다.
+     * @return ArrayList 형태의 업데이트가 재대로 되지 않은 파일의 정보가 담겨 있는 리스트, 모든 연결 이 실패한 경우 null
+     */
+    public ArrayList<UpdateInfo> updateFiles(final String serverIP, final int portNumber, final int timeout,
+                                             ArrayList<UpdateInfo> updateInfos) {
+
+        long start = UpdateMetrics.startTimer();
+        final List<UpdateInfo> result = Collections.synchronizedList(new ArrayList<UpdateInfo>());
+        final Set<String> verified = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Set<String> failed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        final FileResponseHandler handler = newResponseHandler(result, verified, failed);
+
+        int connections = Math.max(1, Math.min(downloadConnections, updateInfos.size()));
+        boolean isPipelined = isSessionSupported && serverCapabilities.contains(ServerConnector.CAPABILITY_SESSION);
+        ArrayList<ArrayList<UpdateInfo>> batches = splitBatches(updateInfos,
+                connections == 1 && !isPipelined ? 1 : connections * BATCHES_PER_CONNECTION);
+        final Queue<ArrayList<UpdateInfo>> queue = new ConcurrentLinkedQueue<>(batches);
+        final List<ArrayList<UpdateInfo>> failedBatches =
+                Collections.synchronizedList(new ArrayList<ArrayList<UpdateInfo>>());
+
+        if (connections == 1) {
+
+            runDownloadWorker(true, serverIP, portNumber, timeout, queue, handler, failedBatches);
+
+        } else {
+
+            ExecutorService pool = Executors.newFixedThreadPool(connections);
+            ArrayList<Callable<Void>> workers = new ArrayList<>();
+
+            for (int i = 0; i < connections; i++) {
+
+                final boolean isPrimary = i == 0;
+
+                workers.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        runDownloadWorker(isPrimary, serverIP, portNumber, timeout, queue, handler, failedBatches);
+                        return null;
+                    }
+                });
+            }
+
+            try {
+
+                for (Future<Void> future : pool.invokeAll(workers)) {
+
+                    future.get();
+
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+
+            } catch (ExecutionException e) {
+
+                e.printStackTrace();
+
+            } finally {
+
+                pool.shutdown();
+
+            }
+
+            ArrayList<UpdateInfo> batch;
+
+            while ((batch = queue.poll()) != null) {
+
+                failedBatches.add(batch);
+
+            }
+        }
+
+        hashCache.flush();
+        UpdateMetrics.recordDownload(start);
+
+        if (failedBatches.size() == batches.size()) {
+
+            UpdateLog.error(ERR_RESPONSE_DTO_FAILED);
+
+            return null;
+        }
+
+        return collectFailed(result, verified, failed, failedBatches);
+    }
+
+    /**
+     * handler 가 실패 로 기록 한 파일 과 받지 못한 묶음 의 파일 을 합쳐 다시 받을 리스트 를 만드는 메소드 이다.
+     * 경로 마다 한번 만 넣으며, 검증 이 끝난 경로 는 넣지 않는다.
+     * 디렉토리 도 handler 가 만들었으면 verified 에 있으므로, 묶음 이 실패 해서 처리 되지 않은 디렉토리 만 다시 넣는다.
+     *
+     * @param result        List 형태 의 handler 가 실패 로 기록 한 파일 들
+     * @param verified      Set 형태 의 검증 이 끝난 경로 들
+     * @param failed        Set 형태 의 result 에 들어 있는 경로 들
+     * @param failedBatches List 형태 의 다운로드 하지 못한 묶음 들
+     * @return ArrayList 형태 의 다시 받을 파일 들
+     */
+    static ArrayList<UpdateInfo> collectFailed(List<UpdateInfo> result, Set<String> verified, Set<String> failed,
+                                               List<ArrayList<UpdateInfo>> failedBatches) {
+
+        ArrayList<UpdateInfo> retries = new ArrayList<>();
+
+        synchronized (result) {
+
+            for (UpdateInfo u : result) {
+
+                if (!verified.contains(u.getFilePath())) {
+
+                    retries.add(u);
+
+                }
+            }
+        }
+
+        synchronized (failedBatches) {
+
+            for (ArrayList<UpdateInfo> batch : failedBatches) {
+
+                for (UpdateInfo u : batch) {
+
+                    if (!verified.contains(u.getFilePath()) && failed.add(u.getFilePath())) {
+
+                        retries.add(u);
+
+                    }
+                }
+            }
+        }
+
+        return retries;
+    }
+
+    /**
+     * queue 가 빌 때 까지 다운로드 묶음 을 꺼내 다운로드 하는 작업 이다.
+     * 서버 가 세션 을 지원 하면 하나의 세션 으로 묶음 들을 미리 요청 하며 받고,
+     * 세션 을 사용할 수 없거나 끊어진 경우 남은 묶음 을 묶음 마다 새 연결 로 받는다.
+     * 첫번째 작업 은 checkUpdate 에서 연 세션 을 재시도 에도 계속 사용 하고, 나머지 작업 은 자신 의 세션 을 연다.
+     *
+     * @param isPrimary     boolean 형태 로 모듈 의 세션 을 사용할 작업 일 경우 true
+     * @param serverIP      String 형태 의 서버 아이피
+     * @param portNumber    int 형태 의 서버 포트 번호
+     * @param timeout       int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @param queue         Queue 형태 의 다운로드 할 묶음 들
+     * @param handler       FileResponseHandler 형태 의 받은 파일 을 처리할 handler
+     * @param failedBatches List 형태 의 다운로드 하지 못한 묶음 이 담길 리스트
+     */
+    private void runDownloadWorker(boolean isPrimary, String serverIP, int portNumber, int timeout,
+                                   Queue<ArrayList<UpdateInfo>> queue, FileResponseHandler handler,
+                                   List<ArrayList<UpdateInfo>> failedBatches) {
+
+        ServerSession workerSession = null;
+
+        if (isPrimary) {
+
+            if (openSession(serverIP, portNumber, timeout)) {
+
+                workerSession = session;
+
+            }
+
+        } else if (isSessionSupported && serverCapabilities.contains(ServerConnector.CAPABILITY_SESSION)) {
+
+            workerSession = newSession(serverIP, portNumber, timeout);
+
+        }
+
+        if (workerSession != null) {
+
+            workerSession.download(queue, handler, failedBatches);
+
+            if (!isPrimary) {
+
+                workerSession.close();
+
+            }
+        }
+
+        ArrayList<UpdateInfo> batch;
+
+        while ((batch = queue.poll()) != null) {
+
+            if (!downloadBatch(serverIP, portNumber, timeout, batch, handler)) {
+
+                failedBatches.add(batch);
+
+            }
+        }
+    }
+
+    /**
+     * 모듈 의 세션 이 열려 있지 않으면 새로 여는 메소드 이다.
+     * 서버 가 세션 을 지원 하지 않으면 다음 checkUpdate 까지 다시 시도 하지 않는다.
+     *
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param portNumber int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @return boolean 형태 로 세션 을 사용할 수 있으면 true
+     */
+    private synchronized boolean openSession(String serverIP, int portNumber, int timeout) {
+
+        if (session != null && session.isOpen()) {
+
+            return true;
+        }
+
+        if (!isSessionSupported) {
+
+            return false;
+        }
+
+        ServerSession opened = newSession(serverIP, portNumber, timeout);
+
+        if (opened == null) {
+
+            isSessionSupported = false;
+
+            return false;
+        }
+
+        session = opened;
+        serverCapabilities = opened.getCapabilities();
+
+        return true;
+    }
+
+    /**
+     * 새 세션 을 열고 서버 가 지원 하면 압축 을 협상 하는 메소드 이다.
+     *
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param portNumber int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @return ServerSession 형태 의 열린 세션, 서버 가 세션 을 지원 하지 않거나 실패한 경우 null
+     */
+    ServerSession newSession(String serverIP, int portNumber, int timeout) {
+
+        ServerSession opened = ServerSession.open(serverIP, portNumber, timeout);
+
+        if (opened != null) {
+
+            opened.enableCompression(compressionLevel, ServerSession.DEFAULT_STORED_EXTENSIONS);
+
+        }
+
+        return opened;
+    }
+
+    /**
+     * 다운로드 작업 마다 세션 을 열 수 있는지 반환 하는 메소드 이다.
+     *
+     * @return boolean 형태 로 서버 가 세션 을 지원 하고 세션 모드 가 켜져 있으면 true
+     */
+    boolean isSessionAvailable() {
+
+        return isSessionSupported && serverCapabilities.contains(ServerConnector.CAPABILITY_SESSION);
+    }
+
+    /**
+     * checkUpdate 또는 update 에서 정한 로컬 root 경로 를 반환 하는 메소드 이다.
+     *
+     * @return String 형태 의 로컬 root 절대 경로
+     */
+    String getLocalPrefixPath() {
+
+        return local_prefix_path;
+    }
+
+    /**
+     * 로컬 파일 의 해시 캐시 를 반환 하는 메소드 이다.
+     *
+     * @return HashCache 형태 의 해시 캐시
+     */
+    HashCache getHashCache() {
+
+        return hashCache;
+    }
+
+    /**
+     * 받은 파일 과 삭제 를 모아 두는 commit journal 을 반환 하는 메소드 이다.
+     *
+     * @return CommitJournal 형태 의 commit journal
+     */
+    CommitJournal getCommitJournal() {
+
+        return commitJournal;
+    }
+
+    /**
+     * 받은 파일 과 삭제 를 모아서 적용 하는지 반환 하는 메소드 이다.
+     *
+     * @return boolean 형태 로 staged apply 를 사용 하면 true
+     */
+    boolean isStagedApply() {
+
+        return isStagedApply;
+    }
+
+    /**
+     * 다운로드 중인 파일 의 진행 상황 을 기록 하는 transfer journal 을 반환 하는 메소드 이다.
+     *
+     * @return TransferJournal 형태 의 transfer journal
+     */
+    TransferJournal getTransferJournal() {
+
+        return transferJournal;
+    }
+
+    /**
+     * 파일 을 쓴 후 디스크 에서 다시 읽어 검증 하는지 반환 하는 메소드 이다.
+     *
+     * @return boolean 형태 로 paranoid 검증 을 하면 true
+     */
+    boolean isParanoidVerify() {
+
+        return isParanoidVerify;
+    }
+
+    /**
+     * 로컬 트리 탐색 병렬도 를 반환 하는 메소드 이다.
+     *
+     * @return int 형태 의 탐색 스레드 수
+     */
+    int getScanParallelism() {
+
+        return scanParallelism;
+    }
+
+    /**
+     * staged apply 로 모아 둔 파일 교체, 이동, 삭제 를 한번 에 적용 하는 메소드 이다.
+     * 다운로드 가 모두 끝난 후 호출 하며, 적용 에 실패 하면 트리 는 이전 상태 로 되돌려 진다.
+     *
+     * @return boolean 형태 로 적용 에 성공 했거나 적용 할 것 이 없으면 true
+     */
+    public boolean commitUpdate() {
+
+        if (commitJournal == null) {
+
+            return true;
+        }
+
+        long start = UpdateMetrics.startTimer();
+        boolean isCommitted = commitJournal.commit(hashCache);
+
+        UpdateMetrics.stopTimer(UpdateMetrics.PHASE_COMMIT, start);
+
+        return isCommitted;
+    }
+
+    /**
+     * staged apply 로 모아 둔 작업 을 적용 하지 않고 버리는 메소드 이다. 다운로드 가 실패 했을 때 호출 한다.
+     * 검증 된 staging 파일 은 다음 실행 에서 다시 받지 않도록 남긴다.
+     */
+    public void discardUpdate() {
+
+        if (commitJournal != null) {
+
+            commitJournal.discard();
+
+        }
+    }
+
+    /**
+     * checkUpdate 에서 연 세션 을 닫는 메소드 이다. 업데이트 가 모두 끝난 후 호출 한다.
+     */
+    public synchronized void closeSession() {
+
+        if (session != null) {
+
+            session.close();
+            session = null;
+
+        }
+    }
+
+    /**
+     * 다운로드 할 파일 묶음 하나 를 하나 의 연결 로 다운로드 하는 메소드 이다.
+     *
+     * @param serverIP   String 형태 의 서버 아이피
+     * @param portNumber int 형태 의 서버 포트 번호
+     * @param timeout    int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @param batch      ArrayList 형태 의 다운로드 할 파일 묶음
+     * @param handler    FileResponseHandler 형태 의 받은 파일 을 처리할 handler
+     * @return boolean 형태 로 묶음 전체 를 받았을 경우 true, 통신 에러 가 발생한 경우 false
+     */
+    boolean downloadBatch(String serverIP, int portNumber, int timeout, ArrayList<UpdateInfo> batch,
+                                  FileResponseHandler handler) {
+
+        DownloadRequestDTO downloadRequestDTO = new DownloadRequestDTO();
+
+        downloadRequestDTO.setList(batch);
+
+        if (serverCapabilities.contains(ServerConnector.CAPABILITY_CHUNKED)) {
+
+            return serverConnector.sendChunkedDownloadRequestDTO(serverIP, portNumber, timeout,
+                    downloadRequestDTO, handler, serverCapabilities.contains(ServerConnector.CAPABILITY_BINARY));
+
+        }
+
+        return serverConnector.sendDownloadRequestDTO(serverIP, portNumber, timeout, downloadRequestDTO, handler);
+    }
+
+    /**
+     * downloadList 를 예상 크기 합 이 비슷한 batchCount 개 의 묶음 으로 나누는 메소드 이다.
+     * 큰 파일 부터 현재 합 이 가장 작은 묶음 에 넣으며, 크기 를 모르는 항목 은 1 byte 로 계산 한다.
+     * 반환 되는 묶음 은 합 이 큰 순서 로 정렬 되어 큰 묶음 이 먼저 시작 된다.
+     *
+     * @param updateInfos ArrayList 형태 의 downloadList
+     * @param batchCount  int 형태 의 나눌 묶음 수
+     * @return ArrayList 형태 의 비어 있지 않은 묶음 들
+     */
+    private static ArrayList<ArrayList<UpdateInfo>> splitBatches(ArrayList<UpdateInfo> updateInfos, int batchCount) {
+
+        ArrayList<UpdateInfo> sorted = new ArrayList<>(updateInfos);
+
+        Collections.sort(sorted, new Comparator<UpdateInfo>() {
+            @Override
+            public int compare(UpdateInfo o1, UpdateInfo o2) {
+                return Long.compare(expectedSize(o2), expectedSize(o1));
+            }
+        });
+
+        final long[] totals = new long[Math.max(1, Math.min(batchCount, sorted.size()))];
+        ArrayList<ArrayList<UpdateInfo>> batches = new ArrayList<>();
+        PriorityQueue<Integer> smallest = new PriorityQueue<>(totals.length, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(totals[o1], totals[o2]);
+            }
+        });
+
+        for (int i = 0; i < totals.length; i++) {
+
+            batches.add(new ArrayList<UpdateInfo>());
+            smallest.add(i);
+
+        }
+
+        for (UpdateInfo u : sorted) {
+
+            int index = smallest.poll();
+
+            batches.get(index).add(u);
+            totals[index] += expectedSize(u);
+            smallest.add(index);
+
+        }
+
+        ArrayList<Integer> order = new ArrayList<>(totals.length);
+
+        for (int i = 0; i < totals.length; i++) {
+            order.add(i);
+        }
+
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(totals[o2], totals[o1]);
+            }
+        });
+
+        ArrayList<ArrayList<UpdateInfo>> ordered = new ArrayList<>(totals.length);
+
+        for (int index : order) {
+            ordered.add(batches.get(index));
+        }
+
+        return ordered;
+    }
+
+    /**
+     * 다운로드 묶음 을 나눌 때 사용할 항목 의 예상 크기 를 반환 하는 메소드 이다.
+     *
+     * @param u UpdateInfo 형태 의 다운로드 할 항목
+     * @return long 형태 의 예상 크기, 크기 를 모를 경우 1
+     */
+    static long expectedSize(UpdateInfo u) {
+
+        return Math.max(1, u.getFileSize());
+    }
+
+    /**
+     * 받은 파일 을 쓰고 검증 해서 실패 한 파일 은 result 에, 성공 한 파일 의 경로 는 verified 에 넣는 handler 를 만드는 메소드 이다.
+     * 실패 한 파일 은 failed 에 경로 가 없을 때 만 result 에 넣으므로 같은 파일 이 두번 들어 가지 않는다.
+     * 서버 가 델타 를 지원 하면 내용 만 바뀐 큰 파일 은 로컬 사본 의 블록 서명 을 보내 바뀐 부분 만 받는다.
+     *
+     * @param result   List 형태 의 업데이트 가 재대로 되지 않은 파일 이 담길 리스트
+     * @param verified Set 형태 의 검증 이 끝난 파일 경로 가 담길 Set
+     * @param failed   Set 형태 의 result 에 넣은 파일 경로 가 담길 Set
+     * @return FileResponseHandler 형태 의 handler
+     */
+    FileResponseHandler newResponseHandler(final List<UpdateInfo> result, final Set<String> verified,
+                                           final Set<String> failed) {
+
+        return new FileResponseHandler() {
+            @Override
+            public void onFileResponse(FileResponse response, InputStream content) {
+
+                long start = UpdateMetrics.startTimer();
+
+                addResult(applyFileResponse(response, content, 0), response, start);
+            }
+
+            @Override
+            public void onRangeResponse(FileResponse response, long offset, InputStream content) {
+
+                long start = UpdateMetrics.startTimer();
+
+                addResult(applyFileResponse(response, content, offset), response, start);
+            }
+
+            @Override
+            public void onDeltaResponse(FileResponse response, DeltaInputStream delta) {
+
+                long start = UpdateMetrics.startTimer();
+
+                addResult(applyDeltaResponse(response, delta), response, start);
+            }
+
+            @Override
+            public BlockSignature getBasisSignature(UpdateInfo request) {
+
+                return UpdateModule.this.getBasisSignature(request);
+            }
+
+            @Override
+            public long getResumeOffset(UpdateInfo request) {
+
+                return UpdateModule.this.getResumeOffset(request);
+            }
+
+            private void addResult(UpdateInfo failedInfo, FileResponse response, long start) {
+
+                if (failedInfo != null) {
+
+                    if (failed.add(failedInfo.getFilePath())) {
+
+                        result.add(failedInfo);
+
+                    }
+
+                } else {
+
+                    verified.add(response.getFilePath());
+
+                    if (!response.isDirectory()) {
+
+                        UpdateLog.countFile(UpdateLog.FILE_DOWNLOADED);
+                        UpdateMetrics.count(UpdateMetrics.COUNT_FILES, 1);
+                        UpdateMetrics.recordFile(start);
+
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * 델타 요청 에 보낼 로컬 사본 의 블록 서명 을 계산 하는 메소드 이다.
+     * 디렉토리, DELTA_MIN_SIZE 보다 작은 파일, 로컬 에 없는 파일, 이전 에 델타 로 받지 못한 파일 은 서명 을 만들지 않는다.
+     *
+     * @param u UpdateInfo 형태 의 다운로드 할 파일 정보
+     * @return BlockSignature 형태 의 로컬 사본 의 서명, 전체 파일 을 받아야 하면 null
+     */
+    BlockSignature getBasisSignature(UpdateInfo u) {
+
+        if (u.isDirectory() || deltaFailed.contains(u.getFilePath())) {
+
+            return null;
+        }
+
+        File basis = new File(local_prefix_path + u.getFilePath());
+
+        if (!basis.isFile() || basis.length() < DELTA_MIN_SIZE) {
+
+            return null;
+        }
+
+        try {
+
+            return BlockSignature.compute(basis);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(u.getFilePath() + ERR_SIGNATURE_FAILED);
+
+            return null;
+        }
+    }
+
+    /**
+     * 델타 로 받은 FileResponse 하나 를 로컬 사본 과 합쳐 staging 파일 에 쓰고,
+     * 해쉬값 이 맞으면 기존 파일 을 교체 하는 메소드 이다.
+     * 검증 에 실패한 파일 은 다음 시도 에서 전체 파일 을 받는다.
+     *
+     * @param r     FileResponse 형태 의 서버 에서 받은 파일 정보
+     * @param delta DeltaInputStream 형태 의 로컬 사본 과 의 차이
+     * @return UpdateInfo 형태 의 업데이트 가 재대로 되지 않은 파일 의 정보, 정상 일 경우 null
+     */
+    UpdateInfo applyDeltaResponse(FileResponse r, DeltaInputStream delta) {
+
+        String target = new File(local_prefix_path + File.separator + r.getFilePath()).getAbsolutePath();
+        File staging = transferJournal.getStagingFile(r.getFilePath());
+        String writtenHash = null;
+
+        try (FileChannel basis = FileChannel.open(new File(local_prefix_path + r.getFilePath()).toPath(),
+                StandardOpenOption.READ)) {
+
+            delta.setBasis(basis);
+            writtenHash = FileUtil.writeStagingFile(r, delta, staging, 0, null);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(r.getFilePath() + ERR_BASIS_OPEN_FAILED);
+
+        }
+
+        if (!commitStagingFile(r, staging, target, writtenHash)) {
+
+            FileUtil.discardStagingFile(staging);
+            deltaFailed.add(r.getFilePath());
+
+            return toUpdateInfo(r);
+        }
+
+        return null;
+    }
+
+    /**
+     * FileResponse 하나 를 파일 로 쓰고 해쉬값 을 검증 하는 메소드 이다.
+     * 파일 은 staging 파일 에 먼저 쓰면서 진행 상황 을 transfer journal 에 기록 하고, 검증 후 기존 파일 을 교체 한다.
+     * 쓰는 도중 연결 이 끊기면 staging 파일 과 journal 이 남아 다음 시도 에서 이어 받을 수 있다.
+     *
+     * @param r       FileResponse 형태 의 서버 에서 받은 파일
+     * @param content InputStream 형태 의 offset 이후 의 파일 내용
+     * @param offset  long 형태 의 staging 파일 에 이미 받아 둔 길이
+     * @return UpdateInfo 형태 의 업데이트 가 재대로 되지 않은 파일 의 정보, 정상 일 경우 null
+     */
+    UpdateInfo applyFileResponse(FileResponse r, InputStream content, long offset) {
+
+        String target = new File(local_prefix_path + File.separator + r.getFilePath()).getAbsolutePath();
+
+        if (r.isDirectory()) {
+
+            if (isStagedApply && new File(target).isFile()) {
+
+                commitJournal.stageDirectory(r.getFilePath());
+
+            } else {
+
+                FileUtil.writeFile(r, content, local_prefix_path);
+
+            }
+
+            return null;
+        }
+
+        File staging = transferJournal.getStagingFile(r.getFilePath());
+        String writtenHash = FileUtil.writeStagingFile(r, content, staging, offset, transferJournal);
+
+        if (writtenHash == null) {
+
+            return toUpdateInfo(r);
+        }
+
+        transferJournal.complete(r.getFilePath());
+
+        if (!commitStagingFile(r, staging, target, writtenHash)) {
+
+            FileUtil.discardStagingFile(staging);
+
+            return toUpdateInfo(r);
+        }
+
+        return null;
+    }
+
+    /**
+     * 검증 된 staging 파일 로 기존 파일 을 교체 하는 메소드 이다.
+     * staged apply 를 사용 하면 바로 교체 하지 않고 commit journal 에 예약 하며, 해시 캐시 는 commitUpdate 에서 기록 된다.
+     *
+     * @param r           FileResponse 형태 의 서버 에서 받은 파일 정보
+     * @param staging     File 형태 의 다 받은 staging 파일
+     * @param target      String 형태 의 교체 할 파일 의 절대 경로
+     * @param writtenHash String 형태 의 staging 파일 을 쓰면서 계산 한 해시
+     * @return boolean 형태 로 검증 후 교체 또는 예약 에 성공 하면 true
+     */
+    private boolean commitStagingFile(FileResponse r, File staging, String target, String writtenHash) {
+
+        if (!FileUtil.verifyWrittenFile(r, target, writtenHash)) {
+
+            return false;
+        }
+
+        if (isStagedApply) {
+
+            if (isParanoidVerify && !FileUtil.compareFile(r, staging.getAbsolutePath())) {
+
+                return false;
+            }
+
+            commitJournal.stageReplace(r.getFilePath(), r.getFileHash());
+
+            return true;
+        }
+
+        if (!FileUtil.commitStagingFile(r, staging, local_prefix_path)
+                || (isParanoidVerify && !FileUtil.compareFile(r, target))) {
+
+            return false;
+        }
+
+        hashCache.put(r.getFilePath(), new File(target), r.getFileHash());
+
+        return true;
+    }
+
+    /**
+     * 이어 받기 요청 에 보낼 이전 시도 에서 받은 길이 를 반환 하는 메소드 이다.
+     *
+     * @param u UpdateInfo 형태 의 다운로드 할 파일 정보
+     * @return long 형태 의 staging 파일 에 받아 둔 길이, 처음 부터 받아야 하면 0
+     */
+    private long getResumeOffset(UpdateInfo u) {
+
+        if (u.isDirectory()) {
+
+            return 0;
+        }
+
+        return transferJournal.getResumeOffset(u.getFilePath(), u.getFileHash());
+    }
+
+    /**
+     * 다시 다운로드 할 수 있도록 FileResponse 의 정보 로 UpdateInfo 를 만드는 메소드 이다.
+     */
+    private static UpdateInfo toUpdateInfo(FileResponse r) {
+
+        UpdateInfo u = new UpdateInfo();
+
+        u.setFileName(r.getFileName());
+        u.setFilePath(r.getFilePath());
+        u.setDirectory(r.isDirectory());
+        u.setFileHash(r.getFileHash());
+        u.setFileSize(r.getFileSize());
+
+        return u;
     }
 }
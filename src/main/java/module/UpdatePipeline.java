@@ -0,0 +1,586 @@
+package module;
+
+import model.*;
+import network.FileResponseHandler;
+import network.ServerSession;
+import util.UpdateLog;
+import util.UpdateMetrics;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 로컬 트리 탐색, 비교, 다운로드 를 단계 별 스레드 로 나누어 동시에 수행 하는 클래스
+ * <p>
+ * 탐색 단계 는 디렉토리 하나 의 탐색 이 끝날 때 마다 그 디렉토리 를 scanned queue 에 넣는다.
+ * 비교 단계 는 서버 트리 의 같은 경로 디렉토리 와 자식 리스트 를 비교 해서 로컬 에 같은 내용 이 있는 파일 은 로컬 에서 옮기거나 복사 하고,
+ * 나머지 다운로드 할 파일 은 묶음 으로 만들어 transfer queue 에 넣는다.
+ * 삭제 할 파일 은 다른 경로 로 옮겨 질 수 있으므로 모든 단계 가 끝난 후 에 지운다. 다운로드 할 항목 과 경로 가 같은 항목 만 바로 지운다.
+ * 전송 단계 는 여러 연결 에서 transfer queue 의 묶음 을 꺼내 다운로드 한다.
+ * 두 queue 는 크기 가 제한 되어 있어 뒤 단계 가 느리면 앞 단계 가 기다린다.
+ * <p>
+ * 자식 디렉토리 의 탐색 이 부모 보다 먼저 끝나므로 비교 는 디렉토리 마다 한 단계 씩 이루어 진다.
+ * 서버 트리 에서 찾을 수 없는 디렉토리 는 미뤄 두었다가 서버 트리 에 있는 조상 디렉토리 가 끝날 때 하위 트리 전체 를 비교 한다.
+ * 자식 리스트 를 받지 않은 서버 디렉토리 는 Merkle 해시 가 다를 때 만 모듈 의 세션 으로 부분 트리 를 받는다.
+ * <p>
+ * 어느 단계 에서 든 예상 하지 못한 예외 가 나면 파이프라인 을 실패 로 표시 한다. 탐색 과 비교 는 멈추고,
+ * 전송 단계 는 남은 묶음 을 받지 않고 failedBatches 로 옮기며 END_OF_TRANSFER 를 만날 때 까지 queue 를 비운다.
+ * 따라서 한 단계 가 죽어도 다른 단계 가 queue 에서 영원히 기다리지 않는다.
+ */
+class UpdatePipeline {
+
+    private static final int SCANNED_QUEUE_CAPACITY = 1024;
+    private static final int BATCHES_PER_CONNECTION = 4;
+    private static final int MAX_BATCH_FILES = 256;
+    private static final long MAX_BATCH_BYTES = 16L * 1024 * 1024;
+    private static final int MAX_BATCHES_PER_TAKE = 2;
+    private static final long QUEUE_POLL_INTERVAL = 100;
+
+    private static final UpdateInfo END_OF_SCAN = new UpdateInfo();
+    private static final ArrayList<UpdateInfo> END_OF_TRANSFER = new ArrayList<>();
+
+    private static final String ERR_PIPELINE_INTERRUPTED = "update pipeline interrupted";
+    private static final String ERR_DOWNLOAD_DTO_FAILED = "download UpdateInfoTree failed!";
+    private static final String ERR_RESPONSE_DTO_FAILED = "download FileResponses failed!";
+    private static final String ERR_PIPELINE_FAILED = "update pipeline failed. check stack trace";
+
+    private final UpdateModule module;
+    private final String serverIP;
+    private final int portNumber;
+    private final int timeout;
+    private final int connections;
+
+    private final BlockingQueue<UpdateInfo> scanned = new ArrayBlockingQueue<>(SCANNED_QUEUE_CAPACITY);
+    private final BlockingQueue<ArrayList<UpdateInfo>> transfer;
+
+    private final List<UpdateInfo> result = Collections.synchronizedList(new ArrayList<UpdateInfo>());
+    private final Set<String> verified = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> failed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final List<ArrayList<UpdateInfo>> failedBatches =
+            Collections.synchronizedList(new ArrayList<ArrayList<UpdateInfo>>());
+
+    private final Set<UpdateInfo> deferred = Collections.newSetFromMap(new IdentityHashMap<UpdateInfo, Boolean>());
+    private final HashMap<String, UpdateInfo> serverIndex = new HashMap<>();
+    private final LocalFileReuser reuser;
+
+    private UpdateInfo clientRoot;
+    private UpdateInfo serverRoot;
+    private boolean isTreeFailed;
+    private volatile boolean isFailed;
+    private int batchCount;
+
+    private ArrayList<UpdateInfo> pending = new ArrayList<>();
+    private long pendingBytes;
+
+    private final FileResponseHandler handler;
+
+    /**
+     * 업데이트 파이프라인 을 생성 한다.
+     *
+     * @param module      UpdateModule 형태 의 prepareUpdate 가 끝난 모듈
+     * @param serverIP    String 형태 의 서버 아이피
+     * @param portNumber  int 형태 의 서버 포트 번호
+     * @param timeout     int 형태 의 Time out 으로 밀리세컨드(millisecond) 단위로 나타냄
+     * @param connections int 형태 의 동시에 사용할 다운로드 연결 수
+     */
+    UpdatePipeline(UpdateModule module, String serverIP, int portNumber, int timeout, int connections) {
+        this.module = module;
+        this.serverIP = serverIP;
+        this.portNumber = portNumber;
+        this.timeout = timeout;
+        this.connections = connections;
+        this.transfer = new ArrayBlockingQueue<>(connections * BATCHES_PER_CONNECTION);
+        this.handler = module.newResponseHandler(result, verified, failed);
+        this.reuser = new LocalFileReuser(module);
+    }
+
+    /**
+     * 세 단계 를 시작 하고 모두 끝날 때 까지 기다리는 메소드
+     * 비교 단계 는 호출 한 스레드 에서 실행 된다.
+     *
+     * @param dto UpdateInfoDTO 형태 의 서버 에서 받은 업데이트 정보
+     * @return ArrayList 형태 의 업데이트 가 재대로 되지 않은 파일 들, 서버 트리 를 받지 못한 경우 null
+     */
+    ArrayList<UpdateInfo> run(UpdateInfoDTO dto) {
+
+        final String local = module.getLocalPrefixPath();
+
+        clientRoot = new UpdateInfoTree(local).getRoot();
+        setServerRoot(dto.getRoot());
+
+        ExecutorService pool = Executors.newFixedThreadPool(connections + 1);
+        ArrayList<Future<?>> stages = new ArrayList<>();
+
+        stages.add(pool.submit(new Runnable() {
+            @Override
+            public void run() {
+                scan(local);
+            }
+        }));
+
+        for (int i = 0; i < connections; i++) {
+
+            stages.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runTransferWorker();
+                }
+            }));
+        }
+
+        try {
+
+            diff();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            UpdateLog.error(ERR_PIPELINE_INTERRUPTED);
+
+        } finally {
+
+            pool.shutdown();
+
+        }
+
+        for (Future<?> stage : stages) {
+
+            try {
+
+                stage.get();
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+
+            } catch (ExecutionException e) {
+
+                e.printStackTrace();
+
+            }
+        }
+
+        if (isFailed) {
+
+            return null;
+        }
+
+        module.deleteFiles(reuser.getDeferredDeletes());
+        verified.addAll(reuser.getReusedPaths());
+
+        module.getHashCache().retain(clientRoot, verified);
+        module.getHashCache().save();
+
+        if (isTreeFailed) {
+
+            UpdateLog.error(ERR_DOWNLOAD_DTO_FAILED);
+
+            return null;
+        }
+
+        if (batchCount > 0 && failedBatches.size() == batchCount) {
+
+            UpdateLog.error(ERR_RESPONSE_DTO_FAILED);
+
+        }
+
+        return UpdateModule.collectFailed(result, verified, failed, failedBatches);
+    }
+
+    /**
+     * 탐색 단계 로 디렉토리 탐색 이 끝날 때 마다 scanned queue 에 넣고, 끝나면 END_OF_SCAN 을 넣는다.
+     * 파이프라인 이 실패 하면 handler 에서 CancellationException 을 던져 탐색 을 멈춘다.
+     */
+    private void scan(String local) {
+
+        try {
+
+            UpdateInfoTree.createUpdateInfoTree(local.length(), local, clientRoot, module.getScanParallelism(),
+                    module.getHashCache(), new DirectoryScanHandler() {
+                        @Override
+                        public void onDirectoryScanned(UpdateInfo directory) {
+
+                            if (isFailed || !putScanned(directory)) {
+
+                                throw new CancellationException();
+                            }
+                        }
+                    });
+
+        } catch (CancellationException e) {
+
+            // 다른 단계 가 실패 하여 탐색 을 멈춘 경우 이다.
+
+        } catch (Throwable e) {
+
+            fail(e);
+
+        } finally {
+
+            putUninterruptibly(scanned, END_OF_SCAN);
+
+        }
+    }
+
+    /**
+     * 비교 단계 로 탐색 이 끝난 디렉토리 를 서버 트리 와 비교 한다.
+     * 새로 끝난 디렉토리 가 없을 때 는 모아 둔 다운로드 묶음 을 바로 전송 단계 로 넘긴다.
+     */
+    private void diff() throws InterruptedException {
+
+        try {
+
+            while (true) {
+
+                UpdateInfo directory = scanned.poll();
+
+                if (directory == null) {
+
+                    flushPending();
+                    directory = scanned.take();
+
+                }
+
+                if (directory == END_OF_SCAN) {
+
+                    break;
+                }
+
+                if (!isTreeFailed && !isFailed) {
+
+                    diffDirectory(directory);
+
+                }
+            }
+
+            flushPending();
+
+        } catch (RuntimeException | Error e) {
+
+            fail(e);
+            scanned.clear();
+
+        } finally {
+
+            transfer.put(END_OF_TRANSFER);
+
+        }
+    }
+
+    /**
+     * 탐색 이 끝난 디렉토리 하나 를 같은 경로 의 서버 디렉토리 와 비교 하는 메소드
+     */
+    private void diffDirectory(UpdateInfo directory) throws InterruptedException {
+
+        UpdateInfo server = findServerNode(directory);
+
+        if (server == null || !server.isDirectory()) {
+
+            deferred.add(directory);
+
+            return;
+        }
+
+        if (server.isPartial() && !module.fetchChangedSubtrees(directory, server)) {
+
+            long start = UpdateMetrics.startTimer();
+            UpdateInfoDTO dto = module.downloadUpdateInfoDTO(serverIP, portNumber, timeout);
+
+            UpdateMetrics.stopTimer(UpdateMetrics.PHASE_TREE, start);
+
+            if (dto == null) {
+
+                isTreeFailed = true;
+
+                return;
+            }
+
+            setServerRoot(dto.getRoot());
+            server = findServerNode(directory);
+
+            if (server == null || !server.isDirectory()) {
+
+                deferred.add(directory);
+
+                return;
+            }
+        }
+
+        ArrayList<UpdateInfo> downloadList = new ArrayList<>();
+        ArrayList<UpdateInfo> deleteList = new ArrayList<>();
+
+        long start = UpdateMetrics.startTimer();
+
+        UpdateInfoTree.compareDirectory(directory, server, deferred, downloadList, deleteList);
+        UpdateInfoTree.keepModifiedFiles(downloadList, deleteList);
+
+        UpdateMetrics.stopTimer(UpdateMetrics.PHASE_DIFF, start);
+
+        deleteConflicts(downloadList, deleteList);
+        reuser.deferDelete(deleteList);
+
+        for (UpdateInfo u : reuser.reuse(downloadList)) {
+
+            pending.add(u);
+            pendingBytes += UpdateModule.expectedSize(u);
+
+            if (pending.size() >= MAX_BATCH_FILES || pendingBytes >= MAX_BATCH_BYTES) {
+
+                flushPending();
+
+            }
+        }
+    }
+
+    /**
+     * 다운로드 할 항목 과 경로 가 같아 미룰 수 없는 삭제 항목 을 바로 지우고 deleteList 에서 뺀다.
+     * 파일 이 디렉토리 로 바뀌었거나 디렉토리 가 파일 로 바뀐 경우 이다.
+     */
+    private void deleteConflicts(ArrayList<UpdateInfo> downloadList, ArrayList<UpdateInfo> deleteList) {
+
+        if (deleteList.isEmpty()) {
+
+            return;
+        }
+
+        HashSet<String> downloadPaths = new HashSet<>();
+
+        for (UpdateInfo u : downloadList) {
+
+            downloadPaths.add(u.getFilePath());
+
+        }
+
+        ArrayList<UpdateInfo> conflicts = new ArrayList<>();
+
+        for (Iterator<UpdateInfo> it = deleteList.iterator(); it.hasNext(); ) {
+
+            UpdateInfo u = it.next();
+
+            if (downloadPaths.contains(u.getFilePath())) {
+
+                conflicts.add(u);
+                it.remove();
+
+            }
+        }
+
+        if (!conflicts.isEmpty()) {
+
+            module.deleteFiles(conflicts);
+
+        }
+    }
+
+    private UpdateInfo findServerNode(UpdateInfo directory) {
+
+        return directory == clientRoot ? serverRoot : serverIndex.get(directory.getFilePath());
+    }
+
+    /**
+     * 서버 트리 를 바꾸고 자식 리스트 가 있는 노드 들을 경로 로 색인 한다.
+     */
+    private void setServerRoot(UpdateInfo root) {
+
+        serverRoot = root;
+        serverIndex.clear();
+
+        ArrayDeque<UpdateInfo> stack = new ArrayDeque<>();
+
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+
+            for (UpdateInfo child : stack.pop().getChildList()) {
+
+                if (child.isDirectory()) {
+
+                    serverIndex.put(child.getFilePath(), child);
+                    stack.push(child);
+
+                }
+            }
+        }
+    }
+
+    /**
+     * 모아 둔 다운로드 항목 을 하나 의 묶음 으로 전송 단계 에 넘긴다. transfer queue 가 가득 차 있으면 기다린다.
+     */
+    private void flushPending() throws InterruptedException {
+
+        if (pending.isEmpty()) {
+
+            return;
+        }
+
+        transfer.put(pending);
+        batchCount++;
+
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+    }
+
+    /**
+     * 전송 단계 작업 으로 END_OF_TRANSFER 를 만날 때 까지 transfer queue 의 묶음 을 다운로드 한다.
+     * 세션 을 사용할 수 있으면 자신 의 세션 으로 한번 에 최대 MAX_BATCHES_PER_TAKE 개 의 묶음 을 미리 요청 하며 받고,
+     * 아니면 묶음 마다 새 연결 로 받는다.
+     */
+    private void runTransferWorker() {
+
+        ServerSession workerSession = module.isSessionAvailable()
+                ? module.newSession(serverIP, portNumber, timeout) : null;
+        boolean isEnd = false;
+
+        try {
+
+            while (!isEnd) {
+
+                ArrayDeque<ArrayList<UpdateInfo>> batches = new ArrayDeque<>();
+
+                batches.add(transfer.take());
+                transfer.drainTo(batches, MAX_BATCHES_PER_TAKE - 1);
+
+                long start = UpdateMetrics.startTimer();
+
+                for (Iterator<ArrayList<UpdateInfo>> it = batches.iterator(); it.hasNext(); ) {
+
+                    if (it.next() == END_OF_TRANSFER) {
+
+                        it.remove();
+                        isEnd = true;
+
+                    }
+                }
+
+                if (isEnd) {
+
+                    transfer.put(END_OF_TRANSFER);
+
+                }
+
+                try {
+
+                    if (!isFailed && workerSession != null && workerSession.isOpen()) {
+
+                        workerSession.download(batches, handler, failedBatches);
+
+                    }
+
+                    ArrayList<UpdateInfo> batch;
+
+                    while (!isFailed && (batch = batches.poll()) != null) {
+
+                        if (!module.downloadBatch(serverIP, portNumber, timeout, batch, handler)) {
+
+                            failedBatches.add(batch);
+
+                        }
+                    }
+
+                } catch (Throwable e) {
+
+                    fail(e);
+
+                } finally {
+
+                    failedBatches.addAll(batches);
+
+                }
+
+                UpdateMetrics.recordDownload(start);
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } finally {
+
+            if (workerSession != null) {
+
+                workerSession.close();
+
+            }
+        }
+    }
+
+    /**
+     * 파이프라인 을 실패 로 표시 하는 메소드 로 처음 실패 할 때 만 로그 를 남긴다.
+     */
+    private void fail(Throwable e) {
+
+        e.printStackTrace();
+
+        if (!isFailed) {
+
+            isFailed = true;
+            UpdateLog.error(ERR_PIPELINE_FAILED);
+
+        }
+    }
+
+    /**
+     * 탐색 이 끝난 디렉토리 를 scanned queue 에 넣는다. queue 가 가득 차 있으면 기다리며, 기다리는 중 에 파이프라인 이 실패 하면 넣지 않는다.
+     *
+     * @return boolean 형태 로 넣었으면 true, 파이프라인 이 실패 했으면 false
+     */
+    private boolean putScanned(UpdateInfo directory) {
+
+        boolean isInterrupted = false;
+
+        try {
+
+            while (!isFailed) {
+
+                try {
+
+                    if (scanned.offer(directory, QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+
+                        return true;
+                    }
+
+                } catch (InterruptedException e) {
+
+                    isInterrupted = true;
+
+                }
+            }
+
+            return false;
+
+        } finally {
+
+            if (isInterrupted) {
+
+                Thread.currentThread().interrupt();
+
+            }
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item) {
+
+        boolean isInterrupted = false;
+
+        while (true) {
+
+            try {
+
+                queue.put(item);
+
+                break;
+
+            } catch (InterruptedException e) {
+
+                isInterrupted = true;
+
+            }
+        }
+
+        if (isInterrupted) {
+
+            Thread.currentThread().interrupt();
+
+        }
+    }
+}
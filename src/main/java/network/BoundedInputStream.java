@@ -0,0 +1,84 @@
+package network;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 소켓 스트림 에서 정해진 길이 만큼 만 읽게 해주는 클래스
+ * <p>
+ * 길이 가 앞에 붙어 오는 메시지 를 메모리 에 복사 하지 않고 바로 해석 할 때 사용 한다.
+ * 정해진 길이 를 다 읽으면 끝 으로 보며, close 는 내부 스트림 을 닫지 않고 읽지 않은 나머지 를 읽어 버려
+ * 다음 메시지 의 위치 로 스트림 을 맞춘다.
+ */
+class BoundedInputStream extends InputStream {
+
+    private final InputStream in;
+    private long remaining;
+
+    /**
+     * 읽을 스트림 과 길이 를 받아 생성 한다.
+     *
+     * @param in     InputStream 형태의 소켓 입력 스트림
+     * @param length long 형태의 읽을 수 있는 길이
+     */
+    BoundedInputStream(InputStream in, long length) {
+        this.in = in;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (remaining <= 0) {
+
+            return -1;
+        }
+
+        int b = in.read();
+
+        if (b != -1) {
+
+            remaining--;
+
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (remaining <= 0) {
+
+            return -1;
+        }
+
+        int count = in.read(b, off, (int) Math.min(len, remaining));
+
+        if (count > 0) {
+
+            remaining -= count;
+
+        }
+
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    /**
+     * 읽지 않은 나머지 를 읽어 버린다. 내부 스트림 은 닫지 않는다.
+     */
+    @Override
+    public void close() throws IOException {
+
+        byte[] buffer = new byte[8192];
+
+        while (remaining > 0 && read(buffer, 0, buffer.length) != -1) {
+            // 나머지 를 버린다.
+        }
+    }
+}
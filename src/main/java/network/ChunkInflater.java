@@ -0,0 +1,75 @@
+package network;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 압축 된 chunk 를 읽어 원래 데이터 로 푸는 클래스
+ * <p>
+ * 서버 는 각 chunk 를 독립 된 deflate 스트림 으로 압축 하므로 Inflater 를 chunk 마다 reset 해서 재사용 한다.
+ * 압축 된 데이터 를 담는 버퍼 도 인스턴스 안에서 재사용 된다. 한 스레드 에서만 사용 해야 한다.
+ */
+class ChunkInflater {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Inflater inflater = new Inflater();
+    private byte[] compressed = new byte[DEFAULT_BUFFER_SIZE];
+
+    /**
+     * 압축 된 chunk 를 모두 읽은 후 target 에 푸는 메소드
+     * 풀기 에 실패 해도 압축 된 데이터 는 모두 읽으므로 스트림 의 위치 는 chunk 의 CRC 앞 이다.
+     *
+     * @param in               DataInputStream 형태의 소켓 입력 스트림
+     * @param compressedLength int 형태의 압축 된 데이터 길이
+     * @param target           byte[] 형태의 풀린 데이터 를 담을 버퍼
+     * @param rawLength        int 형태의 풀린 데이터 의 길이
+     * @return boolean 형태로 정확히 rawLength byte 로 풀렸으면 true
+     * @throws IOException 소켓 에서 읽는 도중 에러 가 발생한 경우
+     */
+    boolean inflate(DataInputStream in, int compressedLength, byte[] target, int rawLength) throws IOException {
+
+        if (compressed.length < compressedLength) {
+
+            compressed = new byte[compressedLength];
+
+        }
+
+        in.readFully(compressed, 0, compressedLength);
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+
+        try {
+
+            int inflated = 0;
+
+            while (inflated < rawLength && !inflater.finished()) {
+
+                int count = inflater.inflate(target, inflated, rawLength - inflated);
+
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+
+                    return false;
+                }
+
+                inflated += count;
+            }
+
+            return inflated == rawLength;
+
+        } catch (DataFormatException e) {
+
+            return false;
+        }
+    }
+
+    /**
+     * Inflater 의 native 자원 을 해제 하는 메소드
+     */
+    void end() {
+        inflater.end();
+    }
+}
@@ -0,0 +1,215 @@
+package network;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * chunk 단위 로 전송 되는 파일 내용 을 하나의 InputStream 으로 읽게 해주는 클래스
+ * <p>
+ * 각 chunk 는 int 형태의 길이, 데이터, int 형태의 CRC32 값 으로 이루어 지며 길이 가 0 인 chunk 가 파일 의 끝 이다.
+ * 압축 이 협상 된 경우 길이 에 COMPRESSED_FLAG 가 설정 된 chunk 는 int 형태의 압축 된 길이, int 형태의 원래 길이,
+ * deflate 로 압축 된 데이터, 원래 데이터 의 CRC32 값 으로 이루어 진다.
+ * CRC 가 맞지 않는 chunk 를 읽으면 IOException 이 발생 한다.
+ * 한번에 하나의 chunk 만 메모리 에 올리므로 사용 하는 메모리 는 파일 크기 와 관계 없이 chunk 크기 로 제한 된다.
+ */
+public class ChunkedInputStream extends InputStream {
+
+    /**
+     * 허용 하는 chunk 의 최대 크기 로 이보다 큰 길이 는 프로토콜 에러 로 처리 한다.
+     */
+    public static final int MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * chunk 길이 에 설정 되어 압축 된 chunk 임을 나타내는 bit 이다.
+     */
+    public static final int COMPRESSED_FLAG = 0x80000000;
+
+    private static final String ERR_CHUNK_CORRUPTED = "chunk checksum mismatch";
+    private static final String ERR_CHUNK_SIZE = "invalid chunk size : ";
+
+    private final DataInputStream in;
+    private final ChunkInflater inflater;
+    private final CRC32 crc = new CRC32();
+
+    private byte[] chunk;
+    private int position;
+    private int limit;
+    private boolean isEnd;
+
+    /**
+     * chunk 를 읽을 스트림 과 재사용 할 버퍼 를 받아 생성 한다.
+     *
+     * @param in     DataInputStream 형태의 소켓 입력 스트림
+     * @param buffer byte[] 형태의 재사용 할 chunk 버퍼 로 더 큰 chunk 가 오면 새로 할당 한다.
+     */
+    public ChunkedInputStream(DataInputStream in, byte[] buffer) {
+        this(in, buffer, null);
+    }
+
+    /**
+     * 압축 된 chunk 도 읽을 수 있는 스트림 을 생성 한다.
+     *
+     * @param in       DataInputStream 형태의 소켓 입력 스트림
+     * @param buffer   byte[] 형태의 재사용 할 chunk 버퍼 로 더 큰 chunk 가 오면 새로 할당 한다.
+     * @param inflater ChunkInflater 형태의 압축 된 chunk 를 풀 inflater, 압축 이 협상 되지 않았으면 null
+     */
+    ChunkedInputStream(DataInputStream in, byte[] buffer, ChunkInflater inflater) {
+        this.in = in;
+        this.chunk = buffer;
+        this.inflater = inflater;
+    }
+
+    /**
+     * 현재 사용 중인 chunk 버퍼 를 반환 하는 메소드 로 다음 파일 에서 재사용 하기 위해 사용 한다.
+     *
+     * @return byte[] 형태의 chunk 버퍼
+     */
+    public byte[] getBuffer() {
+        return chunk;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (!fill()) {
+
+            return -1;
+        }
+
+        return chunk[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) {
+
+            return 0;
+        }
+
+        if (!fill()) {
+
+            return -1;
+        }
+
+        int count = Math.min(len, limit - position);
+
+        System.arraycopy(chunk, position, b, off, count);
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    /**
+     * 읽지 않은 나머지 chunk 들을 모두 읽어 버리는 메소드
+     * 파일 처리 도중 에러 가 발생 해도 다음 파일 의 헤더 위치 로 스트림 을 맞추기 위해 사용 한다.
+     *
+     * @throws IOException 소켓 에서 읽는 도중 에러 가 발생한 경우
+     */
+    public void drain() throws IOException {
+
+        while (!isEnd) {
+
+            position = limit;
+
+            try {
+
+                fill();
+
+            } catch (ChunkCorruptedException e) {
+
+                position = limit;
+            }
+        }
+    }
+
+    /**
+     * 현재 chunk 를 다 읽었을 경우 다음 chunk 를 읽는다.
+     *
+     * @return boolean 형태로 읽을 데이터 가 남아 있으면 true, 파일 의 끝 이면 false
+     */
+    private boolean fill() throws IOException {
+
+        while (position >= limit) {
+
+            if (isEnd) {
+
+                return false;
+            }
+
+            int header = in.readInt();
+            boolean isCompressed = inflater != null && (header & COMPRESSED_FLAG) != 0;
+            int length = isCompressed ? header & ~COMPRESSED_FLAG : header;
+
+            if (length < 0 || length > MAX_CHUNK_SIZE) {
+
+                throw new IOException(ERR_CHUNK_SIZE + header);
+            }
+
+            if (length == 0) {
+
+                isEnd = true;
+
+                return false;
+            }
+
+            int rawLength = isCompressed ? in.readInt() : length;
+
+            if (rawLength <= 0 || rawLength > MAX_CHUNK_SIZE) {
+
+                throw new IOException(ERR_CHUNK_SIZE + rawLength);
+            }
+
+            if (chunk.length < rawLength) {
+
+                chunk = new byte[rawLength];
+            }
+
+            boolean isInflated = true;
+
+            if (isCompressed) {
+
+                isInflated = inflater.inflate(in, length, chunk, rawLength);
+
+            } else {
+
+                in.readFully(chunk, 0, length);
+
+            }
+
+            position = 0;
+            limit = rawLength;
+
+            crc.reset();
+            crc.update(chunk, 0, rawLength);
+
+            if (in.readInt() != (int) crc.getValue() || !isInflated) {
+
+                position = limit;
+
+                throw new ChunkCorruptedException(ERR_CHUNK_CORRUPTED);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * chunk 의 CRC 가 맞지 않을 때 발생 하는 예외 로 스트림 의 위치 는 다음 chunk 의 시작 이다.
+     */
+    public static class ChunkCorruptedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        ChunkCorruptedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package network;
+
+import model.FileResponse;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * chunk 단위 로 전송 되는 파일 응답 들을 읽어 handler 에 전달 하는 클래스
+ * <p>
+ * 서버 는 파일 마다 FRAME_FILE, 경로, 파일명, 해쉬값, 디렉토리 여부, 파일 크기 를 보낸 후
+ * ChunkedInputStream 형식 의 chunk 들을 보내고, 모든 파일 을 보낸 후 FRAME_END 를 보낸다.
+ * 델타 요청 에 대한 응답 에서 는 FRAME_FILE 대신 FRAME_DELTA 와 같은 헤더 를 보낸 후 DeltaInputStream 형식 의 델타 를 보낼 수 있다.
+ * 이어 받기 요청 에 대한 응답 에서 는 FRAME_RANGE 와 같은 헤더, 시작 위치 를 보낸 후 그 위치 부터 의 chunk 들을 보낼 수 있다.
+ * chunk 버퍼 는 인스턴스 안에서 재사용 된다.
+ */
+class ChunkedResponseReader {
+
+    static final byte FRAME_END = 0;
+    static final byte FRAME_FILE = 1;
+    static final byte FRAME_DELTA = 2;
+    static final byte FRAME_RANGE = 3;
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final String ERR_UNKNOWN_FRAME = "unknown frame from server : ";
+
+    private byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+    private ChunkInflater inflater;
+
+    /**
+     * 압축 이 협상 된 후 압축 된 chunk 를 풀 inflater 를 설정 하는 메소드
+     *
+     * @param inflater ChunkInflater 형태의 inflater, 압축 하지 않으면 null
+     */
+    void setInflater(ChunkInflater inflater) {
+        this.inflater = inflater;
+    }
+
+    /**
+     * FRAME_END 를 만날 때 까지 파일 응답 들을 읽어 handler 에 전달 하는 메소드
+     * handler 가 파일 내용 을 다 읽지 않아도 다음 파일 의 헤더 위치 로 스트림 을 맞춘다.
+     *
+     * @param in      DataInputStream 형태의 소켓 입력 스트림
+     * @param handler FileResponseHandler 형태의 받은 파일 을 처리할 handler
+     * @throws IOException 통신 에러 또는 알 수 없는 frame 을 받은 경우
+     */
+    void readFiles(DataInputStream in, FileResponseHandler handler) throws IOException {
+
+        byte frame;
+
+        while ((frame = in.readByte()) != FRAME_END) {
+
+            if (frame != FRAME_FILE && frame != FRAME_DELTA && frame != FRAME_RANGE) {
+
+                throw new IOException(ERR_UNKNOWN_FRAME + frame);
+
+            }
+
+            FileResponse response = new FileResponse();
+
+            response.setFilePath(in.readUTF());
+            response.setFileName(in.readUTF());
+            response.setFileHash(in.readUTF());
+            response.setDirectory(in.readBoolean());
+            response.setFileSize(in.readLong());
+
+            if (frame == FRAME_DELTA) {
+
+                readDelta(in, response, handler);
+
+                continue;
+            }
+
+            long offset = frame == FRAME_RANGE ? in.readLong() : 0;
+            ChunkedInputStream content = new ChunkedInputStream(in, buffer, inflater);
+
+            try {
+
+                if (frame == FRAME_RANGE) {
+
+                    handler.onRangeResponse(response, offset, content);
+
+                } else {
+
+                    handler.onFileResponse(response, content);
+
+                }
+
+            } finally {
+
+                content.drain();
+                buffer = content.getBuffer();
+
+            }
+        }
+    }
+
+    private void readDelta(DataInputStream in, FileResponse response, FileResponseHandler handler) throws IOException {
+
+        DeltaInputStream delta = new DeltaInputStream(in, in.readInt(), buffer);
+
+        try {
+
+            handler.onDeltaResponse(response, delta);
+
+        } finally {
+
+            delta.drain();
+            buffer = delta.getBuffer();
+
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package network;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * 델타 명령 들을 읽어 새 파일 의 내용 을 하나의 InputStream 으로 읽게 해주는 클래스
+ * <p>
+ * 명령 은 서버 가 보내는 형식 으로 OP_COPY 는 로컬 사본(basis) 의 블록 들을 복사 하고,
+ * OP_LITERAL 은 int 형태의 길이, 데이터, int 형태의 CRC32 값 으로 새 데이터 를 전달 하며, OP_END 가 끝 이다.
+ * OP_COPY 를 읽기 전에 setBasis 로 로컬 사본 을 지정 해야 한다.
+ */
+public class DeltaInputStream extends InputStream {
+
+    static final byte OP_END = 0;
+    static final byte OP_COPY = 1;
+    static final byte OP_LITERAL = 2;
+
+    private static final String ERR_NO_BASIS = "delta copy without basis file";
+    private static final String ERR_BASIS_TOO_SHORT = "delta copy beyond basis file";
+    private static final String ERR_COPY_RANGE = "invalid delta copy : ";
+    private static final String ERR_LITERAL_CORRUPTED = "delta literal checksum mismatch";
+    private static final String ERR_LITERAL_SIZE = "invalid delta literal size : ";
+    private static final String ERR_UNKNOWN_OP = "unknown delta op : ";
+
+    private final DataInputStream in;
+    private final int blockSize;
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel basis;
+    private byte[] buffer;
+    private ByteBuffer wrapper;
+    private int position;
+    private int limit;
+
+    private long copyOffset;
+    private long copyRemaining;
+    private boolean isEnd;
+
+    /**
+     * 명령 을 읽을 스트림 과 블록 크기, 재사용 할 버퍼 를 받아 생성 한다.
+     *
+     * @param in        DataInputStream 형태의 소켓 입력 스트림
+     * @param blockSize int 형태의 서명 에 사용 한 블록 크기
+     * @param buffer    byte[] 형태의 재사용 할 버퍼 로 더 큰 literal 이 오면 새로 할당 한다.
+     */
+    public DeltaInputStream(DataInputStream in, int blockSize, byte[] buffer) {
+        this.in = in;
+        this.blockSize = blockSize;
+        this.buffer = buffer;
+        this.wrapper = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * OP_COPY 에서 읽을 로컬 사본 을 지정 하는 메소드
+     *
+     * @param basis FileChannel 형태의 읽기 용 로컬 사본 채널
+     */
+    public void setBasis(FileChannel basis) {
+        this.basis = basis;
+    }
+
+    /**
+     * 서명 에 사용 한 블록 크기 를 반환 하는 메소드
+     *
+     * @return int 형태의 블록 크기
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 현재 사용 중인 버퍼 를 반환 하는 메소드 로 다음 파일 에서 재사용 하기 위해 사용 한다.
+     *
+     * @return byte[] 형태의 버퍼
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (!fill()) {
+
+            return -1;
+        }
+
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) {
+
+            return 0;
+        }
+
+        if (!fill()) {
+
+            return -1;
+        }
+
+        int count = Math.min(len, limit - position);
+
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+
+        return count;
+    }
+
+    /**
+     * OP_END 까지 남은 명령 을 로컬 사본 을 읽지 않고 건너 뛰는 메소드
+     * 다음 응답 을 읽을 수 있도록 스트림 위치 를 맞춘다.
+     *
+     * @throws IOException 통신 에러 가 발생한 경우
+     */
+    public void drain() throws IOException {
+
+        copyRemaining = 0;
+        position = limit;
+
+        while (!isEnd) {
+
+            byte op = in.readByte();
+
+            if (op == OP_END) {
+
+                isEnd = true;
+
+            } else if (op == OP_COPY) {
+
+                UpdateInfoCodec.readVarLong(in);
+                UpdateInfoCodec.readVarLong(in);
+
+            } else if (op == OP_LITERAL) {
+
+                int length = readLiteralLength();
+
+                in.skipBytes(length);
+                in.readInt();
+
+            } else {
+
+                throw new IOException(ERR_UNKNOWN_OP + op);
+            }
+        }
+    }
+
+    /**
+     * 버퍼 에 읽을 데이터 가 없으면 다음 명령 을 처리 해서 버퍼 를 채운다.
+     *
+     * @return boolean 형태로 읽을 데이터 가 있으면 true, OP_END 에 도달 하면 false
+     */
+    private boolean fill() throws IOException {
+
+        while (position >= limit) {
+
+            if (copyRemaining > 0) {
+
+                readBasis();
+
+                continue;
+            }
+
+            if (isEnd) {
+
+                return false;
+            }
+
+            byte op = in.readByte();
+
+            if (op == OP_END) {
+
+                isEnd = true;
+
+            } else if (op == OP_COPY) {
+
+                readCopy();
+
+            } else if (op == OP_LITERAL) {
+
+                readLiteral();
+
+            } else {
+
+                throw new IOException(ERR_UNKNOWN_OP + op);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * OP_COPY 의 시작 블록 과 블록 수 를 읽어 복사 할 범위 를 정한다.
+     * 범위 가 음수 이거나 long 을 넘치거나 로컬 사본 을 벗어나면 FileChannel 에서 예외 가 나기 전에 IOException 으로 거부 한다.
+     */
+    private void readCopy() throws IOException {
+
+        if (basis == null) {
+
+            throw new IOException(ERR_NO_BASIS);
+        }
+
+        long offsetBlocks = UpdateInfoCodec.readVarLong(in);
+        long countBlocks = UpdateInfoCodec.readVarLong(in);
+        long basisLength = basis.size();
+
+        if (blockSize <= 0 || offsetBlocks < 0 || countBlocks < 0
+                || offsetBlocks > basisLength / blockSize || countBlocks > basisLength / blockSize) {
+
+            throw new IOException(ERR_COPY_RANGE + offsetBlocks + ", " + countBlocks);
+        }
+
+        long offset = offsetBlocks * blockSize;
+        long length = countBlocks * blockSize;
+
+        if (length > basisLength - offset) {
+
+            throw new IOException(ERR_BASIS_TOO_SHORT);
+        }
+
+        copyOffset = offset;
+        copyRemaining = length;
+    }
+
+    private void readBasis() throws IOException {
+
+        int length = (int) Math.min(buffer.length, copyRemaining);
+
+        wrapper.clear();
+        wrapper.limit(length);
+
+        while (wrapper.hasRemaining()) {
+
+            if (basis.read(wrapper, copyOffset + wrapper.position()) == -1) {
+
+                throw new IOException(ERR_BASIS_TOO_SHORT);
+            }
+        }
+
+        copyOffset += length;
+        copyRemaining -= length;
+        position = 0;
+        limit = length;
+    }
+
+    private void readLiteral() throws IOException {
+
+        int length = readLiteralLength();
+
+        if (length > buffer.length) {
+
+            buffer = new byte[length];
+            wrapper = ByteBuffer.wrap(buffer);
+
+        }
+
+        in.readFully(buffer, 0, length);
+
+        crc.reset();
+        crc.update(buffer, 0, length);
+
+        if ((int) crc.getValue() != in.readInt()) {
+
+            throw new ChunkedInputStream.ChunkCorruptedException(ERR_LITERAL_CORRUPTED);
+        }
+
+        position = 0;
+        limit = length;
+    }
+
+    private int readLiteralLength() throws IOException {
+
+        int length = in.readInt();
+
+        if (length <= 0 || length > ChunkedInputStream.MAX_CHUNK_SIZE) {
+
+            throw new IOException(ERR_LITERAL_SIZE + length);
+        }
+
+        return length;
+    }
+}
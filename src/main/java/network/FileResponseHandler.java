@@ -0,0 +1,60 @@
+package network;
+
+import model.FileResponse;
+import model.UpdateInfo;
+import util.BlockSignature;
+
+import java.io.InputStream;
+
+/**
+ * 서버 에서 FileResponse 를 하나 받을 때 마다 호출 되는 콜백 인터페이스
+ * <p>
+ * FileResponse 는 소켓 에서 읽히는 즉시 전달 되며, 처리 후 참조 를 유지 하지 않으면
+ * 다음 FileResponse 를 읽기 전에 메모리 에서 해제 될 수 있다.
+ * 파일 내용 은 content 스트림 으로 전달 되며 콜백 이 끝난 후 에는 읽을 수 없다.
+ */
+public interface FileResponseHandler {
+
+    /**
+     * 서버 에서 받은 FileResponse 를 처리 하는 메소드
+     *
+     * @param response FileResponse 형태의 서버 에서 받은 파일 정보
+     * @param content  InputStream 형태의 파일 내용 으로 디렉토리 일 경우 비어 있다.
+     */
+    void onFileResponse(FileResponse response, InputStream content);
+
+    /**
+     * 서버 에서 이어 받기 로 받은 FileResponse 를 처리 하는 메소드
+     * content 는 파일 의 offset 위치 부터 의 내용 이다.
+     *
+     * @param response FileResponse 형태의 서버 에서 받은 파일 정보
+     * @param offset   long 형태의 content 가 시작 되는 파일 내 위치
+     * @param content  InputStream 형태의 offset 이후 의 파일 내용
+     */
+    void onRangeResponse(FileResponse response, long offset, InputStream content);
+
+    /**
+     * 서버 에서 델타 로 받은 FileResponse 를 처리 하는 메소드
+     * delta 에 로컬 사본 을 지정 한 후 읽으면 새 파일 의 내용 이 나온다.
+     *
+     * @param response FileResponse 형태의 서버 에서 받은 파일 정보
+     * @param delta    DeltaInputStream 형태의 로컬 사본 과 의 차이 로 표현 된 파일 내용
+     */
+    void onDeltaResponse(FileResponse response, DeltaInputStream delta);
+
+    /**
+     * 델타 요청 에 보낼 로컬 사본 의 블록 서명 을 반환 하는 메소드
+     *
+     * @param request UpdateInfo 형태의 다운로드 할 파일 정보
+     * @return BlockSignature 형태의 로컬 사본 의 서명, 전체 파일 을 받아야 하면 null
+     */
+    BlockSignature getBasisSignature(UpdateInfo request);
+
+    /**
+     * 이어 받기 요청 에 보낼 이미 받은 길이 를 반환 하는 메소드
+     *
+     * @param request UpdateInfo 형태의 다운로드 할 파일 정보
+     * @return long 형태의 이전 시도 에서 검증 된 길이, 처음 부터 받아야 하면 0
+     */
+    long getResumeOffset(UpdateInfo request);
+}
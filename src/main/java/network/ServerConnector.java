@@ -2,21 +2,78 @@ package network;
 
 import model.DownloadRequestDTO;
 import model.FileResponse;
+import model.ManifestFile;
 import model.UpdateInfoDTO;
+import util.UpdateLog;
+import util.UpdateMetrics;
 
 import java.io.*;
 import java.net.*;
-import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * 서버와 통신을 담당하는 클래스
  * Update Info Tree 를 서버로 부터 다운로드 하는 기능과
  * DownloadRequestDTO 를 보내 서버로 부터 FileResponse 들을 다운로드 하는 기능이 있다.
+ * 소켓 과 스트림 은 메소드 마다 지역 변수 로 사용 하므로 여러 스레드 에서 동시에 호출 할 수 있다.
  */
 public class ServerConnector {
 
     private static final String REQUEST_UPDATE_INFO_TREE = "updateInfoDTO";
     private static final String REQUEST_DOWNLOAD_DTO = "downloadRequestDTO";
+    private static final String REQUEST_DOWNLOAD_CHUNKED = "downloadRequestChunked";
+    private static final String REQUEST_CAPABILITIES = "capabilities";
+    private static final String REQUEST_UPDATE_INFO_BINARY = "updateInfoBinary";
+    private static final String REQUEST_DOWNLOAD_BINARY = "downloadRequestBinary";
+    private static final String RESPONSE_CAPABILITIES = "capabilities:";
+    private static final String CAPABILITY_SEPARATOR = ",";
+
+    /**
+     * 서버 가 chunk 단위 파일 전송 을 지원 함을 나타내는 capability 이다.
+     */
+    public static final String CAPABILITY_CHUNKED = "chunked";
+
+    /**
+     * 서버 가 하나의 연결 로 여러 요청 을 처리 하는 세션 모드 를 지원 함을 나타내는 capability 이다.
+     */
+    public static final String CAPABILITY_SESSION = "session";
+
+    /**
+     * 서버 가 UpdateInfoCodec 바이너리 형식 의 트리 와 다운로드 요청 을 지원 함을 나타내는 capability 이다.
+     */
+    public static final String CAPABILITY_BINARY = "binary";
+
+    /**
+     * 서버 가 세션 에서 깊이 를 제한 한 트리 와 부분 트리 요청 을 지원 함을 나타내는 capability 이다.
+     * 세션 과 바이너리 형식 을 함께 지원 하는 서버 만 사용 한다.
+     */
+    public static final String CAPABILITY_SUBTREE = "subtree";
+
+    /**
+     * 서버 가 세션 에서 로컬 사본 의 블록 서명 을 받아 바뀐 부분 만 보내는 델타 다운로드 를 지원 함을 나타내는 capability 이다.
+     * 세션 과 바이너리 형식 을 함께 지원 하는 서버 만 사용 한다.
+     */
+    public static final String CAPABILITY_DELTA = "delta";
+
+    /**
+     * 서버 가 세션 에서 파일 chunk 와 트리 응답 을 deflate 로 압축 해서 보낼 수 있음 을 나타내는 capability 이다.
+     */
+    public static final String CAPABILITY_DEFLATE = "deflate";
+
+    /**
+     * 서버 가 세션 에서 이미 받은 길이 이후 부터 파일 을 보내는 이어 받기 를 지원 함을 나타내는 capability 이다.
+     * 세션 과 바이너리 형식 을 함께 지원 하는 서버 만 사용 한다.
+     */
+    public static final String CAPABILITY_RANGE = "range";
+
+    /**
+     * 서버 가 세션 에서 트리 대신 트리 버전 문자열 만 보내는 probe 요청 을 지원 함을 나타내는 capability 이다.
+     * 세션 을 지원 하는 서버 만 사용 한다.
+     */
+    public static final String CAPABILITY_PROBE = "probe";
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
 
     private static final String NEW_LINE = "\n";
 
@@ -29,6 +86,7 @@ public class ServerConnector {
     private static final String MSG_DOWNLOAD_FILE_RESPONSE = "download FileResponses...";
     private static final String MSG_FILE_RESPONSE_DOWNLOADED = "download FileResponses complete";
     private static final String MSG_DISCONNECTED_SERVER = "Disconnected from update server";
+    private static final String MSG_LEGACY_SERVER = "server does not report capabilities. use legacy protocol";
 
     private static final String ERR_SERVER_NOT_FOUND = "server not found. check IP or Network state";
     private static final String ERR_UPDATE_INFO_TREE_CLASS_NOT_FOUND = "UpdateInfoTree class not found. check Java class";
@@ -38,12 +96,6 @@ public class ServerConnector {
     private static final String ERR_SERVER_IS_BUSY = "server is busy now";
 
     private static ServerConnector instance;
-    private Socket socket;
-    private BufferedWriter bw = null;
-    private OutputStreamWriter osw = null;
-
-    private ObjectOutputStream oos = null;
-    private ObjectInputStream ois = null;
 
     /**
      * Single-tone 패턴을 위해서 생성자는 외부에서 호출하지 못하게 한다.
@@ -78,147 +130,231 @@ public class ServerConnector {
     public UpdateInfoDTO getUpdateInfoDTO(String serverIP, int port, int timeout) {
 
         UpdateInfoDTO result = null;
+        Socket socket = null;
+        BufferedWriter bw = null;
+        ObjectInputStream ois = null;
 
         try {
 
-            System.out.println(MSG_TRY_CONNECT_SERVER);
+            UpdateLog.debug(MSG_TRY_CONNECT_SERVER);
 
             SocketAddress target = new InetSocketAddress(serverIP, port);
 
             socket = new Socket();
             socket.setSoTimeout(timeout);
-            socket.connect(target, timeout);
+            connect(socket, target, timeout);
 
-            osw = new OutputStreamWriter(socket.getOutputStream());
-            bw = new BufferedWriter(osw);
+            bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
 
-            System.out.println(MSG_CONNECTED_SERVER);
+            UpdateLog.debug(MSG_CONNECTED_SERVER);
 
             bw.write(REQUEST_UPDATE_INFO_TREE + NEW_LINE);
             bw.flush();
 
-            System.out.println(MSG_SEND_UPDATE_TREE_REQUEST);
+            UpdateLog.info(MSG_SEND_UPDATE_TREE_REQUEST);
 
             ois = new ObjectInputStream(socket.getInputStream());
 
-            System.out.println(MSG_DOWNLOAD_UPDATE_TREE);
+            UpdateLog.info(MSG_DOWNLOAD_UPDATE_TREE);
+
+            long start = UpdateMetrics.startCpuTimer();
 
             result = (UpdateInfoDTO) ois.readObject();
 
-            System.out.println(MSG_UPDATE_TREE_DOWNLOADED);
+            UpdateMetrics.stopCpuTimer(UpdateMetrics.PHASE_DECODE, start);
+
+            UpdateLog.info(MSG_UPDATE_TREE_DOWNLOADED);
 
         } catch (UnknownHostException e) {
 
-            System.out.println(ERR_SERVER_NOT_FOUND);
+            UpdateLog.error(ERR_SERVER_NOT_FOUND);
 
         } catch (ClassCastException e) {
 
-            System.out.println(ERR_SERVER_IS_BUSY);
+            UpdateLog.error(ERR_SERVER_IS_BUSY);
 
         } catch (ClassNotFoundException e) {
 
             e.printStackTrace();
-            System.out.println(ERR_UPDATE_INFO_TREE_CLASS_NOT_FOUND);
+            UpdateLog.error(ERR_UPDATE_INFO_TREE_CLASS_NOT_FOUND);
 
         } catch (SocketTimeoutException e) {
 
-            System.out.println(ERR_CONNECTION_TIME_OUT);
+            UpdateLog.error(ERR_CONNECTION_TIME_OUT);
 
         } catch (IOException e) {
 
             e.printStackTrace();
-            System.out.println(ERR_IO_FAILED);
+            UpdateLog.error(ERR_IO_FAILED);
 
         } finally {
 
-            try {
+            close(socket, bw, ois, null);
 
-                if (socket.isConnected()) {
+        }
 
-                    System.out.println(MSG_DISCONNECTED_SERVER);
+        return result;
+    }
 
-                }
+    /**
+     * Update Info DTO 를 UpdateInfoCodec 바이너리 형식 으로 서버로 부터 받아오는 메소드
+     * 서버 가 CAPABILITY_BINARY 를 지원 할 때 만 사용 한다.
+     *
+     * @param serverIP String 형태의 서버 IP
+     * @param port     int 형태의 서버 port 번호
+     * @param timeout  통신에 대한 timeout
+     * @return UpdateInfoDTO 형태의 서버 에서 받아온 업데이트 정보, 실패 시 null
+     */
+    public UpdateInfoDTO getBinaryUpdateInfoDTO(String serverIP, int port, int timeout) {
 
-                if (socket != null) {
+        UpdateInfoDTO result = null;
 
-                    socket.close();
+        UpdateLog.debug(MSG_TRY_CONNECT_SERVER);
 
-                }
+        try (Socket treeSocket = new Socket()) {
 
-                if (osw != null) {
+            treeSocket.setSoTimeout(timeout);
+            connect(treeSocket, new InetSocketAddress(serverIP, port), timeout);
 
-                    osw.close();
+            UpdateLog.debug(MSG_CONNECTED_SERVER);
 
-                }
+            OutputStream out = treeSocket.getOutputStream();
 
-                if (bw != null) {
+            out.write((REQUEST_UPDATE_INFO_BINARY + NEW_LINE).getBytes());
+            out.flush();
 
-                    bw.close();
+            UpdateLog.info(MSG_SEND_UPDATE_TREE_REQUEST);
+            UpdateLog.info(MSG_DOWNLOAD_UPDATE_TREE);
 
-                }
+            result = new UpdateInfoCodec().readUpdateInfoDTO(new DataInputStream(
+                    new BufferedInputStream(treeSocket.getInputStream(), STREAM_BUFFER_SIZE)));
 
-                if (ois != null) {
+            UpdateLog.info(MSG_UPDATE_TREE_DOWNLOADED);
 
-                    ois.close();
+        } catch (UnknownHostException e) {
 
-                }
+            UpdateLog.error(ERR_SERVER_NOT_FOUND);
 
-                if (oos != null) {
+        } catch (SocketTimeoutException e) {
 
-                    oos.close();
+            UpdateLog.error(ERR_CONNECTION_TIME_OUT);
 
-                }
+        } catch (IOException e) {
 
-            } catch (IOException e) {
+            e.printStackTrace();
+            UpdateLog.error(ERR_IO_FAILED);
 
-                e.printStackTrace();
-                System.out.println(ERR_STREAM_CLOSED_FAILED);
+        }
+
+        UpdateLog.debug(MSG_DISCONNECTED_SERVER);
+
+        return result;
+    }
+
+    /**
+     * Update Info DTO 를 UpdateInfoCodec 바이너리 형식 으로 받으며 트리 로 만들지 않고 manifest 에 기록 하는 메소드
+     * 서버 가 CAPABILITY_BINARY 를 지원 할 때 만 사용 한다. 실패한 경우 manifest 에 일부 노드 가 기록 되어 있을 수 있다.
+     *
+     * @param serverIP String 형태의 서버 IP
+     * @param port     int 형태의 서버 port 번호
+     * @param timeout  통신에 대한 timeout
+     * @param factory  ManifestFile.Factory 형태의 client_path 를 받은 후 서버 트리 의 노드 를 기록 할 manifest 를 만드는 factory
+     * @return String 형태의 서버 에서 받아온 client_path, 실패 시 null
+     */
+    public String getBinaryUpdateInfoDTO(String serverIP, int port, int timeout, ManifestFile.Factory factory) {
+
+        String result = null;
+
+        UpdateLog.debug(MSG_TRY_CONNECT_SERVER);
+
+        try (Socket treeSocket = new Socket()) {
+
+            treeSocket.setSoTimeout(timeout);
+            connect(treeSocket, new InetSocketAddress(serverIP, port), timeout);
+
+            UpdateLog.debug(MSG_CONNECTED_SERVER);
+
+            OutputStream out = treeSocket.getOutputStream();
+
+            out.write((REQUEST_UPDATE_INFO_BINARY + NEW_LINE).getBytes());
+            out.flush();
+
+            UpdateLog.info(MSG_SEND_UPDATE_TREE_REQUEST);
+            UpdateLog.info(MSG_DOWNLOAD_UPDATE_TREE);
+
+            result = new UpdateInfoCodec().readUpdateInfoDTO(new DataInputStream(
+                    new BufferedInputStream(treeSocket.getInputStream(), STREAM_BUFFER_SIZE)), factory);
+
+            UpdateLog.info(MSG_UPDATE_TREE_DOWNLOADED);
+
+        } catch (UnknownHostException e) {
+
+            UpdateLog.error(ERR_SERVER_NOT_FOUND);
+
+        } catch (SocketTimeoutException e) {
+
+            UpdateLog.error(ERR_CONNECTION_TIME_OUT);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_IO_FAILED);
 
-            }
         }
 
+        UpdateLog.debug(MSG_DISCONNECTED_SERVER);
+
         return result;
     }
 
     /**
      * DownloadRequestDTO 를 서버에 보낸 후
-     * 서버에서 FileResponse 들을 다운로드 받는 메소드
+     * 서버에서 FileResponse 들을 하나씩 받아 handler 에 전달 하는 메소드
      * FileResponse 에는 파일 이름, 경로, 해쉬값, 디렉토리 여부, 파일에 대한 바이너리 byte[] 가 있다.
+     * 받은 FileResponse 를 리스트 에 모아두지 않으므로 사용 하는 메모리 는 전체 업데이트 크기 가 아닌
+     * 한번에 처리 하는 파일 크기 에 비례 한다.
+     * FileResponse 는 readUnshared 로 읽으므로 스트림 이 FileResponse 를 참조 하지 않지만,
+     * 서버 가 FileResponse 마다 ObjectOutputStream.reset 을 호출 하지 않으면 data 배열 은 스트림 에 남는다.
      *
      * @param serverIP String 형태로 서버의 아이피를 받는다.
      * @param port     int 형태의 포트 번호로 서버의 포트 번호를 받는다.
      * @param timeout  int 형태의 타임아웃 으로 서버와 통신시 타임아웃을 지정 한다. 단위는 밀리세컨드(millisecond) 이다.
      * @param dto      DownloadRequestDTO 형태로 서버에 보낼 DownloadRequestDTO 를 받는다.
-     * @return ArrayList 형태로 서버에서 받은 FileResponse 들을 반환 한다.
+     * @param handler  FileResponseHandler 형태로 받은 FileResponse 를 처리할 handler 를 받는다.
+     * @return boolean 형태로 모든 FileResponse 를 받았을 경우 true, 통신 에러 가 발생한 경우 false 를 반환 한다.
      */
-    public ArrayList<FileResponse> sendDownloadRequestDTOAndGetFileResponses(String serverIP, int port, int timeout, DownloadRequestDTO dto) {
+    public boolean sendDownloadRequestDTO(String serverIP, int port, int timeout, DownloadRequestDTO dto,
+                                          FileResponseHandler handler) {
 
-        ArrayList<FileResponse> result = new ArrayList<>();
+        boolean result = false;
+        Socket socket = null;
+        BufferedWriter bw = null;
+        ObjectInputStream ois = null;
+        ObjectOutputStream oos = null;
 
         try {
 
-            System.out.println(MSG_TRY_CONNECT_SERVER);
+            UpdateLog.debug(MSG_TRY_CONNECT_SERVER);
 
             SocketAddress target = new InetSocketAddress(serverIP, port);
 
             socket = new Socket();
             socket.setSoTimeout(timeout);
-            socket.connect(target, timeout);
+            connect(socket, target, timeout);
 
-            osw = new OutputStreamWriter(socket.getOutputStream());
-            bw = new BufferedWriter(osw);
+            bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
 
-            System.out.println(MSG_CONNECTED_SERVER);
+            UpdateLog.debug(MSG_CONNECTED_SERVER);
 
             bw.write(REQUEST_DOWNLOAD_DTO + NEW_LINE);
             bw.flush();
 
-            System.out.println(MSG_SEND_DOWNLOAD_REQUEST);
+            UpdateLog.debug(MSG_SEND_DOWNLOAD_REQUEST);
 
             ois = new ObjectInputStream(socket.getInputStream());
             oos = new ObjectOutputStream(socket.getOutputStream());
 
-            System.out.println(MSG_DOWNLOAD_FILE_RESPONSE);
+            UpdateLog.debug(MSG_DOWNLOAD_FILE_RESPONSE);
 
             oos.writeObject(dto);
 
@@ -226,76 +362,257 @@ public class ServerConnector {
 
                 while (true) {
 
-                    result.add((FileResponse) ois.readObject());
+                    FileResponse response = (FileResponse) ois.readUnshared();
+                    byte[] data = response.getData() == null ? new byte[0] : response.getData();
+
+                    handler.onFileResponse(response, new ByteArrayInputStream(data));
 
                 }
 
             } catch (EOFException e) {
 
-                System.out.println(MSG_FILE_RESPONSE_DOWNLOADED);
+                result = true;
+                UpdateLog.debug(MSG_FILE_RESPONSE_DOWNLOADED);
 
             }
 
         } catch (UnknownHostException e) {
 
-            System.out.println(ERR_SERVER_NOT_FOUND);
+            UpdateLog.error(ERR_SERVER_NOT_FOUND);
 
         } catch (ClassNotFoundException e) {
 
             e.printStackTrace();
-            System.out.println(ERR_UPDATE_INFO_TREE_CLASS_NOT_FOUND);
+            UpdateLog.error(ERR_UPDATE_INFO_TREE_CLASS_NOT_FOUND);
 
         } catch (SocketTimeoutException e) {
 
-            System.out.println(ERR_CONNECTION_TIME_OUT);
+            UpdateLog.error(ERR_CONNECTION_TIME_OUT);
 
         } catch (IOException e) {
 
             e.printStackTrace();
-            System.out.println(ERR_IO_FAILED);
+            UpdateLog.error(ERR_IO_FAILED);
 
         } finally {
 
-            try {
+            close(socket, bw, ois, oos);
 
-                if (socket.isConnected()) {
+        }
 
-                    System.out.println(MSG_DISCONNECTED_SERVER);
+        return result;
+    }
 
-                }
+    /**
+     * 서버 가 지원 하는 프로토콜 기능 들을 조회 하는 메소드
+     * 서버 는 "capabilities:" 로 시작 하는 한 줄 에 쉼표 로 구분 된 기능 이름 들을 보낸다.
+     * 응답 이 없거나 형식 이 다른 서버 는 기존 프로토콜 만 지원 하는 것 으로 판단 하여 빈 Set 을 반환 한다.
+     *
+     * @param serverIP String 형태의 서버 IP
+     * @param port     int 형태의 서버 port 번호
+     * @param timeout  int 형태의 통신에 대한 timeout
+     * @return Set 형태의 서버 가 지원 하는 기능 이름 들
+     */
+    public Set<String> getServerCapabilities(String serverIP, int port, int timeout) {
 
-                if (socket != null) {
+        HashSet<String> result = new HashSet<>();
 
-                    socket.close();
+        try (Socket probe = new Socket()) {
 
-                }
+            probe.setSoTimeout(timeout);
+            connect(probe, new InetSocketAddress(serverIP, port), timeout);
 
-                if (osw != null) {
+            Writer writer = new OutputStreamWriter(probe.getOutputStream());
 
-                    osw.close();
+            writer.write(REQUEST_CAPABILITIES + NEW_LINE);
+            writer.flush();
 
-                }
+            result.addAll(parseCapabilities(new BufferedReader(new InputStreamReader(probe.getInputStream())).readLine()));
 
-                if (ois != null) {
+        } catch (IOException e) {
 
-                    ois.close();
+            // 기존 서버 는 알 수 없는 요청 에 응답 하지 않으므로 기존 프로토콜 을 사용 한다.
 
-                }
+        }
+
+        if (result.isEmpty()) {
+
+            UpdateLog.info(MSG_LEGACY_SERVER);
+
+        }
+
+        return result;
+    }
+
+    /**
+     * socket 을 target 에 연결 하고 연결 에 걸린 시간 을 UpdateMetrics 에 기록 하는 메소드
+     * 연결 에 실패한 시도 는 기록 하지 않는다.
+     *
+     * @param socket  Socket 형태의 연결 할 소켓
+     * @param target  SocketAddress 형태의 서버 주소
+     * @param timeout int 형태의 연결 timeout 으로 밀리세컨드(millisecond) 단위
+     * @throws IOException 연결 에 실패한 경우
+     */
+    static void connect(Socket socket, SocketAddress target, int timeout) throws IOException {
+
+        long start = UpdateMetrics.startTimer();
+
+        socket.connect(target, timeout);
+        UpdateMetrics.recordConnect(start);
+    }
+
+    /**
+     * 서버 의 capability 응답 한 줄 을 해석 하는 메소드
+     *
+     * @param line String 형태의 서버 응답 으로 null 일 수 있다.
+     * @return Set 형태의 기능 이름 들, 형식 이 다를 경우 빈 Set
+     */
+    static Set<String> parseCapabilities(String line) {
+
+        HashSet<String> result = new HashSet<>();
 
-                if (bw != null) {
+        if (line != null && line.startsWith(RESPONSE_CAPABILITIES)) {
 
-                    bw.close();
+            for (String capability : line.substring(RESPONSE_CAPABILITIES.length()).split(CAPABILITY_SEPARATOR)) {
+
+                if (!capability.trim().isEmpty()) {
+
+                    result.add(capability.trim());
 
                 }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * DownloadRequestDTO 를 서버에 보낸 후
+     * 서버에서 파일 들을 chunk 단위 로 받아 handler 에 전달 하는 메소드
+     * <p>
+     * 응답 형식 은 ChunkedResponseReader 를 따른다.
+     * 파일 내용 은 byte[] 로 모이지 않고 chunk 버퍼 하나 를 재사용 하여 handler 에 스트림 으로 전달 되므로
+     * 파일 크기 에 제한 이 없고 사용 하는 메모리 는 chunk 크기 로 제한 된다.
+     *
+     * @param serverIP String 형태로 서버의 아이피를 받는다.
+     * @param port     int 형태의 포트 번호로 서버의 포트 번호를 받는다.
+     * @param timeout  int 형태의 타임아웃 으로 서버와 통신시 타임아웃을 지정 한다. 단위는 밀리세컨드(millisecond) 이다.
+     * @param dto      DownloadRequestDTO 형태로 서버에 보낼 DownloadRequestDTO 를 받는다.
+     * @param handler  FileResponseHandler 형태로 받은 파일 을 처리할 handler 를 받는다.
+     * @param isBinary boolean 형태로 true 일 경우 요청 을 UpdateInfoCodec 바이너리 형식 으로 보낸다.
+     * @return boolean 형태로 모든 파일 을 받았을 경우 true, 통신 에러 가 발생한 경우 false 를 반환 한다.
+     */
+    public boolean sendChunkedDownloadRequestDTO(String serverIP, int port, int timeout, DownloadRequestDTO dto,
+                                                 FileResponseHandler handler, boolean isBinary) {
+
+        boolean result = false;
+
+        UpdateLog.debug(MSG_TRY_CONNECT_SERVER);
+
+        try (Socket chunkSocket = new Socket()) {
+
+            chunkSocket.setSoTimeout(timeout);
+            connect(chunkSocket, new InetSocketAddress(serverIP, port), timeout);
+
+            UpdateLog.debug(MSG_CONNECTED_SERVER);
 
-            } catch (IOException e) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(chunkSocket.getOutputStream()));
 
-                e.printStackTrace();
-                System.out.println(ERR_STREAM_CLOSED_FAILED);
+            if (isBinary) {
+
+                out.write((REQUEST_DOWNLOAD_BINARY + NEW_LINE).getBytes());
+                new UpdateInfoCodec().writeDownloadRequestDTO(out, dto);
+                out.flush();
+
+            } else {
+
+                out.write((REQUEST_DOWNLOAD_CHUNKED + NEW_LINE).getBytes());
+
+                ObjectOutputStream requestStream = new ObjectOutputStream(out);
+
+                requestStream.writeObject(dto);
+                requestStream.flush();
 
             }
+
+            UpdateLog.debug(MSG_SEND_DOWNLOAD_REQUEST);
+            UpdateLog.debug(MSG_DOWNLOAD_FILE_RESPONSE);
+
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(chunkSocket.getInputStream(), STREAM_BUFFER_SIZE));
+
+            new ChunkedResponseReader().readFiles(in, handler);
+
+            result = true;
+            UpdateLog.debug(MSG_FILE_RESPONSE_DOWNLOADED);
+
+        } catch (UnknownHostException e) {
+
+            UpdateLog.error(ERR_SERVER_NOT_FOUND);
+
+        } catch (SocketTimeoutException e) {
+
+            UpdateLog.error(ERR_CONNECTION_TIME_OUT);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_IO_FAILED);
+
         }
 
+        UpdateLog.debug(MSG_DISCONNECTED_SERVER);
+
         return result;
     }
+
+    /**
+     * 소켓 과 스트림 들을 닫는 메소드
+     *
+     * @param socket Socket 형태의 닫을 소켓
+     * @param bw     BufferedWriter 형태의 요청 스트림
+     * @param ois    ObjectInputStream 형태의 응답 스트림
+     * @param oos    ObjectOutputStream 형태의 요청 객체 스트림
+     */
+    private void close(Socket socket, BufferedWriter bw, ObjectInputStream ois, ObjectOutputStream oos) {
+
+        try {
+
+            if (socket != null && socket.isConnected()) {
+
+                UpdateLog.debug(MSG_DISCONNECTED_SERVER);
+
+            }
+
+            if (socket != null) {
+
+                socket.close();
+
+            }
+
+            if (bw != null) {
+
+                bw.close();
+
+            }
+
+            if (ois != null) {
+
+                ois.close();
+
+            }
+
+            if (oos != null) {
+
+                oos.close();
+
+            }
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_STREAM_CLOSED_FAILED);
+
+        }
+    }
 }
@@ -0,0 +1,814 @@
+package network;
+
+import model.DownloadRequestDTO;
+import model.ManifestFile;
+import model.SubtreeRequestDTO;
+import model.UpdateInfo;
+import model.UpdateInfoDTO;
+import model.UpdateInfoTree;
+import util.BlockSignature;
+import util.UpdateLog;
+import util.UpdateMetrics;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * 하나의 연결 로 트리 요청, 여러 다운로드 요청, 재시도 를 모두 처리 하는 세션 클래스
+ * <p>
+ * 클라이언트 가 "session" 한 줄 을 보내면 서버 는 "capabilities:" 로 시작 하는 한 줄 로 응답 하고,
+ * 이후 에는 요청 byte 와 그에 대한 응답 이 반복 된다.
+ * <ul>
+ * <li>REQUEST_TREE : 응답 은 int 형태의 길이 와 직렬화 된 UpdateInfoDTO 이다.</li>
+ * <li>REQUEST_DOWNLOAD : int 형태의 길이 와 직렬화 된 DownloadRequestDTO 를 보내며,
+ * 응답 은 ChunkedResponseReader 형식 의 파일 들 이다.</li>
+ * <li>REQUEST_TREE_BINARY, REQUEST_DOWNLOAD_BINARY : 서버 가 CAPABILITY_BINARY 를 지원 할 때 사용 하며,
+ * 트리 와 요청 을 길이 없이 UpdateInfoCodec 형식 으로 보낸다.</li>
+ * <li>REQUEST_TREE_PARTIAL : 서버 가 CAPABILITY_SUBTREE 를 지원 할 때 사용 하며, int 형태의 깊이 를 보내면
+ * 그 깊이 까지 만 담긴 UpdateInfoCodec 형식 의 트리 로 응답 한다.</li>
+ * <li>REQUEST_SUBTREES : UpdateInfoCodec 형식 의 SubtreeRequestDTO 를 보내면 요청 한 경로 순서 대로
+ * UpdateInfoCodec.writeSubtrees 형식 의 부분 트리 들로 응답 한다. 서버 에 없는 경로 는 자식 이 없는 디렉토리 로 응답 한다.</li>
+ * <li>REQUEST_DOWNLOAD_DELTA : 서버 가 CAPABILITY_DELTA 를 지원 할 때 사용 하며, 로컬 사본 의 블록 서명 이 담긴
+ * UpdateInfoCodec.writeDeltaRequestDTO 형식 의 요청 을 보낸다. 응답 은 서명 이 있는 파일 을 FRAME_DELTA 로 보낼 수 있는
+ * ChunkedResponseReader 형식 의 파일 들 이다.</li>
+ * <li>REQUEST_COMPRESSION : 서버 가 CAPABILITY_DEFLATE 를 지원 할 때 세션 을 연 직후 에 사용 하며, byte 형태의 deflate 압축 레벨 과
+ * 압축 하지 않을 확장자 들을 쉼표 로 이은 문자열 을 보낸다. 응답 은 없다. 이후 파일 chunk 는 ChunkedInputStream 형식 의 압축 된 chunk 로
+ * 올 수 있으며, REQUEST_TREE_BINARY, REQUEST_TREE_PARTIAL, REQUEST_SUBTREES 의 응답 은 ChunkedInputStream 형식 의 chunk 들로 감싸서 온다.</li>
+ * <li>REQUEST_DOWNLOAD_RANGE : 서버 가 CAPABILITY_RANGE 를 지원 할 때 사용 하며, 이전 시도 에서 받은 길이 가 담긴
+ * UpdateInfoCodec.writeRangeRequestDTO 형식 의 요청 을 보낸다. 응답 은 받은 길이 가 있는 파일 을 FRAME_RANGE 로 보낼 수 있는
+ * ChunkedResponseReader 형식 의 파일 들 이다. 서버 가 델타 도 지원 하면 처음 부터 받는 파일 에는 서명 을 함께 보낸다.</li>
+ * <li>REQUEST_PROBE : 서버 가 CAPABILITY_PROBE 를 지원 할 때 사용 하며, 응답 은 writeUTF 형식 의 트리 버전 문자열 이다.
+ * 서버 트리 가 바뀌면 다른 값 이어야 하며 보통 root 의 Merkle 해시 나 배포 버전 이다.</li>
+ * <li>REQUEST_CLOSE : 세션 을 끝낸다.</li>
+ * </ul>
+ * 서버 는 요청 을 받은 순서 대로 응답 하므로 다운로드 요청 은 앞선 응답 이 끝나기 전에 미리 보낼 수 있다.
+ * 하나의 세션 은 한 스레드 에서만 사용 해야 한다.
+ */
+public class ServerSession implements Closeable {
+
+    private static final String REQUEST_SESSION = "session";
+    private static final String NEW_LINE = "\n";
+
+    private static final byte REQUEST_CLOSE = 0;
+    private static final byte REQUEST_TREE = 1;
+    private static final byte REQUEST_DOWNLOAD = 2;
+    private static final byte REQUEST_TREE_BINARY = 3;
+    private static final byte REQUEST_DOWNLOAD_BINARY = 4;
+    private static final byte REQUEST_TREE_PARTIAL = 5;
+    private static final byte REQUEST_SUBTREES = 6;
+    private static final byte REQUEST_DOWNLOAD_DELTA = 7;
+    private static final byte REQUEST_COMPRESSION = 8;
+    private static final byte REQUEST_DOWNLOAD_RANGE = 9;
+    private static final byte REQUEST_PROBE = 10;
+
+    /**
+     * 이미 압축 된 형식 이라 압축 을 시도 하지 않을 기본 확장자 들
+     */
+    public static final String DEFAULT_STORED_EXTENSIONS =
+            "zip,jar,war,apk,gz,tgz,bz2,xz,7z,rar,cab,msi,png,jpg,jpeg,gif,webp,mp3,mp4,m4a,ogg,avi,mkv,mov,woff,woff2";
+
+    /**
+     * 부분 트리 모드 에서 한번 의 요청 으로 받을 기본 깊이
+     */
+    public static final int DEFAULT_SUBTREE_DEPTH = 2;
+    private static final int MAX_SUBTREES_PER_REQUEST = 512;
+
+    private static final int PIPELINE_DEPTH = 2;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int MAX_TREE_LENGTH = 1024 * 1024 * 1024;
+
+    private static final String MSG_SESSION_OPENED = "update session opened";
+    private static final String MSG_SESSION_CLOSED = "update session closed";
+    private static final String MSG_SESSION_NOT_SUPPORTED = "server does not support session. use one connection per request";
+    private static final String ERR_SESSION_BROKEN = "update session broken. check stack trace";
+    private static final String ERR_CLASS_NOT_FOUND = "UpdateInfoDTO class not found. check Java class";
+    private static final String ERR_TREE_LENGTH = "invalid UpdateInfoDTO length : ";
+    private static final String MSG_COMPRESSION_ENABLED = "update session compression enabled. level : ";
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Set<String> capabilities;
+    private final ChunkedResponseReader reader = new ChunkedResponseReader();
+    private final UpdateInfoCodec codec = new UpdateInfoCodec();
+    private final boolean isBinary;
+    private final boolean isSubtreeSupported;
+    private final boolean isDeltaSupported;
+    private final boolean isRangeSupported;
+    private final boolean isProbeSupported;
+
+    private boolean isOpen = true;
+    private ChunkInflater inflater;
+
+    private ServerSession(Socket socket, DataInputStream in, DataOutputStream out, Set<String> capabilities) {
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+        this.capabilities = capabilities;
+        this.isBinary = capabilities.contains(ServerConnector.CAPABILITY_BINARY);
+        this.isSubtreeSupported = isBinary && capabilities.contains(ServerConnector.CAPABILITY_SUBTREE);
+        this.isDeltaSupported = isBinary && capabilities.contains(ServerConnector.CAPABILITY_DELTA);
+        this.isRangeSupported = isBinary && capabilities.contains(ServerConnector.CAPABILITY_RANGE);
+        this.isProbeSupported = capabilities.contains(ServerConnector.CAPABILITY_PROBE);
+    }
+
+    /**
+     * 서버 와 세션 을 여는 메소드
+     * 서버 가 세션 모드 를 지원 하지 않거나 연결 에 실패한 경우 null 을 반환 한다.
+     *
+     * @param serverIP String 형태의 서버 IP
+     * @param port     int 형태의 서버 port 번호
+     * @param timeout  int 형태의 통신에 대한 timeout
+     * @return ServerSession 형태의 열린 세션, 실패 시 null
+     */
+    public static ServerSession open(String serverIP, int port, int timeout) {
+
+        Socket socket = new Socket();
+
+        try {
+
+            socket.setSoTimeout(timeout);
+            socket.setTcpNoDelay(true);
+            ServerConnector.connect(socket, new InetSocketAddress(serverIP, port), timeout);
+
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE));
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+
+            out.write((REQUEST_SESSION + NEW_LINE).getBytes());
+            out.flush();
+
+            Set<String> capabilities = ServerConnector.parseCapabilities(readLine(in));
+
+            if (capabilities.contains(ServerConnector.CAPABILITY_SESSION)) {
+
+                UpdateLog.info(MSG_SESSION_OPENED);
+
+                return new ServerSession(socket, in, out, capabilities);
+            }
+
+        } catch (IOException e) {
+
+            // 세션 을 지원 하지 않는 서버 는 응답 하지 않거나 연결 을 끊는다.
+
+        }
+
+        UpdateLog.info(MSG_SESSION_NOT_SUPPORTED);
+        closeQuietly(socket);
+
+        return null;
+    }
+
+    /**
+     * 서버 가 세션 을 열 때 알려준 기능 이름 들을 반환 하는 메소드
+     *
+     * @return Set 형태의 서버 가 지원 하는 기능 이름 들
+     */
+    public Set<String> getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * 세션 이 사용 가능 한지 반환 하는 메소드
+     *
+     * @return boolean 형태로 통신 에러 없이 열려 있으면 true
+     */
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * 서버 가 지원 하면 이후 응답 을 deflate 로 압축 해서 받도록 요청 하는 메소드
+     * 다른 요청 을 보내기 전에 호출 해야 한다. 서버 는 skipExtensions 의 확장자 를 가진 파일 과
+     * 압축 해도 충분히 줄어 들지 않는 chunk 는 압축 하지 않고 보낸다.
+     *
+     * @param level          int 형태의 deflate 압축 레벨 로 0 이하 이면 압축 하지 않는다.
+     * @param skipExtensions String 형태의 압축 하지 않을 확장자 들을 쉼표 로 이은 문자열
+     * @return boolean 형태로 압축 이 협상 되었으면 true
+     */
+    public boolean enableCompression(int level, String skipExtensions) {
+
+        if (level <= 0 || inflater != null || !capabilities.contains(ServerConnector.CAPABILITY_DEFLATE)) {
+
+            return inflater != null;
+        }
+
+        try {
+
+            out.writeByte(REQUEST_COMPRESSION);
+            out.writeByte(Math.min(level, Deflater.BEST_COMPRESSION));
+            out.writeUTF(skipExtensions);
+            out.flush();
+
+            inflater = new ChunkInflater();
+            reader.setInflater(inflater);
+
+            UpdateLog.info(MSG_COMPRESSION_ENABLED + level);
+
+            return true;
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_SESSION_BROKEN);
+
+        }
+
+        close();
+
+        return false;
+    }
+
+    /**
+     * 세션 으로 UpdateInfoDTO 를 받아오는 메소드
+     * Java 직렬화 로 받는 경우 길이 를 확인 한 후 메모리 에 복사 하지 않고 스트림 에서 바로 해석 한다.
+     *
+     * @return UpdateInfoDTO 형태의 서버 에서 받아온 업데이트 정보, 실패 시 null
+     */
+    public UpdateInfoDTO getUpdateInfoDTO() {
+
+        try {
+
+            if (isBinary) {
+
+                out.writeByte(REQUEST_TREE_BINARY);
+                out.flush();
+
+                return readUpdateInfoDTO();
+            }
+
+            out.writeByte(REQUEST_TREE);
+            out.flush();
+
+            int length = in.readInt();
+
+            if (length < 0 || length > MAX_TREE_LENGTH) {
+
+                throw new IOException(ERR_TREE_LENGTH + length);
+            }
+
+            long start = UpdateMetrics.startCpuTimer();
+
+            try (ObjectInputStream ois = new ObjectInputStream(new BoundedInputStream(in, length))) {
+
+                return (UpdateInfoDTO) ois.readObject();
+
+            } finally {
+
+                UpdateMetrics.stopCpuTimer(UpdateMetrics.PHASE_DECODE, start);
+            }
+
+        } catch (ClassNotFoundException | ClassCastException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_CLASS_NOT_FOUND);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_SESSION_BROKEN);
+
+        }
+
+        close();
+
+        return null;
+    }
+
+    /**
+     * 세션 으로 UpdateInfoDTO 를 받으며 트리 로 만들지 않고 manifest 에 기록 하는 메소드
+     * 바이너리 형식 을 사용 할 때 만 받을 수 있으며, 그 외 의 경우 요청 하지 않고 null 을 반환 한다.
+     * 실패한 경우 manifest 에 일부 노드 가 기록 되어 있을 수 있다.
+     *
+     * @param factory ManifestFile.Factory 형태의 client_path 를 받은 후 서버 트리 의 노드 를 기록 할 manifest 를 만드는 factory
+     * @return String 형태의 서버 에서 받아온 client_path, 실패 시 null
+     */
+    public String getUpdateInfoDTO(ManifestFile.Factory factory) {
+
+        if (!isBinary) {
+
+            return null;
+        }
+
+        try {
+
+            out.writeByte(REQUEST_TREE_BINARY);
+            out.flush();
+
+            if (inflater == null) {
+
+                return codec.readUpdateInfoDTO(in, factory);
+            }
+
+            ChunkedInputStream content = new ChunkedInputStream(in, new byte[STREAM_BUFFER_SIZE], inflater);
+            String clientPath = codec.readUpdateInfoDTO(new DataInputStream(content), factory);
+
+            content.drain();
+
+            return clientPath;
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_SESSION_BROKEN);
+
+        }
+
+        close();
+
+        return null;
+    }
+
+    /**
+     * 바이너리 형식 의 트리 응답 을 읽는 메소드 로 압축 이 협상 된 경우 chunk 들로 감싼 응답 을 풀면서 읽는다.
+     */
+    private UpdateInfoDTO readUpdateInfoDTO() throws IOException {
+
+        if (inflater == null) {
+
+            return codec.readUpdateInfoDTO(in);
+        }
+
+        ChunkedInputStream content = new ChunkedInputStream(in, new byte[STREAM_BUFFER_SIZE], inflater);
+        UpdateInfoDTO dto = codec.readUpdateInfoDTO(new DataInputStream(content));
+
+        content.drain();
+
+        return dto;
+    }
+
+    /**
+     * 서버 가 깊이 를 제한 한 트리 와 부분 트리 요청 을 지원 하는지 반환 하는 메소드
+     *
+     * @return boolean 형태로 getUpdateInfoDTO(int), fetchChangedSubtrees 를 사용할 수 있으면 true
+     */
+    public boolean isSubtreeSupported() {
+        return isSubtreeSupported;
+    }
+
+    /**
+     * 서버 가 델타 다운로드 를 지원 하는지 반환 하는 메소드
+     *
+     * @return boolean 형태로 download 가 로컬 사본 의 블록 서명 을 보낼 수 있으면 true
+     */
+    public boolean isDeltaSupported() {
+        return isDeltaSupported;
+    }
+
+    /**
+     * 서버 가 이어 받기 를 지원 하는지 반환 하는 메소드
+     *
+     * @return boolean 형태로 download 가 이전 시도 에서 받은 길이 이후 부터 받을 수 있으면 true
+     */
+    public boolean isRangeSupported() {
+        return isRangeSupported;
+    }
+
+    /**
+     * 서버 가 트리 버전 probe 를 지원 하는지 반환 하는 메소드
+     *
+     * @return boolean 형태로 probe 를 사용할 수 있으면 true
+     */
+    public boolean isProbeSupported() {
+        return isProbeSupported;
+    }
+
+    /**
+     * 세션 으로 서버 트리 의 버전 문자열 만 받아오는 메소드
+     * 서버 가 probe 를 지원 하지 않으면 부분 트리 요청 으로 root 만 받아 client_path 와 root 의 Merkle 해시 를 사용 한다.
+     *
+     * @return String 형태의 서버 트리 가 바뀌면 달라 지는 문자열, 지원 하지 않거나 실패 시 null
+     */
+    public String probe() {
+
+        if (!isProbeSupported) {
+
+            if (!isSubtreeSupported) {
+
+                return null;
+            }
+
+            UpdateInfoDTO dto = getUpdateInfoDTO(0);
+
+            if (dto == null || dto.getRoot().getTreeHash() == null) {
+
+                return null;
+            }
+
+            return dto.getClient_path() + File.pathSeparator + dto.getRoot().getTreeHash();
+        }
+
+        try {
+
+            out.writeByte(REQUEST_PROBE);
+            out.flush();
+
+            return in.readUTF();
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_SESSION_BROKEN);
+
+        }
+
+        close();
+
+        return null;
+    }
+
+    /**
+     * 세션 으로 root 아래 depth 단계 까지 만 담긴 UpdateInfoDTO 를 받아오는 메소드
+     * 그보다 깊은 디렉토리 는 Merkle 해시 만 가지며 fetchChangedSubtrees 로 필요한 부분 만 받는다.
+     *
+     * @param depth int 형태의 받을 깊이
+     * @return UpdateInfoDTO 형태의 서버 에서 받아온 업데이트 정보, 실패 시 null
+     */
+    public UpdateInfoDTO getUpdateInfoDTO(int depth) {
+
+        try {
+
+            out.writeByte(REQUEST_TREE_PARTIAL);
+            out.writeInt(depth);
+            out.flush();
+
+            return readUpdateInfoDTO();
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_SESSION_BROKEN);
+
+        }
+
+        close();
+
+        return null;
+    }
+
+    /**
+     * 클라이언트 트리 와 Merkle 해시 가 다른 부분 디렉토리 들의 자식 을 받아 서버 트리 에 붙이는 메소드
+     * 한 단계 에서 필요한 디렉토리 들을 MAX_SUBTREES_PER_REQUEST 개 씩 한번 에 요청 하며,
+     * compareHash 에 필요한 부분 디렉토리 가 남지 않을 때 까지 반복 한다.
+     *
+     * @param client UpdateInfo 형태의 탐색 이 끝난 클라이언트 트리 의 root
+     * @param server UpdateInfo 형태의 getUpdateInfoDTO(int) 로 받은 서버 트리 의 root
+     * @param depth  int 형태의 한번 의 요청 으로 받을 깊이
+     * @return boolean 형태로 compareHash 를 할 수 있게 되었으면 true, 통신 에러 가 발생한 경우 false
+     */
+    public boolean fetchChangedSubtrees(UpdateInfo client, UpdateInfo server, int depth) {
+
+        ArrayList<UpdateInfo> partials = new ArrayList<>();
+
+        UpdateInfoTree.collectPartialDirectories(client, server, partials);
+
+        while (!partials.isEmpty()) {
+
+            if (!graftSubtrees(partials, depth)) {
+
+                return false;
+            }
+
+            partials.clear();
+            UpdateInfoTree.collectPartialDirectories(client, server, partials);
+        }
+
+        return true;
+    }
+
+    /**
+     * 자식 리스트 를 받지 않은 디렉토리 들의 하위 트리 전체 를 세션 으로 받아 붙이는 메소드
+     * 클라이언트 에 없는 디렉토리 의 파일 들을 하나씩 확인 해야 할 때 사용 한다.
+     *
+     * @param directories ArrayList 형태의 다운로드 할 디렉토리 들
+     * @param depth       int 형태의 한번 의 요청 으로 받을 깊이
+     * @return boolean 형태 로 모든 하위 트리 를 받았으면 true
+     */
+    public boolean fetchSubtrees(ArrayList<UpdateInfo> directories, int depth) {
+
+        ArrayList<UpdateInfo> partials = new ArrayList<>();
+
+        for (UpdateInfo u : directories) {
+
+            UpdateInfoTree.collectPartialDescendants(u, partials);
+
+        }
+
+        while (!partials.isEmpty()) {
+
+            if (!graftSubtrees(partials, depth)) {
+
+                return false;
+            }
+
+            ArrayList<UpdateInfo> grafted = partials;
+
+            partials = new ArrayList<>();
+
+            for (UpdateInfo u : grafted) {
+
+                UpdateInfoTree.collectPartialDescendants(u, partials);
+
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 부분 디렉토리 들을 MAX_SUBTREES_PER_REQUEST 개 씩 요청 해서 받은 부분 트리 를 붙인다.
+     */
+    private boolean graftSubtrees(ArrayList<UpdateInfo> partials, int depth) {
+
+        for (int from = 0; from < partials.size(); from += MAX_SUBTREES_PER_REQUEST) {
+
+            List<UpdateInfo> batch = partials.subList(from,
+                    Math.min(partials.size(), from + MAX_SUBTREES_PER_REQUEST));
+            ArrayList<UpdateInfo> subtrees = getSubtrees(batch, depth);
+
+            if (subtrees == null || subtrees.size() != batch.size()) {
+
+                return false;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+
+                if (subtrees.get(i).isPartial()) {
+
+                    return false;
+                }
+
+                UpdateInfoTree.graftSubtree(batch.get(i), subtrees.get(i));
+
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 부분 디렉토리 들의 부분 트리 를 한번 의 요청 으로 받아오는 메소드
+     */
+    private ArrayList<UpdateInfo> getSubtrees(List<UpdateInfo> partials, int depth) {
+
+        SubtreeRequestDTO dto = new SubtreeRequestDTO();
+
+        dto.setDepth(depth);
+
+        for (UpdateInfo u : partials) {
+
+            dto.getPathList().add(u.getFilePath());
+
+        }
+
+        try {
+
+            out.writeByte(REQUEST_SUBTREES);
+            codec.writeSubtreeRequestDTO(out, dto);
+            out.flush();
+
+            if (inflater == null) {
+
+                return codec.readSubtrees(in);
+            }
+
+            ChunkedInputStream content = new ChunkedInputStream(in, new byte[STREAM_BUFFER_SIZE], inflater);
+            ArrayList<UpdateInfo> subtrees = codec.readSubtrees(new DataInputStream(content));
+
+            content.drain();
+
+            return subtrees;
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_SESSION_BROKEN);
+
+        }
+
+        close();
+
+        return null;
+    }
+
+    /**
+     * queue 에서 다운로드 묶음 을 꺼내 세션 으로 다운로드 하는 메소드
+     * 앞선 묶음 의 응답 을 읽는 동안 다음 묶음 의 요청 을 미리 보내므로 묶음 사이 에 왕복 지연 이 생기지 않는다.
+     * 서버 가 델타 를 지원 하면 handler 가 반환 한 로컬 사본 의 블록 서명 을 함께 보낸다.
+     * 통신 에러 가 발생 하면 요청 했지만 끝나지 않은 묶음 들을 failedBatches 에 넣고 세션 을 닫는다.
+     *
+     * @param queue         Queue 형태의 다운로드 할 묶음 들 로 여러 스레드 가 함께 사용 할 수 있다.
+     * @param handler       FileResponseHandler 형태의 받은 파일 을 처리할 handler
+     * @param failedBatches List 형태의 다운로드 하지 못한 묶음 이 담길 리스트
+     * @return boolean 형태로 queue 가 빌 때 까지 에러 가 없었으면 true
+     */
+    public boolean download(Queue<ArrayList<UpdateInfo>> queue, FileResponseHandler handler,
+                            List<ArrayList<UpdateInfo>> failedBatches) {
+
+        ArrayDeque<ArrayList<UpdateInfo>> inFlight = new ArrayDeque<>();
+
+        try {
+
+            request(queue, inFlight, handler);
+
+            while (!inFlight.isEmpty()) {
+
+                reader.readFiles(in, handler);
+                inFlight.poll();
+
+                request(queue, inFlight, handler);
+            }
+
+            return true;
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_SESSION_BROKEN);
+
+            failedBatches.addAll(inFlight);
+            close();
+
+            return false;
+        }
+    }
+
+    /**
+     * 진행 중인 요청 이 PIPELINE_DEPTH 개 가 될 때 까지 queue 에서 묶음 을 꺼내 요청 을 보낸다.
+     */
+    private void request(Queue<ArrayList<UpdateInfo>> queue, ArrayDeque<ArrayList<UpdateInfo>> inFlight,
+                         FileResponseHandler handler) throws IOException {
+
+        ArrayList<UpdateInfo> batch;
+
+        while (inFlight.size() < PIPELINE_DEPTH && (batch = queue.poll()) != null) {
+
+            DownloadRequestDTO dto = new DownloadRequestDTO();
+
+            dto.setList(batch);
+            inFlight.add(batch);
+
+            if (isRangeSupported && setOffsets(dto, handler)) {
+
+                if (isDeltaSupported) {
+
+                    setSignatures(dto, handler);
+
+                }
+
+                out.writeByte(REQUEST_DOWNLOAD_RANGE);
+                codec.writeRangeRequestDTO(out, dto);
+
+                continue;
+            }
+
+            if (isDeltaSupported && setSignatures(dto, handler)) {
+
+                out.writeByte(REQUEST_DOWNLOAD_DELTA);
+                codec.writeDeltaRequestDTO(out, dto);
+
+                continue;
+            }
+
+            if (isBinary) {
+
+                out.writeByte(REQUEST_DOWNLOAD_BINARY);
+                codec.writeDownloadRequestDTO(out, dto);
+
+                continue;
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            try (ObjectOutputStream oos = new ObjectOutputStream(buffer)) {
+
+                oos.writeObject(dto);
+            }
+
+            out.writeByte(REQUEST_DOWNLOAD);
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * 묶음 의 파일 들에 대해 handler 에게 이전 시도 에서 받은 길이 를 받아 dto 에 설정 한다.
+     *
+     * @return boolean 형태로 이어 받을 파일 이 하나 라도 있으면 true
+     */
+    private static boolean setOffsets(DownloadRequestDTO dto, FileResponseHandler handler) {
+
+        ArrayList<Long> offsetList = new ArrayList<>(dto.getList().size());
+        boolean hasOffset = false;
+
+        for (UpdateInfo u : dto.getList()) {
+
+            long offset = handler.getResumeOffset(u);
+
+            offsetList.add(offset);
+            hasOffset |= offset > 0;
+        }
+
+        dto.setOffsetList(offsetList);
+
+        return hasOffset;
+    }
+
+    /**
+     * 묶음 의 파일 들에 대해 handler 에게 로컬 사본 의 블록 서명 을 받아 dto 에 설정 한다.
+     * 이어 받을 파일 은 서명 을 만들지 않는다.
+     *
+     * @return boolean 형태로 서명 이 하나 라도 있으면 true
+     */
+    private static boolean setSignatures(DownloadRequestDTO dto, FileResponseHandler handler) {
+
+        ArrayList<BlockSignature> signatureList = new ArrayList<>(dto.getList().size());
+        boolean hasSignature = false;
+
+        for (int i = 0; i < dto.getList().size(); i++) {
+
+            boolean isResumed = dto.getOffsetList() != null && dto.getOffsetList().get(i) > 0;
+            BlockSignature signature = isResumed ? null : handler.getBasisSignature(dto.getList().get(i));
+
+            signatureList.add(signature);
+            hasSignature |= signature != null;
+        }
+
+        dto.setSignatureList(signatureList);
+
+        return hasSignature;
+    }
+
+    /**
+     * 세션 을 닫는 메소드 로 열려 있을 경우 서버 에 종료 를 알린다.
+     */
+    @Override
+    public void close() {
+
+        if (isOpen) {
+
+            isOpen = false;
+
+            try {
+
+                out.writeByte(REQUEST_CLOSE);
+                out.flush();
+
+            } catch (IOException e) {
+
+                // 이미 끊어진 세션 은 종료 요청 없이 닫는다.
+
+            }
+
+            UpdateLog.info(MSG_SESSION_CLOSED);
+        }
+
+        closeQuietly(socket);
+
+        if (inflater != null) {
+
+            inflater.end();
+            inflater = null;
+            reader.setInflater(null);
+
+        }
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+
+        StringBuilder line = new StringBuilder();
+        int c;
+
+        while ((c = in.read()) != -1 && c != '\n') {
+
+            if (line.length() >= MAX_LINE_LENGTH) {
+
+                return null;
+            }
+
+            line.append((char) c);
+        }
+
+        return c == -1 && line.length() == 0 ? null : line.toString();
+    }
+
+    private static void closeQuietly(Socket socket) {
+
+        try {
+
+            socket.close();
+
+        } catch (IOException e) {
+
+            // 닫는 도중 의 에러 는 무시 한다.
+
+        }
+    }
+}
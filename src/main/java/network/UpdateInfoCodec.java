@@ -0,0 +1,870 @@
+package network;
+
+import model.DownloadRequestDTO;
+import model.ManifestFile;
+import model.SubtreeRequestDTO;
+import model.UpdateInfo;
+import model.UpdateInfoDTO;
+import util.BlockSignature;
+import util.UpdateMetrics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UpdateInfoDTO 와 DownloadRequestDTO 를 Java 직렬화 대신 간결한 바이너리 형식 으로 변환 하는 클래스
+ * <p>
+ * 노드 는 전위 순회 순서 로 기록 되며 각 노드 는 다음 과 같이 이루어 진다.
+ * <ul>
+ * <li>flags : 디렉토리 여부, 해쉬값 형태, 파일명 생략 여부, 파일 크기 존재 여부, 자식 생략 여부</li>
+ * <li>경로 : 바로 앞 노드 경로 와 공통 되는 앞부분 길이 와 나머지 문자열</li>
+ * <li>파일명 : 경로 의 마지막 부분 과 다를 때 만 기록</li>
+ * <li>해쉬값 : 16진수 SHA256 해쉬 는 32 byte 로, 그 외 의 값 은 문자열 로 기록</li>
+ * <li>파일 크기, 디렉토리 의 Merkle 해시(32 byte), 자식 수</li>
+ * </ul>
+ * 깊이 를 제한 해서 쓴 트리 에서 제한 에 걸린 디렉토리 는 자식 생략 flag 와 함께 자식 수 0 으로 기록 된다.
+ * 모든 길이 와 정수 는 varint 로 기록 된다. 메시지 는 스스로 끝을 알 수 있으므로 길이 를 앞에 붙일 필요 가 없다.
+ * 인스턴스 는 경로 압축 상태 를 가지므로 한 스레드 에서만 사용 해야 한다.
+ */
+public class UpdateInfoCodec {
+
+    private static final int MAGIC_TREE = 0x55494454;
+    private static final int MAGIC_REQUEST = 0x55494452;
+    private static final int MAGIC_SUBTREE_REQUEST = 0x55495352;
+    private static final int MAGIC_SUBTREES = 0x55495354;
+    private static final int MAGIC_DELTA_REQUEST = 0x55494444;
+    private static final int MAGIC_RANGE_REQUEST = 0x55495252;
+
+    private static final int FLAG_DIRECTORY = 1;
+    private static final int FLAG_RAW_HASH = 1 << 1;
+    private static final int FLAG_TEXT_HASH = 1 << 2;
+    private static final int FLAG_NAME = 1 << 3;
+    private static final int FLAG_SIZE = 1 << 4;
+    private static final int FLAG_TREE_HASH = 1 << 5;
+    private static final int FLAG_PARTIAL = 1 << 6;
+
+    private static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    private static final int HASH_LENGTH = 32;
+    private static final int MAX_STRING_LENGTH = 64 * 1024;
+    private static final int MAX_COUNT = 1 << 24;
+    private static final int MAX_INITIAL_CAPACITY = 4096;
+
+    private static final String ERR_WRONG_MAGIC = "wrong binary message header";
+    private static final String ERR_VARINT_TOO_LONG = "malformed varint in binary message";
+    private static final String ERR_SIGNATURE_TOO_LARGE = "too many blocks in delta signature : ";
+    private static final String ERR_WRONG_SIGNATURE = "invalid block size or length in delta signature : ";
+    private static final String ERR_STRING_TOO_LONG = "too long string in binary message : ";
+    private static final String ERR_COUNT_TOO_LARGE = "too many entries in binary message : ";
+    private static final String ERR_WRONG_SHARED_PREFIX = "wrong shared path prefix in binary message : ";
+
+    private final byte[] hashBuffer = new byte[HASH_LENGTH];
+    private String previousPath = "";
+
+    /**
+     * UpdateInfoDTO 를 바이너리 형식 으로 쓰는 메소드
+     *
+     * @param out DataOutputStream 형태의 출력 스트림
+     * @param dto UpdateInfoDTO 형태의 쓸 DTO
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    public void writeUpdateInfoDTO(DataOutputStream out, UpdateInfoDTO dto) throws IOException {
+
+        writeUpdateInfoDTO(out, dto, UNLIMITED_DEPTH);
+    }
+
+    /**
+     * UpdateInfoDTO 를 root 아래 depth 단계 까지 만 바이너리 형식 으로 쓰는 메소드
+     * 그보다 깊은 디렉토리 는 Merkle 해시 만 기록 되고 읽을 때 UpdateInfo.isPartial 이 true 가 된다.
+     *
+     * @param out   DataOutputStream 형태의 출력 스트림
+     * @param dto   UpdateInfoDTO 형태의 쓸 DTO
+     * @param depth int 형태의 root 아래 로 기록 할 단계 수
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    public void writeUpdateInfoDTO(DataOutputStream out, UpdateInfoDTO dto, int depth) throws IOException {
+
+        previousPath = "";
+
+        out.writeInt(MAGIC_TREE);
+        writeString(out, dto.getClient_path());
+        writeNode(out, dto.getRoot(), depth);
+    }
+
+    /**
+     * 바이너리 형식 의 UpdateInfoDTO 를 읽는 메소드
+     * 읽는 동안 사용한 CPU 시간 은 UpdateMetrics 의 decode 단계 에 더한다.
+     *
+     * @param in DataInputStream 형태의 입력 스트림
+     * @return UpdateInfoDTO 형태의 읽은 DTO
+     * @throws IOException 읽기 에 실패 하거나 형식 이 다른 경우
+     */
+    public UpdateInfoDTO readUpdateInfoDTO(DataInputStream in) throws IOException {
+
+        long start = UpdateMetrics.startCpuTimer();
+
+        try {
+
+            previousPath = "";
+
+            if (in.readInt() != MAGIC_TREE) {
+
+                throw new IOException(ERR_WRONG_MAGIC);
+            }
+
+            String clientPath = readString(in);
+
+            return new UpdateInfoDTO(clientPath, readNode(in));
+
+        } finally {
+
+            UpdateMetrics.stopCpuTimer(UpdateMetrics.PHASE_DECODE, start);
+        }
+    }
+
+    /**
+     * 바이너리 형식 의 UpdateInfoDTO 를 트리 로 만들지 않고 읽으며 root 아래 노드 들을 전위 순회 순서 로 manifest 에 기록 하는 메소드
+     * 노드 는 기록 한 후 바로 버리므로 트리 크기 와 상관 없이 사용 하는 메모리 가 일정 하다.
+     * manifest 에 기록 하는 시간 을 포함 한 CPU 시간 은 UpdateMetrics 의 decode 단계 에 더한다.
+     *
+     * @param in       DataInputStream 형태의 입력 스트림
+     * @param factory  ManifestFile.Factory 형태의 client_path 를 읽은 후 노드 를 기록 할 manifest 를 만드는 factory
+     * @return String 형태의 DTO 의 client_path
+     * @throws IOException 읽기 또는 manifest 에 쓰기 를 실패 하거나 형식 이 다른 경우
+     */
+    public String readUpdateInfoDTO(DataInputStream in, ManifestFile.Factory factory) throws IOException {
+
+        long start = UpdateMetrics.startCpuTimer();
+
+        try {
+
+            previousPath = "";
+
+            if (in.readInt() != MAGIC_TREE) {
+
+                throw new IOException(ERR_WRONG_MAGIC);
+            }
+
+            String clientPath = readString(in);
+            ManifestFile manifest = factory.create(clientPath);
+
+            readNodeHeader(in, new String[1]);
+
+            streamChildren(in, manifest);
+
+            return clientPath;
+
+        } finally {
+
+            UpdateMetrics.stopCpuTimer(UpdateMetrics.PHASE_DECODE, start);
+        }
+    }
+
+    /**
+     * DownloadRequestDTO 를 바이너리 형식 으로 쓰는 메소드
+     *
+     * @param out DataOutputStream 형태의 출력 스트림
+     * @param dto DownloadRequestDTO 형태의 쓸 DTO
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    public void writeDownloadRequestDTO(DataOutputStream out, DownloadRequestDTO dto) throws IOException {
+
+        previousPath = "";
+
+        out.writeInt(MAGIC_REQUEST);
+        writeVarLong(out, dto.getList().size());
+
+        for (UpdateInfo u : dto.getList()) {
+            writeNode(out, u, UNLIMITED_DEPTH);
+        }
+    }
+
+    /**
+     * 바이너리 형식 의 DownloadRequestDTO 를 읽는 메소드
+     *
+     * @param in DataInputStream 형태의 입력 스트림
+     * @return DownloadRequestDTO 형태의 읽은 DTO
+     * @throws IOException 읽기 에 실패 하거나 형식 이 다른 경우
+     */
+    public DownloadRequestDTO readDownloadRequestDTO(DataInputStream in) throws IOException {
+
+        previousPath = "";
+
+        if (in.readInt() != MAGIC_REQUEST) {
+
+            throw new IOException(ERR_WRONG_MAGIC);
+        }
+
+        int count = readCount(in);
+        ArrayList<UpdateInfo> list = new ArrayList<>(initialCapacity(count));
+
+        for (int i = 0; i < count; i++) {
+            list.add(readNode(in));
+        }
+
+        DownloadRequestDTO dto = new DownloadRequestDTO();
+
+        dto.setList(list);
+
+        return dto;
+    }
+
+    /**
+     * 블록 서명 이 담긴 DownloadRequestDTO 를 델타 요청 바이너리 형식 으로 쓰는 메소드
+     * 각 파일 노드 뒤 에 서명 존재 여부 를 쓰고, 서명 이 있으면 블록 크기, 파일 크기, 블록 수,
+     * 블록 마다 int 형태의 rolling checksum 과 MD5 를 쓴다.
+     *
+     * @param out DataOutputStream 형태의 출력 스트림
+     * @param dto DownloadRequestDTO 형태의 list 와 같은 길이 의 signatureList 를 가진 DTO
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    public void writeDeltaRequestDTO(DataOutputStream out, DownloadRequestDTO dto) throws IOException {
+
+        previousPath = "";
+
+        out.writeInt(MAGIC_DELTA_REQUEST);
+        writeVarLong(out, dto.getList().size());
+
+        for (int i = 0; i < dto.getList().size(); i++) {
+
+            writeNode(out, dto.getList().get(i), UNLIMITED_DEPTH);
+
+            writeSignature(out, dto.getSignatureList().get(i));
+        }
+    }
+
+    /**
+     * 델타 요청 바이너리 형식 의 DownloadRequestDTO 를 읽는 메소드
+     *
+     * @param in DataInputStream 형태의 입력 스트림
+     * @return DownloadRequestDTO 형태의 signatureList 가 설정 된 DTO
+     * @throws IOException 읽기 에 실패 하거나 형식 이 다른 경우
+     */
+    public DownloadRequestDTO readDeltaRequestDTO(DataInputStream in) throws IOException {
+
+        previousPath = "";
+
+        if (in.readInt() != MAGIC_DELTA_REQUEST) {
+
+            throw new IOException(ERR_WRONG_MAGIC);
+        }
+
+        int count = readCount(in);
+        ArrayList<UpdateInfo> list = new ArrayList<>(initialCapacity(count));
+        ArrayList<BlockSignature> signatureList = new ArrayList<>(initialCapacity(count));
+
+        for (int i = 0; i < count; i++) {
+
+            list.add(readNode(in));
+            signatureList.add(readSignature(in));
+        }
+
+        DownloadRequestDTO dto = new DownloadRequestDTO();
+
+        dto.setList(list);
+        dto.setSignatureList(signatureList);
+
+        return dto;
+    }
+
+    /**
+     * 이미 받은 길이 가 담긴 DownloadRequestDTO 를 이어 받기 요청 바이너리 형식 으로 쓰는 메소드
+     * 각 파일 노드 뒤 에 varint 형태의 이미 받은 길이 를 쓰고, 델타 요청 과 같은 형식 으로 서명 을 쓴다.
+     * signatureList 가 없으면 모든 파일 을 서명 없이 쓴다.
+     *
+     * @param out DataOutputStream 형태의 출력 스트림
+     * @param dto DownloadRequestDTO 형태의 list 와 같은 길이 의 offsetList 를 가진 DTO
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    public void writeRangeRequestDTO(DataOutputStream out, DownloadRequestDTO dto) throws IOException {
+
+        previousPath = "";
+
+        out.writeInt(MAGIC_RANGE_REQUEST);
+        writeVarLong(out, dto.getList().size());
+
+        for (int i = 0; i < dto.getList().size(); i++) {
+
+            writeNode(out, dto.getList().get(i), UNLIMITED_DEPTH);
+            writeVarLong(out, dto.getOffsetList().get(i));
+            writeSignature(out, dto.getSignatureList() == null ? null : dto.getSignatureList().get(i));
+        }
+    }
+
+    /**
+     * 이어 받기 요청 바이너리 형식 의 DownloadRequestDTO 를 읽는 메소드
+     *
+     * @param in DataInputStream 형태의 입력 스트림
+     * @return DownloadRequestDTO 형태의 offsetList 와 signatureList 가 설정 된 DTO
+     * @throws IOException 읽기 에 실패 하거나 형식 이 다른 경우
+     */
+    public DownloadRequestDTO readRangeRequestDTO(DataInputStream in) throws IOException {
+
+        previousPath = "";
+
+        if (in.readInt() != MAGIC_RANGE_REQUEST) {
+
+            throw new IOException(ERR_WRONG_MAGIC);
+        }
+
+        int count = readCount(in);
+        ArrayList<UpdateInfo> list = new ArrayList<>(initialCapacity(count));
+        ArrayList<Long> offsetList = new ArrayList<>(initialCapacity(count));
+        ArrayList<BlockSignature> signatureList = new ArrayList<>(initialCapacity(count));
+
+        for (int i = 0; i < count; i++) {
+
+            list.add(readNode(in));
+            offsetList.add(readVarLong(in));
+            signatureList.add(readSignature(in));
+        }
+
+        DownloadRequestDTO dto = new DownloadRequestDTO();
+
+        dto.setList(list);
+        dto.setOffsetList(offsetList);
+        dto.setSignatureList(signatureList);
+
+        return dto;
+    }
+
+    /**
+     * 서명 존재 여부 를 쓰고, 서명 이 있으면 블록 크기, 파일 크기, 블록 수, 블록 마다 rolling checksum 과 MD5 를 쓴다.
+     */
+    private static void writeSignature(DataOutputStream out, BlockSignature signature) throws IOException {
+
+        out.writeBoolean(signature != null);
+
+        if (signature == null) {
+
+            return;
+        }
+
+        writeVarLong(out, signature.getBlockSize());
+        writeVarLong(out, signature.getLength());
+        writeVarLong(out, signature.getBlockCount());
+
+        for (int block = 0; block < signature.getBlockCount(); block++) {
+
+            out.writeInt(signature.getRolling(block));
+            out.write(signature.getStrong(block));
+
+        }
+    }
+
+    private static BlockSignature readSignature(DataInputStream in) throws IOException {
+
+        if (!in.readBoolean()) {
+
+            return null;
+        }
+
+        long blockSize = readVarLong(in);
+        long length = readVarLong(in);
+        long blocks = readVarLong(in);
+
+        if (blockSize < BlockSignature.MIN_BLOCK_SIZE || blockSize > BlockSignature.MAX_BLOCK_SIZE || length < 0) {
+
+            throw new IOException(ERR_WRONG_SIGNATURE + blockSize + ", " + length);
+        }
+
+        if (blocks < 0 || blocks > length / blockSize || blocks > Integer.MAX_VALUE / BlockSignature.STRONG_LENGTH) {
+
+            throw new IOException(ERR_SIGNATURE_TOO_LARGE + blocks);
+        }
+
+        int[] rolling = new int[(int) blocks];
+        byte[] strong = new byte[(int) blocks * BlockSignature.STRONG_LENGTH];
+
+        for (int block = 0; block < blocks; block++) {
+
+            rolling[block] = in.readInt();
+            in.readFully(strong, block * BlockSignature.STRONG_LENGTH, BlockSignature.STRONG_LENGTH);
+
+        }
+
+        return new BlockSignature((int) blockSize, length, rolling, strong);
+    }
+
+    /**
+     * SubtreeRequestDTO 를 바이너리 형식 으로 쓰는 메소드
+     *
+     * @param out DataOutputStream 형태의 출력 스트림
+     * @param dto SubtreeRequestDTO 형태의 쓸 DTO
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    public void writeSubtreeRequestDTO(DataOutputStream out, SubtreeRequestDTO dto) throws IOException {
+
+        previousPath = "";
+
+        out.writeInt(MAGIC_SUBTREE_REQUEST);
+        writeVarLong(out, dto.getDepth());
+        writeVarLong(out, dto.getPathList().size());
+
+        for (String path : dto.getPathList()) {
+
+            int shared = sharedPrefix(previousPath, path);
+
+            writeVarLong(out, shared);
+            writeString(out, path.substring(shared));
+            previousPath = path;
+        }
+    }
+
+    /**
+     * 바이너리 형식 의 SubtreeRequestDTO 를 읽는 메소드
+     *
+     * @param in DataInputStream 형태의 입력 스트림
+     * @return SubtreeRequestDTO 형태의 읽은 DTO
+     * @throws IOException 읽기 에 실패 하거나 형식 이 다른 경우
+     */
+    public SubtreeRequestDTO readSubtreeRequestDTO(DataInputStream in) throws IOException {
+
+        previousPath = "";
+
+        if (in.readInt() != MAGIC_SUBTREE_REQUEST) {
+
+            throw new IOException(ERR_WRONG_MAGIC);
+        }
+
+        SubtreeRequestDTO dto = new SubtreeRequestDTO();
+
+        dto.setDepth((int) readVarLong(in));
+
+        int count = readCount(in);
+        ArrayList<String> pathList = dto.getPathList();
+
+        pathList.ensureCapacity(initialCapacity(count));
+
+        for (int i = 0; i < count; i++) {
+
+            String path = readPath(in);
+
+            pathList.add(path);
+            previousPath = path;
+        }
+
+        return dto;
+    }
+
+    /**
+     * 부분 트리 요청 에 대한 응답 으로 부분 트리 들을 depth 단계 까지 쓰는 메소드
+     *
+     * @param out      DataOutputStream 형태의 출력 스트림
+     * @param subtrees List 형태의 요청 된 경로 순서 와 같은 순서 의 디렉토리 노드 들
+     * @param depth    int 형태의 각 노드 아래 로 기록 할 단계 수
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    public void writeSubtrees(DataOutputStream out, List<UpdateInfo> subtrees, int depth) throws IOException {
+
+        previousPath = "";
+
+        out.writeInt(MAGIC_SUBTREES);
+        writeVarLong(out, subtrees.size());
+
+        for (UpdateInfo u : subtrees) {
+            writeNode(out, u, depth);
+        }
+    }
+
+    /**
+     * writeSubtrees 로 쓴 부분 트리 들을 읽는 메소드
+     *
+     * @param in DataInputStream 형태의 입력 스트림
+     * @return ArrayList 형태의 읽은 부분 트리 들
+     * @throws IOException 읽기 에 실패 하거나 형식 이 다른 경우
+     */
+    public ArrayList<UpdateInfo> readSubtrees(DataInputStream in) throws IOException {
+
+        long start = UpdateMetrics.startCpuTimer();
+
+        try {
+
+            previousPath = "";
+
+            if (in.readInt() != MAGIC_SUBTREES) {
+
+                throw new IOException(ERR_WRONG_MAGIC);
+            }
+
+            int count = readCount(in);
+            ArrayList<UpdateInfo> list = new ArrayList<>(initialCapacity(count));
+
+            for (int i = 0; i < count; i++) {
+                list.add(readNode(in));
+            }
+
+            return list;
+
+        } finally {
+
+            UpdateMetrics.stopCpuTimer(UpdateMetrics.PHASE_DECODE, start);
+        }
+    }
+
+    private void writeNode(DataOutputStream out, UpdateInfo node, int depth) throws IOException {
+
+        String path = node.getFilePath();
+        String hash = node.getFileHash();
+        int flags = 0;
+
+        if (node.isDirectory()) {
+            flags |= FLAG_DIRECTORY;
+        }
+
+        if (isRawHash(hash)) {
+            flags |= FLAG_RAW_HASH;
+        } else if (hash != null) {
+            flags |= FLAG_TEXT_HASH;
+        }
+
+        if (node.getFileName() == null || !node.getFileName().equals(lastSegment(path))) {
+            flags |= FLAG_NAME;
+        }
+
+        if (node.getFileSize() != 0) {
+            flags |= FLAG_SIZE;
+        }
+
+        if (isRawHash(node.getTreeHash())) {
+            flags |= FLAG_TREE_HASH;
+        }
+
+        boolean isPartial = node.isPartial() || depth <= 0 && node.hasChildren();
+
+        if (isPartial) {
+            flags |= FLAG_PARTIAL;
+        }
+
+        out.writeByte(flags);
+
+        int shared = sharedPrefix(previousPath, path);
+
+        writeVarLong(out, shared);
+        writeString(out, path.substring(shared));
+        previousPath = path;
+
+        if ((flags & FLAG_NAME) != 0) {
+            writeNullableString(out, node.getFileName());
+        }
+
+        if ((flags & FLAG_RAW_HASH) != 0) {
+            out.write(parseHex(hash));
+        } else if ((flags & FLAG_TEXT_HASH) != 0) {
+            writeString(out, hash);
+        }
+
+        if ((flags & FLAG_SIZE) != 0) {
+            writeVarLong(out, node.getFileSize());
+        }
+
+        if ((flags & FLAG_TREE_HASH) != 0) {
+            out.write(parseHex(node.getTreeHash()));
+        }
+
+        if (isPartial) {
+
+            writeVarLong(out, 0);
+
+            return;
+        }
+
+        if (!node.hasChildren()) {
+
+            writeVarLong(out, 0);
+
+            return;
+        }
+
+        writeVarLong(out, node.getChildList().size());
+
+        for (UpdateInfo child : node.getChildList()) {
+            writeNode(out, child, depth - 1);
+        }
+    }
+
+    private UpdateInfo readNode(DataInputStream in) throws IOException {
+
+        return readNode(in, new String[1]);
+    }
+
+    /**
+     * 노드 하나 와 그 하위 를 읽는다.
+     * 경로 가 파일명 으로 끝나면 앞 부분 을 siblingPrefix 에 담아 같은 디렉토리 의 다음 자식 과 같이 쓴다.
+     */
+    private UpdateInfo readNode(DataInputStream in, String[] siblingPrefix) throws IOException {
+
+        UpdateInfo node = readNodeHeader(in, siblingPrefix);
+        int children = readCount(in);
+
+        if (children == 0) {
+
+            return node;
+        }
+
+        ArrayList<UpdateInfo> childList = node.getChildList();
+        String[] childPrefix = new String[1];
+
+        childList.ensureCapacity(initialCapacity(children));
+
+        for (int i = 0; i < children; i++) {
+            childList.add(readNode(in, childPrefix));
+        }
+
+        return node;
+    }
+
+    /**
+     * 자식 수 와 자식 노드 들을 읽으며 manifest 에 기록 한다. 자식 리스트 는 만들지 않는다.
+     */
+    private void streamChildren(DataInputStream in, ManifestFile manifest) throws IOException {
+
+        int children = readCount(in);
+        String[] childPrefix = new String[1];
+
+        for (int i = 0; i < children; i++) {
+
+            manifest.add(readNodeHeader(in, childPrefix));
+            streamChildren(in, manifest);
+
+        }
+    }
+
+    /**
+     * 노드 하나 의 자식 수 앞 까지 를 읽는다.
+     */
+    private UpdateInfo readNodeHeader(DataInputStream in, String[] siblingPrefix) throws IOException {
+
+        UpdateInfo node = new UpdateInfo();
+        int flags = in.readUnsignedByte();
+        String path = readPath(in);
+
+        previousPath = path;
+
+        node.setDirectory((flags & FLAG_DIRECTORY) != 0);
+        node.setPartial((flags & FLAG_PARTIAL) != 0);
+        String name = (flags & FLAG_NAME) != 0 ? readNullableString(in) : lastSegment(path);
+
+        if (name != null && path.endsWith(name)) {
+
+            int prefixLength = path.length() - name.length();
+            String prefix = siblingPrefix[0];
+
+            if (prefix == null || prefix.length() != prefixLength || !path.startsWith(prefix)) {
+
+                prefix = path.substring(0, prefixLength);
+                siblingPrefix[0] = prefix;
+
+            }
+
+            node.setFilePath(prefix, name);
+
+        } else {
+
+            node.setFilePath(path);
+            node.setFileName(name);
+
+        }
+
+        if ((flags & FLAG_RAW_HASH) != 0) {
+
+            in.readFully(hashBuffer);
+            node.setFileHash(hashBuffer);
+
+        } else if ((flags & FLAG_TEXT_HASH) != 0) {
+
+            node.setFileHash(readString(in));
+        }
+
+        if ((flags & FLAG_SIZE) != 0) {
+            node.setFileSize(readVarLong(in));
+        }
+
+        if ((flags & FLAG_TREE_HASH) != 0) {
+
+            in.readFully(hashBuffer);
+            node.setTreeHash(hashBuffer);
+        }
+
+        return node;
+    }
+
+    private static int sharedPrefix(String a, String b) {
+
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+
+        if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1))) {
+            i--;
+        }
+
+        return i;
+    }
+
+    private static String lastSegment(String path) {
+
+        int index = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+
+        return path.substring(index + 1);
+    }
+
+    private static boolean isRawHash(String hash) {
+
+        if (hash == null || hash.length() != HASH_LENGTH * 2) {
+
+            return false;
+        }
+
+        for (int i = 0; i < hash.length(); i++) {
+
+            char c = hash.charAt(i);
+
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static byte[] parseHex(String hash) {
+
+        byte[] result = new byte[HASH_LENGTH];
+
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            result[i] = (byte) (Character.digit(hash.charAt(i * 2), 16) << 4 | Character.digit(hash.charAt(i * 2 + 1), 16));
+        }
+
+        return result;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+
+        out.writeBoolean(value != null);
+
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+
+        long length = readVarLong(in);
+
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+
+            throw new IOException(ERR_STRING_TOO_LONG + length);
+        }
+
+        byte[] bytes = new byte[(int) length];
+
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 이전 경로 와 같은 앞 부분 의 길이 와 나머지 를 읽어 경로 를 만든다.
+     * 같은 앞 부분 의 길이 가 0 보다 작거나 이전 경로 보다 길면 형식 이 다른 것 으로 본다.
+     */
+    private String readPath(DataInputStream in) throws IOException {
+
+        long shared = readVarLong(in);
+
+        if (shared < 0 || shared > previousPath.length()) {
+
+            throw new IOException(ERR_WRONG_SHARED_PREFIX + shared);
+        }
+
+        return previousPath.substring(0, (int) shared) + readString(in);
+    }
+
+    /**
+     * 리스트 나 자식 의 개수 를 읽는다. 0 보다 작거나 MAX_COUNT 보다 크면 형식 이 다른 것 으로 본다.
+     */
+    private static int readCount(DataInputStream in) throws IOException {
+
+        long count = readVarLong(in);
+
+        if (count < 0 || count > MAX_COUNT) {
+
+            throw new IOException(ERR_COUNT_TOO_LARGE + count);
+        }
+
+        return (int) count;
+    }
+
+    /**
+     * 읽을 개수 만큼 리스트 를 미리 늘리되, 실제 로 읽기 전 에는 MAX_INITIAL_CAPACITY 까지 만 늘린다.
+     */
+    private static int initialCapacity(int count) {
+
+        return Math.min(count, MAX_INITIAL_CAPACITY);
+    }
+
+    /**
+     * 부호 없는 varint 를 쓰는 메소드 로 7 bit 마다 한 byte 를 사용 한다.
+     *
+     * @param out   DataOutputStream 형태의 출력 스트림
+     * @param value long 형태의 0 이상 의 값
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+
+        while ((value & ~0x7FL) != 0) {
+
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.writeByte((int) value);
+    }
+
+    /**
+     * 부호 없는 varint 를 읽는 메소드
+     *
+     * @param in DataInputStream 형태의 입력 스트림
+     * @return long 형태의 읽은 값
+     * @throws IOException 읽기 에 실패 하거나 값 이 너무 긴 경우
+     */
+    static long readVarLong(DataInputStream in) throws IOException {
+
+        long result = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+
+            int b = in.readUnsignedByte();
+
+            result |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+
+                return result;
+            }
+        }
+
+        throw new IOException(ERR_VARINT_TOO_LONG);
+    }
+}
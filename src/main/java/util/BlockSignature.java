@@ -0,0 +1,273 @@
+package util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 델타 전송 에 사용 하는 파일 의 블록 서명 클래스
+ * <p>
+ * 파일 을 blockSize 크기 의 블록 으로 나누어 블록 마다 rolling checksum 과 MD5 를 가진다.
+ * 마지막 의 blockSize 보다 작은 부분 은 서명 에 포함 되지 않는다.
+ * rolling checksum 은 rsync 와 같은 방식 으로 a = 블록 byte 의 합, b = 각 byte 에 블록 끝 까지 의 거리 를 곱한 합 을
+ * 각각 2^16 으로 나눈 나머지 로 하여 a + (b << 16) 이며, 한 byte 씩 밀면서 상수 시간 에 갱신 할 수 있다.
+ */
+public class BlockSignature {
+
+    /**
+     * 블록 하나 의 MD5 길이
+     */
+    public static final int STRONG_LENGTH = 16;
+
+    /**
+     * 블록 크기 의 최소값
+     */
+    public static final int MIN_BLOCK_SIZE = 2 * 1024;
+
+    /**
+     * 블록 크기 의 최대값
+     */
+    public static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+    private static final int BLOCK_SIZE_UNIT = 1024;
+    private static final int MOD_MASK = 0xFFFF;
+
+    private static final String STRONG_ALGORITHM = "MD5";
+
+    private final int blockSize;
+    private final long length;
+    private final int[] rolling;
+    private final byte[] strong;
+
+    /**
+     * 이미 계산 된 값 으로 서명 을 만든다.
+     *
+     * @param blockSize int 형태의 블록 크기
+     * @param length    long 형태의 서명 한 파일 의 크기
+     * @param rolling   int[] 형태의 블록 별 rolling checksum
+     * @param strong    byte[] 형태의 블록 별 MD5 를 이어 붙인 값 으로 길이 는 블록 수 * STRONG_LENGTH 이다.
+     */
+    public BlockSignature(int blockSize, long length, int[] rolling, byte[] strong) {
+        this.blockSize = blockSize;
+        this.length = length;
+        this.rolling = rolling;
+        this.strong = strong;
+    }
+
+    /**
+     * 파일 크기 에 맞는 블록 크기 로 파일 의 서명 을 계산 하는 메소드
+     *
+     * @param file File 형태의 서명 할 파일
+     * @return BlockSignature 형태의 서명
+     * @throws IOException 파일 을 읽지 못한 경우
+     */
+    public static BlockSignature compute(File file) throws IOException {
+
+        return compute(file, blockSizeFor(file.length()));
+    }
+
+    /**
+     * 주어진 블록 크기 로 파일 의 서명 을 계산 하는 메소드
+     *
+     * @param file      File 형태의 서명 할 파일
+     * @param blockSize int 형태의 블록 크기
+     * @return BlockSignature 형태의 서명
+     * @throws IOException 파일 을 읽지 못한 경우
+     */
+    public static BlockSignature compute(File file, int blockSize) throws IOException {
+
+        long length = file.length();
+        int blocks = (int) Math.min(Integer.MAX_VALUE / STRONG_LENGTH, length / blockSize);
+        int[] rolling = new int[blocks];
+        byte[] strong = new byte[blocks * STRONG_LENGTH];
+        byte[] block = new byte[blockSize];
+        MessageDigest md5 = newStrongDigest();
+
+        try (InputStream in = new FileInputStream(file)) {
+
+            for (int i = 0; i < blocks; i++) {
+
+                readFully(in, block);
+
+                rolling[i] = rolling(block, 0, blockSize);
+                md5.update(block, 0, blockSize);
+
+                try {
+
+                    md5.digest(strong, i * STRONG_LENGTH, STRONG_LENGTH);
+
+                } catch (DigestException e) {
+
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        return new BlockSignature(blockSize, length, rolling, strong);
+    }
+
+    /**
+     * 파일 크기 에 맞는 블록 크기 를 정하는 메소드
+     * 파일 크기 의 제곱근 을 1KB 단위 로 올린 값 을 2KB ~ 128KB 사이 로 제한 한다.
+     *
+     * @param length long 형태의 파일 크기
+     * @return int 형태의 블록 크기
+     */
+    public static int blockSizeFor(long length) {
+
+        long size = (long) Math.ceil(Math.sqrt((double) length) / BLOCK_SIZE_UNIT) * BLOCK_SIZE_UNIT;
+
+        return (int) Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+    }
+
+    /**
+     * buffer 의 off 부터 len byte 의 rolling checksum 을 계산 하는 메소드
+     *
+     * @param buffer byte[] 형태의 데이터
+     * @param off    int 형태의 시작 위치
+     * @param len    int 형태의 길이
+     * @return int 형태의 rolling checksum
+     */
+    public static int rolling(byte[] buffer, int off, int len) {
+
+        int a = 0;
+        int b = 0;
+
+        for (int i = 0; i < len; i++) {
+
+            a += buffer[off + i] & 0xFF;
+            b += (len - i) * (buffer[off + i] & 0xFF);
+        }
+
+        return (a & MOD_MASK) | (b & MOD_MASK) << 16;
+    }
+
+    /**
+     * 블록 을 한 byte 밀었을 때 의 rolling checksum 을 계산 하는 메소드
+     *
+     * @param checksum  int 형태의 이전 블록 의 rolling checksum
+     * @param out       byte 형태의 블록 에서 빠지는 byte
+     * @param in        byte 형태의 블록 에 새로 들어오는 byte
+     * @param blockSize int 형태의 블록 크기
+     * @return int 형태의 새 블록 의 rolling checksum
+     */
+    public static int roll(int checksum, byte out, byte in, int blockSize) {
+
+        int a = checksum & MOD_MASK;
+        int b = checksum >>> 16;
+
+        a = (a - (out & 0xFF) + (in & 0xFF)) & MOD_MASK;
+        b = (b - blockSize * (out & 0xFF) + a) & MOD_MASK;
+
+        return a | b << 16;
+    }
+
+    /**
+     * 블록 의 MD5 를 계산 할 MessageDigest 를 만드는 메소드
+     *
+     * @return MessageDigest 형태의 MD5 digest
+     */
+    public static MessageDigest newStrongDigest() {
+
+        try {
+
+            return MessageDigest.getInstance(STRONG_ALGORITHM);
+
+        } catch (NoSuchAlgorithmException e) {
+
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * index 번째 블록 의 MD5 가 digest 와 같은지 확인 하는 메소드
+     *
+     * @param index  int 형태의 블록 번호
+     * @param digest byte[] 형태의 STRONG_LENGTH 길이 의 MD5
+     * @return boolean 형태로 같으면 true
+     */
+    public boolean matches(int index, byte[] digest) {
+
+        int off = index * STRONG_LENGTH;
+
+        for (int i = 0; i < STRONG_LENGTH; i++) {
+
+            if (strong[off + i] != digest[i]) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 블록 크기 를 반환 하는 메소드
+     *
+     * @return int 형태의 byte 단위 블록 크기
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 서명 한 파일 의 크기 를 반환 하는 메소드
+     *
+     * @return long 형태의 byte 단위 파일 크기
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * 서명 에 포함 된 블록 수 를 반환 하는 메소드
+     *
+     * @return int 형태의 블록 수
+     */
+    public int getBlockCount() {
+        return rolling.length;
+    }
+
+    /**
+     * index 번째 블록 의 rolling checksum 을 반환 하는 메소드
+     *
+     * @param index int 형태의 블록 번호
+     * @return int 형태의 rolling checksum
+     */
+    public int getRolling(int index) {
+        return rolling[index];
+    }
+
+    /**
+     * index 번째 블록 의 MD5 를 반환 하는 메소드
+     *
+     * @param index int 형태의 블록 번호
+     * @return byte[] 형태의 STRONG_LENGTH 길이 의 MD5
+     */
+    public byte[] getStrong(int index) {
+        return Arrays.copyOfRange(strong, index * STRONG_LENGTH, (index + 1) * STRONG_LENGTH);
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+
+        int off = 0;
+
+        while (off < buffer.length) {
+
+            int read = in.read(buffer, off, buffer.length - off);
+
+            if (read == -1) {
+
+                throw new EOFException();
+            }
+
+            off += read;
+        }
+    }
+}
@@ -0,0 +1,589 @@
+package util;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.zip.CRC32;
+
+/**
+ * 검증 된 staging 파일 들을 업데이트 가 끝날 때 한번 에 적용 하는 커밋 저널 클래스
+ * <p>
+ * 업데이트 도중 에는 트리 를 바꾸지 않고 교체 할 파일, 옮길 파일, 삭제 할 파일 을 모아 둔다.
+ * commit 은 staging 파일 들을 디스크 에 동기화 한 후 계획 을 저널 에 쓰고 동기화 하며, 그 다음 에 이름 변경 만 으로 적용 한다.
+ * 교체 되거나 삭제 되는 기존 파일 은 root 옆의 backup 디렉토리 로 옮겨 두었다가 적용 이 끝나면 지운다.
+ * <ul>
+ * <li>옮길 파일 은 먼저 새 경로 의 staging 파일 자리 로 옮긴다.</li>
+ * <li>삭제 할 파일 을 backup 으로 옮긴 후 저널 에 삭제 완료 를 기록 하고 동기화 한다.</li>
+ * <li>교체 할 경로 에 기존 파일 이 있으면 backup 으로 옮기고 staging 파일 을 그 자리 로 옮긴다. 새 디렉토리 는 이 단계 에서 만든다.</li>
+ * </ul>
+ * 적용 도중 이름 변경 이 실패 하면 지금 까지 의 이름 변경 을 거꾸로 되돌린다.
+ * 적용 도중 프로그램 이 종료 되면 다음 실행 의 recover 가 저널 을 읽어 남은 단계 를 마저 적용 하며, 각 단계 는 여러번 실행 해도 결과 가 같다.
+ * 계획 을 다 쓰기 전에 종료 된 저널 은 아무것도 적용 되지 않았으므로 버린다.
+ */
+public class CommitJournal {
+
+    private static final String JOURNAL_SUFFIX = ".commit";
+    private static final String BACKUP_SUFFIX = ".backup";
+    private static final String PREFIX_HIDDEN = ".";
+
+    private static final byte OP_REPLACE = 1;
+    private static final byte OP_MOVE = 2;
+    private static final byte OP_DELETE = 3;
+    private static final byte OP_COMMIT = 4;
+    private static final byte OP_DELETED = 5;
+    private static final byte OP_MKDIR = 6;
+
+    private static final String MSG_COMMITTED = "staged update committed. files : ";
+    private static final String MSG_RECOVERED = "interrupted update commit finished. files : ";
+    private static final String ERR_COMMIT_FAILED = "staged update commit failed. rolled back. check stack trace";
+    private static final String ERR_ROLLBACK_FAILED = "staged update rollback failed : ";
+    private static final String ERR_RECOVER_FAILED = "interrupted update commit recover failed. check stack trace";
+
+    private final File root;
+    private final File journalFile;
+    private final File backupRoot;
+    private final TransferJournal transferJournal;
+
+    private final LinkedHashMap<String, Entry> staged = new LinkedHashMap<>();
+    private final LinkedHashSet<String> deletes = new LinkedHashSet<>();
+
+    /**
+     * root 디렉토리 옆에 저장 되는 커밋 저널 을 생성 한다.
+     * root 가 /opt/client 일 경우 저널 은 /opt/.client.commit, backup 디렉토리 는 /opt/.client.backup 이다.
+     * staging 파일 은 transferJournal 의 staging 디렉토리 를 사용 한다.
+     *
+     * @param root            File 형태의 클라이언트 root 디렉토리
+     * @param transferJournal TransferJournal 형태의 staging 파일 위치 를 정하는 저널
+     */
+    public CommitJournal(File root, TransferJournal transferJournal) {
+
+        File parent = root.getAbsoluteFile().getParentFile();
+
+        this.root = root.getAbsoluteFile();
+        this.journalFile = new File(parent, PREFIX_HIDDEN + root.getName() + JOURNAL_SUFFIX);
+        this.backupRoot = new File(parent, PREFIX_HIDDEN + root.getName() + BACKUP_SUFFIX);
+        this.transferJournal = transferJournal;
+    }
+
+    /**
+     * 이전 실행 에서 끝나지 않은 commit 을 마저 적용 하는 메소드
+     * 트리 를 탐색 하기 전, transfer journal 을 불러오기 전에 호출 해야 한다.
+     */
+    public synchronized void recover() {
+
+        if (!journalFile.isFile()) {
+
+            deleteBackup();
+
+            return;
+        }
+
+        ArrayList<Entry> plan = new ArrayList<>();
+        boolean[] markers = new boolean[2];
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+
+            replay(in, plan, markers);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+
+        }
+
+        if (markers[0]) {
+
+            try {
+
+                apply(plan, markers[1], null);
+                syncDirectories(plan);
+
+                UpdateLog.info(MSG_RECOVERED + plan.size());
+
+            } catch (IOException e) {
+
+                e.printStackTrace();
+                UpdateLog.error(ERR_RECOVER_FAILED);
+
+                return;
+            }
+        }
+
+        if (!journalFile.delete()) {
+
+            UpdateLog.error(ERR_RECOVER_FAILED);
+
+        }
+
+        deleteBackup();
+    }
+
+    /**
+     * 검증 된 staging 파일 로 path 를 교체 하도록 예약 하는 메소드
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     * @param hash String 형태의 staging 파일 의 SHA256 해시 값
+     */
+    public synchronized void stageReplace(String path, String hash) {
+
+        staged.put(path, new Entry(OP_REPLACE, path, null, hash));
+    }
+
+    /**
+     * 삭제 할 source 를 path 로 옮기도록 예약 하는 메소드
+     *
+     * @param source String 형태의 옮길 파일 의 root 기준 상대 경로
+     * @param path   String 형태의 새 root 기준 상대 경로
+     * @param hash   String 형태의 파일 의 SHA256 해시 값
+     */
+    public synchronized void stageMove(String source, String path, String hash) {
+
+        staged.put(path, new Entry(OP_MOVE, path, source, hash));
+    }
+
+    /**
+     * 디렉토리 path 를 만들도록 예약 하는 메소드
+     * 같은 경로 의 파일 이 삭제 된 후 에 만들어 진다.
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     */
+    public synchronized void stageDirectory(String path) {
+
+        staged.put(path, new Entry(OP_MKDIR, path, null, null));
+    }
+
+    /**
+     * path 를 삭제 하도록 예약 하는 메소드
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     */
+    public synchronized void stageDelete(String path) {
+
+        deletes.add(path);
+    }
+
+    /**
+     * 예약 된 작업 이 없는지 반환 하는 메소드
+     *
+     * @return boolean 형태로 예약 된 작업 이 없으면 true
+     */
+    public synchronized boolean isEmpty() {
+
+        return staged.isEmpty() && deletes.isEmpty();
+    }
+
+    /**
+     * 예약 된 작업 들을 한번 에 적용 하는 메소드
+     * 적용 에 실패 하면 되돌리고 예약 된 작업 을 버린다. 검증 된 staging 파일 은 discard 와 같이 다음 실행 을 위해 남긴다.
+     * 적용 된 파일 들은 hashCache 에 기록 된다.
+     *
+     * @param hashCache HashCache 형태의 적용 된 파일 의 해시 를 기록할 캐시
+     * @return boolean 형태로 적용 에 성공 했거나 예약 된 작업 이 없으면 true
+     */
+    public synchronized boolean commit(HashCache hashCache) {
+
+        if (isEmpty()) {
+
+            return true;
+        }
+
+        ArrayList<Entry> plan = new ArrayList<>(staged.values());
+
+        for (String path : deletes) {
+
+            plan.add(new Entry(OP_DELETE, path, null, null));
+
+        }
+
+        ArrayList<File[]> renames = new ArrayList<>();
+
+        try {
+
+            syncStagingFiles(plan);
+            writePlan(plan);
+            apply(plan, false, renames);
+            syncDirectories(plan);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_COMMIT_FAILED);
+
+            rollback(renames);
+            discard();
+
+            if (!journalFile.delete()) {
+
+                UpdateLog.error(ERR_COMMIT_FAILED);
+
+            }
+
+            deleteBackup();
+
+            return false;
+        }
+
+        if (!journalFile.delete()) {
+
+            UpdateLog.error(ERR_COMMIT_FAILED);
+
+        }
+
+        deleteBackup();
+
+        for (Entry e : plan) {
+
+            if (e.op == OP_DELETE) {
+
+                hashCache.remove(e.path);
+
+            } else if (e.op != OP_MKDIR) {
+
+                if (e.op == OP_MOVE) {
+
+                    hashCache.remove(e.source);
+
+                }
+
+                hashCache.put(e.path, new File(root, e.path), e.hash);
+            }
+        }
+
+        hashCache.flush();
+        UpdateLog.info(MSG_COMMITTED + plan.size());
+
+        staged.clear();
+        deletes.clear();
+
+        return true;
+    }
+
+    /**
+     * 예약 된 작업 을 버리는 메소드
+     * 교체 할 staging 파일 은 이미 검증 되었으므로 지우지 않고 transfer journal 에 전체 길이 를 받은 것 으로 기록 한다.
+     * 다음 실행 에서 서버 해시 가 같으면 다시 받지 않고 그대로 사용 하며, 다르면 transfer journal 이 staging 파일 을 지운다.
+     */
+    public synchronized void discard() {
+
+        for (Entry e : staged.values()) {
+
+            if (e.op == OP_REPLACE) {
+
+                keepStagingFile(e);
+
+            }
+        }
+
+        staged.clear();
+        deletes.clear();
+    }
+
+    /**
+     * 계획 을 단계 별 로 적용 한다. 이미 적용 된 작업 은 건너 뛰므로 recover 에서 다시 실행 해도 된다.
+     *
+     * @param isDeleted boolean 형태로 삭제 단계 가 이미 끝났으면 true
+     * @param renames   ArrayList 형태의 되돌리기 위해 실행 한 이름 변경 을 기록할 리스트, 기록 하지 않으면 null
+     */
+    private void apply(ArrayList<Entry> plan, boolean isDeleted, ArrayList<File[]> renames) throws IOException {
+
+        for (Entry e : plan) {
+
+            if (e.op == OP_MOVE) {
+
+                File source = new File(root, e.source);
+                File staging = transferJournal.getStagingFile(e.path);
+
+                if (source.exists() && !staging.exists()) {
+
+                    rename(source, staging, renames);
+
+                }
+            }
+        }
+
+        if (!isDeleted) {
+
+            for (Entry e : plan) {
+
+                if (e.op == OP_DELETE) {
+
+                    File target = new File(root, e.path);
+
+                    if (target.exists()) {
+
+                        rename(target, new File(backupRoot, e.path), renames);
+
+                    }
+                }
+            }
+
+            appendRecord(OP_DELETED, null);
+        }
+
+        for (Entry e : plan) {
+
+            if (e.op == OP_DELETE) {
+
+                continue;
+            }
+
+            if (e.op == OP_MKDIR) {
+
+                File directory = new File(root, e.path);
+
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+
+                    throw new IOException(directory.getAbsolutePath());
+                }
+
+                continue;
+            }
+
+            File staging = transferJournal.getStagingFile(e.path);
+            File target = new File(root, e.path);
+
+            if (!staging.exists()) {
+
+                continue;
+            }
+
+            if (target.exists()) {
+
+                rename(target, new File(backupRoot, e.path), renames);
+
+            }
+
+            rename(staging, target, renames);
+        }
+    }
+
+    /**
+     * 검증 된 staging 파일 을 디스크 에 동기화 한 후 transfer journal 에 전체 길이 를 기록 한다.
+     * 동기화 에 실패 하면 staging 파일 을 지운다.
+     */
+    private void keepStagingFile(Entry e) {
+
+        File staging = transferJournal.getStagingFile(e.path);
+
+        if (!staging.isFile()) {
+
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(staging.toPath(), StandardOpenOption.WRITE)) {
+
+            channel.force(false);
+
+        } catch (IOException ex) {
+
+            ex.printStackTrace();
+            FileUtil.discardStagingFile(staging);
+
+            return;
+        }
+
+        transferJournal.record(e.path, e.hash, staging.length());
+    }
+
+    /**
+     * 실행 한 이름 변경 들을 거꾸로 되돌린다.
+     */
+    private void rollback(ArrayList<File[]> renames) {
+
+        for (int i = renames.size() - 1; i >= 0; i--) {
+
+            File[] rename = renames.get(i);
+
+            try {
+
+                Files.move(rename[1].toPath(), rename[0].toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (IOException e) {
+
+                e.printStackTrace();
+                UpdateLog.error(ERR_ROLLBACK_FAILED + rename[0].getAbsolutePath());
+
+            }
+        }
+    }
+
+    private static void rename(File from, File to, ArrayList<File[]> renames) throws IOException {
+
+        File parent = to.getParentFile();
+
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+
+            throw new IOException(parent.getAbsolutePath());
+        }
+
+        Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        if (renames != null) {
+
+            renames.add(new File[]{from, to});
+
+        }
+    }
+
+    private void syncStagingFiles(ArrayList<Entry> plan) throws IOException {
+
+        for (Entry e : plan) {
+
+            if (e.op == OP_REPLACE) {
+
+                try (FileChannel channel = FileChannel.open(transferJournal.getStagingFile(e.path).toPath(),
+                        StandardOpenOption.WRITE)) {
+
+                    channel.force(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 적용 된 경로 들의 부모 디렉토리 를 동기화 해서 이름 변경 이 디스크 에 남도록 한다.
+     * 디렉토리 동기화 를 지원 하지 않는 플랫폼 에서는 무시 된다.
+     */
+    private void syncDirectories(ArrayList<Entry> plan) {
+
+        LinkedHashSet<File> directories = new LinkedHashSet<>();
+
+        for (Entry e : plan) {
+
+            directories.add(new File(root, e.path).getParentFile());
+
+            if (e.op == OP_MOVE) {
+
+                directories.add(new File(root, e.source).getParentFile());
+
+            }
+        }
+
+        for (File directory : directories) {
+
+            try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+
+                channel.force(true);
+
+            } catch (IOException e) {
+
+                return;
+            }
+        }
+    }
+
+    private void writePlan(ArrayList<Entry> plan) throws IOException {
+
+        try (FileOutputStream fos = new FileOutputStream(journalFile)) {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+
+            for (Entry e : plan) {
+
+                writeRecord(out, e.op, e);
+
+            }
+
+            writeRecord(out, OP_COMMIT, null);
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    private void appendRecord(byte op, Entry entry) throws IOException {
+
+        try (FileOutputStream fos = new FileOutputStream(journalFile, true)) {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+
+            writeRecord(out, op, entry);
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * 저널 을 읽어 계획 을 plan 에 담고, markers[0] 에 계획 완료 여부, markers[1] 에 삭제 단계 완료 여부 를 담는다.
+     */
+    private static void replay(DataInputStream in, ArrayList<Entry> plan, boolean[] markers) throws IOException {
+
+        CRC32 crc = new CRC32();
+        DataInputStream r;
+
+        while ((r = JournalRecord.read(in, crc)) != null) {
+
+            byte op = r.readByte();
+
+            if (op == OP_COMMIT) {
+
+                markers[0] = true;
+
+            } else if (op == OP_DELETED) {
+
+                markers[1] = true;
+
+            } else {
+
+                String path = r.readUTF();
+                String source = r.readBoolean() ? r.readUTF() : null;
+
+                plan.add(new Entry(op, path, source, null));
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, Entry entry) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream r = new DataOutputStream(buffer);
+
+        r.writeByte(op);
+
+        if (entry != null) {
+
+            r.writeUTF(entry.path);
+            r.writeBoolean(entry.source != null);
+
+            if (entry.source != null) {
+
+                r.writeUTF(entry.source);
+
+            }
+        }
+
+        r.flush();
+        JournalRecord.write(out, buffer);
+    }
+
+    private void deleteBackup() {
+
+        if (backupRoot.exists()) {
+
+            FileUtil.deleteFile(backupRoot.getPath());
+
+        }
+    }
+
+    /**
+     * 예약 된 작업 하나
+     */
+    private static class Entry {
+
+        private final byte op;
+        private final String path;
+        private final String source;
+        private final String hash;
+
+        Entry(byte op, String path, String source, String hash) {
+            this.op = op;
+            this.path = path;
+            this.source = source;
+            this.hash = hash;
+        }
+    }
+}
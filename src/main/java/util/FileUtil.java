@@ -2,9 +2,21 @@ package util;
 
 import model.FileResponse;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 파일 I/O 관련 처리를 담당하는 클래스
@@ -17,80 +29,457 @@ public class FileUtil {
     private static final String MSG_SUB_DIR_CREATE = "subdirectory created!";
     private static final String MSG_CREATE_FILE = "create File : ";
     private static final String MSG_SUB_DIR_EXIST = "subdirectory exist! : ";
-    private static final String MSG_FILE_EXIST = "file exist!";
     private static final String MSG_FILE_DOWNLOADED = "File Downloaded : ";
     private static final String MSG_SUB_FILE = " sub file ";
     private static final String MSG_DELETE = "Delete : ";
     private static final String MSG_DELETE_FAILED = " delete failed.";
     private static final String MSG_INTEGRITY_CLEAR = " Integrity clear";
     private static final String MSG_INTEGRITY_PROBLEM = " Integrity problem";
+    private static final String ERR_MSG_NOT_FOUND_ALGORITHM = "SHA-256 Algorithm not supported";
+    private static final String ERR_STAGING_COMMIT_FAILED = " staging file replace failed. check stack trace ";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long CHECKPOINT_SIZE = 4L * 1024 * 1024;
+    private static final long PREALLOCATE_MIN_SIZE = 1024 * 1024;
+
+    /**
+     * 이번 업데이트 에서 만들었거나 있는 것 을 확인 한 디렉토리 들의 절대 경로
+     */
+    private static final Set<String> DIRECTORIES = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
 
     /**
      * 파일을 쓰는 기능을 담당 한다. FileResponse 에 정보를 기반하여 쓰기를 실행한다.
      *
      * @param response        FileResponse 형태의 response 로 FileResponse 정보를 사용해 쓰기 를 실행 한다.
      * @param local_file_path String 형태의 로컬 파일 경로로 root 디렉토리의 경로가 된다.
+     * @return String 형태의 쓰여진 내용 의 SHA256 해시 값, 디렉토리 이거나 쓰기 에 실패한 경우 null
      */
-    public static void writeFile(FileResponse response, String local_file_path) {
+    public static String writeFile(FileResponse response, String local_file_path) {
 
-        File target = new File(local_file_path + response.getFilePath());
-        File targetParent = new File(target.getParent());
+        byte[] data = response.getData() == null ? new byte[0] : response.getData();
 
-        if (targetParent.mkdirs()) {
+        return writeFile(response, new ByteArrayInputStream(data), local_file_path);
+    }
 
-            System.out.println(MSG_SUB_DIR_CREATE);
+    /**
+     * 파일을 쓰는 기능을 담당 한다. FileResponse 의 정보 로 대상 파일 을 정하고 content 스트림 의 내용 을 쓴다.
+     * 파일 내용 은 스레드 별로 재사용 되는 버퍼 를 통해 FileChannel 에 나누어 쓰므로 파일 크기 와 관계 없이
+     * 사용 하는 메모리 는 일정 하다.
+     * 쓰는 동시에 SHA256 해시 를 계산 하므로 검증 을 위해 파일 을 다시 읽을 필요 가 없다.
+     *
+     * @param response        FileResponse 형태의 response 로 파일 경로 와 디렉토리 여부 를 사용 한다.
+     * @param content         InputStream 형태의 파일 내용
+     * @param local_file_path String 형태의 로컬 파일 경로로 root 디렉토리의 경로가 된다.
+     * @return String 형태의 쓰여진 내용 의 SHA256 해시 값, 디렉토리 이거나 쓰기 에 실패한 경우 null
+     */
+    public static String writeFile(FileResponse response, InputStream content, String local_file_path) {
 
-        }
+        File target = new File(local_file_path + response.getFilePath());
 
         if (response.isDirectory()) {
 
-            if (target.mkdir()) {
+            if (DIRECTORIES.contains(target.getAbsolutePath()) || target.isDirectory()) {
 
-                System.out.println(MSG_CREATE_FILE + target.getAbsolutePath());
+                UpdateLog.debug(MSG_SUB_DIR_EXIST, target.getAbsolutePath());
 
-            } else {
+            } else if (makeDirectories(target)) {
 
-                System.out.println(MSG_SUB_DIR_EXIST + target.getAbsolutePath());
+                UpdateLog.debug(MSG_CREATE_FILE, target.getAbsolutePath());
 
             }
 
-        } else {
+            return null;
+        }
 
-            try {
+        if (!makeDirectories(target.getParentFile())) {
 
-                if (target.createNewFile()) {
+            UpdateLog.error(response.getFilePath() + ERR_FILE_CREATE_FAILED);
 
-                    System.out.println(MSG_CREATE_FILE + target.getAbsolutePath());
+            return null;
+        }
 
-                } else {
+        String writtenHash = null;
 
-                    System.out.println(MSG_FILE_EXIST + target.getAbsolutePath());
+        try {
 
-                }
+            writtenHash = writeContent(content, target, response.getFileSize());
+            UpdateLog.debug(MSG_FILE_DOWNLOADED, target.getAbsolutePath());
 
-            } catch (IOException e) {
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(response.getFilePath() + ERR_FILE_WRITE_FAILED);
 
-                e.printStackTrace();
-                System.out.println(response.getFilePath() + ERR_FILE_CREATE_FAILED);
+        } catch (NoSuchAlgorithmException e) {
 
-            }
+            e.printStackTrace();
+            UpdateLog.error(ERR_MSG_NOT_FOUND_ALGORITHM);
+
+        }
+
+        return writtenHash;
+    }
+
+    /**
+     * 기존 파일 을 바로 덮어 쓰지 않고 staging 파일 에 content 스트림 의 내용 을 쓰는 메소드
+     * offset 이 0 보다 크면 staging 파일 의 offset 까지 는 이미 받은 내용 으로 보고 그 뒤 에 이어 쓴다.
+     * journal 이 주어지면 CHECKPOINT_SIZE 마다 staging 파일 을 디스크 에 동기화 하고 검증 된 길이 를 기록 하며,
+     * 도중 에 실패 해도 그때 까지 받은 길이 를 기록 한다.
+     * 검증 후 commitStagingFile 또는 discardStagingFile 을 호출 해야 한다.
+     *
+     * @param response FileResponse 형태의 response 로 파일 경로 와 해시 를 사용 한다.
+     * @param content  InputStream 형태의 offset 이후 의 파일 내용
+     * @param staging  File 형태의 staging 파일
+     * @param offset   long 형태의 이미 받은 길이
+     * @param journal  TransferJournal 형태의 진행 상황 을 기록할 저널, 기록 하지 않으면 null
+     * @return String 형태의 staging 파일 전체 내용 의 SHA256 해시 값, 쓰기 에 실패한 경우 null
+     */
+    public static String writeStagingFile(FileResponse response, InputStream content, File staging, long offset,
+                                          TransferJournal journal) {
+
+        File stagingParent = staging.getParentFile();
+
+        if (stagingParent != null && !makeDirectories(stagingParent)) {
+
+            UpdateLog.error(response.getFilePath() + ERR_FILE_CREATE_FAILED);
+
+            return null;
         }
 
         try {
-            if (!response.isDirectory()) {
 
-                Files.write(target.toPath(), response.getData());
-                System.out.println(MSG_FILE_DOWNLOADED + target.getAbsolutePath());
+            return writeContent(content, staging, offset, journal, response);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(response.getFilePath() + ERR_FILE_WRITE_FAILED);
+
+        } catch (NoSuchAlgorithmException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_MSG_NOT_FOUND_ALGORITHM);
+
+        }
+
+        return null;
+    }
+
+    /**
+     * writeStagingFile 로 쓴 staging 파일 로 기존 파일 을 교체 하는 메소드
+     * 가능 하면 atomic rename 으로 교체 하므로 중간 에 실패 해도 기존 파일 이 깨지지 않는다.
+     *
+     * @param response        FileResponse 형태의 response 로 파일 경로 를 사용 한다.
+     * @param staging         File 형태의 검증 된 staging 파일
+     * @param local_file_path String 형태의 로컬 파일 경로로 root 디렉토리의 경로가 된다.
+     * @return boolean 형태로 교체 에 성공 하면 true
+     */
+    public static boolean commitStagingFile(FileResponse response, File staging, String local_file_path) {
+
+        File target = new File(local_file_path + response.getFilePath());
+
+        makeDirectories(target.getParentFile());
+
+        try {
+
+            try {
+
+                Files.move(staging.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (IOException e) {
+
+                Files.move(staging.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
 
             }
+
+            UpdateLog.debug(MSG_FILE_DOWNLOADED, target.getAbsolutePath());
+
+            return true;
+
         } catch (IOException e) {
 
             e.printStackTrace();
-            System.out.println(response.getFilePath() + ERR_FILE_WRITE_FAILED);
+            UpdateLog.error(response.getFilePath() + ERR_STAGING_COMMIT_FAILED);
+            discardStagingFile(staging);
 
+            return false;
         }
     }
 
+    /**
+     * directory 와 그 상위 디렉토리 들을 만드는 메소드
+     * 이번 업데이트 에서 이미 만들었거나 있는 것 을 확인 한 디렉토리 는 파일 시스템 에 다시 묻지 않는다.
+     * 디렉토리 가 있으면 상위 디렉토리 도 있으므로 이미 기록 된 디렉토리 를 만날 때 까지 상위 디렉토리 도 함께 기록 한다.
+     *
+     * @param directory File 형태의 만들 디렉토리
+     * @return boolean 형태로 디렉토리 가 있거나 만들었으면 true
+     */
+    public static boolean makeDirectories(File directory) {
+
+        String path = directory.getAbsolutePath();
+
+        if (DIRECTORIES.contains(path)) {
+
+            return true;
+        }
+
+        if (!directory.isDirectory()) {
+
+            if (!directory.mkdirs() && !directory.isDirectory()) {
+
+                return false;
+            }
+
+            UpdateLog.debug(MSG_SUB_DIR_CREATE);
+
+        }
+
+        File d = directory;
+
+        while (d != null && DIRECTORIES.add(d.getAbsolutePath())) {
+
+            d = d.getParentFile();
+
+        }
+
+        return true;
+    }
+
+    /**
+     * makeDirectories 가 기록 한 디렉토리 들을 잊는 메소드 로 업데이트 를 시작 할 때 호출 한다.
+     * 업데이트 사이 에 다른 프로세스 가 디렉토리 를 지웠을 수 있으므로 기록 을 다음 업데이트 로 넘기지 않는다.
+     */
+    public static void clearDirectoryCache() {
+
+        DIRECTORIES.clear();
+    }
+
+    /**
+     * 삭제 된 path 와 그 하위 디렉토리 들을 makeDirectories 의 기록 에서 지운다.
+     */
+    private static void forgetDirectories(String path) {
+
+        if (DIRECTORIES.isEmpty()) {
+
+            return;
+        }
+
+        String prefix = path + File.separator;
+
+        for (String d : DIRECTORIES) {
+
+            if (d.equals(path) || d.startsWith(prefix)) {
+
+                DIRECTORIES.remove(d);
+
+            }
+        }
+    }
+
+    /**
+     * writeStagingFile 로 쓴 staging 파일 을 지우는 메소드
+     *
+     * @param staging File 형태의 staging 파일
+     */
+    public static void discardStagingFile(File staging) {
+
+        if (staging.exists() && !staging.delete()) {
+
+            UpdateLog.error(MSG_DELETE_FAILED + " : " + staging.getAbsolutePath());
+
+        }
+    }
+
+    /**
+     * content 스트림 의 내용 을 재사용 버퍼 를 통해 target 파일 에 쓰면서 SHA256 해시 를 계산 하는 메소드
+     * 파일 이 없으면 여는 시점 에 만들어 지므로 따로 만들지 않는다.
+     *
+     * @param content InputStream 형태의 파일 내용
+     * @param target  File 형태의 쓸 파일
+     * @param size    long 형태의 예상 되는 파일 크기 로 모르면 0
+     * @return String 형태의 쓰여진 내용 의 SHA256 해시 값
+     * @throws IOException              읽기 또는 쓰기 에 실패한 경우
+     * @throws NoSuchAlgorithmException SHA-256 알고리즘을 지원하지 않을 경우
+     */
+    private static String writeContent(InputStream content, File target, long size)
+            throws IOException, NoSuchAlgorithmException {
+
+        MessageDigest sha = SHA256HashGenerator.newDigest();
+        byte[] buffer = BUFFER.get();
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw"); FileChannel channel = file.getChannel()) {
+
+            preallocate(file, 0, size);
+
+            long position = 0;
+            long transferNanos = 0;
+            long writeNanos = 0;
+            long mark = System.nanoTime();
+            int read;
+
+            while ((read = content.read(buffer)) != -1) {
+
+                long received = System.nanoTime();
+
+                transferNanos += received - mark;
+                sha.update(buffer, 0, read);
+
+                wrapper.clear();
+                wrapper.limit(read);
+
+                while (wrapper.hasRemaining()) {
+                    channel.write(wrapper);
+                }
+
+                position += read;
+                mark = System.nanoTime();
+                writeNanos += mark - received;
+            }
+
+            channel.truncate(position);
+            recordWrite(position, transferNanos, writeNanos);
+        }
+
+        return SHA256HashGenerator.toHex(sha.digest());
+    }
+
+    /**
+     * 파일 하나 를 쓰는 동안 모은 값 을 UpdateMetrics 에 한번 에 더한다.
+     * content 를 읽으며 기다린 시간 은 transfer, 해시 계산 과 디스크 쓰기 시간 은 write 단계 이다.
+     */
+    private static void recordWrite(long bytes, long transferNanos, long writeNanos) {
+
+        UpdateMetrics.count(UpdateMetrics.COUNT_BYTES, bytes);
+        UpdateMetrics.addTime(UpdateMetrics.PHASE_TRANSFER, transferNanos);
+        UpdateMetrics.addTime(UpdateMetrics.PHASE_WRITE, writeNanos);
+    }
+
+    /**
+     * 크기 를 아는 큰 파일 은 쓰기 전에 파일 길이 를 먼저 늘려 둔다.
+     * 쓰는 동안 파일 길이 가 조금 씩 늘어 나며 생기는 메타데이터 갱신 과 조각 남 을 줄이기 위해 사용 하며,
+     * 실제 로 쓴 길이 가 다르면 쓰기 가 끝난 후 truncate 로 맞춘다.
+     */
+    private static void preallocate(RandomAccessFile file, long offset, long size) throws IOException {
+
+        if (size - offset >= PREALLOCATE_MIN_SIZE && file.length() < size) {
+
+            file.setLength(size);
+
+        }
+    }
+
+    /**
+     * offset 이후 에 content 스트림 의 내용 을 이어 쓰면서 파일 전체 의 SHA256 해시 를 계산 하는 메소드
+     * offset 까지 의 내용 은 해시 계산 을 위해 디스크 에서 다시 읽는다.
+     *
+     * @param content  InputStream 형태의 offset 이후 의 파일 내용
+     * @param target   File 형태의 쓸 파일
+     * @param offset   long 형태의 이미 쓰여진 길이
+     * @param journal  TransferJournal 형태의 진행 상황 을 기록할 저널, 기록 하지 않으면 null
+     * @param response FileResponse 형태의 저널 에 기록할 경로 와 해시 를 가진 response
+     * @return String 형태의 파일 전체 내용 의 SHA256 해시 값
+     * @throws IOException              읽기 또는 쓰기 에 실패한 경우
+     * @throws NoSuchAlgorithmException SHA-256 알고리즘을 지원하지 않을 경우
+     */
+    private static String writeContent(InputStream content, File target, long offset, TransferJournal journal,
+                                       FileResponse response) throws IOException, NoSuchAlgorithmException {
+
+        MessageDigest sha = SHA256HashGenerator.newDigest();
+        byte[] buffer = BUFFER.get();
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw"); FileChannel channel = file.getChannel()) {
+
+            long position = 0;
+
+            while (position < offset) {
+
+                wrapper.clear();
+                wrapper.limit((int) Math.min(buffer.length, offset - position));
+
+                int read = channel.read(wrapper, position);
+
+                if (read == -1) {
+
+                    throw new EOFException();
+                }
+
+                sha.update(buffer, 0, read);
+                position += read;
+            }
+
+            channel.truncate(offset);
+            preallocate(file, offset, response.getFileSize());
+            channel.position(offset);
+
+            long checkpoint = offset;
+            long transferNanos = 0;
+            long writeNanos = 0;
+
+            try {
+
+                long mark = System.nanoTime();
+                int read;
+
+                while ((read = content.read(buffer)) != -1) {
+
+                    long received = System.nanoTime();
+
+                    transferNanos += received - mark;
+                    sha.update(buffer, 0, read);
+
+                    wrapper.clear();
+                    wrapper.limit(read);
+
+                    while (wrapper.hasRemaining()) {
+                        channel.write(wrapper);
+                    }
+
+                    position += read;
+
+                    if (journal != null && position - checkpoint >= CHECKPOINT_SIZE) {
+
+                        channel.force(false);
+                        journal.record(response.getFilePath(), response.getFileHash(), position);
+                        checkpoint = position;
+
+                    }
+
+                    mark = System.nanoTime();
+                    writeNanos += mark - received;
+                }
+
+            } catch (IOException e) {
+
+                if (journal != null && position > checkpoint) {
+
+                    channel.force(false);
+                    journal.record(response.getFilePath(), response.getFileHash(), position);
+
+                }
+
+                throw e;
+
+            } finally {
+
+                recordWrite(position - offset, transferNanos, writeNanos);
+            }
+
+            channel.truncate(position);
+        }
+
+        return SHA256HashGenerator.toHex(sha.digest());
+    }
+
     /**
      * 파일을 삭제하는 메소드 로 path 경로 파일을 삭제한다.
      *
@@ -98,6 +487,12 @@ public class FileUtil {
      */
     public static void deleteFile(String path) {
 
+        forgetDirectories(new File(path).getAbsolutePath());
+        deleteTree(path);
+    }
+
+    private static void deleteTree(String path) {
+
         File target = new File(path);
 
         if (target.isDirectory()) {
@@ -110,17 +505,17 @@ public class FileUtil {
 
                     if (f.isDirectory()) {
 
-                        deleteFile(f.getAbsolutePath());
+                        deleteTree(f.getAbsolutePath());
 
                     } else {
 
                         if (f.delete()) {
 
-                            System.out.println(MSG_DELETE + " : " + target.getAbsolutePath() + File.separator + f.getName());
+                            UpdateLog.debug(MSG_DELETE + " : ", target.getAbsolutePath() + File.separator + f.getName());
 
                         } else {
 
-                            System.out.println(MSG_DELETE_FAILED + " : " + target.getAbsolutePath() + File.separator + f.getName());
+                            UpdateLog.error(MSG_DELETE_FAILED + " : " + target.getAbsolutePath() + File.separator + f.getName());
 
                         }
                     }
@@ -131,17 +526,50 @@ public class FileUtil {
 
         if (target.delete()) {
 
-            System.out.println(MSG_DELETE + " : " + target.getAbsolutePath());
+            UpdateLog.debug(MSG_DELETE + " : ", target.getAbsolutePath());
 
         } else {
 
-            System.out.println(MSG_DELETE_FAILED + " : " + target.getAbsolutePath());
+            UpdateLog.error(MSG_DELETE_FAILED + " : " + target.getAbsolutePath());
+
+        }
+    }
+
+    /**
+     * 쓰기 도중 계산 된 해시 값 으로 파일 을 검증 하는 메소드 로 파일 을 다시 읽지 않는다.
+     *
+     * @param response    FileResponse 형태로 해당 response 에 hash 값을 사용한다.
+     * @param target      String 형태의 검증 한 파일 의 경로 로 로그 에 사용 한다.
+     * @param writtenHash String 형태의 writeFile 이 반환 한 해시 값
+     * @return boolean 형태의 값으로 두 해쉬값이 같을 경우 true, 다를 경우 false 를 반환 한다.
+     */
+    public static boolean verifyWrittenFile(FileResponse response, String target, String writtenHash) {
+
+        if (!response.isDirectory()) {
+
+            if (response.getFileHash().equals(writtenHash)) {
+
+                UpdateLog.debug(target, MSG_INTEGRITY_CLEAR);
+
+                return true;
+
+            } else {
+
+                UpdateLog.error(target + MSG_INTEGRITY_PROBLEM);
+
+                return false;
+
+            }
 
         }
+
+        return true;
+
     }
 
     /**
      * 파일을 비교하는 메소드로 FileResponse hash 값과 target 파일의 hash 값을 비교한다.
+     * 디스크 에서 파일 을 다시 읽어 해시 를 계산 하며, 걸린 시간 은 UpdateMetrics 의 verify 단계 에 기록 한다.
      *
      * @param response FileResponse 형태로 해당 response에 hash 값을 사용한다.
      * @param target   String 형태의 파일 경로를 나타내는 target 으로 비교할 파일의 경로를 나타낸다.
@@ -151,15 +579,20 @@ public class FileUtil {
 
         if (!response.isDirectory()) {
 
-            if (response.getFileHash().equals(SHA256HashGenerator.getHash(target))) {
+            long start = UpdateMetrics.startTimer();
+            String hash = SHA256HashGenerator.getHash(target);
+
+            UpdateMetrics.stopTimer(UpdateMetrics.PHASE_VERIFY, start);
+
+            if (response.getFileHash().equals(hash)) {
 
-                System.out.println(target + MSG_INTEGRITY_CLEAR);
+                UpdateLog.debug(target, MSG_INTEGRITY_CLEAR);
 
                 return true;
 
             } else {
 
-                System.out.println(MSG_INTEGRITY_PROBLEM);
+                UpdateLog.error(target + MSG_INTEGRITY_PROBLEM);
 
                 return false;
 
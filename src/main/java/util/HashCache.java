@@ -0,0 +1,581 @@
+package util;
+
+import model.UpdateInfo;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 로컬 파일 들의 해시 값을 디스크 에 저장해 두는 캐시 클래스
+ * <p>
+ * 상대 경로 를 키 로 (크기, 수정 시간, inode, SHA256 해시) 를 저장 하며
+ * 크기, 수정 시간, inode 가 모두 같은 파일 은 다시 해시 를 계산 하지 않는다.
+ * <p>
+ * 디스크 에는 스냅샷 파일 과 저널 파일 두개 로 저장 된다.
+ * 스냅샷 은 임시 파일 에 쓴 후 원자적 이름 변경 으로 교체 되며 CRC 로 검증 된다.
+ * updateFiles, deleteFiles 이후의 변경 사항 은 레코드 별 CRC 를 가진 저널 에 추가 되고,
+ * 불러올 때 마지막 의 깨진 레코드 는 무시 되므로 비정상 종료 후 에도 캐시 가 손상 되지 않는다.
+ * 캐시 값 은 메타데이터 가 일치 할 때만 사용 되므로 오래된 레코드 가 남아 있어도 잘못된 해시 가 사용 되지 않는다.
+ */
+public class HashCache {
+
+    private static final String INDEX_SUFFIX = ".hashindex";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PREFIX_HIDDEN = ".";
+
+    private static final int MAGIC = 0x48494458;
+    private static final int VERSION = 1;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final String ERR_INDEX_LOAD_FAILED = "hash index load failed. index will be rebuilt";
+    private static final String ERR_INDEX_SAVE_FAILED = "hash index save failed. check stack trace";
+    private static final String ERR_JOURNAL_WRITE_FAILED = "hash index journal write failed. check stack trace";
+
+    private final File indexFile;
+    private final File journalFile;
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Entry> pending = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, String> paths = new ConcurrentHashMap<>();
+
+    /**
+     * root 디렉토리 옆에 저장 되는 해시 캐시 를 생성 한다.
+     * root 가 /opt/client 일 경우 /opt/.client.hashindex 에 저장 된다.
+     *
+     * @param root File 형태의 클라이언트 root 디렉토리
+     */
+    public HashCache(File root) {
+
+        File parent = root.getAbsoluteFile().getParentFile();
+
+        indexFile = new File(parent, PREFIX_HIDDEN + root.getName() + INDEX_SUFFIX);
+        journalFile = new File(parent, PREFIX_HIDDEN + root.getName() + INDEX_SUFFIX + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * 스냅샷 을 읽고 저널 을 재적용 하여 캐시 를 불러오는 메소드
+     * 파일 이 없거나 손상 되었을 경우 빈 캐시 로 시작 한다.
+     */
+    public synchronized void load() {
+
+        entries.clear();
+        paths.clear();
+
+        if (indexFile.isFile()) {
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+
+                readSnapshot(in);
+
+            } catch (IOException e) {
+
+                entries.clear();
+                paths.clear();
+                UpdateLog.error(ERR_INDEX_LOAD_FAILED);
+            }
+        }
+
+        if (journalFile.isFile()) {
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+
+                replayJournal(in);
+
+            } catch (IOException e) {
+
+                UpdateLog.error(ERR_INDEX_LOAD_FAILED);
+            }
+        }
+    }
+
+    /**
+     * 캐시 된 해시 를 사용 하거나, 메타데이터 가 바뀐 경우 해시 를 새로 계산 하는 메소드
+     * 메타데이터 는 해시 계산 전에 읽으므로 계산 도중 파일 이 바뀌면 다음 실행 에서 다시 계산 된다.
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     * @param file File 형태의 해시 를 얻을 파일
+     * @return String 형태의 SHA256 해시 값
+     */
+    public String getHash(String path, File file) {
+
+        Entry stat = stat(file);
+
+        if (stat != null) {
+
+            Entry cached = entries.get(path);
+
+            if (cached != null && cached.sameMetadata(stat)) {
+
+                cached.isScanned = true;
+                paths.putIfAbsent(cached.hash, path);
+
+                return cached.hash;
+            }
+        }
+
+        String hash = SHA256HashGenerator.getHash(file.getAbsolutePath());
+
+        if (stat != null && !hash.isEmpty()) {
+
+            stat.hash = hash;
+            stat.isScanned = true;
+            putEntry(path, stat);
+        }
+
+        return hash;
+    }
+
+    /**
+     * 해시 가 같은 내용 을 가졌던 로컬 파일 의 경로 를 찾는 메소드
+     * 마지막 으로 기록 된 경로 하나 만 반환 하며, 그 뒤 에 파일 이 바뀌었을 수 있으므로 hasHash 로 확인 후 사용 해야 한다.
+     * 기록 된 경로 의 항목 이 지워 졌거나 해시 가 바뀌었으면 기록 을 지우고 null 을 반환 한다.
+     * 같은 해시 의 다른 파일 은 다음 탐색 에서 getHash 가 다시 기록 한다.
+     *
+     * @param hash String 형태의 SHA256 해시 값
+     * @return String 형태의 root 기준 상대 경로, 없으면 null
+     */
+    public String findPath(String hash) {
+
+        String path = paths.get(hash);
+
+        if (path == null) {
+
+            return null;
+        }
+
+        Entry entry = entries.get(path);
+
+        if (entry == null || !entry.hash.equals(hash)) {
+
+            paths.remove(hash, path);
+
+            return null;
+        }
+
+        return path;
+    }
+
+    /**
+     * 캐시 된 항목 이 없는지 반환 하는 메소드
+     *
+     * @return boolean 형태로 캐시 된 파일 이 없으면 true
+     */
+    public boolean isEmpty() {
+
+        return entries.isEmpty();
+    }
+
+    /**
+     * 파일 을 다시 읽지 않고 캐시 만 으로 파일 의 내용 이 hash 와 같은지 확인 하는 메소드
+     * 캐시 항목 이 없거나 메타데이터 가 바뀐 경우 false 를 반환 한다.
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     * @param file File 형태의 확인할 파일
+     * @param hash String 형태의 기대 하는 SHA256 해시 값
+     * @return boolean 형태로 캐시 된 해시 가 현재 파일 의 것이고 hash 와 같으면 true
+     */
+    public boolean hasHash(String path, File file, String hash) {
+
+        Entry cached = entries.get(path);
+        Entry stat = cached == null ? null : stat(file);
+
+        return stat != null && cached.sameMetadata(stat) && cached.hash.equals(hash);
+    }
+
+    /**
+     * 새로 쓰여진 파일 의 해시 를 캐시 에 기록 하는 메소드
+     * 기록 된 내용 은 flush 호출 시 저널 에 추가 된다.
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     * @param file File 형태의 쓰여진 파일
+     * @param hash String 형태의 검증 된 SHA256 해시 값
+     */
+    public void put(String path, File file, String hash) {
+
+        Entry stat = stat(file);
+
+        if (stat == null) {
+
+            remove(path);
+
+            return;
+        }
+
+        stat.hash = hash;
+        putEntry(path, stat);
+        pending.put(path, stat);
+    }
+
+    /**
+     * 삭제 된 파일 또는 디렉토리 와 그 하위 항목 들을 캐시 에서 제거 하는 메소드
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     */
+    public void remove(String path) {
+
+        removeEntry(path);
+        pending.put(path, Entry.REMOVED);
+
+        ConcurrentNavigableMap<String, Entry> children =
+                entries.subMap(path + File.separator, true, path + File.separator + Character.MAX_VALUE, true);
+
+        for (String child : children.keySet()) {
+
+            removeEntry(child);
+            pending.put(child, Entry.REMOVED);
+        }
+    }
+
+    /**
+     * root 트리 에 존재 하지 않는 파일 들의 항목 을 제거 하는 메소드
+     * 탐색 이 끝난 후 호출 하여 삭제 된 파일 이 캐시 에 남지 않게 한다.
+     *
+     * @param root UpdateInfo 형태의 탐색 된 클라이언트 트리 의 root
+     */
+    public void retain(UpdateInfo root) {
+
+        retain(root, Collections.<String>emptySet());
+    }
+
+    /**
+     * root 트리 와 keep 에 존재 하지 않는 파일 들의 항목 을 제거 하는 메소드
+     * 탐색 이후 에 새로 쓰여진 파일 처럼 트리 에 없지만 남겨야 하는 항목 이 있을 때 사용 한다.
+     *
+     * @param root UpdateInfo 형태의 탐색 된 클라이언트 트리 의 root
+     * @param keep Set 형태의 트리 에 없어도 남길 root 기준 상대 경로 들
+     */
+    public void retain(UpdateInfo root, Set<String> keep) {
+
+        HashSet<String> live = new HashSet<>();
+
+        collect(root, live);
+
+        for (String path : entries.keySet()) {
+
+            if (!live.contains(path) && !keep.contains(path)) {
+
+                removeEntry(path);
+
+            }
+        }
+    }
+
+    /**
+     * 이전 retainScanned 호출 이후 getHash 로 확인 하지 않은 파일 들의 항목 을 제거 하는 메소드
+     * 트리 를 만들지 않고 탐색 해서 retain 을 사용 할 수 없을 때 탐색 이 끝난 후 호출 한다.
+     */
+    public void retainScanned() {
+
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+
+            Entry entry = e.getValue();
+
+            if (entry.isScanned) {
+
+                entry.isScanned = false;
+
+            } else {
+
+                if (entries.remove(e.getKey(), entry)) {
+
+                    unindex(e.getKey(), entry);
+
+                }
+
+            }
+        }
+    }
+
+    /**
+     * 기록 된 변경 사항 을 저널 에 추가 하고 디스크 에 동기화 하는 메소드
+     * 쓰는 동안 다른 스레드 가 같은 경로 를 다시 바꿀 수 있으므로 pending 에서 는 쓴 값 그대로 인 항목 만 지운다.
+     */
+    public synchronized void flush() {
+
+        if (pending.isEmpty()) {
+
+            return;
+        }
+
+        ArrayList<Map.Entry<String, Entry>> written = new ArrayList<>(pending.entrySet());
+
+        try (FileOutputStream fos = new FileOutputStream(journalFile, true)) {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+
+            for (Map.Entry<String, Entry> e : written) {
+
+                writeJournalRecord(out, e.getKey(), e.getValue());
+            }
+
+            out.flush();
+            fos.getFD().sync();
+
+            removePending(written);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_JOURNAL_WRITE_FAILED);
+        }
+    }
+
+    /**
+     * 전체 캐시 를 새 스냅샷 으로 저장 하고 저널 을 비우는 메소드
+     * 임시 파일 에 쓰고 동기화 한 후 원자적 으로 교체 한다.
+     * 스냅샷 을 쓰기 전에 pending 에 있던 항목 만 지우고, 쓰는 동안 바뀐 항목 은 다음 flush 에서 저널 에 쓴다.
+     */
+    public synchronized void save() {
+
+        File temp = new File(indexFile.getPath() + TEMP_SUFFIX);
+        ArrayList<Map.Entry<String, Entry>> written = new ArrayList<>(pending.entrySet());
+
+        try {
+
+            try (FileOutputStream fos = new FileOutputStream(temp)) {
+
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                ArrayList<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+
+                out.writeInt(snapshot.size());
+
+                for (Map.Entry<String, Entry> e : snapshot) {
+
+                    out.writeUTF(e.getKey());
+                    writeEntry(out, e.getValue());
+                }
+
+                out.flush();
+                out.writeLong(checked.getChecksum().getValue());
+                out.flush();
+                fos.getFD().sync();
+            }
+
+            Files.move(temp.toPath(), indexFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            removePending(written);
+
+            if (journalFile.exists() && !journalFile.delete()) {
+
+                new FileOutputStream(journalFile).close();
+            }
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_INDEX_SAVE_FAILED);
+        }
+    }
+
+    /**
+     * 디스크 에 쓴 항목 들 중 pending 의 값 이 그 사이 에 바뀌지 않은 항목 만 pending 에서 지운다.
+     */
+    private void removePending(ArrayList<Map.Entry<String, Entry>> written) {
+
+        for (Map.Entry<String, Entry> e : written) {
+
+            pending.remove(e.getKey(), e.getValue());
+
+        }
+    }
+
+    /**
+     * 항목 을 넣고 해시 별 경로 기록 을 새 해시 로 옮긴다.
+     */
+    private void putEntry(String path, Entry entry) {
+
+        Entry old = entries.put(path, entry);
+
+        if (old != null && !old.hash.equals(entry.hash)) {
+
+            unindex(path, old);
+
+        }
+
+        if (!entry.hash.isEmpty()) {
+
+            paths.put(entry.hash, path);
+
+        }
+    }
+
+    private void removeEntry(String path) {
+
+        unindex(path, entries.remove(path));
+    }
+
+    /**
+     * 지워 졌거나 바뀐 항목 이 해시 별 경로 기록 에 남아 있으면 지운다.
+     */
+    private void unindex(String path, Entry entry) {
+
+        if (entry != null) {
+
+            paths.remove(entry.hash, path);
+
+        }
+    }
+
+    private void readSnapshot(DataInputStream raw) throws IOException {
+
+        CheckedInputStream checked = new CheckedInputStream(raw, new CRC32());
+        DataInputStream in = new DataInputStream(checked);
+
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+
+            throw new IOException(ERR_INDEX_LOAD_FAILED);
+        }
+
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++) {
+
+            String path = in.readUTF();
+
+            putEntry(path, readEntry(in));
+        }
+
+        long expected = checked.getChecksum().getValue();
+
+        if (raw.readLong() != expected) {
+
+            throw new IOException(ERR_INDEX_LOAD_FAILED);
+        }
+    }
+
+    private void replayJournal(DataInputStream in) throws IOException {
+
+        CRC32 crc = new CRC32();
+        DataInputStream r;
+
+        while ((r = JournalRecord.read(in, crc)) != null) {
+
+            byte op = r.readByte();
+            String path = r.readUTF();
+
+            if (op == OP_PUT) {
+
+                putEntry(path, readEntry(r));
+
+            } else {
+
+                removeEntry(path);
+            }
+        }
+    }
+
+    private void writeJournalRecord(DataOutputStream out, String path, Entry entry) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream r = new DataOutputStream(buffer);
+
+        if (entry == Entry.REMOVED) {
+
+            r.writeByte(OP_REMOVE);
+            r.writeUTF(path);
+
+        } else {
+
+            r.writeByte(OP_PUT);
+            r.writeUTF(path);
+            writeEntry(r, entry);
+        }
+
+        r.flush();
+        JournalRecord.write(out, buffer);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+
+        out.writeLong(entry.size);
+        out.writeLong(entry.modified);
+        out.writeUTF(entry.fileKey);
+        out.writeUTF(entry.hash);
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+
+        Entry entry = new Entry(in.readLong(), in.readLong(), in.readUTF());
+
+        entry.hash = in.readUTF();
+
+        return entry;
+    }
+
+    private void collect(UpdateInfo node, Set<String> live) {
+
+        for (UpdateInfo child : node.getChildList()) {
+
+            if (child.isDirectory()) {
+
+                collect(child, live);
+
+            } else {
+
+                live.add(child.getFilePath());
+            }
+        }
+    }
+
+    private static Entry stat(File file) {
+
+        try {
+
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            Object key = attributes.fileKey();
+
+            return new Entry(attributes.size(),
+                    attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    key == null ? "" : key.toString());
+
+        } catch (IOException e) {
+
+            return null;
+        }
+    }
+
+    /**
+     * 하나의 파일 에 대한 캐시 항목
+     */
+    private static class Entry {
+
+        static final Entry REMOVED = new Entry(-1, -1, "");
+
+        final long size;
+        final long modified;
+        final String fileKey;
+        String hash = "";
+        volatile boolean isScanned;
+
+        Entry(long size, long modified, String fileKey) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+        }
+
+        boolean sameMetadata(Entry o) {
+            return size == o.size && modified == o.modified && fileKey.equals(o.fileKey);
+        }
+    }
+}
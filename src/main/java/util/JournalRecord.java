@@ -0,0 +1,89 @@
+package util;
+
+import java.io.*;
+import java.util.zip.CRC32;
+
+/**
+ * 저널 파일 의 레코드 를 읽고 쓰는 클래스
+ * <p>
+ * 레코드 는 int 형태의 길이, 내용, long 형태의 내용 의 CRC32 값 으로 이루어 진다.
+ * 길이 는 CRC 에 포함 되지 않으므로 0 이하 이거나 MAX_LENGTH 보다 크면 CRC 가 맞지 않는 레코드 와 같이
+ * 프로그램 이 종료 되며 잘린 마지막 레코드 로 보고 읽기 를 멈춘다.
+ */
+final class JournalRecord {
+
+    /**
+     * 레코드 의 최대 길이 로 레코드 는 UTF 문자열 몇 개 와 long 몇 개 로 이루어 지므로 이보다 길 수 없다.
+     */
+    static final int MAX_LENGTH = 256 * 1024;
+
+    private static final String ERR_RECORD_TOO_LONG = "journal record too long : ";
+
+    private JournalRecord() {
+    }
+
+    /**
+     * 레코드 하나 를 읽는 메소드
+     *
+     * @param in  DataInputStream 형태의 저널 입력 스트림
+     * @param crc CRC32 형태의 재사용 할 CRC
+     * @return DataInputStream 형태의 레코드 내용, 저널 의 끝 이거나 잘린 레코드 이면 null
+     * @throws IOException 읽기 에 실패한 경우
+     */
+    static DataInputStream read(DataInputStream in, CRC32 crc) throws IOException {
+
+        byte[] record;
+
+        try {
+
+            int length = in.readInt();
+
+            if (length <= 0 || length > MAX_LENGTH) {
+
+                return null;
+            }
+
+            record = new byte[length];
+            in.readFully(record);
+
+            crc.reset();
+            crc.update(record, 0, record.length);
+
+            if (in.readLong() != crc.getValue()) {
+
+                return null;
+            }
+
+        } catch (EOFException e) {
+
+            return null;
+        }
+
+        return new DataInputStream(new ByteArrayInputStream(record));
+    }
+
+    /**
+     * 레코드 하나 를 쓰는 메소드
+     *
+     * @param out    DataOutputStream 형태의 저널 출력 스트림
+     * @param buffer ByteArrayOutputStream 형태의 레코드 내용
+     * @throws IOException 쓰기 에 실패 하거나 레코드 가 MAX_LENGTH 보다 긴 경우
+     */
+    static void write(DataOutputStream out, ByteArrayOutputStream buffer) throws IOException {
+
+        byte[] record = buffer.toByteArray();
+
+        if (record.length > MAX_LENGTH) {
+
+            throw new IOException(ERR_RECORD_TOO_LONG + record.length);
+        }
+
+        CRC32 crc = new CRC32();
+
+        crc.update(record, 0, record.length);
+
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeLong(crc.getValue());
+    }
+}
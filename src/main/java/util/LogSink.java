@@ -0,0 +1,22 @@
+package util;
+
+/**
+ * UpdateLog 의 출력 대상 을 나타내는 인터페이스
+ * <p>
+ * write 와 flush 는 UpdateLog 의 출력 스레드 하나 에서만 호출 되므로 구현 은 스레드 안전 할 필요 가 없다.
+ * write 로 받은 줄 들은 flush 가 호출 될 때 까지 모아 두었다가 한번 에 출력 해도 된다.
+ */
+public interface LogSink {
+
+    /**
+     * 로그 한 줄 을 출력 하는 메소드
+     *
+     * @param line String 형태의 줄 바꿈 이 없는 로그 한 줄
+     */
+    void write(String line);
+
+    /**
+     * 모아 둔 로그 를 출력 하는 메소드 로 ring buffer 가 빌 때 마다 호출 된다.
+     */
+    void flush();
+}
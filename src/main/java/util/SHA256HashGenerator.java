@@ -2,12 +2,19 @@ package util;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * SHA256 해시 알고리즘을 사용하여 해시값을 만들어주는 클래스
+ * <p>
+ * 파일 전체를 메모리에 올리지 않고 스레드 별로 재사용 되는 direct buffer 로 나누어 읽어서 해시를 계산한다.
+ * MAPPED_THRESHOLD 이상의 큰 파일은 MAPPED_REGION_SIZE 단위로 memory-mapped 영역을 만들어 해시를 계산한다.
+ * 따라서 파일 크기와 관계 없이 사용하는 heap 메모리는 일정하다.
  */
 public class SHA256HashGenerator {
     private static final String SHA_256_ALGORITHM = "SHA-256";
@@ -15,6 +22,19 @@ public class SHA256HashGenerator {
     private static final String ERR_MSG_NOT_FOUND_ALGORITHM = "SHA-256 Algorithm not supported";
     private static final String ERR_MSG_NO_SEARCH_FILE = "File not found. check file path";
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAPPED_THRESHOLD = 64L * 1024 * 1024;
+    private static final long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
     /**
      * filePath 에 있는 파일에 대한 SHA256 해시를 반환하는 메소드
      *
@@ -22,38 +42,103 @@ public class SHA256HashGenerator {
      * @return 파일 데이터에 대한 SHA256 해시화 값
      */
     public static String getHash(String filePath) {
-        MessageDigest sha;
-        StringBuilder result;
-        byte[] data;
 
         try {
 
-            sha = MessageDigest.getInstance(SHA_256_ALGORITHM);
-            sha.update(Files.readAllBytes(new File(filePath).toPath()));
-
-            data = sha.digest();
-
-            result = new StringBuilder();
-
-            for (byte b : data) {
-                result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));   //  16진수를 얻는 과정
-            }
+            return toHex(digest(new File(filePath)));
 
         } catch (NoSuchAlgorithmException e) {
 
             e.printStackTrace();
-            System.out.println(ERR_MSG_NOT_FOUND_ALGORITHM);
+            UpdateLog.error(ERR_MSG_NOT_FOUND_ALGORITHM);
 
             return "";
 
         } catch (IOException e) {
 
             e.printStackTrace();
-            System.out.println(ERR_MSG_NO_SEARCH_FILE);
+            UpdateLog.error(ERR_MSG_NO_SEARCH_FILE);
 
             return "";
         }
+    }
+
+    /**
+     * 파일 내용을 스트리밍 방식으로 읽어 SHA256 digest 를 계산하는 메소드
+     * 걸린 시간 과 읽은 크기 는 UpdateMetrics 의 hash 단계 에 기록 한다.
+     *
+     * @param file 해시를 계산할 파일
+     * @return byte[] 형태의 32 byte SHA256 digest
+     * @throws NoSuchAlgorithmException SHA-256 알고리즘을 지원하지 않을 경우
+     * @throws IOException              파일을 읽는 도중 I/O 에러가 발생한 경우
+     */
+    public static byte[] digest(File file) throws NoSuchAlgorithmException, IOException {
+
+        MessageDigest sha = newDigest();
+        long start = UpdateMetrics.startTimer();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            long size = channel.size();
+
+            if (size >= MAPPED_THRESHOLD) {
+
+                for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+
+                    long length = Math.min(MAPPED_REGION_SIZE, size - position);
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                    sha.update(region);
+                }
+
+            } else {
+
+                ByteBuffer buffer = BUFFER.get();
+                buffer.clear();
+
+                while (channel.read(buffer) != -1) {
+
+                    buffer.flip();
+                    sha.update(buffer);
+                    buffer.clear();
+                }
+            }
+
+            UpdateMetrics.count(UpdateMetrics.COUNT_HASHED_FILES, 1);
+            UpdateMetrics.count(UpdateMetrics.COUNT_HASHED_BYTES, size);
+        }
+
+        UpdateMetrics.stopTimer(UpdateMetrics.PHASE_HASH, start);
+
+        return sha.digest();
+    }
+
+    /**
+     * 새로운 SHA256 MessageDigest 를 생성하는 메소드
+     *
+     * @return MessageDigest 형태의 SHA256 digest
+     * @throws NoSuchAlgorithmException SHA-256 알고리즘을 지원하지 않을 경우
+     */
+    public static MessageDigest newDigest() throws NoSuchAlgorithmException {
+
+        return MessageDigest.getInstance(SHA_256_ALGORITHM);
+    }
+
+    /**
+     * digest 값을 소문자 16진수 문자열로 변환하는 메소드
+     *
+     * @param data byte[] 형태의 digest 값
+     * @return String 형태의 16진수 문자열
+     */
+    public static String toHex(byte[] data) {
+
+        char[] result = new char[data.length * 2];
+
+        for (int i = 0; i < data.length; i++) {
+            result[i * 2] = HEX[(data[i] >> 4) & 0x0f];     //  16진수를 얻는 과정
+            result[i * 2 + 1] = HEX[data[i] & 0x0f];
+        }
 
-        return result.toString();
+        return new String(result);
     }
 }
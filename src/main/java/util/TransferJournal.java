@@ -0,0 +1,298 @@
+package util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * 다운로드 중인 파일 의 진행 상황 을 디스크 에 기록 하는 저널 클래스
+ * <p>
+ * 파일 은 root 옆의 staging 디렉토리 에 같은 상대 경로 로 먼저 쓰이고, 검증 후 원래 위치 로 옮겨 진다.
+ * 쓰는 도중 일정 크기 마다 staging 파일 을 디스크 에 동기화 한 후 (경로, 서버 해시, 검증 된 길이) 를 저널 에 추가 하므로
+ * 연결 이 끊기거나 프로그램 이 종료 되어도 다음 시도 에서 기록 된 길이 부터 이어 받을 수 있다.
+ * 기록 된 길이 는 chunk CRC 로 검증 된 데이터 만 포함 한다.
+ * <p>
+ * 저널 은 HashCache 저널 과 같이 JournalRecord 형식 의 레코드 별 CRC 를 가지며, 불러올 때 마지막 의 깨진 레코드 는 무시 되고
+ * 살아 있는 항목 만 남도록 다시 쓰인다.
+ */
+public class TransferJournal {
+
+    private static final String JOURNAL_SUFFIX = ".transfer";
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PREFIX_HIDDEN = ".";
+
+    private static final byte OP_PROGRESS = 1;
+    private static final byte OP_COMPLETE = 2;
+
+    private static final String MSG_RESUME = "resume download : ";
+    private static final String ERR_JOURNAL_LOAD_FAILED = "transfer journal load failed. downloads will start from the beginning";
+    private static final String ERR_JOURNAL_WRITE_FAILED = "transfer journal write failed. check stack trace";
+
+    private final File journalFile;
+    private final File stagingRoot;
+    private final ConcurrentHashMap<String, Progress> entries = new ConcurrentHashMap<>();
+
+    /**
+     * root 디렉토리 옆에 저장 되는 저널 을 생성 한다.
+     * root 가 /opt/client 일 경우 저널 은 /opt/.client.transfer, staging 디렉토리 는 /opt/.client.staging 이다.
+     *
+     * @param root File 형태의 클라이언트 root 디렉토리
+     */
+    public TransferJournal(File root) {
+
+        File parent = root.getAbsoluteFile().getParentFile();
+
+        journalFile = new File(parent, PREFIX_HIDDEN + root.getName() + JOURNAL_SUFFIX);
+        stagingRoot = new File(parent, PREFIX_HIDDEN + root.getName() + STAGING_SUFFIX);
+    }
+
+    /**
+     * 저널 을 읽어 진행 상황 을 불러오고 살아 있는 항목 만 남도록 저널 을 다시 쓰는 메소드
+     * staging 파일 이 없는 항목 은 버리고, 살아 있는 항목 이 없으면 남아 있는 staging 디렉토리 를 지운다.
+     */
+    public synchronized void load() {
+
+        entries.clear();
+
+        if (!journalFile.isFile()) {
+
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+
+            replay(in);
+
+        } catch (IOException e) {
+
+            UpdateLog.error(ERR_JOURNAL_LOAD_FAILED);
+        }
+
+        for (Map.Entry<String, Progress> e : entries.entrySet()) {
+
+            if (getStagingFile(e.getKey()).length() < e.getValue().offset) {
+
+                entries.remove(e.getKey());
+
+            }
+        }
+
+        compact();
+
+        if (entries.isEmpty() && stagingRoot.exists()) {
+
+            FileUtil.deleteFile(stagingRoot.getPath());
+
+        }
+    }
+
+    /**
+     * 파일 의 staging 파일 을 반환 하는 메소드
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     * @return File 형태의 staging 디렉토리 아래 의 같은 상대 경로 파일
+     */
+    public File getStagingFile(String path) {
+
+        return new File(stagingRoot, path);
+    }
+
+    /**
+     * 이어 받을 수 있는 위치 를 반환 하는 메소드
+     * 저널 의 해시 가 서버 해시 와 다르면 이전 진행 상황 과 staging 파일 을 버린다.
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     * @param hash String 형태의 받을 파일 의 서버 해시
+     * @return long 형태의 staging 파일 에 검증 되어 있는 길이, 처음 부터 받아야 하면 0
+     */
+    public long getResumeOffset(String path, String hash) {
+
+        Progress progress = entries.get(path);
+
+        if (progress == null) {
+
+            return 0;
+        }
+
+        File staging = getStagingFile(path);
+
+        if (!progress.hash.equals(hash) || staging.length() < progress.offset) {
+
+            complete(path);
+
+            if (staging.exists() && !staging.delete()) {
+
+                UpdateLog.error(ERR_JOURNAL_WRITE_FAILED);
+
+            }
+
+            return 0;
+        }
+
+        UpdateLog.info(MSG_RESUME + path + " @ " + progress.offset);
+
+        return progress.offset;
+    }
+
+    /**
+     * staging 파일 의 offset 까지 가 검증 되어 디스크 에 동기화 되었음 을 기록 하는 메소드
+     * staging 파일 을 먼저 동기화 한 후 호출 해야 한다.
+     *
+     * @param path   String 형태의 root 기준 상대 경로
+     * @param hash   String 형태의 받는 파일 의 서버 해시
+     * @param offset long 형태의 검증 된 길이
+     */
+    public synchronized void record(String path, String hash, long offset) {
+
+        Progress progress = new Progress(hash, offset);
+
+        entries.put(path, progress);
+        append(OP_PROGRESS, path, progress, true);
+    }
+
+    /**
+     * 파일 의 다운로드 가 끝났거나 버려 졌음 을 기록 하는 메소드
+     * 남은 항목 이 없으면 저널 을 지운다.
+     *
+     * @param path String 형태의 root 기준 상대 경로
+     */
+    public synchronized void complete(String path) {
+
+        if (entries.remove(path) == null) {
+
+            return;
+        }
+
+        if (entries.isEmpty()) {
+
+            compact();
+
+        } else {
+
+            append(OP_COMPLETE, path, null, false);
+
+        }
+    }
+
+    private void append(byte op, String path, Progress progress, boolean isSync) {
+
+        try (FileOutputStream fos = new FileOutputStream(journalFile, true)) {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+
+            writeRecord(out, op, path, progress);
+            out.flush();
+
+            if (isSync) {
+
+                fos.getFD().sync();
+
+            }
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_JOURNAL_WRITE_FAILED);
+        }
+    }
+
+    /**
+     * 살아 있는 항목 만 임시 파일 에 쓰고 원자적 으로 교체 한다. 항목 이 없으면 저널 을 지운다.
+     */
+    private void compact() {
+
+        if (entries.isEmpty()) {
+
+            if (journalFile.exists() && !journalFile.delete()) {
+
+                UpdateLog.error(ERR_JOURNAL_WRITE_FAILED);
+
+            }
+
+            return;
+        }
+
+        File temp = new File(journalFile.getPath() + TEMP_SUFFIX);
+
+        try {
+
+            try (FileOutputStream fos = new FileOutputStream(temp)) {
+
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+
+                for (Map.Entry<String, Progress> e : entries.entrySet()) {
+
+                    writeRecord(out, OP_PROGRESS, e.getKey(), e.getValue());
+                }
+
+                out.flush();
+                fos.getFD().sync();
+            }
+
+            Files.move(temp.toPath(), journalFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_JOURNAL_WRITE_FAILED);
+        }
+    }
+
+    private void replay(DataInputStream in) throws IOException {
+
+        CRC32 crc = new CRC32();
+        DataInputStream r;
+
+        while ((r = JournalRecord.read(in, crc)) != null) {
+
+            byte op = r.readByte();
+            String path = r.readUTF();
+
+            if (op == OP_PROGRESS) {
+
+                entries.put(path, new Progress(r.readUTF(), r.readLong()));
+
+            } else {
+
+                entries.remove(path);
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, String path, Progress progress) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream r = new DataOutputStream(buffer);
+
+        r.writeByte(op);
+        r.writeUTF(path);
+
+        if (progress != null) {
+
+            r.writeUTF(progress.hash);
+            r.writeLong(progress.offset);
+        }
+
+        r.flush();
+        JournalRecord.write(out, buffer);
+    }
+
+    /**
+     * 파일 하나 의 진행 상황
+     */
+    private static class Progress {
+
+        private final String hash;
+        private final long offset;
+
+        Progress(String hash, long offset) {
+            this.hash = hash;
+            this.offset = offset;
+        }
+    }
+}
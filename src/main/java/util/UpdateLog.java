@@ -0,0 +1,423 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 업데이트 로그 를 비동기 로 출력 하는 클래스
+ * <p>
+ * 로그 를 남기는 스레드 는 고정 크기 ring buffer 에 줄 을 넣기 만 하고, 출력 은 daemon 스레드 하나 가 모아서 LogSink 로 한다.
+ * 따라서 다운로드 스레드 들이 System.out 의 lock 이나 콘솔 출력 을 기다리지 않는다.
+ * ring buffer 가 가득 차면 DEBUG, INFO 로그 는 버리고 버린 줄 수 를 다음 출력 때 알리며, ERROR 로그 는 자리 가 날 때 까지 기다린다.
+ * <p>
+ * 파일 하나 마다 의 로그 는 DEBUG 레벨 로 남기고, INFO 레벨 에서는 countFile 로 센 파일 수 를
+ * PROGRESS_FILES 개 또는 PROGRESS_INTERVAL 마다 한 줄 로 요약 한다.
+ * 프로세스 가 끝날 때 남은 로그 는 shutdown hook 에서 출력 된다.
+ */
+public class UpdateLog {
+
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int ERROR = 2;
+
+    public static final int FILE_DOWNLOADED = 0;
+    public static final int FILE_REUSED = 1;
+    public static final int FILE_DELETED = 2;
+
+    private static final String[] FILE_EVENTS = {"downloaded", "reused", "deleted"};
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int PROGRESS_FILES = 1000;
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private static final long FLUSH_TIMEOUT = 5000;
+
+    private static final String THREAD_NAME = "update-log";
+    private static final String MSG_PROGRESS = "progress :";
+    private static final String MSG_DROPPED = "log lines dropped : ";
+    private static final String ERR_LOG_INTERRUPTED = "log writer interrupted";
+    private static final String ERR_SINK_FAILED = "log sink failed. logging to console. check stack trace";
+
+    private static final ArrayBlockingQueue<String> BUFFER = new ArrayBlockingQueue<>(BUFFER_SIZE);
+    private static final AtomicLong ENQUEUED = new AtomicLong();
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final Object WRITTEN_LOCK = new Object();
+
+    private static final AtomicLong[] FILE_COUNTS = new AtomicLong[FILE_EVENTS.length];
+    private static final AtomicLong FILES = new AtomicLong();
+    private static final AtomicLong LAST_PROGRESS = new AtomicLong(System.nanoTime());
+    private static final AtomicLong REPORTED_FILES = new AtomicLong();
+
+    private static volatile int level = INFO;
+    private static final LogSink CONSOLE_SINK = new ConsoleSink();
+
+    private static volatile LogSink sink = CONSOLE_SINK;
+    private static long written;
+
+    static {
+
+        for (int i = 0; i < FILE_COUNTS.length; i++) {
+            FILE_COUNTS[i] = new AtomicLong();
+        }
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, THREAD_NAME);
+
+        writer.setDaemon(true);
+        writer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }));
+    }
+
+    /**
+     * 인스턴스 를 만들지 않는다.
+     */
+    private UpdateLog() {
+    }
+
+    /**
+     * 출력 할 최소 레벨 을 설정하는 메소드
+     *
+     * @param logLevel int 형태의 DEBUG, INFO, ERROR 중 하나, 기본 값 은 INFO
+     */
+    public static void setLevel(int logLevel) {
+
+        level = logLevel;
+    }
+
+    /**
+     * 로그 이름 으로 레벨 을 설정하는 메소드 로 대소문자 를 구분 하지 않으며, 모르는 이름 이면 바꾸지 않는다.
+     *
+     * @param name String 형태의 "debug", "info", "error" 중 하나
+     * @return boolean 형태로 레벨 을 바꾸었으면 true
+     */
+    public static boolean setLevel(String name) {
+
+        if ("debug".equalsIgnoreCase(name)) {
+
+            level = DEBUG;
+
+        } else if ("info".equalsIgnoreCase(name)) {
+
+            level = INFO;
+
+        } else if ("error".equalsIgnoreCase(name)) {
+
+            level = ERROR;
+
+        } else {
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 로그 를 출력 할 LogSink 를 바꾸는 메소드 로 이미 ring buffer 에 있는 로그 는 새 sink 로 출력 될 수 있다.
+     * sink 가 RuntimeException 을 던지면 그 묶음 은 기본 sink 로 다시 출력 하고, 이후 로그 도 기본 sink 로 출력 한다.
+     *
+     * @param logSink LogSink 형태의 출력 대상, 기본 값 은 System.out 으로 출력 하는 sink
+     */
+    public static void setSink(LogSink logSink) {
+
+        sink = logSink;
+    }
+
+    /**
+     * DEBUG 레벨 로그 가 출력 되는지 반환 하는 메소드
+     *
+     * @return boolean 형태로 DEBUG 레벨 이면 true
+     */
+    public static boolean isDebugEnabled() {
+
+        return level <= DEBUG;
+    }
+
+    /**
+     * DEBUG 레벨 로그 를 남기는 메소드
+     *
+     * @param message String 형태의 로그
+     */
+    public static void debug(String message) {
+
+        if (level <= DEBUG) {
+
+            offer(message);
+
+        }
+    }
+
+    /**
+     * 두 문자열 을 이은 DEBUG 레벨 로그 를 남기는 메소드 로 출력 하지 않을 때 는 문자열 을 잇지 않는다.
+     *
+     * @param message String 형태의 로그 앞 부분
+     * @param detail  String 형태의 로그 뒷 부분
+     */
+    public static void debug(String message, String detail) {
+
+        if (level <= DEBUG) {
+
+            offer(message + detail);
+
+        }
+    }
+
+    /**
+     * INFO 레벨 로그 를 남기는 메소드
+     *
+     * @param message String 형태의 로그
+     */
+    public static void info(String message) {
+
+        if (level <= INFO) {
+
+            offer(message);
+
+        }
+    }
+
+    /**
+     * ERROR 레벨 로그 를 남기는 메소드 로 ring buffer 가 가득 차 있으면 자리 가 날 때 까지 기다린다.
+     *
+     * @param message String 형태의 로그
+     */
+    public static void error(String message) {
+
+        try {
+
+            BUFFER.put(message);
+            ENQUEUED.incrementAndGet();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            DROPPED.incrementAndGet();
+
+        }
+    }
+
+    /**
+     * 파일 하나 의 처리 가 끝났음 을 세는 메소드 로 PROGRESS_FILES 개 또는 PROGRESS_INTERVAL 마다 INFO 레벨 요약 을 남긴다.
+     *
+     * @param event int 형태의 FILE_DOWNLOADED, FILE_REUSED, FILE_DELETED 중 하나
+     */
+    public static void countFile(int event) {
+
+        FILE_COUNTS[event].incrementAndGet();
+
+        long files = FILES.incrementAndGet();
+        long now = System.nanoTime();
+        long last = LAST_PROGRESS.get();
+
+        if ((files % PROGRESS_FILES == 0 || now - last >= PROGRESS_INTERVAL) && LAST_PROGRESS.compareAndSet(last, now)) {
+
+            reportProgress();
+
+        }
+    }
+
+    /**
+     * 마지막 요약 이후 에 센 파일 이 있으면 요약 을 남기는 메소드 로 업데이트 가 끝날 때 호출 한다.
+     */
+    public static void summarize() {
+
+        if (FILES.get() != REPORTED_FILES.get()) {
+
+            LAST_PROGRESS.set(System.nanoTime());
+            reportProgress();
+
+        }
+    }
+
+    /**
+     * 센 파일 수 를 0 으로 되돌리는 메소드 로 업데이트 를 시작 할 때 호출 한다.
+     */
+    public static void resetProgress() {
+
+        for (AtomicLong count : FILE_COUNTS) {
+            count.set(0);
+        }
+
+        FILES.set(0);
+        REPORTED_FILES.set(0);
+        LAST_PROGRESS.set(System.nanoTime());
+    }
+
+    /**
+     * 지금 까지 남긴 로그 가 모두 출력 될 때 까지 최대 FLUSH_TIMEOUT 동안 기다리는 메소드
+     */
+    public static void flush() {
+
+        long target = ENQUEUED.get();
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+
+        synchronized (WRITTEN_LOCK) {
+
+            long remaining;
+
+            while (written < target && (remaining = deadline - System.currentTimeMillis()) > 0) {
+
+                try {
+
+                    WRITTEN_LOCK.wait(remaining);
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void reportProgress() {
+
+        REPORTED_FILES.set(FILES.get());
+
+        if (level > INFO) {
+
+            return;
+        }
+
+        StringBuilder line = new StringBuilder(MSG_PROGRESS);
+
+        for (int i = 0; i < FILE_EVENTS.length; i++) {
+            line.append(' ').append(FILE_EVENTS[i]).append(' ').append(FILE_COUNTS[i].get());
+        }
+
+        offer(line.toString());
+    }
+
+    private static void offer(String message) {
+
+        if (BUFFER.offer(message)) {
+
+            ENQUEUED.incrementAndGet();
+
+        } else {
+
+            DROPPED.incrementAndGet();
+
+        }
+    }
+
+    /**
+     * 출력 스레드 의 본문 으로 ring buffer 에 쌓인 줄 을 한번 에 꺼내 출력 한다.
+     * 이 스레드 가 죽으면 error 가 BUFFER.put 에서 영원히 기다리므로 sink 가 던지는 Error 까지 모두 잡는다.
+     */
+    private static void drain() {
+
+        ArrayList<String> batch = new ArrayList<>(BUFFER_SIZE);
+
+        while (true) {
+
+            try {
+
+                batch.add(BUFFER.take());
+
+            } catch (InterruptedException e) {
+
+                System.out.println(ERR_LOG_INTERRUPTED);
+
+                return;
+            }
+
+            BUFFER.drainTo(batch);
+
+            LogSink current = sink;
+            long dropped = DROPPED.getAndSet(0);
+
+            try {
+
+                write(current, dropped, batch);
+
+            } catch (Throwable e) {
+
+                e.printStackTrace();
+
+                if (sink == current) {
+
+                    sink = CONSOLE_SINK;
+
+                }
+
+                if (current != CONSOLE_SINK) {
+
+                    try {
+
+                        CONSOLE_SINK.write(ERR_SINK_FAILED);
+                        write(CONSOLE_SINK, dropped, batch);
+
+                    } catch (Throwable t) {
+
+                        t.printStackTrace();
+
+                    }
+                }
+            }
+
+            synchronized (WRITTEN_LOCK) {
+
+                written += batch.size();
+                WRITTEN_LOCK.notifyAll();
+
+            }
+
+            batch.clear();
+        }
+    }
+
+    /**
+     * 꺼낸 줄 들을 sink 로 출력 한다. 버린 줄 이 있으면 그 수 를 먼저 출력 한다.
+     */
+    private static void write(LogSink current, long dropped, ArrayList<String> batch) {
+
+        if (dropped > 0) {
+
+            current.write(MSG_DROPPED + dropped);
+
+        }
+
+        for (String line : batch) {
+            current.write(line);
+        }
+
+        current.flush();
+    }
+
+    /**
+     * System.out 으로 출력 하는 기본 sink 로 한번 에 꺼낸 줄 들을 하나 의 문자열 로 모아 한번 에 출력 한다.
+     */
+    private static class ConsoleSink implements LogSink {
+
+        private static final String NEW_LINE = System.lineSeparator();
+
+        private final StringBuilder pending = new StringBuilder();
+
+        @Override
+        public void write(String line) {
+
+            pending.append(line).append(NEW_LINE);
+        }
+
+        @Override
+        public void flush() {
+
+            System.out.print(pending);
+            System.out.flush();
+            pending.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package util;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 업데이트 한번 의 단계 별 시간, 처리량, 재시도 횟수, 지연 시간 분포 를 모으는 클래스
+ * <p>
+ * 각 모듈 은 startTimer 로 시작 시간 을 받고 stopTimer 로 단계 에 더한다. 값 은 LongAdder 에 더하므로 여러 스레드 에서 동시에 호출 해도 된다.
+ * decode 는 트리 를 읽는 스레드 의 CPU 시간 이므로 같은 시간 동안 의 tree 에서 decode 를 빼면 네트워크 를 기다린 시간 이 된다.
+ * download 는 첫 다운로드 요청 부터 마지막 응답 까지 의 시간 이고, transfer, write, verify, hash, decode 는 스레드 마다 걸린 시간 을 더한 값 이다.
+ * <p>
+ * 값 은 "updateclient:type=UpdateMetrics" 이름 의 MXBean 으로 보여 주며, 업데이트 가 끝나면 writeSummary 로 JSON 요약 파일 을 남긴다.
+ * startRun 을 호출 하면 모든 값 이 0 으로 돌아 간다.
+ */
+public class UpdateMetrics implements UpdateMetricsMXBean {
+
+    public static final int PHASE_TREE = 0;
+    public static final int PHASE_DECODE = 1;
+    public static final int PHASE_SCAN = 2;
+    public static final int PHASE_HASH = 3;
+    public static final int PHASE_DIFF = 4;
+    public static final int PHASE_DOWNLOAD = 5;
+    public static final int PHASE_TRANSFER = 6;
+    public static final int PHASE_WRITE = 7;
+    public static final int PHASE_VERIFY = 8;
+    public static final int PHASE_COMMIT = 9;
+
+    public static final int COUNT_FILES = 0;
+    public static final int COUNT_BYTES = 1;
+    public static final int COUNT_HASHED_FILES = 2;
+    public static final int COUNT_HASHED_BYTES = 3;
+    public static final int COUNT_RETRIES = 4;
+    public static final int COUNT_FAILED_FILES = 5;
+    public static final int COUNT_CONNECTIONS = 6;
+
+    private static final String[] PHASES = {"tree", "decode", "scan", "hash", "diff", "download", "transfer", "write",
+            "verify", "commit"};
+    private static final String[] COUNTERS = {"files_downloaded", "bytes_written", "files_hashed", "bytes_hashed",
+            "retries", "files_failed", "connections"};
+
+    private static final int HISTOGRAM_BUCKETS = 16;
+    private static final String HISTOGRAM_OVERFLOW = "+Inf";
+
+    private static final String OBJECT_NAME = "updateclient:type=UpdateMetrics";
+    private static final String RESULT_RUNNING = "running";
+    private static final String RESULT_UPDATED = "updated";
+    private static final String RESULT_FAILED = "failed";
+    private static final String UNKNOWN_HOST = "unknown";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String ERR_REGISTER_FAILED = "update metrics MBean register failed. check stack trace";
+    private static final String ERR_SUMMARY_FAILED = "update metrics summary write failed. check stack trace";
+
+    private static final UpdateMetrics INSTANCE = new UpdateMetrics();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean IS_CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+
+    private static final LongAdder[] PHASE_NANOS = new LongAdder[PHASES.length];
+    private static final LongAdder[] COUNTS = new LongAdder[COUNTERS.length];
+    private static final AtomicLongArray CONNECT_LATENCY = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private static final AtomicLongArray FILE_LATENCY = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    private static volatile long runStart = System.nanoTime();
+    private static volatile long runEnd;
+    private static volatile long startedAt = System.currentTimeMillis();
+    private static volatile String result = RESULT_RUNNING;
+    private static volatile String hostName;
+    private static long downloadStart;
+    private static long downloadEnd;
+
+    static {
+
+        for (int i = 0; i < PHASE_NANOS.length; i++) {
+            PHASE_NANOS[i] = new LongAdder();
+        }
+
+        for (int i = 0; i < COUNTS.length; i++) {
+            COUNTS[i] = new LongAdder();
+        }
+
+        try {
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+
+        } catch (JMException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_REGISTER_FAILED);
+
+        }
+    }
+
+    /**
+     * MXBean 으로 등록 하는 인스턴스 하나 만 만든다.
+     */
+    private UpdateMetrics() {
+    }
+
+    /**
+     * 모든 값 을 0 으로 되돌리고 업데이트 시작 시간 을 기록 하는 메소드 로 업데이트 를 시작 할 때 호출 한다.
+     */
+    public static synchronized void startRun() {
+
+        for (LongAdder phase : PHASE_NANOS) {
+            phase.reset();
+        }
+
+        for (LongAdder count : COUNTS) {
+            count.reset();
+        }
+
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+
+            CONNECT_LATENCY.set(i, 0);
+            FILE_LATENCY.set(i, 0);
+        }
+
+        downloadStart = 0;
+        downloadEnd = 0;
+        runEnd = 0;
+        result = RESULT_RUNNING;
+        startedAt = System.currentTimeMillis();
+        runStart = System.nanoTime();
+    }
+
+    /**
+     * 업데이트 가 끝난 시간 과 결과 를 기록 하는 메소드
+     *
+     * @param isUpdated boolean 형태 로 모든 파일 을 받아 적용 했으면 true
+     */
+    public static void finishRun(boolean isUpdated) {
+
+        runEnd = System.nanoTime();
+        result = isUpdated ? RESULT_UPDATED : RESULT_FAILED;
+    }
+
+    /**
+     * 단계 시간 을 잴 시작 시간 을 반환 하는 메소드
+     *
+     * @return long 형태의 System.nanoTime 값
+     */
+    public static long startTimer() {
+
+        return System.nanoTime();
+    }
+
+    /**
+     * startTimer 이후 지난 시간 을 phase 에 더하는 메소드
+     *
+     * @param phase int 형태의 PHASE_ 상수 중 하나
+     * @param start long 형태의 startTimer 가 반환 한 값
+     */
+    public static void stopTimer(int phase, long start) {
+
+        PHASE_NANOS[phase].add(System.nanoTime() - start);
+    }
+
+    /**
+     * 현재 스레드 의 CPU 시간 을 반환 하는 메소드 로 JVM 이 지원 하지 않으면 startTimer 와 같다.
+     *
+     * @return long 형태의 나노세컨드(nanosecond) 단위 시간
+     */
+    public static long startCpuTimer() {
+
+        return IS_CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * startCpuTimer 이후 현재 스레드 가 사용한 CPU 시간 을 phase 에 더하는 메소드
+     *
+     * @param phase int 형태의 PHASE_ 상수 중 하나
+     * @param start long 형태의 startCpuTimer 가 반환 한 값
+     */
+    public static void stopCpuTimer(int phase, long start) {
+
+        PHASE_NANOS[phase].add(startCpuTimer() - start);
+    }
+
+    /**
+     * 호출 한 쪽 에서 모은 시간 을 phase 에 더하는 메소드
+     *
+     * @param phase int 형태의 PHASE_ 상수 중 하나
+     * @param nanos long 형태의 나노세컨드(nanosecond) 단위 시간
+     */
+    public static void addTime(int phase, long nanos) {
+
+        PHASE_NANOS[phase].add(nanos);
+    }
+
+    /**
+     * 카운터 에 값 을 더하는 메소드
+     *
+     * @param counter int 형태의 COUNT_ 상수 중 하나
+     * @param value   long 형태의 더할 값
+     */
+    public static void count(int counter, long value) {
+
+        COUNTS[counter].add(value);
+    }
+
+    /**
+     * 서버 연결 하나 가 끝났음 을 기록 하는 메소드 로 연결 수 를 세고 연결 시간 을 분포 에 넣는다.
+     *
+     * @param start long 형태의 연결 을 시작 할 때 startTimer 가 반환 한 값
+     */
+    public static void recordConnect(long start) {
+
+        COUNTS[COUNT_CONNECTIONS].increment();
+        CONNECT_LATENCY.incrementAndGet(bucket(System.nanoTime() - start));
+    }
+
+    /**
+     * 파일 하나 를 받아 쓰고 검증 하는 데 걸린 시간 을 분포 에 넣는 메소드
+     *
+     * @param start long 형태의 파일 을 받기 시작 할 때 startTimer 가 반환 한 값
+     */
+    public static void recordFile(long start) {
+
+        FILE_LATENCY.incrementAndGet(bucket(System.nanoTime() - start));
+    }
+
+    /**
+     * 다운로드 요청 하나 의 시작 과 끝 을 기록 하는 메소드 로 download 단계 는 가장 먼저 시작 한 요청 부터 가장 늦게 끝난 요청 까지 이다.
+     *
+     * @param start long 형태의 요청 을 시작 할 때 startTimer 가 반환 한 값
+     */
+    public static synchronized void recordDownload(long start) {
+
+        long end = System.nanoTime();
+
+        if (downloadStart == 0 || start - downloadStart < 0) {
+
+            downloadStart = start;
+
+        }
+
+        if (downloadEnd == 0 || end - downloadEnd > 0) {
+
+            downloadEnd = end;
+
+        }
+
+        PHASE_NANOS[PHASE_DOWNLOAD].reset();
+        PHASE_NANOS[PHASE_DOWNLOAD].add(downloadEnd - downloadStart);
+    }
+
+    /**
+     * JSON 요약 을 target 에 쓰는 메소드 로 임시 파일 에 쓴 후 원자적 으로 교체 하므로 읽는 쪽 은 항상 완성 된 파일 을 본다.
+     *
+     * @param target File 형태의 요약 파일
+     */
+    public static void writeSummary(File target) {
+
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+
+        try {
+
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+
+                out.write(INSTANCE.getSummary());
+            }
+
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+            UpdateLog.error(ERR_SUMMARY_FAILED);
+
+        }
+    }
+
+    @Override
+    public long getRunMillis() {
+
+        long end = runEnd;
+
+        return TimeUnit.NANOSECONDS.toMillis((end == 0 ? System.nanoTime() : end) - runStart);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+
+        Map<String, Long> values = new LinkedHashMap<>();
+
+        for (int i = 0; i < PHASES.length; i++) {
+            values.put(PHASES[i], TimeUnit.NANOSECONDS.toMillis(PHASE_NANOS[i].sum()));
+        }
+
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+
+        Map<String, Long> values = new LinkedHashMap<>();
+
+        for (int i = 0; i < COUNTERS.length; i++) {
+            values.put(COUNTERS[i], COUNTS[i].sum());
+        }
+
+        return values;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+
+        return perSecond(COUNTS[COUNT_BYTES].sum(), PHASE_NANOS[PHASE_DOWNLOAD].sum());
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+
+        return perSecond(COUNTS[COUNT_FILES].sum(), PHASE_NANOS[PHASE_DOWNLOAD].sum());
+    }
+
+    @Override
+    public double getHashMegabytesPerSecond() {
+
+        return perSecond(COUNTS[COUNT_HASHED_BYTES].sum(), PHASE_NANOS[PHASE_HASH].sum()) / (1024 * 1024);
+    }
+
+    @Override
+    public Map<String, Long> getConnectLatencyHistogram() {
+
+        return histogram(CONNECT_LATENCY);
+    }
+
+    @Override
+    public Map<String, Long> getFileLatencyHistogram() {
+
+        return histogram(FILE_LATENCY);
+    }
+
+    @Override
+    public String getSummary() {
+
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\n");
+        json.append("  \"host\": \"").append(escape(hostName())).append("\",\n");
+        json.append("  \"started_at\": ").append(startedAt).append(",\n");
+        json.append("  \"result\": \"").append(result).append("\",\n");
+        json.append("  \"run_ms\": ").append(getRunMillis()).append(",\n");
+        json.append("  \"phases_ms\": ");
+        appendObject(json, getPhaseMillis());
+        json.append(",\n  \"counters\": ");
+        appendObject(json, getCounters());
+        json.append(",\n  \"bytes_per_second\": ").append(format(getBytesPerSecond()));
+        json.append(",\n  \"files_per_second\": ").append(format(getFilesPerSecond()));
+        json.append(",\n  \"hash_mb_per_second\": ").append(format(getHashMegabytesPerSecond()));
+        json.append(",\n  \"connect_latency_ms\": ");
+        appendObject(json, getConnectLatencyHistogram());
+        json.append(",\n  \"file_latency_ms\": ");
+        appendObject(json, getFileLatencyHistogram());
+        json.append("\n}\n");
+
+        return json.toString();
+    }
+
+    /**
+     * 밀리세컨드 단위 로 2 의 거듭제곱 을 상한 으로 하는 구간 의 번호 를 반환 한다. 0 번 구간 은 1ms 미만 이다.
+     */
+    private static int bucket(long nanos) {
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int index = millis <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+
+        return Math.min(index, HISTOGRAM_BUCKETS - 1);
+    }
+
+    private static Map<String, Long> histogram(AtomicLongArray buckets) {
+
+        Map<String, Long> values = new LinkedHashMap<>();
+
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            values.put(i == HISTOGRAM_BUCKETS - 1 ? HISTOGRAM_OVERFLOW : Long.toString(1L << i), buckets.get(i));
+        }
+
+        return values;
+    }
+
+    private static double perSecond(long value, long nanos) {
+
+        return nanos <= 0 ? 0 : value * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    private static void appendObject(StringBuilder json, Map<String, Long> values) {
+
+        json.append('{');
+
+        boolean isFirst = true;
+
+        for (Map.Entry<String, Long> e : values.entrySet()) {
+
+            if (!isFirst) {
+
+                json.append(", ");
+
+            }
+
+            json.append('"').append(e.getKey()).append("\": ").append(e.getValue());
+            isFirst = false;
+        }
+
+        json.append('}');
+    }
+
+    private static String format(double value) {
+
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * 요약 과 JMX 읽기 마다 DNS 를 조회 하지 않도록 처음 한번 만 호스트 이름 을 찾고 이후 에는 그 값 을 쓴다.
+     */
+    private static String hostName() {
+
+        String name = hostName;
+
+        if (name == null) {
+
+            try {
+
+                name = InetAddress.getLocalHost().getHostName();
+
+            } catch (IOException e) {
+
+                name = UNKNOWN_HOST;
+            }
+
+            hostName = name;
+        }
+
+        return name;
+    }
+
+    private static String escape(String value) {
+
+        StringBuilder escaped = new StringBuilder(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+
+                escaped.append('\\').append(c);
+
+            } else if (c >= ' ') {
+
+                escaped.append(c);
+
+            }
+        }
+
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package util;
+
+import java.util.Map;
+
+/**
+ * UpdateMetrics 를 JMX 로 보여 주는 인터페이스
+ * <p>
+ * 값 은 마지막 으로 시작한 업데이트 의 값 이며, 업데이트 중 에는 지금 까지 의 값 을 보여 준다.
+ * 단계 시간 은 여러 스레드 에서 더한 값 이므로 동시에 진행 되는 단계 는 업데이트 전체 시간 보다 길 수 있다.
+ */
+public interface UpdateMetricsMXBean {
+
+    /**
+     * 업데이트 시작 부터 끝날 때 까지, 진행 중 이면 지금 까지 의 시간 을 반환 하는 메소드
+     *
+     * @return long 형태의 밀리세컨드(millisecond) 단위 시간
+     */
+    long getRunMillis();
+
+    /**
+     * 단계 이름 별 시간 을 반환 하는 메소드
+     *
+     * @return Map 형태의 단계 이름 과 밀리세컨드(millisecond) 단위 시간
+     */
+    Map<String, Long> getPhaseMillis();
+
+    /**
+     * 이름 별 카운터 값 을 반환 하는 메소드
+     *
+     * @return Map 형태의 카운터 이름 과 값
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * 다운로드 단계 동안 받은 초당 바이트 수 를 반환 하는 메소드
+     *
+     * @return double 형태의 bytes/s
+     */
+    double getBytesPerSecond();
+
+    /**
+     * 다운로드 단계 동안 받은 초당 파일 수 를 반환 하는 메소드
+     *
+     * @return double 형태의 files/s
+     */
+    double getFilesPerSecond();
+
+    /**
+     * 로컬 파일 해시 계산 스레드 하나 당 초당 처리 한 MB 를 반환 하는 메소드
+     *
+     * @return double 형태의 MB/s
+     */
+    double getHashMegabytesPerSecond();
+
+    /**
+     * 서버 연결 시간 의 분포 를 반환 하는 메소드
+     *
+     * @return Map 형태의 밀리세컨드(millisecond) 단위 상한 과 그 보다 짧은 연결 수
+     */
+    Map<String, Long> getConnectLatencyHistogram();
+
+    /**
+     * 파일 하나 를 받아 쓰고 검증 하는 데 걸린 시간 의 분포 를 반환 하는 메소드
+     *
+     * @return Map 형태의 밀리세컨드(millisecond) 단위 상한 과 그 보다 짧은 파일 수
+     */
+    Map<String, Long> getFileLatencyHistogram();
+
+    /**
+     * 요약 파일 과 같은 JSON 요약 을 반환 하는 메소드
+     *
+     * @return String 형태의 JSON
+     */
+    String getSummary();
+}
@@ -0,0 +1,159 @@
+package benchmark;
+
+import network.DeltaEncoder;
+import network.DeltaInputStream;
+import util.BlockSignature;
+import util.SHA256HashGenerator;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 내용 이 조금 바뀐 큰 파일 을 전체 로 받는 경우 와 델타 로 받는 경우 의 전송량 과 시간 을 비교 하는 벤치마크
+ * <p>
+ * 임의 의 내용 으로 만든 로컬 사본 에서 changes 군데 의 byte 를 바꾼 새 파일 을 만들고,
+ * 로컬 사본 의 서명 계산, 서버 쪽 델타 생성, 로컬 사본 과 델타 로 새 파일 을 다시 만드는 시간 과 델타 크기 를 잰다.
+ * 다시 만든 파일 의 SHA256 이 새 파일 과 같은지 도 확인 한다.
+ * 실행 방법 : java -cp target/classes:target/test-classes benchmark.DeltaTransferBenchmark [sizeMB] [changes] [iterations]
+ */
+public class DeltaTransferBenchmark {
+
+    private static final int DEFAULT_SIZE_MB = 64;
+    private static final int DEFAULT_CHANGES = 1;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+
+        int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE_MB;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CHANGES;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+
+        File basis = File.createTempFile("delta-basis", ".dat");
+        File source = File.createTempFile("delta-source", ".dat");
+        File rebuilt = File.createTempFile("delta-rebuilt", ".dat");
+
+        try {
+
+            createFiles(basis, source, (long) sizeMB * 1024 * 1024, changes);
+
+            String sourceHash = SHA256HashGenerator.getHash(source.getPath());
+            long[] signatureTimes = new long[iterations];
+            long[] encodeTimes = new long[iterations];
+            long[] rebuildTimes = new long[iterations];
+            byte[] delta = null;
+            BlockSignature signature = null;
+            boolean isSame = true;
+
+            for (int i = 0; i < iterations; i++) {
+
+                long start = System.nanoTime();
+                signature = BlockSignature.compute(basis);
+                signatureTimes[i] = System.nanoTime() - start;
+
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+                start = System.nanoTime();
+
+                try (DataOutputStream out = new DataOutputStream(buffer)) {
+                    DeltaEncoder.writeDelta(out, source, signature);
+                }
+
+                encodeTimes[i] = System.nanoTime() - start;
+                delta = buffer.toByteArray();
+
+                start = System.nanoTime();
+                rebuild(basis, delta, rebuilt);
+                rebuildTimes[i] = System.nanoTime() - start;
+
+                isSame &= sourceHash.equals(SHA256HashGenerator.getHash(rebuilt.getPath()));
+            }
+
+            long signatureBytes = 4L + (long) signature.getBlockCount() * (4 + BlockSignature.STRONG_LENGTH);
+
+            System.out.printf("size=%dMB changes=%d blockSize=%d blocks=%d%n",
+                    sizeMB, changes, signature.getBlockSize(), signature.getBlockCount());
+            System.out.printf("full transfer  bytes=%d%n", source.length());
+            System.out.printf("delta transfer bytes=%d (signature=%d delta=%d) ratio=%.1fx%n",
+                    signatureBytes + delta.length, signatureBytes, delta.length,
+                    (double) source.length() / (signatureBytes + delta.length));
+            System.out.printf("median signature=%.1fms encode=%.1fms rebuild=%.1fms same=%s%n",
+                    median(signatureTimes) / 1e6, median(encodeTimes) / 1e6, median(rebuildTimes) / 1e6, isSame);
+
+        } finally {
+
+            basis.delete();
+            source.delete();
+            rebuilt.delete();
+
+        }
+    }
+
+    /**
+     * 임의 의 내용 으로 basis 를 만들고, 같은 내용 에서 changes 군데 를 고르게 바꾼 source 를 만든다.
+     */
+    private static void createFiles(File basis, File source, long size, int changes) throws IOException {
+
+        Random random = new Random(42);
+        byte[] block = new byte[WRITE_BUFFER_SIZE];
+        long step = size / Math.max(1, changes);
+
+        try (OutputStream b = new BufferedOutputStream(new FileOutputStream(basis));
+             OutputStream s = new BufferedOutputStream(new FileOutputStream(source))) {
+
+            for (long written = 0; written < size; written += block.length) {
+
+                int length = (int) Math.min(block.length, size - written);
+
+                random.nextBytes(block);
+                b.write(block, 0, length);
+
+                for (int c = 0; c < changes; c++) {
+
+                    long position = step * c + step / 2;
+
+                    if (position >= written && position < written + length) {
+
+                        block[(int) (position - written)] ^= 0x5A;
+
+                    }
+                }
+
+                s.write(block, 0, length);
+            }
+        }
+    }
+
+    private static void rebuild(File basis, byte[] delta, File target) throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        DeltaInputStream content = new DeltaInputStream(in, in.readInt(), new byte[64 * 1024]);
+        byte[] buffer = new byte[64 * 1024];
+
+        try (FileChannel channel = FileChannel.open(basis.toPath(), StandardOpenOption.READ);
+             OutputStream out = new FileOutputStream(target)) {
+
+            content.setBasis(channel);
+
+            int read;
+
+            while ((read = content.read(buffer)) != -1) {
+
+                out.write(buffer, 0, read);
+
+            }
+        }
+    }
+
+    private static long median(long[] values) {
+
+        long[] sorted = values.clone();
+
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,158 @@
+package network;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 쓰여진 내용 을 ChunkedInputStream 형식 의 chunk 들로 나누어 보내는 클래스
+ * <p>
+ * 서버 구현 의 참조 용 인코더 로 클라이언트 jar 에는 포함 되지 않으며 ChunkedTransferBenchmark 에서 ChunkedInputStream 과 의 왕복 을 확인 한다.
+ * deflater 가 주어지면 chunk 마다 독립 된 deflate 스트림 으로 압축 해 보고,
+ * 압축 결과 가 원래 크기 의 MAX_COMPRESSED_RATIO 보다 크면 압축 하지 않은 chunk 로 보낸다.
+ * 이미 압축 된 형식 처럼 압축 이 필요 없는 내용 은 setCompressed(false) 로 압축 을 시도 하지 않는다.
+ * finish 를 호출 하면 남은 chunk 와 끝 을 나타내는 길이 0 chunk 를 쓴다. 내부 스트림 은 닫지 않는다.
+ */
+public class ChunkedOutputStream extends OutputStream {
+
+    /**
+     * 압축 된 chunk 를 보낼 최대 압축 비율 로 이보다 덜 줄어 들면 압축 하지 않고 보낸다.
+     */
+    public static final double MAX_COMPRESSED_RATIO = 0.9;
+
+    private final DataOutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] chunk;
+    private byte[] compressed;
+
+    private int count;
+    private boolean isCompressed;
+
+    /**
+     * chunk 를 쓸 스트림 과 chunk 크기, 압축 에 사용할 deflater 를 받아 생성 한다.
+     *
+     * @param out       DataOutputStream 형태의 소켓 출력 스트림
+     * @param chunkSize int 형태의 chunk 크기 로 ChunkedInputStream.MAX_CHUNK_SIZE 보다 작아야 한다.
+     * @param deflater  Deflater 형태의 압축 에 사용할 deflater, 압축 하지 않으면 null
+     */
+    public ChunkedOutputStream(DataOutputStream out, int chunkSize, Deflater deflater) {
+        this.out = out;
+        this.deflater = deflater;
+        this.chunk = new byte[chunkSize];
+        this.isCompressed = deflater != null;
+    }
+
+    /**
+     * 이후 에 쓰는 chunk 들을 압축 할지 설정 하는 메소드
+     *
+     * @param compressed boolean 형태로 압축 을 시도 하면 true, deflater 가 없으면 무시 된다.
+     */
+    public void setCompressed(boolean compressed) {
+        this.isCompressed = compressed && deflater != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+
+        if (count == chunk.length) {
+
+            writeChunk();
+
+        }
+
+        chunk[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        while (len > 0) {
+
+            if (count == chunk.length) {
+
+                writeChunk();
+
+            }
+
+            int length = Math.min(len, chunk.length - count);
+
+            System.arraycopy(b, off, chunk, count, length);
+            count += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    /**
+     * 남은 내용 을 chunk 로 쓰고 끝 을 나타내는 길이 0 chunk 를 쓰는 메소드
+     *
+     * @throws IOException 쓰기 에 실패한 경우
+     */
+    public void finish() throws IOException {
+
+        writeChunk();
+        out.writeInt(0);
+    }
+
+    private void writeChunk() throws IOException {
+
+        if (count == 0) {
+
+            return;
+        }
+
+        crc.reset();
+        crc.update(chunk, 0, count);
+
+        int compressedLength = isCompressed ? deflate() : -1;
+
+        if (compressedLength > 0) {
+
+            out.writeInt(compressedLength | ChunkedInputStream.COMPRESSED_FLAG);
+            out.writeInt(count);
+            out.write(compressed, 0, compressedLength);
+
+        } else {
+
+            out.writeInt(count);
+            out.write(chunk, 0, count);
+
+        }
+
+        out.writeInt((int) crc.getValue());
+        count = 0;
+    }
+
+    /**
+     * 현재 chunk 를 압축 한다. 압축 결과 가 MAX_COMPRESSED_RATIO 를 넘으면 도중 에 멈춘다.
+     *
+     * @return int 형태의 압축 된 길이, 압축 할 가치 가 없으면 -1
+     */
+    private int deflate() {
+
+        int limit = (int) (count * MAX_COMPRESSED_RATIO);
+
+        if (compressed == null || compressed.length < limit) {
+
+            compressed = new byte[Math.max(limit, chunk.length / 2)];
+
+        }
+
+        deflater.reset();
+        deflater.setInput(chunk, 0, count);
+        deflater.finish();
+
+        int length = 0;
+
+        while (!deflater.finished() && length < limit) {
+
+            length += deflater.deflate(compressed, length, limit - length);
+
+        }
+
+        return deflater.finished() ? length : -1;
+    }
+}
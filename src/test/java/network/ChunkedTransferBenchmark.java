@@ -0,0 +1,205 @@
+package network;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * ChunkedOutputStream 으로 쓴 chunk 들을 ChunkedInputStream 과 ChunkInflater 로 다시 읽는 왕복 벤치마크
+ * <p>
+ * ChunkInflater 와 압축 된 chunk 를 읽는 생성자 는 package-private 이므로 같은 패키지 의 테스트 소스 에 둔다.
+ * 서버 가 파일 을 보내는 방식 그대로 파일 마다 확장자 가 ServerSession.DEFAULT_STORED_EXTENSIONS 에 있으면 압축 하지 않고 보낸다.
+ * 다음 경우 의 전송량, 압축 된 chunk 수, 쓰기 와 읽기 시간 을 재고 읽은 내용 이 원래 내용 과 같은지 확인 한다.
+ * <ul>
+ * <li>text : 압축 이 잘 되는 내용 으로 모든 chunk 가 압축 된다.</li>
+ * <li>random.zip : 확장자 때문에 압축 을 시도 하지 않는다.</li>
+ * <li>random.dat : 압축 을 시도 하지만 MAX_COMPRESSED_RATIO 보다 덜 줄어 들어 압축 하지 않은 chunk 로 보낸다.</li>
+ * <li>text (no deflate) : 압축 이 협상 되지 않은 경우 이다.</li>
+ * </ul>
+ * 실행 방법 : java -cp target/classes:target/test-classes network.ChunkedTransferBenchmark [sizeMB] [level] [iterations]
+ */
+public class ChunkedTransferBenchmark {
+
+    private static final int DEFAULT_SIZE_MB = 32;
+    private static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] WORDS = {"update", "client", "server", "file", "hash", "chunk", "session",
+            "download", "directory", "journal", "staging", "commit", "delta", "tree", "path", "size"};
+
+    public static void main(String[] args) throws Exception {
+
+        int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE_MB;
+        int level = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LEVEL;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+        int size = sizeMB * 1024 * 1024;
+
+        byte[] text = createText(size);
+        byte[] random = new byte[size];
+
+        new Random(42).nextBytes(random);
+
+        HashSet<String> storedExtensions =
+                new HashSet<>(Arrays.asList(ServerSession.DEFAULT_STORED_EXTENSIONS.split(",")));
+        Deflater deflater = new Deflater(level);
+
+        try {
+
+            System.out.printf("size=%dMB level=%d chunk=%dKB%n", sizeMB, level, CHUNK_SIZE / 1024);
+
+            run("text", text, deflater, storedExtensions, iterations);
+            run("random.zip", random, deflater, storedExtensions, iterations);
+            run("random.dat", random, deflater, storedExtensions, iterations);
+            run("text (no deflate)", text, null, storedExtensions, iterations);
+
+        } finally {
+
+            deflater.end();
+
+        }
+    }
+
+    /**
+     * 한 경우 를 iterations 번 왕복 하고 중간값 을 출력 한다.
+     */
+    private static void run(String name, byte[] content, Deflater deflater, HashSet<String> storedExtensions,
+                            int iterations) throws IOException {
+
+        long[] writeTimes = new long[iterations];
+        long[] readTimes = new long[iterations];
+        boolean isCompressed = !storedExtensions.contains(extension(name));
+        byte[] wire = null;
+        boolean isSame = true;
+
+        for (int i = 0; i < iterations; i++) {
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length + content.length / 16);
+
+            long start = System.nanoTime();
+            write(buffer, content, deflater, isCompressed);
+            writeTimes[i] = System.nanoTime() - start;
+
+            wire = buffer.toByteArray();
+
+            start = System.nanoTime();
+            byte[] read = read(wire, deflater != null);
+            readTimes[i] = System.nanoTime() - start;
+
+            isSame &= Arrays.equals(content, read);
+        }
+
+        int[] chunks = countChunks(wire);
+
+        System.out.printf("%-18s wire=%d ratio=%.2f chunks=%d compressed=%d write=%.1fms (%.0fMB/s) "
+                        + "read=%.1fms (%.0fMB/s) same=%s%n",
+                name, wire.length, (double) wire.length / content.length, chunks[0], chunks[1],
+                median(writeTimes) / 1e6, throughput(content.length, median(writeTimes)),
+                median(readTimes) / 1e6, throughput(content.length, median(readTimes)), isSame);
+    }
+
+    private static void write(OutputStream buffer, byte[] content, Deflater deflater, boolean isCompressed)
+            throws IOException {
+
+        DataOutputStream out = new DataOutputStream(buffer);
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, CHUNK_SIZE, deflater);
+
+        chunked.setCompressed(isCompressed);
+
+        for (int offset = 0; offset < content.length; offset += READ_BUFFER_SIZE) {
+
+            chunked.write(content, offset, Math.min(READ_BUFFER_SIZE, content.length - offset));
+
+        }
+
+        chunked.finish();
+        out.flush();
+    }
+
+    private static byte[] read(byte[] wire, boolean isCompressed) throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(wire));
+        ChunkedInputStream content = new ChunkedInputStream(in, new byte[CHUNK_SIZE],
+                isCompressed ? new ChunkInflater() : null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(wire.length);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+
+        while ((read = content.read(buffer)) != -1) {
+
+            out.write(buffer, 0, read);
+
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * chunk 머리 를 읽어 전체 chunk 수 와 압축 된 chunk 수 를 센다.
+     */
+    private static int[] countChunks(byte[] wire) throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(wire));
+        int[] chunks = new int[2];
+        int header;
+
+        while ((header = in.readInt()) != 0) {
+
+            int length = header & ~ChunkedInputStream.COMPRESSED_FLAG;
+
+            if ((header & ChunkedInputStream.COMPRESSED_FLAG) != 0) {
+
+                in.readInt();
+                chunks[1]++;
+
+            }
+
+            in.skipBytes(length);
+            in.readInt();
+            chunks[0]++;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * 단어 들을 임의 로 이어 붙인 압축 이 잘 되는 내용 을 만든다.
+     */
+    private static byte[] createText(int size) {
+
+        Random random = new Random(7);
+        StringBuilder builder = new StringBuilder(size + 16);
+
+        while (builder.length() < size) {
+
+            builder.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(8) == 0 ? '\n' : ' ');
+
+        }
+
+        return Arrays.copyOf(builder.toString().getBytes(), size);
+    }
+
+    private static String extension(String name) {
+
+        int index = name.lastIndexOf('.');
+
+        return index < 0 ? "" : name.substring(index + 1);
+    }
+
+    private static double throughput(long bytes, long nanos) {
+
+        return bytes / 1048576.0 / (nanos / 1e9);
+    }
+
+    private static long median(long[] values) {
+
+        long[] sorted = values.clone();
+
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+}
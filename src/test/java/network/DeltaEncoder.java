@@ -0,0 +1,262 @@
+package network;
+
+import util.BlockSignature;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * 클라이언트 가 보낸 블록 서명 과 새 파일 을 비교 해서 DeltaInputStream 형식 의 델타 명령 을 쓰는 클래스
+ * <p>
+ * 서버 구현 의 참조 용 인코더 로 클라이언트 jar 에는 포함 되지 않으며 DeltaTransferBenchmark 에서 DeltaInputStream 과 의 왕복 을 확인 한다.
+ * 새 파일 을 한 byte 씩 밀면서 rolling checksum 으로 후보 블록 을 찾고 MD5 로 확인 하며,
+ * 연속 된 블록 복사 는 하나의 OP_COPY 로 합친다. 일치 하지 않는 부분 은 MAX_LITERAL_SIZE 단위 의 OP_LITERAL 로 보낸다.
+ */
+public class DeltaEncoder {
+
+    private static final int MAX_LITERAL_SIZE = 64 * 1024;
+
+    private static final String ERR_FILE_TOO_LARGE = "file too large for delta : ";
+
+    private final DataOutputStream out;
+    private final BlockSignature signature;
+    private final CRC32 crc = new CRC32();
+    private final byte[] literal = new byte[MAX_LITERAL_SIZE];
+
+    private long copyStart = -1;
+    private long copyCount;
+
+    private DeltaEncoder(DataOutputStream out, BlockSignature signature) {
+        this.out = out;
+        this.signature = signature;
+    }
+
+    /**
+     * source 파일 을 signature 의 블록 들로 표현 한 델타 를 쓰는 메소드
+     * int 형태의 블록 크기 를 쓴 후 명령 들과 OP_END 를 쓴다.
+     *
+     * @param out       DataOutputStream 형태의 출력 스트림
+     * @param source    File 형태의 보낼 새 파일
+     * @param signature BlockSignature 형태의 클라이언트 사본 의 블록 서명
+     * @throws IOException 파일 을 읽거나 쓰기 에 실패한 경우
+     */
+    public static void writeDelta(DataOutputStream out, File source, BlockSignature signature) throws IOException {
+
+        out.writeInt(signature.getBlockSize());
+
+        try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+
+            FileChannel channel = file.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE) {
+
+                throw new IOException(ERR_FILE_TOO_LARGE + source);
+            }
+
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            new DeltaEncoder(out, signature).encode(data, (int) channel.size());
+        }
+
+        out.writeByte(DeltaInputStream.OP_END);
+    }
+
+    private void encode(MappedByteBuffer data, int length) throws IOException {
+
+        int blockSize = signature.getBlockSize();
+        HashMap<Integer, int[]> index = createIndex();
+        MessageDigest md5 = BlockSignature.newStrongDigest();
+        byte[] window = new byte[blockSize];
+        byte[] digest = new byte[BlockSignature.STRONG_LENGTH];
+
+        int position = 0;
+        int literalStart = 0;
+        int checksum = length >= blockSize ? rolling(data, 0, window) : 0;
+
+        while (position + blockSize <= length) {
+
+            int[] candidates = index.get(checksum);
+            int matched = -1;
+
+            if (candidates != null) {
+
+                data.position(position);
+                data.get(window, 0, blockSize);
+                md5.update(window, 0, blockSize);
+
+                try {
+
+                    md5.digest(digest, 0, digest.length);
+
+                } catch (DigestException e) {
+
+                    throw new IOException(e);
+                }
+
+                matched = findMatch(candidates, digest);
+            }
+
+            if (matched >= 0) {
+
+                writeLiteral(data, literalStart, position);
+                copy(matched);
+
+                position += blockSize;
+                literalStart = position;
+
+                if (position + blockSize <= length) {
+                    checksum = rolling(data, position, window);
+                }
+
+                continue;
+            }
+
+            if (position + blockSize < length) {
+                checksum = BlockSignature.roll(checksum, data.get(position), data.get(position + blockSize), blockSize);
+            }
+
+            position++;
+
+            if (position - literalStart >= MAX_LITERAL_SIZE) {
+
+                writeLiteral(data, literalStart, position);
+                literalStart = position;
+
+            }
+        }
+
+        writeLiteral(data, literalStart, length);
+        flushCopy();
+    }
+
+    /**
+     * rolling checksum 으로 블록 번호 들을 찾을 수 있는 index 를 만든다.
+     */
+    private HashMap<Integer, int[]> createIndex() {
+
+        HashMap<Integer, int[]> index = new HashMap<>(signature.getBlockCount() * 2);
+
+        for (int i = 0; i < signature.getBlockCount(); i++) {
+
+            int[] blocks = index.get(signature.getRolling(i));
+
+            if (blocks == null) {
+
+                blocks = new int[]{i};
+
+            } else {
+
+                int[] grown = new int[blocks.length + 1];
+
+                System.arraycopy(blocks, 0, grown, 0, blocks.length);
+                grown[blocks.length] = i;
+                blocks = grown;
+            }
+
+            index.put(signature.getRolling(i), blocks);
+        }
+
+        return index;
+    }
+
+    /**
+     * MD5 가 같은 후보 블록 을 찾는다. 이어서 복사 할 수 있는 블록 을 먼저 고른다.
+     */
+    private int findMatch(int[] candidates, byte[] digest) {
+
+        long next = copyStart + copyCount;
+
+        if (copyStart >= 0 && next < signature.getBlockCount() && signature.matches((int) next, digest)) {
+
+            for (int candidate : candidates) {
+
+                if (candidate == next) {
+
+                    return candidate;
+                }
+            }
+        }
+
+        for (int candidate : candidates) {
+
+            if (signature.matches(candidate, digest)) {
+
+                return candidate;
+            }
+        }
+
+        return -1;
+    }
+
+    private int rolling(MappedByteBuffer data, int position, byte[] window) {
+
+        data.position(position);
+        data.get(window, 0, window.length);
+
+        return BlockSignature.rolling(window, 0, window.length);
+    }
+
+    private void copy(int block) throws IOException {
+
+        if (copyStart >= 0 && copyStart + copyCount == block) {
+
+            copyCount++;
+
+            return;
+        }
+
+        flushCopy();
+
+        copyStart = block;
+        copyCount = 1;
+    }
+
+    private void flushCopy() throws IOException {
+
+        if (copyStart < 0) {
+
+            return;
+        }
+
+        out.writeByte(DeltaInputStream.OP_COPY);
+        UpdateInfoCodec.writeVarLong(out, copyStart);
+        UpdateInfoCodec.writeVarLong(out, copyCount);
+
+        copyStart = -1;
+        copyCount = 0;
+    }
+
+    private void writeLiteral(MappedByteBuffer data, int from, int to) throws IOException {
+
+        if (from >= to) {
+
+            return;
+        }
+
+        flushCopy();
+
+        for (int off = from; off < to; off += MAX_LITERAL_SIZE) {
+
+            int length = Math.min(MAX_LITERAL_SIZE, to - off);
+
+            data.position(off);
+            data.get(literal, 0, length);
+
+            crc.reset();
+            crc.update(literal, 0, length);
+
+            out.writeByte(DeltaInputStream.OP_LITERAL);
+            out.writeInt(length);
+            out.write(literal, 0, length);
+            out.writeInt((int) crc.getValue());
+        }
+    }
+}